@@ -0,0 +1,78 @@
+package lexer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the {@link ByteKernels} SWAR kernels with the plain loop they replace, one byte at a time through
+ * {@link ByteKernels#contains}, on a run of bytes from each kernel's set followed by one byte that ends it.  The
+ * buffer is direct, as a memory-mapped file is.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ByteKernelsBenchmark {
+    @Param({"WHITESPACE", "NOT_LINE_END", "WORD"})
+    public String kernel;
+
+    @Param({"4", "16", "64", "256"})
+    public int length;
+
+    private int kernelIndex;
+
+    private ByteBuffer input;
+
+    @Setup
+    public void setUp() {
+        String run;
+        char end;
+        if (kernel.equals("WHITESPACE")) {
+            kernelIndex = ByteKernels.WHITESPACE;
+            run = " \t  ";
+            end = 'x';
+        } else if (kernel.equals("NOT_LINE_END")) {
+            kernelIndex = ByteKernels.NOT_LINE_END;
+            run = "// a comment = \"text\"; ";
+            end = '\n';
+        } else {
+            kernelIndex = ByteKernels.WORD;
+            run = "identifier_42";
+            end = ' ';
+        }
+        input = ByteBuffer.allocateDirect(length + 1);
+        for (int i = 0; i < length; i++) {
+            input.put(i, (byte) run.charAt(i % run.length()));
+        }
+        input.put(length, (byte) end);
+    }
+
+    @Benchmark
+    public int swar() {
+        return ByteKernels.skip(kernelIndex, input, 0, input.limit());
+    }
+
+    @Benchmark
+    public int scalar() {
+        int p = 0;
+        int limit = input.limit();
+        while (p < limit && ByteKernels.contains(kernelIndex, input.get(p) & 0xFF)) {
+            p++;
+        }
+        return p;
+    }
+}
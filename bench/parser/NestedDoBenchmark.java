@@ -0,0 +1,57 @@
+package parser;
+
+import lexer.DiamondLexer;
+import lexer.DiamondLexer.Lexeme;
+import lexer.TokenBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses a method body of {@code do} loops nested {@code depth} deep, each of whose condition and {@code ';'} are
+ * only read after its whole body, from a buffer lexed once beforehand.  The time should grow in proportion to the
+ * depth.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class NestedDoBenchmark {
+    @Param({"2000", "8000", "32000"})
+    public int depth;
+
+    private DiamondParser parser;
+
+    private TokenBuffer<Lexeme> tokens;
+
+    @Setup
+    public void setUp() {
+        StringBuilder source = new StringBuilder("class A { int f(int a) { ");
+        for (int i = 0; i < depth; i++) {
+            source.append("do { a = a + 1; ");
+        }
+        for (int i = 0; i < depth; i++) {
+            source.append("} while (a); ");
+        }
+        source.append("return a; } }");
+        parser = new DiamondParser().withNestingLimits(1000000, DiamondParser.DEFAULT_EXPRESSION_NESTING_LIMIT);
+        tokens = new DiamondLexer().lexToBuffer(source);
+    }
+
+    @Benchmark
+    public CompilationUnit parse() throws ParseException {
+        return parser.parse(tokens);
+    }
+}
@@ -0,0 +1,179 @@
+package parser;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.io.CharStreams;
+import com.google.common.io.Files;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Measures how soon a fresh JVM has the first token and the first compilation unit of a file, as reported by
+ * {@code Main --startup}, with and without what is meant to cut that time: the lexer tables saved next to the classes,
+ * and an AppCDS archive of the classes made by a training run, as {@code bin/train-cds} makes it.
+ *
+ * The classes are packed into two jars, one of them without the tables, and an archive is trained on the one with
+ * them.  The configurations are then launched in turn, one run of each per round so that drift in the machine affects
+ * them all alike, after a round that is thrown away to warm the file cache.  For each configuration it prints the
+ * median and the range of the time to the first token and to the first compilation unit, counted from the JVM's start,
+ * and of the time the whole process took from launch to exit.
+ *
+ * Run it with {@code bin/startup-bench}.  The archive needs JDK 13 or later.
+ */
+public final class StartupBenchmark {
+    private static final Pattern FIRST_TOKEN = Pattern.compile("first token: (\\d+) ms");
+
+    private static final Pattern FIRST_UNIT = Pattern.compile("first compilation unit: (\\d+) ms");
+
+    private static final String TABLES = "lexer/DiamondLexer.tables";
+
+    private StartupBenchmark() {
+    }
+
+    /**
+     * @param args the directory of the compiled classes, the Guava jar, the number of rounds, and the files to parse
+     */
+    public static void main(String... args) throws IOException, InterruptedException {
+        if (args.length < 4) {
+            System.err.println("usage: StartupBenchmark <classes> <guava jar> <rounds> <file>...");
+            System.exit(2);
+        }
+        File classes = new File(args[0]);
+        String guava = args[1];
+        int rounds = Integer.parseInt(args[2]);
+        List<String> files = Arrays.asList(args).subList(3, args.length);
+
+        File dir = Files.createTempDir();
+        File withTables = new File(dir, "diamond.jar");
+        File withoutTables = new File(dir, "diamond-no-tables.jar");
+        File archive = new File(dir, "diamond.jsa");
+        jar(classes, withTables, true);
+        jar(classes, withoutTables, false);
+
+        List<String> training = Lists.newArrayList("-XX:ArchiveClassesAtExit=" + archive);
+        run(training, withTables, guava, files);
+        if (!archive.isFile()) {
+            System.err.println("the training run made no archive; AppCDS needs JDK 13 or later");
+            System.exit(1);
+        }
+
+        Configuration[] configurations = {
+                new Configuration("no tables, no archive", withoutTables, Collections.<String>emptyList()),
+                new Configuration("tables, no archive", withTables, Collections.<String>emptyList()),
+                new Configuration("tables and archive", withTables,
+                        Arrays.asList("-XX:SharedArchiveFile=" + archive, "-Xshare:on")),
+        };
+        for (int round = 0; round <= rounds; round++) {
+            for (Configuration configuration : configurations) {
+                long launched = System.nanoTime();
+                String output = run(configuration.options, configuration.jar, guava, files);
+                long exited = System.nanoTime();
+                if (round > 0) {
+                    configuration.firstToken.add(parse(FIRST_TOKEN, output));
+                    configuration.firstUnit.add(parse(FIRST_UNIT, output));
+                    configuration.wall.add((exited - launched) / 1000000);
+                }
+            }
+        }
+
+        System.out.printf("%-24s %22s %22s %22s%n", "(" + rounds + " runs, ms)", "first token",
+                "first compilation unit", "process");
+        for (Configuration configuration : configurations) {
+            System.out.printf("%-24s %22s %22s %22s%n", configuration.name, summarize(configuration.firstToken),
+                    summarize(configuration.firstUnit), summarize(configuration.wall));
+        }
+        for (File file : new File[]{withTables, withoutTables, archive}) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    private static final class Configuration {
+        final String name;
+
+        final File jar;
+
+        final List<String> options;
+
+        final List<Long> firstToken = Lists.newArrayList();
+
+        final List<Long> firstUnit = Lists.newArrayList();
+
+        final List<Long> wall = Lists.newArrayList();
+
+        Configuration(String name, File jar, List<String> options) {
+            this.name = name;
+            this.jar = jar;
+            this.options = options;
+        }
+    }
+
+    /**
+     * Runs {@code Main --startup} on the files in a new JVM.
+     *
+     * @return what it printed
+     */
+    private static String run(List<String> options, File jar, String guava, List<String> files)
+            throws IOException, InterruptedException {
+        List<String> command = Lists.newArrayList(new File(System.getProperty("java.home"), "bin/java").getPath());
+        command.addAll(options);
+        command.addAll(Arrays.asList("-cp", jar + File.pathSeparator + guava, "parser.Main", "--startup"));
+        command.addAll(files);
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        String output = CharStreams.toString(new InputStreamReader(process.getInputStream(), Charsets.UTF_8));
+        process.waitFor();
+        return output;
+    }
+
+    private static long parse(Pattern pattern, String output) {
+        Matcher matcher = pattern.matcher(output);
+        if (!matcher.find()) {
+            throw new IllegalStateException("Main did not report its startup:\n" + output);
+        }
+        return Long.parseLong(matcher.group(1));
+    }
+
+    private static String summarize(List<Long> times) {
+        List<Long> sorted = Lists.newArrayList(times);
+        Collections.sort(sorted);
+        return String.format("%d (%d-%d)", sorted.get(sorted.size() / 2), sorted.get(0),
+                sorted.get(sorted.size() - 1));
+    }
+
+    /**
+     * Packs the classes and their resources into a jar, since AppCDS only archives classes loaded from jars.
+     */
+    private static void jar(File classes, File jar, boolean tables) throws IOException {
+        JarOutputStream out = new JarOutputStream(new FileOutputStream(jar));
+        try {
+            add(classes, "", out, tables);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void add(File file, String name, JarOutputStream out, boolean tables) throws IOException {
+        if (file.isDirectory()) {
+            File[] children = file.listFiles();
+            Arrays.sort(children);
+            for (File child : children) {
+                add(child, name + child.getName() + (child.isDirectory() ? "/" : ""), out, tables);
+            }
+        } else if (tables || !name.equals(TABLES)) {
+            out.putNextEntry(new JarEntry(name));
+            Files.copy(file, (OutputStream) out);
+            out.closeEntry();
+        }
+    }
+}
@@ -0,0 +1,892 @@
+package lexer;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * A minimized deterministic finite automaton built from the patterns of a {@link Lexer}'s rule groups, which allows
+ * the lexer to find the next token with a single forward scan instead of trying every regex in turn.
+ *
+ * Each pattern must have the shape the rule groups already use: capturing group 1 holds the token, optionally
+ * followed by a single character class of trailing context which must match the next character but is not consumed.
+ * Within the group, literals, escapes, character classes, {@code .}, {@code (?:...)}, alternation and the greedy
+ * quantifiers {@code *}, {@code +} and {@code ?} are supported. Anchors, lazy or possessive quantifiers, counted
+ * repetition and back references are not; patterns using them must be lexed with {@link Lexer.Engine#REGEX}.
+ *
+ * Rules keep the priority order they were registered in: the first rule (by index) that matches at the current
+ * position wins, and that rule consumes its longest match. As with the regex engine, the end of the input is treated
+ * as a single space when checking trailing context.
+ */
+final class Automaton implements TokenMatcher {
+    static final long NO_MATCH = -1;
+
+    static final long NEED_INPUT = -2;
+
+    private static final int CHAR_LIMIT = Character.MAX_VALUE + 1;
+
+    /**
+     * The alphabet class of every ASCII character; anything higher is looked up in {@link #segmentStarts}.
+     */
+    private final int[] asciiClasses;
+
+    private final int[] segmentStarts;
+
+    private final int[] segmentClasses;
+
+    private final int classCount;
+
+    /**
+     * Indexed by {@code state * classCount + class}; -1 is the dead state.
+     */
+    private final int[] transitions;
+
+    /**
+     * The rules accepted in each state, in ascending (priority) order.
+     */
+    private final int[][] accepts;
+
+    /**
+     * For each rule, which classes are allowed to follow the token; {@code null} if the rule has no trailing context.
+     */
+    private final boolean[][] contexts;
+
+    private final int start;
+
+    /**
+     * The class of every non-ASCII byte when scanning bytes directly.
+     */
+    private final int nonAsciiClass;
+
+    /**
+     * For each state, the {@link ByteKernels} kernel that can skip a run of bytes which all lead back to the state, or
+     * -1 if there is none.
+     */
+    private final int[] kernels;
+
+    private Automaton(int[] segmentStarts, int[] segmentClasses, int classCount, int[] transitions, int[][] accepts,
+                      boolean[][] contexts, int start) {
+        this.segmentStarts = segmentStarts;
+        this.segmentClasses = segmentClasses;
+        this.classCount = classCount;
+        this.transitions = transitions;
+        this.accepts = accepts;
+        this.contexts = contexts;
+        this.start = start;
+        this.asciiClasses = new int[128];
+        for (char c = 0; c < 128; c++) {
+            asciiClasses[c] = lookupClass(c);
+        }
+        this.nonAsciiClass = lookupClass(ByteSource.NON_ASCII);
+        this.kernels = new int[accepts.length];
+        for (int state = 0; state < accepts.length; state++) {
+            kernels[state] = findKernel(state);
+        }
+    }
+
+    /**
+     * Finds the largest kernel set whose every byte leads from the state back to itself, and whose every byte, as
+     * trailing context, leaves the state accepting the same rule. A run of such bytes can then be skipped in one go.
+     */
+    private int findKernel(int state) {
+        int[] candidates = {ByteKernels.NOT_LINE_END, ByteKernels.WORD, ByteKernels.WHITESPACE};
+        candidates:
+        for (int kernel : candidates) {
+            int decision = -2;
+            for (int b = 0; b < 256; b++) {
+                if (!ByteKernels.contains(kernel, b)) {
+                    continue;
+                }
+                int cls = classOf((byte) b);
+                if (transitions[state * classCount + cls] != state) {
+                    continue candidates;
+                }
+                int accepted = acceptedRule(state, cls);
+                if (decision != -2 && accepted != decision) {
+                    continue candidates;
+                }
+                decision = accepted;
+            }
+            return kernel;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the first rule the state accepts when followed by the given class, or -1
+     */
+    private int acceptedRule(int state, int contextClass) {
+        for (int rule : accepts[state]) {
+            if (contexts[rule] == null || contexts[rule][contextClass]) {
+                return rule;
+            }
+        }
+        return -1;
+    }
+
+    int getStateCount() {
+        return accepts.length;
+    }
+
+    /**
+     * Finds the token starting at {@code pos}.
+     *
+     * @param input the text being lexed
+     * @param pos   the index at which the token starts
+     * @return {@link #NO_MATCH} if no rule matches, otherwise the index of the matching rule in the upper 32 bits and
+     *         the (exclusive) end of the token in the lower 32 bits
+     */
+    @Override
+    public long match(CharSequence input, int pos) {
+        return match(input, pos, true);
+    }
+
+    /**
+     * Finds the token starting at {@code pos} in input which may only be a prefix of the full text.
+     *
+     * @param input    the text read so far
+     * @param pos      the index at which the token starts
+     * @param complete whether {@code input} holds the rest of the text
+     * @return {@link #NEED_INPUT} if the token might extend past the end of an incomplete input, otherwise the same
+     *         as {@link #match(CharSequence, int)}
+     */
+    long match(CharSequence input, int pos, boolean complete) {
+        int length = input.length();
+        int state = start;
+        int bestRule = Integer.MAX_VALUE;
+        int bestEnd = -1;
+        int p = pos;
+        while (true) {
+            if (p == length && !complete) {
+                return NEED_INPUT;
+            }
+            int[] rules = accepts[state];
+            if (rules.length > 0) {
+                int contextClass = classOf(p < length ? input.charAt(p) : ' ');
+                for (int rule : rules) {
+                    if (rule > bestRule) {
+                        break;
+                    }
+                    if (contexts[rule] == null || contexts[rule][contextClass]) {
+                        bestRule = rule;
+                        bestEnd = p;
+                        break;
+                    }
+                }
+            }
+            if (p == length) {
+                break;
+            }
+            state = transitions[state * classCount + classOf(input.charAt(p))];
+            if (state < 0) {
+                break;
+            }
+            p++;
+        }
+        return (bestEnd < 0) ? NO_MATCH : (((long) bestRule << 32) | bestEnd);
+    }
+
+    /**
+     * Finds how much of the input {@link #match(CharSequence, int)} reads when it looks for a token at {@code pos},
+     * which may be well past the end of the token it settles on.  The end of the input counts as a character, since
+     * trailing context treats it as one.
+     *
+     * @return the index just past the last character examined, which is {@code input.length() + 1} if the end of
+     *         the input was reached
+     */
+    int extent(CharSequence input, int pos) {
+        int length = input.length();
+        int state = start;
+        int p = pos;
+        while (p < length) {
+            state = transitions[state * classCount + classOf(input.charAt(p))];
+            if (state < 0) {
+                break;
+            }
+            p++;
+        }
+        return p + 1;
+    }
+
+    /**
+     * The byte-level counterpart of {@link #match(CharSequence, int)}, which reads ASCII bytes as they are and treats
+     * every other byte as {@link ByteSource#NON_ASCII}, so UTF-8 input never has to be decoded. Runs of whitespace,
+     * word characters or the rest of a line that a state only loops over are skipped by {@link ByteKernels} eight bytes
+     * at a time.
+     *
+     * @param input the bytes being lexed
+     * @param pos   the index within {@code input} at which the token starts
+     * @param limit the index within {@code input} at which the text ends
+     * @return the same as {@link #match(CharSequence, int)}, with the end being an index within {@code input}
+     */
+    long match(ByteBuffer input, int pos, int limit) {
+        int state = start;
+        int bestRule = Integer.MAX_VALUE;
+        int bestEnd = -1;
+        int p = pos;
+        while (true) {
+            int[] rules = accepts[state];
+            if (rules.length > 0) {
+                int contextClass = (p < limit) ? classOf(input.get(p)) : asciiClasses[' '];
+                for (int rule : rules) {
+                    if (rule > bestRule) {
+                        break;
+                    }
+                    if (contexts[rule] == null || contexts[rule][contextClass]) {
+                        bestRule = rule;
+                        bestEnd = p;
+                        break;
+                    }
+                }
+            }
+            if (p == limit) {
+                break;
+            }
+            int kernel = kernels[state];
+            if (kernel >= 0) {
+                int run = ByteKernels.skip(kernel, input, p, limit);
+                if (run > p) {
+                    // every byte of the run leads back here and gives the same outcome as the one at p did, so the
+                    // token can only end after the last of them
+                    if (bestEnd == p) {
+                        bestEnd = run - 1;
+                    }
+                    p = run;
+                    continue;
+                }
+            }
+            state = transitions[state * classCount + classOf(input.get(p))];
+            if (state < 0) {
+                break;
+            }
+            p++;
+        }
+        return (bestEnd < 0) ? NO_MATCH : (((long) bestRule << 32) | bestEnd);
+    }
+
+    private int classOf(byte b) {
+        return (b >= 0) ? asciiClasses[b] : nonAsciiClass;
+    }
+
+    private int classOf(char c) {
+        return (c < 128) ? asciiClasses[c] : lookupClass(c);
+    }
+
+    private int lookupClass(char c) {
+        int index = Arrays.binarySearch(segmentStarts, c);
+        if (index < 0) {
+            index = -index - 2;
+        }
+        return segmentClasses[index];
+    }
+
+    /**
+     * Writes the tables this automaton was built from, which {@link #read(DataInput)} turns back into an equal
+     * automaton without compiling anything.
+     */
+    void write(DataOutput out) throws IOException {
+        writeInts(out, segmentStarts);
+        writeInts(out, segmentClasses);
+        out.writeInt(classCount);
+        writeInts(out, transitions);
+        out.writeInt(accepts.length);
+        for (int[] rules : accepts) {
+            writeInts(out, rules);
+        }
+        out.writeInt(contexts.length);
+        for (boolean[] context : contexts) {
+            out.writeBoolean(context != null);
+            if (context != null) {
+                for (boolean allowed : context) {
+                    out.writeBoolean(allowed);
+                }
+            }
+        }
+        out.writeInt(start);
+    }
+
+    /**
+     * Reads an automaton written by {@link #write(DataOutput)}.
+     */
+    static Automaton read(DataInput in) throws IOException {
+        int[] segmentStarts = readInts(in);
+        int[] segmentClasses = readInts(in);
+        int classCount = in.readInt();
+        int[] transitions = readInts(in);
+        int[][] accepts = new int[in.readInt()][];
+        for (int i = 0; i < accepts.length; i++) {
+            accepts[i] = readInts(in);
+        }
+        boolean[][] contexts = new boolean[in.readInt()][];
+        for (int rule = 0; rule < contexts.length; rule++) {
+            if (in.readBoolean()) {
+                contexts[rule] = new boolean[classCount];
+                for (int cls = 0; cls < classCount; cls++) {
+                    contexts[rule][cls] = in.readBoolean();
+                }
+            }
+        }
+        int start = in.readInt();
+        return new Automaton(segmentStarts, segmentClasses, classCount, transitions, accepts, contexts, start);
+    }
+
+    private static void writeInts(DataOutput out, int[] values) throws IOException {
+        out.writeInt(values.length);
+        for (int value : values) {
+            out.writeInt(value);
+        }
+    }
+
+    private static int[] readInts(DataInput in) throws IOException {
+        int[] values = new int[in.readInt()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.readInt();
+        }
+        return values;
+    }
+
+    /**
+     * Compiles the given rule patterns, in priority order, into a single minimized automaton.
+     *
+     * @param patterns the rule patterns, as registered with the lexer
+     * @return the compiled automaton
+     * @throws IllegalArgumentException if a pattern uses a construct the automaton does not support, or if it can
+     *                                  match the empty string
+     */
+    static Automaton compile(List<String> patterns) {
+        List<State> nfa = Lists.newArrayList();
+        State nfaStart = new State(nfa);
+        List<int[]> contextSets = Lists.newArrayListWithCapacity(patterns.size());
+        for (int rule = 0; rule < patterns.size(); rule++) {
+            PatternParser parser = new PatternParser(patterns.get(rule), nfa);
+            Fragment token = parser.parseRule();
+            token.end.rule = rule;
+            nfaStart.epsilons.add(token.start);
+            contextSets.add(parser.context);
+        }
+
+        // split the character range into classes that no label can tell apart
+        List<int[]> labels = Lists.newArrayList();
+        for (State state : nfa) {
+            if (state.label != null) {
+                labels.add(state.label);
+            }
+        }
+        for (int[] context : contextSets) {
+            if (context != null) {
+                labels.add(context);
+            }
+        }
+        SortedSet<Integer> boundaries = new TreeSet<Integer>();
+        boundaries.add(0);
+        for (int[] label : labels) {
+            for (int bound : label) {
+                if (bound < CHAR_LIMIT) {
+                    boundaries.add(bound);
+                }
+            }
+        }
+        int[] segmentStarts = new int[boundaries.size()];
+        int[] segmentClasses = new int[boundaries.size()];
+        List<Character> representatives = Lists.newArrayList();
+        Map<BitSet, Integer> signatures = Maps.newHashMap();
+        int segment = 0;
+        for (int bound : boundaries) {
+            BitSet signature = new BitSet(labels.size());
+            for (int i = 0; i < labels.size(); i++) {
+                if (contains(labels.get(i), bound)) {
+                    signature.set(i);
+                }
+            }
+            Integer cls = signatures.get(signature);
+            if (cls == null) {
+                cls = signatures.size();
+                signatures.put(signature, cls);
+                representatives.add((char) bound);
+            }
+            segmentStarts[segment] = bound;
+            segmentClasses[segment] = cls;
+            segment++;
+        }
+        int classCount = signatures.size();
+
+        // subset construction
+        List<BitSet> dfaStates = Lists.newArrayList();
+        Map<BitSet, Integer> dfaIds = Maps.newHashMap();
+        BitSet initial = closure(nfa, Collections.singleton(nfaStart.id));
+        dfaStates.add(initial);
+        dfaIds.put(initial, 0);
+        List<int[]> rows = Lists.newArrayList();
+        for (int current = 0; current < dfaStates.size(); current++) {
+            BitSet set = dfaStates.get(current);
+            int[] row = new int[classCount];
+            for (int cls = 0; cls < classCount; cls++) {
+                char representative = representatives.get(cls);
+                List<Integer> moved = Lists.newArrayList();
+                for (int id = set.nextSetBit(0); id >= 0; id = set.nextSetBit(id + 1)) {
+                    State state = nfa.get(id);
+                    if (state.label != null && contains(state.label, representative)) {
+                        moved.add(state.target.id);
+                    }
+                }
+                if (moved.isEmpty()) {
+                    row[cls] = -1;
+                    continue;
+                }
+                BitSet next = closure(nfa, moved);
+                Integer nextId = dfaIds.get(next);
+                if (nextId == null) {
+                    nextId = dfaStates.size();
+                    dfaStates.add(next);
+                    dfaIds.put(next, nextId);
+                }
+                row[cls] = nextId;
+            }
+            rows.add(row);
+        }
+        int[][] accepts = new int[dfaStates.size()][];
+        for (int i = 0; i < dfaStates.size(); i++) {
+            SortedSet<Integer> rules = new TreeSet<Integer>();
+            BitSet set = dfaStates.get(i);
+            for (int id = set.nextSetBit(0); id >= 0; id = set.nextSetBit(id + 1)) {
+                if (nfa.get(id).rule >= 0) {
+                    rules.add(nfa.get(id).rule);
+                }
+            }
+            accepts[i] = toArray(rules);
+        }
+        if (accepts[0].length > 0) {
+            throw new IllegalArgumentException("pattern matches the empty string: " + patterns.get(accepts[0][0]));
+        }
+
+        boolean[][] contexts = new boolean[patterns.size()][];
+        for (int rule = 0; rule < patterns.size(); rule++) {
+            int[] context = contextSets.get(rule);
+            if (context != null) {
+                contexts[rule] = new boolean[classCount];
+                for (int cls = 0; cls < classCount; cls++) {
+                    contexts[rule][cls] = contains(context, representatives.get(cls));
+                }
+            }
+        }
+
+        return minimize(rows, accepts, segmentStarts, segmentClasses, classCount, contexts);
+    }
+
+    /**
+     * Merges equivalent states by repeatedly refining a partition that starts out grouping states by the rules they
+     * accept, until no two states in the same block disagree on the block any of their transitions lead to.
+     */
+    private static Automaton minimize(List<int[]> rows, int[][] accepts, int[] segmentStarts, int[] segmentClasses,
+                                      int classCount, boolean[][] contexts) {
+        int stateCount = rows.size();
+        int[] block = new int[stateCount];
+        Map<List<Integer>, Integer> keys = Maps.newHashMap();
+        for (int state = 0; state < stateCount; state++) {
+            List<Integer> key = Lists.newArrayList();
+            for (int rule : accepts[state]) {
+                key.add(rule);
+            }
+            block[state] = blockFor(keys, key);
+        }
+        int blockCount = keys.size();
+        while (true) {
+            keys.clear();
+            int[] refined = new int[stateCount];
+            for (int state = 0; state < stateCount; state++) {
+                List<Integer> key = Lists.newArrayListWithCapacity(classCount + 1);
+                key.add(block[state]);
+                for (int target : rows.get(state)) {
+                    key.add((target < 0) ? -1 : block[target]);
+                }
+                refined[state] = blockFor(keys, key);
+            }
+            block = refined;
+            if (keys.size() == blockCount) {
+                break;
+            }
+            blockCount = keys.size();
+        }
+
+        int[] transitions = new int[blockCount * classCount];
+        int[][] minimalAccepts = new int[blockCount][];
+        for (int state = 0; state < stateCount; state++) {
+            int b = block[state];
+            if (minimalAccepts[b] != null) {
+                continue;
+            }
+            minimalAccepts[b] = accepts[state];
+            int[] row = rows.get(state);
+            for (int cls = 0; cls < classCount; cls++) {
+                transitions[b * classCount + cls] = (row[cls] < 0) ? -1 : block[row[cls]];
+            }
+        }
+        return new Automaton(segmentStarts, segmentClasses, classCount, transitions, minimalAccepts, contexts, block[0]);
+    }
+
+    private static int blockFor(Map<List<Integer>, Integer> keys, List<Integer> key) {
+        Integer existing = keys.get(key);
+        if (existing == null) {
+            existing = keys.size();
+            keys.put(key, existing);
+        }
+        return existing;
+    }
+
+    private static BitSet closure(List<State> nfa, Collection<Integer> ids) {
+        BitSet set = new BitSet(nfa.size());
+        Deque<Integer> pending = new ArrayDeque<Integer>(ids);
+        while (!pending.isEmpty()) {
+            int id = pending.pop();
+            if (set.get(id)) {
+                continue;
+            }
+            set.set(id);
+            for (State next : nfa.get(id).epsilons) {
+                pending.push(next.id);
+            }
+        }
+        return set;
+    }
+
+    private static int[] toArray(Collection<Integer> values) {
+        int[] array = new int[values.size()];
+        int i = 0;
+        for (int value : values) {
+            array[i++] = value;
+        }
+        return array;
+    }
+
+    // Character sets are stored as sorted, disjoint [low, high) pairs.
+
+    private static boolean contains(int[] ranges, int c) {
+        for (int i = 0; i < ranges.length; i += 2) {
+            if (c < ranges[i]) {
+                return false;
+            } else if (c < ranges[i + 1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int[] range(int low, int high) {
+        return new int[]{low, high + 1};
+    }
+
+    private static int[] union(int[] a, int[] b) {
+        List<int[]> pairs = Lists.newArrayList();
+        for (int[] ranges : Arrays.asList(a, b)) {
+            for (int i = 0; i < ranges.length; i += 2) {
+                pairs.add(new int[]{ranges[i], ranges[i + 1]});
+            }
+        }
+        Collections.sort(pairs, new Comparator<int[]>() {
+            @Override
+            public int compare(int[] x, int[] y) {
+                return Integer.compare(x[0], y[0]);
+            }
+        });
+        List<Integer> merged = Lists.newArrayList();
+        for (int[] pair : pairs) {
+            int last = merged.size() - 1;
+            if (!merged.isEmpty() && pair[0] <= merged.get(last)) {
+                merged.set(last, Math.max(merged.get(last), pair[1]));
+            } else {
+                merged.add(pair[0]);
+                merged.add(pair[1]);
+            }
+        }
+        return toArray(merged);
+    }
+
+    private static int[] complement(int[] ranges) {
+        List<Integer> result = Lists.newArrayList();
+        int low = 0;
+        for (int i = 0; i < ranges.length; i += 2) {
+            if (ranges[i] > low) {
+                result.add(low);
+                result.add(ranges[i]);
+            }
+            low = ranges[i + 1];
+        }
+        if (low < CHAR_LIMIT) {
+            result.add(low);
+            result.add(CHAR_LIMIT);
+        }
+        return toArray(result);
+    }
+
+    private static final class State {
+        final int id;
+
+        final List<State> epsilons = Lists.newArrayListWithCapacity(2);
+
+        /**
+         * The characters on this state's single labelled edge, or {@code null} if it has none.
+         */
+        int[] label;
+
+        State target;
+
+        int rule = -1;
+
+        State(List<State> nfa) {
+            id = nfa.size();
+            nfa.add(this);
+        }
+    }
+
+    private static final class Fragment {
+        final State start;
+
+        final State end;
+
+        Fragment(State start, State end) {
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    /**
+     * Translates the supported subset of {@link java.util.regex.Pattern} syntax into a Thompson NFA.
+     */
+    private static final class PatternParser {
+        private static final char END = Character.MAX_VALUE;
+
+        private static final int[] DIGITS = range('0', '9');
+
+        private static final int[] WORD = union(union(range('a', 'z'), range('A', 'Z')), union(DIGITS, range('_', '_')));
+
+        private static final int[] SPACE = union(range('\t', '\r'), range(' ', ' '));
+
+        private static final int[] LINE_TERMINATORS = union(union(range('\n', '\n'), range('\r', '\r')),
+                union(range('\u0085', '\u0085'), range('\u2028', '\u2029')));
+
+        private final String pattern;
+
+        private final List<State> nfa;
+
+        private int pos;
+
+        int[] context;
+
+        PatternParser(String pattern, List<State> nfa) {
+            this.pattern = pattern;
+            this.nfa = nfa;
+        }
+
+        Fragment parseRule() {
+            if (!pattern.startsWith("(") || pattern.startsWith("(?")) {
+                throw unsupported("the pattern must begin with capturing group 1");
+            }
+            pos++;
+            Fragment token = parseAlternation();
+            expect(')');
+            if (pos < pattern.length()) {
+                context = parseSet();
+                if (context == null || pos < pattern.length()) {
+                    throw unsupported("trailing context must be a single character class");
+                }
+            }
+            return token;
+        }
+
+        private Fragment parseAlternation() {
+            Fragment fragment = parseConcatenation();
+            while (peek() == '|') {
+                pos++;
+                Fragment alternative = parseConcatenation();
+                State start = new State(nfa);
+                State end = new State(nfa);
+                start.epsilons.add(fragment.start);
+                start.epsilons.add(alternative.start);
+                fragment.end.epsilons.add(end);
+                alternative.end.epsilons.add(end);
+                fragment = new Fragment(start, end);
+            }
+            return fragment;
+        }
+
+        private Fragment parseConcatenation() {
+            State start = new State(nfa);
+            Fragment fragment = new Fragment(start, start);
+            while (peek() != END && peek() != '|' && peek() != ')') {
+                Fragment next = parseRepetition();
+                fragment.end.epsilons.add(next.start);
+                fragment = new Fragment(fragment.start, next.end);
+            }
+            return fragment;
+        }
+
+        private Fragment parseRepetition() {
+            Fragment fragment = parseAtom();
+            while (peek() == '*' || peek() == '+' || peek() == '?') {
+                char quantifier = pattern.charAt(pos++);
+                if (peek() == '?' || peek() == '+') {
+                    throw unsupported("only greedy quantifiers are supported");
+                }
+                State end = new State(nfa);
+                switch (quantifier) {
+                    case '*': {
+                        State start = new State(nfa);
+                        start.epsilons.add(fragment.start);
+                        start.epsilons.add(end);
+                        fragment.end.epsilons.add(fragment.start);
+                        fragment.end.epsilons.add(end);
+                        fragment = new Fragment(start, end);
+                        break;
+                    }
+                    case '+':
+                        fragment.end.epsilons.add(fragment.start);
+                        fragment.end.epsilons.add(end);
+                        fragment = new Fragment(fragment.start, end);
+                        break;
+                    default: {
+                        State start = new State(nfa);
+                        start.epsilons.add(fragment.start);
+                        start.epsilons.add(end);
+                        fragment.end.epsilons.add(end);
+                        fragment = new Fragment(start, end);
+                    }
+                }
+            }
+            return fragment;
+        }
+
+        private Fragment parseAtom() {
+            if (peek() == '(') {
+                pos++;
+                if (peek() == '?') {
+                    if (pos + 1 < pattern.length() && pattern.charAt(pos + 1) == ':') {
+                        pos += 2;
+                    } else {
+                        throw unsupported("only (?:...) groups are supported");
+                    }
+                }
+                Fragment group = parseAlternation();
+                expect(')');
+                return group;
+            }
+            int[] set = parseSet();
+            if (set == null) {
+                throw unsupported("unexpected '" + peek() + "'");
+            }
+            State start = new State(nfa);
+            State end = new State(nfa);
+            start.label = set;
+            start.target = end;
+            return new Fragment(start, end);
+        }
+
+        /**
+         * Parses a single-character atom: a literal, an escape, {@code .} or a bracketed class.
+         *
+         * @return the set of characters it matches, or {@code null} if the next atom is not a single character
+         */
+        private int[] parseSet() {
+            char c = peek();
+            switch (c) {
+                case END:
+                    throw unsupported("unexpected end of pattern");
+                case '[':
+                    return parseClass();
+                case '.':
+                    pos++;
+                    return complement(LINE_TERMINATORS);
+                case '\\':
+                    pos++;
+                    return parseEscape();
+                case '(': case ')': case '|': case '*': case '+': case '?':
+                    return null;
+                case '^': case '$': case '{':
+                    throw unsupported("'" + c + "' is not supported");
+                default:
+                    pos++;
+                    return range(c, c);
+            }
+        }
+
+        private int[] parseClass() {
+            expect('[');
+            boolean negated = false;
+            if (peek() == '^') {
+                negated = true;
+                pos++;
+            }
+            int[] set = new int[0];
+            while (peek() != ']') {
+                if (peek() == END) {
+                    throw unsupported("unclosed character class");
+                } else if (peek() == '[' || (peek() == '&' && pattern.startsWith("&&", pos))) {
+                    throw unsupported("nested classes are not supported");
+                }
+                int[] item = classItem();
+                if (peek() == '-' && pos + 1 < pattern.length() && pattern.charAt(pos + 1) != ']') {
+                    pos++;
+                    int[] high = classItem();
+                    if (!isSingle(item) || !isSingle(high)) {
+                        throw unsupported("invalid class range");
+                    }
+                    item = range(item[0], high[0]);
+                }
+                set = union(set, item);
+            }
+            pos++;
+            return negated ? complement(set) : set;
+        }
+
+        private int[] classItem() {
+            char c = peek();
+            pos++;
+            return (c == '\\') ? parseEscape() : range(c, c);
+        }
+
+        private int[] parseEscape() {
+            char c = peek();
+            pos++;
+            switch (c) {
+                case 'w': return WORD;
+                case 'W': return complement(WORD);
+                case 'd': return DIGITS;
+                case 'D': return complement(DIGITS);
+                case 's': return SPACE;
+                case 'S': return complement(SPACE);
+                case 't': return range('\t', '\t');
+                case 'n': return range('\n', '\n');
+                case 'r': return range('\r', '\r');
+                case 'f': return range('\f', '\f');
+                default:
+                    if (Character.isLetterOrDigit(c)) {
+                        throw unsupported("unknown escape \\" + c);
+                    }
+                    return range(c, c);
+            }
+        }
+
+        private static boolean isSingle(int[] set) {
+            return set.length == 2 && set[1] == set[0] + 1;
+        }
+
+        private char peek() {
+            return (pos < pattern.length()) ? pattern.charAt(pos) : END;
+        }
+
+        private void expect(char c) {
+            if (peek() != c) {
+                throw unsupported("expected '" + c + "'");
+            }
+            pos++;
+        }
+
+        private IllegalArgumentException unsupported(String reason) {
+            return new IllegalArgumentException(reason + " at index " + pos + " of " + pattern);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package lexer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Finds the end of a run of bytes from one of a few fixed sets, eight bytes at a time.
+ *
+ * Each kernel reads a {@code long} and classifies all of its bytes at once with SWAR arithmetic: the low seven bits
+ * of every byte are compared against constants with additions that set the byte's high bit, so no carry ever crosses
+ * into the next byte. The high bit of the result then marks the bytes outside the run, and the first of them is found
+ * with a single leading-zero count. Whatever is left over at the end of the input is classified a byte at a time.
+ *
+ * Bytes from 128 upwards are never whitespace or word characters, and are never line terminators either, since those
+ * bytes only occur within UTF-8 sequences.
+ *
+ * The source targets Java 7, so there is no version using {@code jdk.incubator.vector}; a {@code long} is the widest
+ * word there is.  {@code bench/lexer/ByteKernelsBenchmark} compares each kernel with the loop it replaces.
+ */
+final class ByteKernels {
+    /**
+     * Whitespace, as matched by {@code \s}.
+     */
+    static final int WHITESPACE = 0;
+
+    /**
+     * Everything but {@code '\n'} and {@code '\r'}, which is what {@code .} matches in bytes.
+     */
+    static final int NOT_LINE_END = 1;
+
+    /**
+     * Word characters, as matched by {@code \w}.
+     */
+    static final int WORD = 2;
+
+    static final int KERNEL_COUNT = 3;
+
+    private static final long LOW = 0x0101010101010101L;
+
+    private static final long HIGH = 0x8080808080808080L;
+
+    private ByteKernels() {
+    }
+
+    /**
+     * @return whether the byte is in the given kernel's set
+     */
+    static boolean contains(int kernel, int b) {
+        switch (kernel) {
+            case WHITESPACE:
+                return b == ' ' || (b >= '\t' && b <= '\r');
+            case NOT_LINE_END:
+                return b != '\n' && b != '\r';
+            case WORD:
+                return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9') || b == '_';
+            default:
+                throw new IllegalArgumentException("no kernel " + kernel);
+        }
+    }
+
+    /**
+     * @param kernel which set of bytes to skip
+     * @param input  the bytes being lexed
+     * @param pos    the index within {@code input} at which to start
+     * @param limit  the index within {@code input} at which the text ends
+     * @return the index of the first byte from {@code pos} onwards that is not in the set, or {@code limit}
+     */
+    static int skip(int kernel, ByteBuffer input, int pos, int limit) {
+        boolean swap = input.order() != ByteOrder.BIG_ENDIAN;
+        int p = pos;
+        while (p + 8 <= limit) {
+            long word = input.getLong(p);
+            // with the first byte in the most significant position, the first miss is the highest set bit
+            if (swap) {
+                word = Long.reverseBytes(word);
+            }
+            long misses = misses(kernel, word);
+            if (misses != 0) {
+                return p + (Long.numberOfLeadingZeros(misses) >>> 3);
+            }
+            p += 8;
+        }
+        while (p < limit && contains(kernel, input.get(p) & 0xFF)) {
+            p++;
+        }
+        return p;
+    }
+
+    static int skipWhitespace(ByteBuffer input, int pos, int limit) {
+        return skip(WHITESPACE, input, pos, limit);
+    }
+
+    static int skipToLineEnd(ByteBuffer input, int pos, int limit) {
+        return skip(NOT_LINE_END, input, pos, limit);
+    }
+
+    static int skipWord(ByteBuffer input, int pos, int limit) {
+        return skip(WORD, input, pos, limit);
+    }
+
+    /**
+     * @return a word with the high bit set in every byte that is not in the kernel's set
+     */
+    private static long misses(int kernel, long word) {
+        long ascii = ~word & HIGH;
+        long low = word & ~HIGH;
+        switch (kernel) {
+            case WHITESPACE:
+                return ~((between(low, '\t', '\r') | equal(low, ' ')) & ascii) & HIGH;
+            case NOT_LINE_END:
+                return (equal(low, '\n') | equal(low, '\r')) & ascii;
+            case WORD:
+                return ~((between(low, '0', '9') | between(low, 'A', 'Z') | between(low, 'a', 'z')
+                        | equal(low, '_')) & ascii) & HIGH;
+            default:
+                throw new IllegalArgumentException("no kernel " + kernel);
+        }
+    }
+
+    /**
+     * @param low a word whose bytes are all below 128
+     * @return the high bit of every byte of {@code low} that is at least {@code bound}, which must be from 1 to 128
+     */
+    private static long atLeast(long low, int bound) {
+        return (low + (0x80 - bound) * LOW) & HIGH;
+    }
+
+    private static long between(long low, int first, int last) {
+        return atLeast(low, first) & ~atLeast(low, last + 1);
+    }
+
+    private static long equal(long low, int c) {
+        return between(low, c, c);
+    }
+}
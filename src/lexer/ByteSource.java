@@ -0,0 +1,71 @@
+package lexer;
+
+import com.google.common.base.Charsets;
+
+import java.nio.ByteBuffer;
+
+import static com.google.common.base.Preconditions.*;
+
+/**
+ * Presents UTF-8 encoded bytes, typically a memory-mapped file, to the lexer without decoding them first.
+ *
+ * Indices are byte offsets. ASCII bytes read as themselves, and every byte of a multi-byte sequence reads as
+ * {@code U+FFFD}, which no rule accepts outside of string literals and comments. The text of a range is only decoded
+ * when {@link #toString()} is called, which is how tokens lexed from a {@code ByteSource} build their contents.
+ */
+public final class ByteSource implements CharSequence {
+    static final char NON_ASCII = '\uFFFD';
+
+    private final ByteBuffer bytes;
+
+    private final int offset;
+
+    private final int length;
+
+    public ByteSource(ByteBuffer bytes) {
+        this(bytes, bytes.position(), bytes.remaining());
+    }
+
+    private ByteSource(ByteBuffer bytes, int offset, int length) {
+        this.bytes = bytes;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * @return the underlying buffer; index {@code i} of this sequence is at {@code getOffset() + i} within it
+     */
+    ByteBuffer getBytes() {
+        return bytes;
+    }
+
+    int getOffset() {
+        return offset;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        checkElementIndex(index, length);
+        byte b = bytes.get(offset + index);
+        return (b >= 0) ? (char) b : NON_ASCII;
+    }
+
+    @Override
+    public ByteSource subSequence(int start, int end) {
+        checkPositionIndexes(start, end, length);
+        return new ByteSource(bytes, offset + start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        ByteBuffer range = bytes.duplicate();
+        range.limit(offset + length);
+        range.position(offset);
+        return Charsets.UTF_8.decode(range).toString();
+    }
+}
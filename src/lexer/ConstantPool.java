@@ -0,0 +1,199 @@
+package lexer;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static com.google.common.base.Preconditions.*;
+
+/**
+ * Holds the values of a compilation's literals, decoded once as they are lexed, under dense {@code int} indexes.
+ * Each distinct value is held only once, so equal literals share an index wherever they appear.
+ *
+ * Integer literals are written in decimal, or in hex after {@code 0x}, and are decoded straight to a {@code long}.
+ * String literals are quoted, and their backslash escapes are replaced.  Like a {@link SymbolTable}, a pool is normally
+ * made for one compilation and may be shared between threads; looking up a value it already holds takes no lock.
+ */
+public final class ConstantPool {
+    /**
+     * The index of a literal that was not decoded.
+     */
+    public static final int NONE = -1;
+
+    private final ConcurrentMap<Object, Integer> indexes = new ConcurrentHashMap<Object, Integer>();
+
+    /**
+     * Each value is stored before its index is published in {@link #indexes}, and the array is only replaced with a
+     * larger copy, so any index a reader has been given is in the array it reads.
+     */
+    private volatile Object[] values = new Object[64];
+
+    private int size;
+
+    /**
+     * @return the index of the value, adding it to the pool if it is new
+     */
+    public int add(long value) {
+        return add((Object) value);
+    }
+
+    /**
+     * @return the index of the value, adding it to the pool if it is new
+     */
+    public int add(String value) {
+        return add((Object) checkNotNull(value));
+    }
+
+    private int add(Object value) {
+        Integer index = indexes.get(value);
+        if (index != null) {
+            return index;
+        }
+        synchronized (this) {
+            index = indexes.get(value);
+            if (index != null) {
+                return index;
+            }
+            Object[] array = values;
+            if (size == array.length) {
+                array = Arrays.copyOf(array, size * 2);
+            }
+            array[size] = value;
+            values = array;
+            indexes.put(value, size);
+            return size++;
+        }
+    }
+
+    /**
+     * Decodes an integer literal and adds its value to the pool.
+     *
+     * @return the index of the value, or {@link #NONE} if the literal does not fit in a {@code long}
+     */
+    public int addInteger(CharSequence text, int start, int end) {
+        try {
+            return add(decodeInteger(text, start, end));
+        } catch (IllegalArgumentException e) {
+            return NONE;
+        }
+    }
+
+    /**
+     * Decodes a string literal and adds its value to the pool.
+     *
+     * @return the index of the value, or {@link #NONE} if the literal can not be decoded
+     */
+    public int addString(CharSequence text, int start, int end) {
+        try {
+            return add(decodeString(text, start, end));
+        } catch (IllegalArgumentException e) {
+            return NONE;
+        }
+    }
+
+    public long getLong(int index) {
+        return (Long) get(index);
+    }
+
+    public String getString(int index) {
+        return (String) get(index);
+    }
+
+    /**
+     * @return the value at the index, which is a {@code Long} or a {@code String}
+     */
+    public Object get(int index) {
+        Object[] array = values;
+        Object value = (index >= 0 && index < array.length) ? array[index] : null;
+        if (value == null) {
+            throw new IndexOutOfBoundsException("no constant at index " + index);
+        }
+        return value;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return the value of the integer literal between {@code start} and {@code end} of {@code text}
+     * @throws IllegalArgumentException if the value does not fit in a {@code long}
+     */
+    public static long decodeInteger(CharSequence text, int start, int end) {
+        checkPositionIndexes(start, end, text.length());
+        int radix = 10;
+        int pos = start;
+        if (end - start > 2 && text.charAt(start) == '0' && text.charAt(start + 1) == 'x') {
+            radix = 16;
+            pos += 2;
+        }
+        checkArgument(pos < end, "empty integral literal");
+        long value = 0;
+        for (; pos < end; pos++) {
+            int digit = Character.digit(text.charAt(pos), radix);
+            checkArgument(digit >= 0, "invalid digit in integral literal");
+            if (value > (Long.MAX_VALUE - digit) / radix) {
+                throw new IllegalArgumentException("integral literal too long");
+            }
+            value = value * radix + digit;
+        }
+        return value;
+    }
+
+    /**
+     * @return the value of the quoted string literal between {@code start} and {@code end} of {@code text}
+     * @throws IllegalArgumentException if the literal has a character above {@code 0xff} or an unknown escape
+     *                                  sequence in it, or is too long; the message says which
+     */
+    public static String decodeString(CharSequence text, int start, int end) {
+        checkPositionIndexes(start, end, text.length());
+        checkArgument(end - start >= 2, "unterminated string literal");
+        StringBuilder value = new StringBuilder(end - start - 2);
+        boolean escaped = false;
+        // strip the enclosing quotation marks
+        for (int i = start + 1; i < end - 1; i++) {
+            char c = text.charAt(i);
+            if (c > 0xff) {
+                throw new IllegalArgumentException("Unicode characters are not supported");
+            } else if (escaped) {
+                switch (c) {
+                    case 't':
+                        value.append('\t');
+                        break;
+                    case 'b':
+                        value.append('\b');
+                        break;
+                    case 'n':
+                        value.append('\n');
+                        break;
+                    case 'r':
+                        value.append('\r');
+                        break;
+                    case 'f':
+                        value.append('\f');
+                        break;
+                    case '\'':
+                        value.append('\'');
+                        break;
+                    case '\"':
+                        value.append('\"');
+                        break;
+                    case '\\':
+                        value.append('\\');
+                        break;
+                    default:
+                        throw new IllegalArgumentException("unknown escape sequence: \\" + c);
+                }
+                escaped = false;
+            } else if (c == '\\') {
+                escaped = true;
+            } else {
+                value.append(c);
+            }
+        }
+        if (value.length() > 0xffff) {
+            throw new IllegalArgumentException("string literal too long");
+        }
+        return value.toString();
+    }
+}
@@ -1,12 +1,29 @@
 package lexer;
 
+import com.google.common.base.Charsets;
+import com.google.common.collect.Sets;
+import com.google.common.io.Files;
+
 import java.io.File;
 import java.io.IOException;
+import java.io.Reader;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 import lexer.Lexer.RuleGroup;
 
+/**
+ * Lexes Diamond source.
+ *
+ * A lexer is fully configured by its constructor and never changes afterwards, so one lexer can serve any number of
+ * threads lexing at once, such as the workers of a pool, without locking.  They all intern identifiers in the same
+ * {@link SymbolTable}, which only takes a lock to add a name it has not seen before, and decode integer and string
+ * literals into the same {@link ConstantPool}, which likewise only locks to add a new value.
+ */
 public class DiamondLexer {
     public static enum Lexeme {
         // Keywords
@@ -115,38 +132,127 @@ public class DiamondLexer {
 
         // things we don't care about
         COMMENT,
-        WHITESPACE
+        WHITESPACE,
+
+        // a character no rule matches, which the parser reports
+        UNKNOWN
     }
 
-    private Lexer<Lexeme> lexer = new Lexer<Lexeme>();
+    /**
+     * The lexemes that are kept off the main channel.  They are skipped while scanning, and only ever made into tokens
+     * for callers that ask for them with {@link #lexWithTrivia}.
+     */
+    private static final Set<Lexeme> TRIVIA = Sets.immutableEnumSet(Lexeme.WHITESPACE, Lexeme.COMMENT);
+
+    private final Lexer<Lexeme> lexer = new Lexer<Lexeme>();
 
     public DiamondLexer(){
-        this.setupRules();
+        this(new SymbolTable());
     }
 
-    public List<Token<Lexeme>> lex(File file) throws IOException {
-        List<Token<Lexeme>> toReturn = lexer.lex(file);
-
-        Iterator<Token<Lexeme>> i = toReturn.iterator();
-        for(Token<Lexeme>token=i.next();i.hasNext();token = i.next()){
-            if (token.lexeme == Lexeme.WHITESPACE || token.lexeme == Lexeme.COMMENT) {
-                i.remove();
-            }
-            System.out.println("looping.");
+    /**
+     * Creates a lexer which interns identifiers in the given table, which may be shared by all the lexers in a
+     * compilation so that the same name has the same id in every file.
+     */
+    public DiamondLexer(SymbolTable symbols){
+        this(symbols, new ConstantPool());
+    }
+
+    /**
+     * Creates a lexer which also decodes literals into the given pool, which may likewise be shared by a compilation.
+     */
+    public DiamondLexer(SymbolTable symbols, ConstantPool constants){
+        this.setupRules();
+        lexer.setSymbolTable(symbols, EnumSet.of(Lexeme.IDENTIFIER));
+        lexer.setConstantPool(constants, EnumSet.of(Lexeme.INTEGRAL_LITERAL), EnumSet.of(Lexeme.STRING_LITERAL));
+        // unknown characters are left for the parser, so that an error in the text does not hide the rest of it
+        lexer.setUnknown(Lexeme.UNKNOWN);
+        // the generated scanner is only used if it was generated from these very rules
+        if (DiamondScanner.RULES_FINGERPRINT == Lexer.fingerprint(lexer.getRuleGroups())) {
+            lexer.setScanner(new DiamondScanner());
         }
+        // and the saved tables likewise, which spare compiling the automaton when bytes, streams or relexing need it
+        lexer.setTables(DiamondLexer.class.getResource("DiamondLexer.tables"));
+    }
+
+    List<RuleGroup<Lexeme>> getRules(){
+        return lexer.getRuleGroups();
+    }
+
+    /**
+     * @return the table in which this lexer interns identifiers
+     */
+    public SymbolTable getSymbolTable(){
+        return lexer.getSymbolTable();
+    }
 
-        return toReturn;
+    /**
+     * @return the pool into which this lexer decodes literals
+     */
+    public ConstantPool getConstantPool(){
+        return lexer.getConstantPool();
+    }
+
+    public List<Token<Lexeme>> lex(File file) throws IOException {
+        return lex(Files.toString(file, Charsets.US_ASCII));
+    }
+    public List<Token<Lexeme>> lex(Path path) throws IOException {
+        return new ArrayList<Token<Lexeme>>(lexer.lexToBuffer(path, TRIVIA).asList());
     }
     public List<Token<Lexeme>> lex(String input) throws IOException {
-        List<Token<Lexeme>> toReturn = lexer.lex(input);
+        return new ArrayList<Token<Lexeme>>(lexToBuffer(input).asList());
+    }
 
-        Iterator<Token<Lexeme>> i = toReturn.iterator();
-        for(Token<Lexeme>token=i.next();i.hasNext();token = i.next()){
-            if (token.lexeme == Lexeme.WHITESPACE || token.lexeme == Lexeme.COMMENT) {
-                i.remove();
-            }
-        }
-        return toReturn;
+    /**
+     * Lexes the input into a compact {@link TokenBuffer}, leaving out whitespace and comments as they are matched.
+     */
+    public TokenBuffer<Lexeme> lexToBuffer(CharSequence input) {
+        return lexer.lexToBuffer(input, TRIVIA);
+    }
+
+    /**
+     * Lexes the input like {@link #lexToBuffer}, but records the whitespace and comments in a side table as well.
+     *
+     * @param trivia a new table over the same input, which is filled in with the whitespace and comments
+     */
+    public TokenBuffer<Lexeme> lexWithTrivia(CharSequence input, Trivia<Lexeme> trivia) {
+        return lexer.lexToBuffer(input, TRIVIA, trivia);
+    }
+
+    /**
+     * Updates the tokens from {@link #lexToBuffer} or an earlier call to this method after an edit to their text,
+     * relexing only the tokens around the edit.
+     *
+     * @see Lexer#relex(TokenBuffer, Set, int, int, String)
+     */
+    public TokenChange<Lexeme> relex(TokenBuffer<Lexeme> previous, int offset, int removed, String inserted) {
+        return lexer.relex(previous, TRIVIA, offset, removed, inserted);
+    }
+
+    /**
+     * Lexes the input on the given pool, a chunk per thread or so, with the same result as {@link #lexToBuffer}.
+     *
+     * Diamond only has line comments, and string literals can not contain a line break, so the line breaks are where
+     * the input is split; the only token that can cross one is whitespace, which takes one extra token to rejoin.
+     */
+    public TokenBuffer<Lexeme> lexInParallel(CharSequence input, ForkJoinPool pool) {
+        return lexer.lexInParallel(input, TRIVIA, pool);
+    }
+
+    public TokenBuffer<Lexeme> lexInParallel(Path path, ForkJoinPool pool) throws IOException {
+        return lexer.lexInParallel(path, TRIVIA, pool);
+    }
+
+    /**
+     * Creates a stream which lexes the reader on demand, skipping whitespace and comments, so that the parser can
+     * start before the whole input has been read.
+     */
+    public TokenStream<Lexeme> stream(Reader reader) {
+        return lexer.stream(reader, TRIVIA);
+    }
+
+    public TokenStream<Lexeme> stream(ReadableByteChannel channel) {
+        return lexer.stream(channel, TRIVIA);
     }
 
     /**
@@ -216,10 +322,10 @@ public class DiamondLexer {
         add(rg,Lexeme.PERIOD,       "\\.");
         add(rg,Lexeme.COMMA,        ",");
 
-        add(rg,Lexeme.ASSIGNMENT,           "=[^=]");
-        add(rg,Lexeme.GREATER_THAN,         "\\>[^>=]");
-        add(rg,Lexeme.LESS_THAN,            "\\<[^<=]");
-        add(rg,Lexeme.NOT,                  "![^=]");
+        add(rg,Lexeme.ASSIGNMENT,           "=", "[^=]");
+        add(rg,Lexeme.GREATER_THAN,         "\\>", "[^>=]");
+        add(rg,Lexeme.LESS_THAN,            "\\<", "[^<=]");
+        add(rg,Lexeme.NOT,                  "!", "[^=]");
         add(rg,Lexeme.EQUALITY,             "==");
         add(rg,Lexeme.LESS_THAN_EQUALS,     "\\<=");
         add(rg,Lexeme.GREATER_THAN_EQUALS,  "\\>=");
@@ -228,16 +334,16 @@ public class DiamondLexer {
         add(rg,Lexeme.LOGICAL_OR,           "\\|\\|");
         add(rg,Lexeme.PLUS_PLUS,            "\\+\\+");
         add(rg,Lexeme.MINUS_MINUS,          "--");
-        add(rg,Lexeme.PLUS,                 "\\+[^\\+=]");
-        add(rg,Lexeme.MINUS,                "-[^-=]");
-        add(rg,Lexeme.TIMES,                "\\*[^=]");
-        add(rg,Lexeme.DIVIDE,               "/[^/=]");
-        add(rg,Lexeme.BITWISE_AND,          "&[^&=]");
-        add(rg,Lexeme.BITWISE_OR,           "\\|[^\\|=]");
-        add(rg,Lexeme.BITWISE_XOR,          "\\^[^=]");
-        add(rg,Lexeme.MODULO,               "%[^=]");
-        add(rg,Lexeme.SHIFT_LEFT,           "\\<\\<[^=]");
-        add(rg,Lexeme.SHIFT_RIGHT,          "\\>\\>[^=]");
+        add(rg,Lexeme.PLUS,                 "\\+", "[^\\+=]");
+        add(rg,Lexeme.MINUS,                "-", "[^-=]");
+        add(rg,Lexeme.TIMES,                "\\*", "[^=]");
+        add(rg,Lexeme.DIVIDE,               "/", "[^/=]");
+        add(rg,Lexeme.BITWISE_AND,          "&", "[^&=]");
+        add(rg,Lexeme.BITWISE_OR,           "\\|", "[^\\|=]");
+        add(rg,Lexeme.BITWISE_XOR,          "\\^", "[^=]");
+        add(rg,Lexeme.MODULO,               "%", "[^=]");
+        add(rg,Lexeme.SHIFT_LEFT,           "\\<\\<", "[^=]");
+        add(rg,Lexeme.SHIFT_RIGHT,          "\\>\\>", "[^=]");
         add(rg,Lexeme.PLUS_EQUALS,          "\\+=");
         add(rg,Lexeme.MINUS_EQUALS,         "-=");
         add(rg,Lexeme.TIMES_EQUALS,         "\\*=");
@@ -253,10 +359,10 @@ public class DiamondLexer {
         add(rg,Lexeme.TERNARY_COLON,    ":");
 
         add(rg,Lexeme.IDENTIFIER,       "[a-zA-Z][a-zA-Z0-9_]*\\w*");
-        add(rg,Lexeme.INTEGRAL_LITERAL, "(0x)?\\d+");
-        add(rg,Lexeme.STRING_LITERAL,   "\"(.*[^\\\\])?(\\\\\\\\)*\"");
+        add(rg,Lexeme.INTEGRAL_LITERAL, "((?:0x)?\\d+)");
+        add(rg,Lexeme.STRING_LITERAL,   "(\"(?:[^\"\\\\\\n]|\\\\.)*\")");
 
-        add(rg,Lexeme.COMMENT,          "//.*?$");
+        add(rg,Lexeme.COMMENT,          "//.*");
         add(rg,Lexeme.WHITESPACE,       "\\s+");
 
         this.lexer.setupRules(ruleGroups);
@@ -267,13 +373,20 @@ public class DiamondLexer {
     }
     // Just an alias for a previously long-to-type expression.  Also handles the adding of
     private static void add(List<Lexer.RuleGroup<Lexeme>> ruleGroups,Lexeme lexeme, String pattern, boolean isWord){
-        // If the pattern is a word, it adds the correct parens and adds the
-        // "cannot be followed by a letter or number" qualifier
+        // If the pattern is a word, it adds the "cannot be followed by a letter or number" qualifier
         if(isWord){
-            // Chill the fuck out.  That + sign will be optimized away
-            pattern = "("+pattern+")"+"[^\\w]";
+            add(ruleGroups,lexeme,pattern,"[^\\w]");
+        }
+        else{
+            ruleGroups.add(new RuleGroup<Lexeme>(lexeme,pattern));
         }
-        ruleGroups.add(new RuleGroup<Lexeme>(lexeme,pattern));
+    }
+    // The token is only the pattern itself; the follower is a single character class that must come next but is left
+    // for the following token, which keeps "=" from being mistaken for the start of "==" without swallowing the
+    // character after it.
+    private static void add(List<Lexer.RuleGroup<Lexeme>> ruleGroups,Lexeme lexeme, String pattern, String follower){
+        // Chill the fuck out.  That + sign will be optimized away
+        ruleGroups.add(new RuleGroup<Lexeme>(lexeme,"("+pattern+")"+follower));
     }
 
 
@@ -281,11 +394,10 @@ public class DiamondLexer {
         File input = new File("test.dmd");
 
         DiamondLexer lexer = new DiamondLexer();
-        lexer.setupRules();
         List<Token<Lexeme>> tokens = lexer.lex(input);
 
-        for(Token t: tokens){
-            System.out.println(t.lexeme+"  "+(t.contents.equals("\n")?"\\n":t.contents));
+        for(Token<Lexeme> t: tokens){
+            System.out.println(t.lexeme+"  "+(t.getContents().equals("\n")?"\\n":t.getContents()));
         }
     }
 }
@@ -0,0 +1,332 @@
+// Generated by ScannerGenerator from the rules in DiamondLexer.  Do not edit; regenerate it instead.
+package lexer;
+
+/**
+ * Scans tokens for the rules this class was generated from, with the same results as the automaton.
+ */
+final class DiamondScanner implements TokenMatcher {
+    static final int RULES_FINGERPRINT = 0x893F5BF9;
+
+    private static final int KEYWORD_MASK = 127;
+
+    private static final int KEYWORD_MIN = 2;
+
+    private static final int KEYWORD_MAX = 10;
+
+    /**
+     * The keywords' words, by the slot their hash picks.
+     */
+    private static final String[] KEYWORDS = {
+        null, null, null, null, "static", "final", null, null, null, "abstract", null, null, "try", null, "break",
+        null, null, null, null, "class", "finally", null, null, "virtual", null, "byte", null, null, "implements",
+        null, "new", null, "yield", null, "continue", "switch", null, "delete", null, "float", null, null, "enum",
+        null, "short", null, "const", null, null, null, null, null, "unsafe", "default", null, null, "private",
+        "protected", null, null, null, "for", null, null, "void", null, null, null, null, null, null, null, null,
+        null, null, null, null, null, null, null, null, "double", null, null, null, null, null, "do", null, "long",
+        "raise", "this", "return", "throws", null, "extends", "throw", "while", "repeat", null, null, null, "else",
+        null, null, null, null, "interface", "goto", "instanceof", null, null, "super", null, null, null, "int",
+        "if", null, null, null, "boolean", "case", null, null, null, "catch", null,
+    };
+
+    /**
+     * Whatever must follow each keyword's word for it to be the keyword, which is usually nothing.
+     */
+    private static final String[] KEYWORD_SUFFIXES = {
+        null, null, null, null, "", "", null, null, null, "", null, null, "", null, "", null, null, null, null,
+        "", "", null, null, "", null, "", null, null, "", null, "", null, "", null, "", "", null, "", null, "",
+        null, null, "", null, "", null, "", null, null, null, null, null, "", "", null, null, "", "", null, null,
+        null, "", null, null, "", null, null, null, null, null, null, null, null, null, null, null, null, null,
+        null, null, null, "", null, null, null, null, null, "", null, "", "", "", "", "", null, "", "", "", "",
+        null, null, null, "", null, null, null, null, "", "", "", null, null, "", null, null, null, "", "", null,
+        null, null, "", ":", null, null, null, "", null,
+    };
+
+    private static final int[] KEYWORD_RULES = {
+        -1, -1, -1, -1, 34, 16, -1, -1, -1, 0, -1, -1, 40, -1, 2, -1, -1, -1, -1, 6, 17, -1, -1, 42, -1, 3, -1,
+        -1, 22, -1, 27, -1, 45, -1, 8, 36, -1, 10, -1, 18, -1, -1, 14, -1, 33, -1, 7, -1, -1, -1, -1, -1, 41,
+        9, -1, -1, 28, 29, -1, -1, -1, 19, -1, -1, 43, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1,
+        -1, -1, 11, -1, -1, -1, -1, -1, 12, -1, 26, 30, 37, 32, 39, -1, 15, 38, 44, 31, -1, -1, -1, 13, -1, -1,
+        -1, -1, 25, 20, 23, -1, -1, 35, -1, -1, -1, 24, 21, -1, -1, -1, 1, 4, -1, -1, -1, 5, -1,
+    };
+
+    @Override
+    public long match(CharSequence input, int pos) {
+        int length = input.length();
+        switch (input.charAt(pos)) {
+            case 'A': case 'B': case 'C': case 'D': case 'E': case 'F': case 'G': case 'H': case 'I': case 'J':
+            case 'K': case 'L': case 'M': case 'N': case 'O': case 'P': case 'Q': case 'R': case 'S': case 'T':
+            case 'U': case 'V': case 'W': case 'X': case 'Y': case 'Z': case 'a': case 'b': case 'c': case 'd':
+            case 'e': case 'f': case 'g': case 'h': case 'i': case 'j': case 'k': case 'l': case 'm': case 'n':
+            case 'o': case 'p': case 'q': case 'r': case 's': case 't': case 'u': case 'v': case 'w': case 'x':
+            case 'y': case 'z':
+                return word(input, pos, length);
+            case '0': case '1': case '2': case '3': case '4': case '5': case '6': case '7': case '8': case '9':
+                return number(input, pos, length);
+            case '"':
+                return string(input, pos, length);
+            case ' ': case '\t': case '\n': case '\u000B': case '\f': case '\r':
+                return whitespace(input, pos, length);
+            case '!':
+                if (pos + 1 < length) {
+                    if (input.charAt(pos + 1) == '=') {
+                        return token(62, pos + 2);
+                    }
+                }
+                return token(58, pos + 1);
+            case '%':
+                if (pos + 1 < length) {
+                    if (input.charAt(pos + 1) == '=') {
+                        return token(84, pos + 2);
+                    }
+                }
+                return token(74, pos + 1);
+            case '&':
+                if (pos + 1 < length) {
+                    switch (input.charAt(pos + 1)) {
+                        case '&':
+                            return token(63, pos + 2);
+                        case '=':
+                            return token(81, pos + 2);
+                    }
+                }
+                return token(71, pos + 1);
+            case '(':
+                return token(50, pos + 1);
+            case ')':
+                return token(51, pos + 1);
+            case '*':
+                if (pos + 1 < length) {
+                    if (input.charAt(pos + 1) == '=') {
+                        return token(79, pos + 2);
+                    }
+                }
+                return token(69, pos + 1);
+            case '+':
+                if (pos + 1 < length) {
+                    switch (input.charAt(pos + 1)) {
+                        case '+':
+                            return token(65, pos + 2);
+                        case '=':
+                            return token(77, pos + 2);
+                    }
+                }
+                return token(67, pos + 1);
+            case ',':
+                return token(54, pos + 1);
+            case '-':
+                if (pos + 1 < length) {
+                    switch (input.charAt(pos + 1)) {
+                        case '-':
+                            return token(66, pos + 2);
+                        case '=':
+                            return token(78, pos + 2);
+                    }
+                }
+                return token(68, pos + 1);
+            case '.':
+                return token(53, pos + 1);
+            case '/':
+                if (pos + 1 < length) {
+                    switch (input.charAt(pos + 1)) {
+                        case '/':
+                            return comment(input, pos + 2, length);
+                        case '=':
+                            return token(80, pos + 2);
+                    }
+                }
+                return token(70, pos + 1);
+            case ':':
+                return token(88, pos + 1);
+            case ';':
+                return token(52, pos + 1);
+            case '<':
+                if (pos + 1 < length) {
+                    switch (input.charAt(pos + 1)) {
+                        case '<':
+                            if (pos + 2 < length) {
+                                if (input.charAt(pos + 2) == '=') {
+                                    return token(85, pos + 3);
+                                }
+                            }
+                            return token(75, pos + 2);
+                        case '=':
+                            return token(60, pos + 2);
+                    }
+                }
+                return token(57, pos + 1);
+            case '=':
+                if (pos + 1 < length) {
+                    if (input.charAt(pos + 1) == '=') {
+                        return token(59, pos + 2);
+                    }
+                }
+                return token(55, pos + 1);
+            case '>':
+                if (pos + 1 < length) {
+                    switch (input.charAt(pos + 1)) {
+                        case '=':
+                            return token(61, pos + 2);
+                        case '>':
+                            if (pos + 2 < length) {
+                                if (input.charAt(pos + 2) == '=') {
+                                    return token(86, pos + 3);
+                                }
+                            }
+                            return token(76, pos + 2);
+                    }
+                }
+                return token(56, pos + 1);
+            case '?':
+                return token(87, pos + 1);
+            case '[':
+                return token(48, pos + 1);
+            case ']':
+                return token(49, pos + 1);
+            case '^':
+                if (pos + 1 < length) {
+                    if (input.charAt(pos + 1) == '=') {
+                        return token(83, pos + 2);
+                    }
+                }
+                return token(73, pos + 1);
+            case '{':
+                return token(46, pos + 1);
+            case '|':
+                if (pos + 1 < length) {
+                    switch (input.charAt(pos + 1)) {
+                        case '=':
+                            return token(82, pos + 2);
+                        case '|':
+                            return token(64, pos + 2);
+                    }
+                }
+                return token(72, pos + 1);
+            case '}':
+                return token(47, pos + 1);
+            default:
+                return NO_MATCH;
+        }
+    }
+
+    /**
+     * Scans a whole word, which is a keyword if it is one of the keywords' words and is followed by that
+     * keyword's suffix, and is otherwise an identifier.
+     */
+    private static long word(CharSequence input, int pos, int length) {
+        int end = pos + 1;
+        while (end < length && isWord(input.charAt(end))) {
+            end++;
+        }
+        int size = end - pos;
+        if (size >= KEYWORD_MIN && size <= KEYWORD_MAX) {
+            int slot = (input.charAt(pos) * 49 + input.charAt(size > 1 ? pos + 1 : pos) * 94
+                    + input.charAt(end - 1) + size) & KEYWORD_MASK;
+            String keyword = KEYWORDS[slot];
+            if (keyword != null && matches(input, pos, end, keyword)) {
+                String suffix = KEYWORD_SUFFIXES[slot];
+                if (suffix.isEmpty()) {
+                    return token(KEYWORD_RULES[slot], end);
+                }
+                int suffixEnd = end + suffix.length();
+                if (suffixEnd <= length && matches(input, end, suffixEnd, suffix)
+                        && (suffixEnd == length || !isWord(input.charAt(suffixEnd)))) {
+                    return token(KEYWORD_RULES[slot], suffixEnd);
+                }
+            }
+        }
+        return token(89, end);
+    }
+
+    private static boolean matches(CharSequence input, int start, int end, String text) {
+        if (end - start != text.length()) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (input.charAt(i) != text.charAt(i - start)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isWord(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+
+    /**
+     * Scans decimal digits, or digits after "0x" if there are any.
+     */
+    private static long number(CharSequence input, int pos, int length) {
+        int end = pos;
+        if (input.charAt(pos) == '0' && pos + 2 < length && input.charAt(pos + 1) == 'x'
+                && isDigit(input.charAt(pos + 2))) {
+            end += 2;
+        }
+        while (end < length && isDigit(input.charAt(end))) {
+            end++;
+        }
+        return token(90, end);
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * Scans a string literal, in which a backslash escapes any character but a line terminator, and which
+     * must close before the end of the line.
+     */
+    private static long string(CharSequence input, int pos, int length) {
+        int end = pos + 1;
+        while (end < length) {
+            char c = input.charAt(end);
+            if (c == '"') {
+                return token(91, end + 1);
+            } else if (c == '\n') {
+                return NO_MATCH;
+            } else if (c == '\\') {
+                if (end + 1 == length || isLineTerminator(input.charAt(end + 1))) {
+                    return NO_MATCH;
+                }
+                end += 2;
+            } else {
+                end++;
+            }
+        }
+        return NO_MATCH;
+    }
+
+    /**
+     * Scans the rest of a line comment, which starts at {@code pos}.
+     */
+    private static long comment(CharSequence input, int pos, int length) {
+        int end = pos;
+        while (end < length && !isLineTerminator(input.charAt(end))) {
+            end++;
+        }
+        return token(92, end);
+    }
+
+    /**
+     * @return whether the character is one that {@code .} does not match
+     */
+    private static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    private static long whitespace(CharSequence input, int pos, int length) {
+        int end = pos + 1;
+        while (end < length) {
+            char c = input.charAt(end);
+            if (c != ' ' && (c < '\t' || c > '\r')) {
+                break;
+            }
+            end++;
+        }
+        return token(93, end);
+    }
+
+    private static long token(int rule, int end) {
+        return ((long) rule << 32) | end;
+    }
+}
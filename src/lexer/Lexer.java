@@ -4,11 +4,48 @@ import com.google.common.base.Charsets;
 import com.google.common.io.CharStreams;
 
 import java.io.*;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import static com.google.common.base.Preconditions.*;
+
+/**
+ * Splits text into tokens by a list of rules, each pairing a lexeme with a regex, tried in priority order.
+ *
+ * A lexer is configured with {@code setupRules}, {@link #setEngine}, {@link #setSymbolTable} and
+ * {@link #setConstantPool}, and after that it
+ * can be shared: every lexing method keeps its working state in locals and in the objects it returns, and the
+ * automaton and regexes a lexer builds the first time it needs them are built once and published safely.  Many
+ * threads can therefore lex with one lexer at once without locking.  A lexer must not be reconfigured while it is in
+ * use, and it must be handed to other threads safely, such as by submitting work to an executor.
+ */
 public class Lexer<E extends Enum<E>>{
+    /**
+     * The matching strategies a lexer can use. Both produce the same tokens for any rule set the automaton supports.
+     */
+    public static enum Engine {
+        /**
+         * Compiles every rule into one minimized automaton and scans the input once, in linear time.
+         */
+        DFA,
+        /**
+         * Tries each rule's regex in turn at every position. This is much slower, and is kept as the reference
+         * implementation for differential testing and for rule sets the automaton cannot express.
+         */
+        REGEX
+    }
+
     /**
      * Each RuleGroup contains a lexeme, the basic regular expression and a compiled
      * regular expression.
@@ -21,7 +58,8 @@ public class Lexer<E extends Enum<E>>{
         public final E lexeme;
         // Keep track of the regex for testing purposes
         private final String regex;
-        public final Pattern compiledRegex;
+        // Only the REGEX engine needs this, so it is compiled the first time that engine uses it
+        private volatile Pattern compiledRegex;
         
         public RuleGroup(E lexeme, String regex){
             this.lexeme = lexeme;
@@ -31,13 +69,77 @@ public class Lexer<E extends Enum<E>>{
             else{
                 this.regex = "("+regex+")";
             }
+        }
+
+        public Pattern getCompiledRegex(){
+            Pattern pattern = compiledRegex;
+            if(pattern==null){
+                synchronized(this){
+                    pattern = compiledRegex;
+                    if(pattern==null){
+                        pattern = Pattern.compile(regex);
+                        compiledRegex = pattern;
+                    }
+                }
+            }
+            return pattern;
+        }
 
-            this.compiledRegex  = Pattern.compile(this.regex);
+        String getRegex(){
+            return regex;
         }
     }
 
+    /**
+     * Parallel lexing never makes a chunk smaller than this many characters.
+     */
+    private static final int MIN_CHUNK_SIZE = 1 << 20;
+
+    /**
+     * Splitting into a few more chunks than there are threads evens out the load when some chunks lex slower.
+     */
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    /**
+     * How many token boundaries at the start of each chunk are kept for joining it to the chunk before.
+     */
+    private static final int SYNC_TOKENS = 32;
+
     private List<RuleGroup<E>> ruleGroups = new ArrayList<RuleGroup<E>>();
 
+    private Engine engine = Engine.DFA;
+
+    /**
+     * Built from the rule groups the first time the {@link Engine#DFA} engine is used.
+     */
+    private volatile Automaton automaton;
+
+    /**
+     * A matcher generated ahead of time for exactly these rules, which is used instead of the automaton on text.
+     */
+    private TokenMatcher scanner;
+
+    /**
+     * Tables saved by {@link LexerTables}, which are loaded instead of compiling the automaton if they were saved for
+     * these rules.
+     */
+    private URL tables;
+
+    private SymbolTable symbolTable;
+
+    private Set<E> symbolic = Collections.emptySet();
+
+    private ConstantPool constantPool;
+
+    private Set<E> integers = Collections.emptySet();
+
+    private Set<E> strings = Collections.emptySet();
+
+    /**
+     * The lexeme of the tokens made of characters that no rule matches, or {@code null} if the input ends there.
+     */
+    private E unknown;
+
     /**
      * Pass in your own RuleGroups in here.
      * @param rules The rules to be compiled and lexed.
@@ -50,10 +152,115 @@ public class Lexer<E extends Enum<E>>{
             ruleGroups.add(new RuleGroup<E>(lexeme,rules.get(lexeme)));
 
         }
+        automaton = null;
+        scanner = null;
+        tables = null;
     }
 
     public void setupRules(List<RuleGroup<E>> ruleGroups){
         this.ruleGroups = ruleGroups;
+        automaton = null;
+        scanner = null;
+        tables = null;
+    }
+
+    /**
+     * Makes the lexer intern the text of tokens of the given lexemes, such as identifiers, in a symbol table.  The
+     * ids are available from {@link TokenBuffer#symbol(int)} and {@link Token#getSymbol()}.
+     *
+     * @param symbolTable the table to intern names in, which may be shared with other lexers
+     * @param lexemes     the lexemes whose text is interned
+     */
+    public void setSymbolTable(SymbolTable symbolTable, Set<E> lexemes) {
+        this.symbolTable = checkNotNull(symbolTable);
+        this.symbolic = checkNotNull(lexemes);
+    }
+
+    /**
+     * Makes the lexer decode literals into a constant pool as it puts them into a {@link TokenBuffer}.  The indexes
+     * are available from {@link TokenBuffer#constant(int)} and {@link Token#getConstant()}.
+     *
+     * @param constantPool the pool to decode literals into, which may be shared with other lexers
+     * @param integers     the lexemes of integer literals
+     * @param strings      the lexemes of string literals
+     */
+    public void setConstantPool(ConstantPool constantPool, Set<E> integers, Set<E> strings) {
+        this.constantPool = checkNotNull(constantPool);
+        this.integers = checkNotNull(integers);
+        this.strings = checkNotNull(strings);
+    }
+
+    /**
+     * Makes the lexer carry on past characters that no rule matches, making each into a token of its own with the
+     * given lexeme, for the parser to report.  Otherwise lexing stops at the first one, after printing an error.
+     *
+     * @param unknown a lexeme that no rule produces, or {@code null} to stop at unknown characters
+     */
+    public void setUnknown(E unknown) {
+        this.unknown = unknown;
+    }
+
+    E getUnknown() {
+        return unknown;
+    }
+
+    /**
+     * @return the end of the unknown token at {@code pos}, which takes in every character the automaton read before it
+     *         found that no rule matches them, such as the whole of a string literal that is never closed.  Relexing
+     *         relies on no token starting among the characters the match of an earlier one read.
+     */
+    int unknownEnd(CharSequence input, int pos) {
+        int end = Math.min(getAutomaton().extent(input, pos) - 1, input.length());
+        return Math.max(end, pos + Character.charCount(Character.codePointAt(input, pos)));
+    }
+
+    /**
+     * Installs a matcher generated for these rules by {@link ScannerGenerator}.  The automaton is still built for
+     * bytes, streams and relexing, if they are used.
+     */
+    void setScanner(TokenMatcher scanner) {
+        this.scanner = scanner;
+    }
+
+    /**
+     * Points the lexer at tables saved by {@link LexerTables}.  They are only read when the automaton is first needed,
+     * and are ignored if they were not saved for these rules or can not be read.
+     */
+    void setTables(URL tables) {
+        this.tables = tables;
+    }
+
+    /**
+     * @return a hash of the rules, which generated scanners and saved tables record so that they are only used with
+     *         the rules they were made from
+     */
+    static int fingerprint(List<? extends RuleGroup<?>> rules) {
+        int hash = 1;
+        for (RuleGroup<?> rule : rules) {
+            hash = 31 * hash + rule.lexeme.name().hashCode();
+            hash = 31 * hash + rule.getRegex().hashCode();
+        }
+        return hash;
+    }
+
+    List<RuleGroup<E>> getRuleGroups() {
+        return Collections.unmodifiableList(ruleGroups);
+    }
+
+    public SymbolTable getSymbolTable() {
+        return symbolTable;
+    }
+
+    public ConstantPool getConstantPool() {
+        return constantPool;
+    }
+
+    public Engine getEngine() {
+        return engine;
+    }
+
+    public void setEngine(Engine engine) {
+        this.engine = engine;
     }
 
     /**
@@ -70,79 +277,568 @@ public class Lexer<E extends Enum<E>>{
     }
 
     /**
-     * Given an input string, the lexer goes through each regex finding ones that start at the
-     * current head of the string.  If one matches, it trims the string from that point and starts again
-     * If no regexes match, an error is printed, and the already processed ones are returned.
+     * Memory-maps the specified file and lexes its UTF-8 bytes in place, without decoding it to a string first.
+     * Non-ASCII characters are only accepted where a rule allows arbitrary characters, which in practice means
+     * string literals and comments.  Tokens decode their contents from the mapping when asked for them, so the
+     * mapping stays alive for as long as any of the tokens do.
+     *
+     * @param path the file to lex
+     * @return the list of tokens that were lexed
+     * @throws IOException if the file could not be found, read or mapped
+     */
+    public List<Token<E>> lex(Path path) throws IOException {
+        return lex(map(path));
+    }
+
+    private static ByteSource map(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File is too large to be mapped: " + path);
+            }
+            MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return new ByteSource(bytes);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Lexes bytes, such as a memory-mapped file, with the currently selected {@link Engine}.
+     *
+     * @param input the bytes to lex
+     * @return the list of tokens that were lexed
+     * @see #lex(Path)
+     */
+    public List<Token<E>> lex(ByteSource input){
+        return lex((CharSequence) input);
+    }
+
+    /**
+     * Lexes the input with the currently selected {@link Engine}.  If some part of the input can not be matched by
+     * any rule, and there is no {@linkplain #setUnknown lexeme for unknown characters}, an error is printed, and the
+     * already processed tokens are returned.
      *
      * @param input the string to lex
      * @return the list of tokens that were lexed
      */
     public List<Token<E>> lex(String input){
-        // The original input is preserved for error checking.
-        String origInput = input;
+        return lex((CharSequence) input);
+    }
+
+    private List<Token<E>> lex(CharSequence input){
+        switch (engine) {
+            case REGEX:
+                return lexWithRegex(input);
+            default:
+                return new ArrayList<Token<E>>(lexToBuffer(input, Collections.<E>emptySet()).asList());
+        }
+    }
+
+    /**
+     * Lexes the input into a {@link TokenBuffer}, which holds the tokens in primitive arrays instead of as objects.
+     * The input may be a {@link ByteSource}, in which case its bytes are read directly.
+     *
+     * @param input   the text to lex
+     * @param ignored lexemes which are matched but left out of the buffer, without ever being made into tokens
+     * @return the tokens that were lexed, up to the first part of the input that no rule matches
+     */
+    public TokenBuffer<E> lexToBuffer(CharSequence input, Set<E> ignored){
+        return lexToBuffer(input, ignored, null);
+    }
+
+    /**
+     * Lexes the input into a {@link TokenBuffer}, putting the lexemes on the trivia channel into a separate table
+     * instead of the buffer.
+     *
+     * @param input  the text to lex
+     * @param trivia lexemes which are left out of the buffer
+     * @param table  where the trivia are recorded, if not {@code null}; it must be new, and have the same source
+     * @return the tokens that were lexed, up to the first part of the input that no rule matches
+     */
+    public TokenBuffer<E> lexToBuffer(CharSequence input, Set<E> trivia, Trivia<E> table){
+        checkState(!ruleGroups.isEmpty(), "no rules have been set up");
+        checkArgument(table == null || (table.getTokens().getSource() == input && table.getTokens().size() == 0),
+                "the trivia table must be new and have the same source");
+        TokenBuffer<E> buffer = newBuffer(input, input.length() / 4 + 16);
+        if (engine == Engine.REGEX) {
+            for (Token<E> token : lexWithRegex(input)) {
+                if (!trivia.contains(token.lexeme)) {
+                    buffer.add(token.lexeme, token.getStart(), token.getEnd());
+                } else if (table != null) {
+                    table.add(token.lexeme, token.getStart(), token.getEnd(), buffer.size());
+                }
+            }
+        } else {
+            int end = scan(input, 0, input.length(), buffer, trivia, table);
+            if (end < 0) {
+                reportUnknownSymbol(input, ~end);
+            }
+        }
+        return buffer;
+    }
+
+    /**
+     * Memory-maps the specified file and lexes it with {@link #lexToBuffer(CharSequence, Set)}.
+     *
+     * @throws IOException if the file could not be found, read or mapped
+     */
+    public TokenBuffer<E> lexToBuffer(Path path, Set<E> ignored) throws IOException {
+        return lexToBuffer(map(path), ignored);
+    }
+
+    /**
+     * Brings the tokens of some text up to date after part of it has been replaced, lexing only around the edit.
+     *
+     * Lexing starts again from the first token whose match looked at the edited text, and goes on until a new token
+     * starts where an old token after the edit did.  From there on the old and new tokens must agree, so the rest of
+     * the old tokens are reused, moved along by the change in length.  The result is the same as lexing the edited
+     * text from scratch, but the amount of lexing depends only on the size of the edit and the tokens around it.
+     *
+     * @param previous the tokens of the text before the edit, as produced by {@link #lexToBuffer} or by this method
+     * @param ignored  the lexemes that were left out of {@code previous}
+     * @param offset   where the edit starts
+     * @param removed  how many characters the edit removed
+     * @param inserted the text the edit inserted in their place
+     * @return the tokens of the edited text, and which of them changed
+     */
+    public TokenChange<E> relex(TokenBuffer<E> previous, Set<E> ignored, int offset, int removed, String inserted){
+        CharSequence oldText = previous.getSource();
+        checkPositionIndexes(offset, offset + removed, oldText.length());
+        checkState(engine == Engine.DFA, "relexing needs the %s engine", Engine.DFA);
+        String text = new StringBuilder(oldText.length() - removed + inserted.length())
+                .append(oldText, 0, offset)
+                .append(inserted)
+                .append(oldText, offset + removed, oldText.length())
+                .toString();
+        int shift = inserted.length() - removed;
+        Automaton automaton = getAutomaton();
 
-        input = input+" ";
+        // A token that ends right at the edit saw its first character as trailing context, and tokens further back
+        // may have looked further ahead than they went.
+        int first = previous.firstEndingAtOrAfter(offset);
+        while (first > 0 && automaton.extent(oldText, previous.start(first - 1)) > offset) {
+            first--;
+        }
+        int pos = (first > 0) ? previous.end(first - 1) : 0;
+
+        TokenBuffer<E> result = newBuffer(text, previous.size() + 16);
+        result.append(previous, 0, first, 0);
+        // the old tokens from here on start after the edit, so they are the only ones the new tokens can rejoin
+        int sync = previous.firstStartingAtOrAfter(offset + removed);
+        while (true) {
+            while (sync < previous.size() && previous.start(sync) + shift < pos) {
+                sync++;
+            }
+            if (sync < previous.size() && previous.start(sync) + shift == pos) {
+                int relexed = result.size() - first;
+                result.append(previous, sync, previous.size(), shift);
+                return new TokenChange<E>(result, first, sync - first, relexed);
+            }
+            if (pos >= text.length()) {
+                break;
+            }
+            pos = scan(text, pos, pos + 1, result, ignored);
+            if (pos < 0) {
+                reportUnknownSymbol(text, ~pos);
+                break;
+            }
+        }
+        return new TokenChange<E>(result, first, previous.size() - first, result.size() - first);
+    }
+
+    /**
+     * Runs the combined automaton from the head of the remaining input, takes the token it finds and starts again
+     * from the end of that token, for as long as tokens start before {@code stop}.  The last token may run past
+     * {@code stop}, and its trailing context is read from the rest of the input as usual.  Each character is
+     * examined a bounded number of times.
+     *
+     * @return the end of the last token, or the bitwise complement of the position no rule matches if there is no
+     *         lexeme for unknown characters
+     */
+    private int scan(CharSequence input, int pos, int stop, TokenBuffer<E> buffer, Set<E> ignored){
+        return scan(input, pos, stop, buffer, ignored, null);
+    }
+
+    /**
+     * The same as {@link #scan(CharSequence, int, int, TokenBuffer, Set)}, but recording ignored tokens in a trivia
+     * table if there is one.
+     */
+    private int scan(CharSequence input, int pos, int stop, TokenBuffer<E> buffer, Set<E> ignored, Trivia<E> trivia){
+        if (input instanceof ByteSource) {
+            return scan((ByteSource) input, pos, stop, buffer, ignored, trivia);
+        }
+        TokenMatcher matcher = (scanner != null) ? scanner : getAutomaton();
+        while (pos < stop) {
+            long match = matcher.match(input, pos);
+            int end;
+            E lexeme;
+            if (match != TokenMatcher.NO_MATCH) {
+                end = (int) match;
+                lexeme = ruleGroups.get((int) (match >>> 32)).lexeme;
+            } else if (unknown != null) {
+                end = unknownEnd(input, pos);
+                lexeme = unknown;
+            } else {
+                return ~pos;
+            }
+            if (!ignored.contains(lexeme)) {
+                buffer.add(lexeme, pos, end);
+            } else if (trivia != null) {
+                trivia.add(lexeme, pos, end, buffer.size());
+            }
+            pos = end;
+        }
+        return pos;
+    }
+
+    /**
+     * The same as {@link #scan(CharSequence, int, int, TokenBuffer, Set, Trivia)}, but reading the bytes directly.
+     */
+    private int scan(ByteSource input, int pos, int stop, TokenBuffer<E> buffer, Set<E> ignored, Trivia<E> trivia){
+        Automaton automaton = getAutomaton();
+        ByteBuffer bytes = input.getBytes();
+        int offset = input.getOffset();
+        int limit = offset + input.length();
+        pos += offset;
+        stop += offset;
+        while (pos < stop) {
+            long match = automaton.match(bytes, pos, limit);
+            int end;
+            E lexeme;
+            if (match != Automaton.NO_MATCH) {
+                end = (int) match;
+                lexeme = ruleGroups.get((int) (match >>> 32)).lexeme;
+            } else if (unknown != null) {
+                // and the whole of a UTF-8 sequence, so that a character is one token however it is encoded
+                end = unknownEnd(input, pos - offset) + offset;
+                while (end < limit && (bytes.get(end) & 0xC0) == 0x80) {
+                    end++;
+                }
+                lexeme = unknown;
+            } else {
+                return ~(pos - offset);
+            }
+            if (!ignored.contains(lexeme)) {
+                buffer.add(lexeme, pos - offset, end - offset);
+            } else if (trivia != null) {
+                trivia.add(lexeme, pos - offset, end - offset, buffer.size());
+            }
+            pos = end;
+        }
+        return pos - offset;
+    }
+
+    /**
+     * Lexes the input in chunks on the given pool, producing exactly the tokens {@link #lexToBuffer(CharSequence, Set)}
+     * would.
+     *
+     * Chunks begin just after a line break where possible, since in most grammars only whitespace can carry on across
+     * one.  Each chunk is lexed as though a token started there, and its first few token boundaries are kept.  The
+     * chunks are then joined in order: where the previous chunk's last token ends on one of those boundaries the two
+     * agree from then on, and where it does not, tokens are lexed one at a time from the previous chunk's end until
+     * they do.  A chunk that is never brought back into step is simply lexed again, so the result is always the same
+     * as lexing sequentially; it is only the speedup that depends on the boundaries being well chosen.
+     *
+     * The chunks do not intern names or decode literals.  That is done as their tokens are joined, in order, so that
+     * the symbol table and constant pool are left exactly as lexing sequentially would leave them, with the same ids
+     * and indexes, and nothing from the tokens of a chunk that were lexed again is added to them.
+     *
+     * Inputs too small to be worth splitting, and lexers using the {@link Engine#REGEX} engine, are lexed sequentially.
+     *
+     * @param input   the text to lex, which may be a {@link ByteSource}
+     * @param ignored lexemes which are matched but left out of the buffer
+     * @param pool    the pool to lex the chunks on
+     * @return the tokens that were lexed, up to the first part of the input that no rule matches
+     */
+    public TokenBuffer<E> lexInParallel(CharSequence input, Set<E> ignored, ForkJoinPool pool){
+        int chunks = Math.min(input.length() / MIN_CHUNK_SIZE, pool.getParallelism() * CHUNKS_PER_THREAD);
+        return lexInParallel(input, ignored, pool, chunks);
+    }
+
+    /**
+     * Memory-maps the specified file and lexes it with {@link #lexInParallel(CharSequence, Set, ForkJoinPool)}.
+     *
+     * @throws IOException if the file could not be found, read or mapped
+     */
+    public TokenBuffer<E> lexInParallel(Path path, Set<E> ignored, ForkJoinPool pool) throws IOException {
+        return lexInParallel(map(path), ignored, pool);
+    }
+
+    TokenBuffer<E> lexInParallel(CharSequence input, Set<E> ignored, ForkJoinPool pool, int chunkCount){
+        if (chunkCount < 2 || engine == Engine.REGEX) {
+            return lexToBuffer(input, ignored);
+        }
+        checkState(!ruleGroups.isEmpty(), "no rules have been set up");
+        if (scanner == null || input instanceof ByteSource) {
+            // build the automaton before the chunks race to do it
+            getAutomaton();
+        }
+
+        final List<Chunk> chunks = new ArrayList<Chunk>(chunkCount);
+        int length = input.length();
+        int start = 0;
+        for (int i = 1; i <= chunkCount; i++) {
+            int stop = (int) ((long) length * i / chunkCount);
+            int limit = (int) ((long) length * (i + 1) / chunkCount);
+            if (i < chunkCount) {
+                // move the boundary to just past the next line break, if there is one before the next boundary
+                for (int j = stop; j < limit; j++) {
+                    if (input.charAt(j) == '\n') {
+                        stop = j + 1;
+                        break;
+                    }
+                }
+            }
+            if (stop > start) {
+                chunks.add(new Chunk(input, start, stop, ignored));
+                start = stop;
+            }
+        }
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(chunks);
+            }
+        });
+
+        int total = 0;
+        for (Chunk chunk : chunks) {
+            total += chunk.buffer.size();
+        }
+        TokenBuffer<E> result = newBuffer(input, total + 16);
+        // pos is always the end of the last token lexed so far, in whichever chunk that happened to be
+        int pos = 0;
+        for (Chunk chunk : chunks) {
+            int sync = chunk.indexOfBoundary(pos);
+            while (sync < 0 && pos < chunk.stop && pos <= chunk.lastBoundary()) {
+                pos = scan(input, pos, pos + 1, result, ignored);
+                if (pos < 0) {
+                    reportUnknownSymbol(input, ~pos);
+                    return result;
+                }
+                sync = chunk.indexOfBoundary(pos);
+            }
+            if (sync >= 0) {
+                result.addAll(chunk.buffer, chunk.sizes[sync]);
+                pos = chunk.end;
+            } else if (pos < chunk.stop) {
+                pos = scan(input, pos, chunk.stop, result, ignored);
+            }
+            if (pos < 0) {
+                reportUnknownSymbol(input, ~pos);
+                return result;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Lexes one chunk of a parallel lex, from its start until a token runs up to or past its stop.
+     */
+    @SuppressWarnings("serial") // tasks are never serialized
+    private final class Chunk extends RecursiveAction {
+        private final CharSequence input;
+
+        private final int start;
+
+        private final int stop;
+
+        private final Set<E> ignored;
+
+        private final TokenBuffer<E> buffer;
+
+        /**
+         * The starts of the first tokens in the chunk, including ignored ones.
+         */
+        private final int[] boundaries = new int[SYNC_TOKENS];
+
+        /**
+         * The number of tokens in the buffer before each of the {@link #boundaries}.
+         */
+        private final int[] sizes = new int[SYNC_TOKENS];
+
+        private int boundaryCount;
+
+        /**
+         * Where lexing the chunk stopped, as returned by {@link #scan(CharSequence, int, int, TokenBuffer, Set)}.
+         */
+        private int end;
+
+        Chunk(CharSequence input, int start, int stop, Set<E> ignored) {
+            this.input = input;
+            this.start = start;
+            this.stop = stop;
+            this.ignored = ignored;
+            // without the symbol table or constant pool, which are only filled in as the chunks are joined
+            this.buffer = new TokenBuffer<E>(ruleGroups.get(0).lexeme.getDeclaringClass(), input,
+                    (stop - start) / 4 + 16);
+        }
+
+        @Override
+        protected void compute() {
+            int pos = start;
+            while (boundaryCount < SYNC_TOKENS && pos >= 0 && pos < stop) {
+                boundaries[boundaryCount] = pos;
+                sizes[boundaryCount] = buffer.size();
+                boundaryCount++;
+                pos = scan(input, pos, pos + 1, buffer, ignored);
+            }
+            if (pos >= 0 && pos < stop) {
+                pos = scan(input, pos, stop, buffer, ignored);
+            }
+            end = pos;
+        }
+
+        int indexOfBoundary(int pos) {
+            for (int i = 0; i < boundaryCount; i++) {
+                if (boundaries[i] == pos) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        int lastBoundary() {
+            return boundaryCount == 0 ? start : boundaries[boundaryCount - 1];
+        }
+    }
+
+    /**
+     * Creates a stream that lexes the reader lazily as its tokens are asked for.
+     *
+     * @param reader  the input to lex; it is closed once it has been read to the end
+     * @param ignored lexemes which are matched but never turned into tokens
+     * @return a stream of the tokens in the input
+     */
+    public TokenStream<E> stream(Reader reader, Set<E> ignored){
+        return new TokenStream<E>(this, getAutomaton(), reader, ignored);
+    }
+
+    /**
+     * Creates a stream that lazily lexes the UTF-8 text read from a channel.
+     *
+     * @see #stream(Reader, Set)
+     */
+    public TokenStream<E> stream(ReadableByteChannel channel, Set<E> ignored){
+        return stream(Channels.newReader(channel, Charsets.UTF_8.newDecoder(), -1), ignored);
+    }
+
+    private TokenBuffer<E> newBuffer(CharSequence input, int expectedSize){
+        TokenBuffer<E> buffer = new TokenBuffer<E>(ruleGroups.get(0).lexeme.getDeclaringClass(), input, expectedSize,
+                symbolTable, symbolic);
+        if (constantPool != null) {
+            buffer.setConstantPool(constantPool, integers, strings);
+        }
+        return buffer;
+    }
+
+    /**
+     * @return the symbol id for a token's text, or -1 if tokens of its lexeme are not interned
+     */
+    int intern(E lexeme, CharSequence text, int start, int end){
+        return symbolic.contains(lexeme) ? symbolTable.intern(text, start, end) : -1;
+    }
+
+    /**
+     * @return the index in the constant pool of a literal's value, or -1 if tokens of its lexeme are not decoded or it
+     *         can not be
+     */
+    int decode(E lexeme, CharSequence text, int start, int end){
+        if (integers.contains(lexeme)) {
+            return constantPool.addInteger(text, start, end);
+        } else if (strings.contains(lexeme)) {
+            return constantPool.addString(text, start, end);
+        }
+        return -1;
+    }
+
+    E getLexeme(int rule){
+        return ruleGroups.get(rule).lexeme;
+    }
+
+    private Automaton getAutomaton(){
+        Automaton result = automaton;
+        if (result == null) {
+            // only the first use takes the lock, so that concurrent callers build the automaton just once
+            synchronized (this) {
+                result = automaton;
+                if (result == null) {
+                    result = LexerTables.read(tables, fingerprint(ruleGroups));
+                }
+                if (result == null) {
+                    List<String> patterns = new ArrayList<String>(ruleGroups.size());
+                    for (RuleGroup<E> rg : ruleGroups) {
+                        patterns.add(rg.regex);
+                    }
+                    result = Automaton.compile(patterns);
+                }
+                automaton = result;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Given an input string, the lexer goes through each regex finding ones that start at the
+     * current head of the input.  If one matches, it moves the head to the end of that match and starts again
+     * If no regexes match, the head starts an unknown token, which ends where it would with the {@link Engine#DFA}
+     * engine, or if there is no lexeme for those, an error is printed, and the already processed ones are returned.
+     */
+    private List<Token<E>> lexWithRegex(CharSequence input){
+        // The padding lets trailing context match at the end of the input; it never becomes part of a token.
+        String paddedInput = new StringBuilder(input.length() + 1).append(input).append(' ').toString();
         List<Token<E>> tokens = new ArrayList<Token<E>>();
         
         int globalPos=0;
-        //int curPos=0;
-        boolean working = true;
         
-        while (working){
+        while (globalPos < input.length()){
             boolean couldBeMatched = false;
             // Go through every regex in the rule groups
             for (RuleGroup<E> rg : ruleGroups){
-                Matcher matcher = rg.compiledRegex.matcher(input);
+                // Only look at what is left of the input, without copying it
+                Matcher matcher = rg.getCompiledRegex().matcher(paddedInput);
+                matcher.region(globalPos, paddedInput.length());
 
                 // If a match has been found
                 if(matcher.find()){
-                    // Check to see if the start position is at the head of the file.
+                    // Check to see if the start position is at the head of the input.
                     int start = matcher.start(1);
-                    int end = matcher.end(1);
-                    if(start==0){
-                        // If it is, make a new token with the provided lexeme and the text
-                        tokens.add(new Token<E>(rg.lexeme,matcher.group(1)));
-                        // Shift the head of the string to the end of the group.
-                        input = shiftString(input,end);
-                        // And advance the global position to the end for use in debugging.
-                        globalPos+=end;
+                    int end = Math.min(matcher.end(1), input.length());
+                    if(start==globalPos){
+                        // If it is, make a new token with the provided lexeme over the matched range
+                        tokens.add(new Token<E>(rg.lexeme,input,start,end));
+                        // And advance the head to the end of the group.
+                        globalPos=end;
                         couldBeMatched = true;
                         break;
                     }
                 }
-                else{
-                    if(input.length()==0){
-                        return tokens;
-                    }
-                }
             }
             if(!couldBeMatched){
-                System.out.println("["+ origInput.charAt(globalPos)+"]");
-                System.err.println(getHumanPosition(origInput,globalPos));
-                return tokens;
+                if(unknown==null){
+                    reportUnknownSymbol(input, globalPos);
+                    return tokens;
+                }
+                // as long as the automaton would make it, so that both engines agree on where the next token starts
+                int end=unknownEnd(input, globalPos);
+                tokens.add(new Token<E>(unknown,input,globalPos,end));
+                globalPos=end;
             }
         }
 
         return tokens;
     }
 
-    private static String getHumanPosition(String sourceString, int globalCharPosition){
-        char[] chars = sourceString.toCharArray();
-        int lineNumber=1;
-        int charPosition=1;
-        for(int i=0;i<globalCharPosition;i++){
-            char c = chars[i];
-            if(c=='\n'){
-                lineNumber++;
-                charPosition=1;
-            }
-            charPosition++;
-        }
-
-        return "Unknown symbol or pattern on line: "+lineNumber+", character: "+charPosition+" near symbol: '"+chars[globalCharPosition]+"'.";
+    private static void reportUnknownSymbol(CharSequence input, int globalPos){
+        System.err.println(getHumanPosition(input,globalPos));
     }
-    
-    private static String shiftString(String input, int shiftLength){
-        return input.subSequence(shiftLength,input.length()).toString();
+
+    private static String getHumanPosition(CharSequence sourceString, int globalCharPosition){
+        SourceFile source = new SourceFile(sourceString);
+        int lineNumber=source.line(globalCharPosition);
+        int charPosition=source.column(globalCharPosition);
+        return "Unknown symbol or pattern on line: "+lineNumber+", character: "+charPosition+" near symbol: '"+sourceString.charAt(globalCharPosition)+"'.";
     }
 }
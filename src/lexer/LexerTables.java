@@ -0,0 +1,108 @@
+package lexer;
+
+import com.google.common.io.ByteStreams;
+import lexer.Lexer.RuleGroup;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Saves a lexer's compiled automaton ahead of time, so that a short-lived process can load the tables instead of
+ * building the automaton from the rules' patterns every time it starts.
+ *
+ * The tables record the {@link Lexer#fingerprint} of the rules they were compiled from, and a lexer only uses tables
+ * that match its rules and that read back intact; otherwise it compiles the automaton as usual.  To regenerate the
+ * Diamond tables after changing its rules, run this class with the path of the tables,
+ * {@code src/lexer/DiamondLexer.tables}.
+ */
+public final class LexerTables {
+    private static final int MAGIC = 0x44464154;
+
+    private static final int VERSION = 1;
+
+    private LexerTables() {
+    }
+
+    /**
+     * Writes the Diamond lexer's tables.
+     *
+     * @param args the file to write the tables to
+     */
+    public static void main(String... args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("usage: LexerTables <output file>");
+            System.exit(1);
+        }
+        OutputStream out = new FileOutputStream(new File(args[0]));
+        try {
+            write(new DiamondLexer().getRules(), out);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Compiles the rules and writes the tables of the resulting automaton.
+     *
+     * @param rules the rules, in priority order
+     */
+    static void write(List<? extends RuleGroup<?>> rules, OutputStream out) throws IOException {
+        List<String> patterns = new ArrayList<String>(rules.size());
+        for (RuleGroup<?> rule : rules) {
+            patterns.add(rule.getRegex());
+        }
+        Automaton automaton = Automaton.compile(patterns);
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(out)));
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(Lexer.fingerprint(rules));
+        automaton.write(data);
+        data.close();
+    }
+
+    /**
+     * Loads tables written by {@link #write}.
+     *
+     * @param tables      where the tables are, which may be {@code null}
+     * @param fingerprint the fingerprint of the rules the caller is lexing with
+     * @return the automaton, or {@code null} if there are no tables, they can not be read in full, or they were written
+     *         for other rules or by another version of this class
+     */
+    static Automaton read(URL tables, int fingerprint) {
+        if (tables == null) {
+            return null;
+        }
+        try {
+            byte[] bytes;
+            InputStream in = tables.openStream();
+            try {
+                // reading to the end makes the stream check the length and checksum in the gzip trailer
+                bytes = ByteStreams.toByteArray(new GZIPInputStream(in));
+            } finally {
+                in.close();
+            }
+            DataInputStream data = new DataInputStream(new ByteArrayInputStream(bytes));
+            if (data.readInt() != MAGIC || data.readInt() != VERSION || data.readInt() != fingerprint) {
+                return null;
+            }
+            return Automaton.read(data);
+        } catch (IOException e) {
+            // tables that are truncated or corrupt are a miss like any other, and the rules are compiled instead
+            return null;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+}
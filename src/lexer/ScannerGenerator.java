@@ -0,0 +1,676 @@
+package lexer;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import lexer.Lexer.RuleGroup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Writes the source of a scanner specialized for one set of lexer rules, which does the same job as the automaton
+ * without building anything at run time.
+ *
+ * The generated scanner switches on the first character of each token.  Rules for literal text, such as operators,
+ * become nested switches on the following characters that take the longest literal there is, which is the same
+ * thing the rules' trailing context selects.  Keywords are found by scanning a whole word and looking it up in a
+ * perfect hash.  Identifiers, numbers, strings, line comments and whitespace are recognized by their exact patterns
+ * and scanned by templates.  Rule sets that need anything else, or whose priorities the generated code could not
+ * reproduce, are rejected rather than scanned differently.
+ *
+ * The scanner records a {@link Lexer#fingerprint} of the rules it was generated from, so a stale scanner is never used.
+ * To regenerate the Diamond scanner after changing its rules, run this class with the path of the scanner's source,
+ * {@code src/lexer/DiamondScanner.java}.
+ */
+public final class ScannerGenerator {
+    private static final Pattern LITERAL_RULE =
+            Pattern.compile("\\(((?:[^\\\\()\\[\\].*+?|{}^$]|\\\\[^\\w])+)\\)(?:\\[\\^((?:[^\\\\\\]]|\\\\.)+)\\])?");
+
+    private static final String IDENTIFIER = "([a-zA-Z][a-zA-Z0-9_]*\\w*)";
+
+    private static final String INTEGER = "((?:0x)?\\d+)";
+
+    private static final String STRING = "(\"(?:[^\"\\\\\\n]|\\\\.)*\")";
+
+    private static final String LINE_COMMENT = "(//.*)";
+
+    private static final String WHITESPACE = "(\\s+)";
+
+    private static final String WHITESPACE_CHARS = " \t\n\u000B\f\r";
+
+    private final String className;
+
+    private final int fingerprint;
+
+    private final List<Keyword> keywords = new ArrayList<Keyword>();
+
+    private final Node literals = new Node();
+
+    private final Map<String, Integer> templates = new HashMap<String, Integer>();
+
+    private int[] keywordSlots;
+
+    private int hashFirst;
+
+    private int hashSecond;
+
+    private final StringBuilder out = new StringBuilder();
+
+    private int indent;
+
+    private ScannerGenerator(String className, List<? extends RuleGroup<?>> rules) {
+        this.className = className;
+        this.fingerprint = Lexer.fingerprint(rules);
+        classify(rules);
+    }
+
+    /**
+     * Generates the Diamond scanner.
+     *
+     * @param args the file to write the scanner to; the class is named after it
+     */
+    public static void main(String... args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("usage: ScannerGenerator <output file>");
+            System.exit(1);
+        }
+        File file = new File(args[0]);
+        String className = file.getName().replaceFirst("\\.java$", "");
+        String source = generate(className, new DiamondLexer().getRules());
+        Files.write(source, file, Charsets.US_ASCII);
+    }
+
+    /**
+     * @param className the simple name of the scanner class, which is put in this package
+     * @param rules     the rules, in priority order
+     * @return the source of the scanner
+     * @throws IllegalArgumentException if the rules can not be turned into a scanner
+     */
+    static String generate(String className, List<? extends RuleGroup<?>> rules) {
+        return new ScannerGenerator(className, rules).emit();
+    }
+
+    private static final class Keyword {
+        final String word;
+
+        final String suffix;
+
+        final int rule;
+
+        Keyword(String word, String suffix, int rule) {
+            this.word = word;
+            this.suffix = suffix;
+            this.rule = rule;
+        }
+    }
+
+    /**
+     * A node in the trie of literal rules; the root stands for the empty string.
+     */
+    private static final class Node {
+        final SortedMap<Character, Node> children = new TreeMap<Character, Node>();
+
+        int rule = -1;
+
+        /**
+         * The characters which the rule's trailing context does not allow, or {@code null} if it has none.
+         */
+        boolean[] refused;
+
+        boolean comment;
+    }
+
+    private void classify(List<? extends RuleGroup<?>> rules) {
+        for (int i = 0; i < rules.size(); i++) {
+            String regex = rules.get(i).getRegex();
+            if (regex.equals(IDENTIFIER) || regex.equals(INTEGER) || regex.equals(STRING)
+                    || regex.equals(LINE_COMMENT) || regex.equals(WHITESPACE)) {
+                if (templates.containsKey(regex)) {
+                    throw new IllegalArgumentException("rule " + i + " can never match: " + regex);
+                }
+                templates.put(regex, i);
+                continue;
+            }
+            Matcher matcher = LITERAL_RULE.matcher(regex);
+            if (!matcher.matches()) {
+                throw new IllegalArgumentException("no scanner template for rule " + i + ": " + regex);
+            }
+            String literal = matcher.group(1).replaceAll("\\\\(.)", "$1");
+            String follower = matcher.group(2);
+            char first = literal.charAt(0);
+            if (isLetter(first)) {
+                if (!"\\w".equals(follower)) {
+                    throw new IllegalArgumentException("keyword rule " + i + " must be followed by [^\\w]: " + regex);
+                }
+                if (templates.containsKey(IDENTIFIER)) {
+                    throw new IllegalArgumentException("keyword rule " + i + " comes after the identifier rule");
+                }
+                int split = 0;
+                while (split < literal.length() && isWord(literal.charAt(split))) {
+                    split++;
+                }
+                String suffix = literal.substring(split);
+                for (char c : suffix.toCharArray()) {
+                    if (isWord(c)) {
+                        throw new IllegalArgumentException("keyword rule " + i + " has more than one word: " + regex);
+                    }
+                }
+                keywords.add(new Keyword(literal.substring(0, split), suffix, i));
+            } else {
+                Node node = literals;
+                for (char c : literal.toCharArray()) {
+                    if (!node.children.containsKey(c)) {
+                        node.children.put(c, new Node());
+                    }
+                    node = node.children.get(c);
+                }
+                if (node.rule >= 0) {
+                    // the earlier rule always wins
+                    continue;
+                }
+                node.rule = i;
+                node.refused = (follower == null) ? null : parseClass(follower, regex);
+            }
+        }
+        if (templates.containsKey(LINE_COMMENT)) {
+            Node slash = literals.children.get('/');
+            if (slash == null) {
+                slash = new Node();
+                literals.children.put('/', slash);
+            }
+            if (slash.children.containsKey('/')) {
+                throw new IllegalArgumentException("a literal rule starts with //, which also starts a comment");
+            }
+            Node comment = new Node();
+            comment.comment = true;
+            slash.children.put('/', comment);
+        }
+        checkLiterals(literals, "");
+        for (char c : literals.children.keySet()) {
+            if (isStartOfTemplate(c) && !(c == '/' && templates.containsKey(LINE_COMMENT))) {
+                throw new IllegalArgumentException("a literal rule starts with '" + c + "', which starts another rule");
+            }
+        }
+        findKeywordHash();
+    }
+
+    /**
+     * Checks that taking the longest literal is the same as what the rules' trailing context picks: every prefix of a
+     * literal must itself be a literal, and each literal must refuse exactly the characters that continue it.
+     */
+    private static void checkLiterals(Node node, String prefix) {
+        if (!prefix.isEmpty() && node.rule < 0 && !node.comment) {
+            throw new IllegalArgumentException("no rule for \"" + prefix + "\", which starts a longer literal");
+        }
+        if (node.rule >= 0) {
+            for (char c = 0; c < 128; c++) {
+                boolean refused = (node.refused != null) && node.refused[c];
+                if (refused != node.children.containsKey(c)) {
+                    throw new IllegalArgumentException("the trailing context of \"" + prefix + "\" does not match the"
+                            + " literals which continue it");
+                }
+            }
+        }
+        for (Map.Entry<Character, Node> child : node.children.entrySet()) {
+            checkLiterals(child.getValue(), prefix + child.getKey());
+        }
+    }
+
+    /**
+     * Parses the contents of a negated character class, which must only refuse ASCII characters.
+     */
+    private static boolean[] parseClass(String contents, String regex) {
+        boolean[] refused = new boolean[128];
+        int i = 0;
+        while (i < contents.length()) {
+            char c = contents.charAt(i++);
+            if (c == '\\') {
+                char escaped = contents.charAt(i++);
+                if (escaped == 'w') {
+                    for (char w = 0; w < 128; w++) {
+                        refused[w] |= isWord(w);
+                    }
+                    continue;
+                } else if (Character.isLetterOrDigit(escaped)) {
+                    throw new IllegalArgumentException("unsupported escape in trailing context: " + regex);
+                }
+                c = escaped;
+            }
+            char last = c;
+            if (i + 1 < contents.length() && contents.charAt(i) == '-') {
+                last = contents.charAt(i + 1);
+                i += 2;
+            }
+            if (last >= 128) {
+                throw new IllegalArgumentException("trailing context refuses non-ASCII characters: " + regex);
+            }
+            for (char r = c; r <= last; r++) {
+                refused[r] = true;
+            }
+        }
+        return refused;
+    }
+
+    private void findKeywordHash() {
+        Set<String> words = new HashSet<String>();
+        for (Keyword keyword : keywords) {
+            if (!words.add(keyword.word)) {
+                throw new IllegalArgumentException("two keywords share the word " + keyword.word);
+            }
+        }
+        for (int size = Integer.highestOneBit(Math.max(keywords.size(), 1)) * 2; size <= 4096; size *= 2) {
+            for (int first = 1; first < 256; first++) {
+                for (int second = 1; second < 256; second++) {
+                    int[] slots = new int[size];
+                    Arrays.fill(slots, -1);
+                    boolean perfect = true;
+                    for (int k = 0; k < keywords.size() && perfect; k++) {
+                        int slot = hash(keywords.get(k).word, first, second, size - 1);
+                        perfect = (slots[slot] < 0);
+                        slots[slot] = k;
+                    }
+                    if (perfect) {
+                        keywordSlots = slots;
+                        hashFirst = first;
+                        hashSecond = second;
+                        return;
+                    }
+                }
+            }
+        }
+        throw new IllegalArgumentException("no perfect hash for the keywords");
+    }
+
+    /**
+     * Hashes a word by its first two characters, its last character and its length, which is all the generated code
+     * has to read before it knows which keyword the word could be.
+     */
+    private static int hash(String word, int first, int second, int mask) {
+        int length = word.length();
+        return (word.charAt(0) * first + word.charAt(Math.min(1, length - 1)) * second + word.charAt(length - 1)
+                + length) & mask;
+    }
+
+    private boolean isStartOfTemplate(char c) {
+        return (isLetter(c) && (templates.containsKey(IDENTIFIER) || !keywords.isEmpty()))
+                || (c >= '0' && c <= '9' && templates.containsKey(INTEGER))
+                || (c == '"' && templates.containsKey(STRING))
+                || (c == '/' && templates.containsKey(LINE_COMMENT))
+                || (WHITESPACE_CHARS.indexOf(c) >= 0 && templates.containsKey(WHITESPACE));
+    }
+
+    private static boolean isLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isWord(char c) {
+        return isLetter(c) || (c >= '0' && c <= '9') || c == '_';
+    }
+
+    // ----------------------------------------------------------------------------------------------------------------
+
+    private String emit() {
+        line("// Generated by ScannerGenerator from the rules in DiamondLexer.  Do not edit; regenerate it instead.");
+        line("package lexer;");
+        line("");
+        line("/**");
+        line(" * Scans tokens for the rules this class was generated from, with the same results as the automaton.");
+        line(" */");
+        open("final class " + className + " implements TokenMatcher {");
+        line("static final int RULES_FINGERPRINT = " + hex(fingerprint) + ";");
+        if (!keywords.isEmpty()) {
+            emitKeywordTables();
+        }
+        line("");
+        line("@Override");
+        open("public long match(CharSequence input, int pos) {");
+        line("int length = input.length();");
+        open("switch (input.charAt(pos)) {");
+        emitStartCases();
+        close("}");
+        close("}");
+        emitTemplates();
+        line("");
+        open("private static long token(int rule, int end) {");
+        line("return ((long) rule << 32) | end;");
+        close("}");
+        close("}");
+        return out.toString();
+    }
+
+    private void emitKeywordTables() {
+        int mask = keywordSlots.length - 1;
+        line("");
+        line("private static final int KEYWORD_MASK = " + mask + ";");
+        int min = Integer.MAX_VALUE;
+        int max = 0;
+        for (Keyword keyword : keywords) {
+            min = Math.min(min, keyword.word.length());
+            max = Math.max(max, keyword.word.length());
+        }
+        line("");
+        line("private static final int KEYWORD_MIN = " + min + ";");
+        line("");
+        line("private static final int KEYWORD_MAX = " + max + ";");
+        line("");
+        line("/**");
+        line(" * The keywords' words, by the slot their hash picks.");
+        line(" */");
+        open("private static final String[] KEYWORDS = {");
+        List<String> words = new ArrayList<String>();
+        for (int slot : keywordSlots) {
+            words.add(slot < 0 ? "null" : quote(keywords.get(slot).word));
+        }
+        rows(words);
+        close("};");
+        line("");
+        line("/**");
+        line(" * Whatever must follow each keyword's word for it to be the keyword, which is usually nothing.");
+        line(" */");
+        open("private static final String[] KEYWORD_SUFFIXES = {");
+        List<String> suffixes = new ArrayList<String>();
+        for (int slot : keywordSlots) {
+            suffixes.add(slot < 0 ? "null" : quote(keywords.get(slot).suffix));
+        }
+        rows(suffixes);
+        close("};");
+        line("");
+        open("private static final int[] KEYWORD_RULES = {");
+        List<String> rules = new ArrayList<String>();
+        for (int slot : keywordSlots) {
+            rules.add(String.valueOf(slot < 0 ? -1 : keywords.get(slot).rule));
+        }
+        rows(rules);
+        close("};");
+    }
+
+    private void emitStartCases() {
+        List<Character> letters = new ArrayList<Character>();
+        for (char c = 0; c < 128; c++) {
+            if (isLetter(c)) {
+                letters.add(c);
+            }
+        }
+        if (templates.containsKey(IDENTIFIER) || !keywords.isEmpty()) {
+            cases(letters);
+            indent++;
+            line("return word(input, pos, length);");
+            indent--;
+        }
+        if (templates.containsKey(INTEGER)) {
+            cases(Arrays.asList('0', '1', '2', '3', '4', '5', '6', '7', '8', '9'));
+            indent++;
+            line("return number(input, pos, length);");
+            indent--;
+        }
+        if (templates.containsKey(STRING)) {
+            cases(Arrays.asList('"'));
+            indent++;
+            line("return string(input, pos, length);");
+            indent--;
+        }
+        if (templates.containsKey(WHITESPACE)) {
+            List<Character> spaces = new ArrayList<Character>();
+            for (char c : WHITESPACE_CHARS.toCharArray()) {
+                spaces.add(c);
+            }
+            cases(spaces);
+            indent++;
+            line("return whitespace(input, pos, length);");
+            indent--;
+        }
+        for (Map.Entry<Character, Node> entry : literals.children.entrySet()) {
+            cases(Arrays.asList(entry.getKey()));
+            indent++;
+            emitLiteral(entry.getValue(), 1);
+            indent--;
+        }
+        line("default:");
+        indent++;
+        line("return NO_MATCH;");
+        indent--;
+    }
+
+    /**
+     * Emits the code for a literal whose first {@code depth} characters have been matched.
+     */
+    private void emitLiteral(Node node, int depth) {
+        if (node.comment) {
+            line("return comment(input, pos + " + depth + ", length);");
+            return;
+        }
+        if (!node.children.isEmpty()) {
+            open("if (pos + " + depth + " < length) {");
+            if (node.children.size() == 1) {
+                Map.Entry<Character, Node> only = node.children.entrySet().iterator().next();
+                open("if (input.charAt(pos + " + depth + ") == " + charLiteral(only.getKey()) + ") {");
+                emitLiteral(only.getValue(), depth + 1);
+                close("}");
+            } else {
+                open("switch (input.charAt(pos + " + depth + ")) {");
+                for (Map.Entry<Character, Node> child : node.children.entrySet()) {
+                    cases(Arrays.asList(child.getKey()));
+                    indent++;
+                    emitLiteral(child.getValue(), depth + 1);
+                    indent--;
+                }
+                close("}");
+            }
+            close("}");
+        }
+        line("return token(" + node.rule + ", pos + " + depth + ");");
+    }
+
+    private void emitTemplates() {
+        if (templates.containsKey(IDENTIFIER) || !keywords.isEmpty()) {
+            line("");
+            line("/**");
+            line(" * Scans a whole word, which is a keyword if it is one of the keywords' words and is followed by that");
+            line(" * keyword's suffix, and is otherwise an identifier.");
+            line(" */");
+            open("private static long word(CharSequence input, int pos, int length) {");
+            line("int end = pos + 1;");
+            open("while (end < length && isWord(input.charAt(end))) {");
+            line("end++;");
+            close("}");
+            if (!keywords.isEmpty()) {
+                line("int size = end - pos;");
+                open("if (size >= KEYWORD_MIN && size <= KEYWORD_MAX) {");
+                line("int slot = (input.charAt(pos) * " + hashFirst + " + input.charAt(size > 1 ? pos + 1 : pos) * "
+                        + hashSecond);
+                line("        + input.charAt(end - 1) + size) & KEYWORD_MASK;");
+                line("String keyword = KEYWORDS[slot];");
+                open("if (keyword != null && matches(input, pos, end, keyword)) {");
+                line("String suffix = KEYWORD_SUFFIXES[slot];");
+                open("if (suffix.isEmpty()) {");
+                line("return token(KEYWORD_RULES[slot], end);");
+                close("}");
+                line("int suffixEnd = end + suffix.length();");
+                line("if (suffixEnd <= length && matches(input, end, suffixEnd, suffix)");
+                open("        && (suffixEnd == length || !isWord(input.charAt(suffixEnd)))) {");
+                line("return token(KEYWORD_RULES[slot], suffixEnd);");
+                close("}");
+                close("}");
+                close("}");
+            }
+            line(templates.containsKey(IDENTIFIER)
+                    ? "return token(" + templates.get(IDENTIFIER) + ", end);" : "return NO_MATCH;");
+            close("}");
+            line("");
+            open("private static boolean matches(CharSequence input, int start, int end, String text) {");
+            open("if (end - start != text.length()) {");
+            line("return false;");
+            close("}");
+            open("for (int i = start; i < end; i++) {");
+            open("if (input.charAt(i) != text.charAt(i - start)) {");
+            line("return false;");
+            close("}");
+            close("}");
+            line("return true;");
+            close("}");
+            line("");
+            open("private static boolean isWord(char c) {");
+            line("return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';");
+            close("}");
+        }
+        if (templates.containsKey(INTEGER)) {
+            line("");
+            line("/**");
+            line(" * Scans decimal digits, or digits after \"0x\" if there are any.");
+            line(" */");
+            open("private static long number(CharSequence input, int pos, int length) {");
+            line("int end = pos;");
+            line("if (input.charAt(pos) == '0' && pos + 2 < length && input.charAt(pos + 1) == 'x'");
+            open("        && isDigit(input.charAt(pos + 2))) {");
+            line("end += 2;");
+            close("}");
+            open("while (end < length && isDigit(input.charAt(end))) {");
+            line("end++;");
+            close("}");
+            line("return token(" + templates.get(INTEGER) + ", end);");
+            close("}");
+            line("");
+            open("private static boolean isDigit(char c) {");
+            line("return c >= '0' && c <= '9';");
+            close("}");
+        }
+        if (templates.containsKey(STRING)) {
+            line("");
+            line("/**");
+            line(" * Scans a string literal, in which a backslash escapes any character but a line terminator, and which");
+            line(" * must close before the end of the line.");
+            line(" */");
+            open("private static long string(CharSequence input, int pos, int length) {");
+            line("int end = pos + 1;");
+            open("while (end < length) {");
+            line("char c = input.charAt(end);");
+            open("if (c == '\"') {");
+            line("return token(" + templates.get(STRING) + ", end + 1);");
+            close("} else if (c == '\\n') {");
+            indent++;
+            line("return NO_MATCH;");
+            close("} else if (c == '\\\\') {");
+            indent++;
+            open("if (end + 1 == length || isLineTerminator(input.charAt(end + 1))) {");
+            line("return NO_MATCH;");
+            close("}");
+            line("end += 2;");
+            close("} else {");
+            indent++;
+            line("end++;");
+            close("}");
+            close("}");
+            line("return NO_MATCH;");
+            close("}");
+        }
+        if (templates.containsKey(LINE_COMMENT)) {
+            line("");
+            line("/**");
+            line(" * Scans the rest of a line comment, which starts at {@code pos}.");
+            line(" */");
+            open("private static long comment(CharSequence input, int pos, int length) {");
+            line("int end = pos;");
+            open("while (end < length && !isLineTerminator(input.charAt(end))) {");
+            line("end++;");
+            close("}");
+            line("return token(" + templates.get(LINE_COMMENT) + ", end);");
+            close("}");
+        }
+        if (templates.containsKey(STRING) || templates.containsKey(LINE_COMMENT)) {
+            line("");
+            line("/**");
+            line(" * @return whether the character is one that {@code .} does not match");
+            line(" */");
+            open("private static boolean isLineTerminator(char c) {");
+            line("return c == '\\n' || c == '\\r' || c == '\\u0085' || c == '\\u2028' || c == '\\u2029';");
+            close("}");
+        }
+        if (templates.containsKey(WHITESPACE)) {
+            line("");
+            open("private static long whitespace(CharSequence input, int pos, int length) {");
+            line("int end = pos + 1;");
+            open("while (end < length) {");
+            line("char c = input.charAt(end);");
+            open("if (c != ' ' && (c < '\\t' || c > '\\r')) {");
+            line("break;");
+            close("}");
+            line("end++;");
+            close("}");
+            line("return token(" + templates.get(WHITESPACE) + ", end);");
+            close("}");
+        }
+    }
+
+    private void rows(List<String> items) {
+        StringBuilder row = new StringBuilder();
+        for (String item : items) {
+            row.append(item).append(", ");
+            if (row.length() > 100) {
+                line(row.toString().trim());
+                row.setLength(0);
+            }
+        }
+        if (row.length() > 0) {
+            line(row.toString().trim());
+        }
+    }
+
+    private void cases(List<Character> characters) {
+        StringBuilder row = new StringBuilder();
+        for (char c : characters) {
+            row.append("case ").append(charLiteral(c)).append(": ");
+            if (row.length() > 90) {
+                line(row.toString().trim());
+                row.setLength(0);
+            }
+        }
+        if (row.length() > 0) {
+            line(row.toString().trim());
+        }
+    }
+
+    private static String charLiteral(char c) {
+        switch (c) {
+            case '\t': return "'\\t'";
+            case '\n': return "'\\n'";
+            case '\r': return "'\\r'";
+            case '\f': return "'\\f'";
+            case '\'': return "'\\''";
+            case '\\': return "'\\\\'";
+        }
+        if (c >= ' ' && c < 127) {
+            return "'" + c + "'";
+        }
+        return String.format("'\\u%04X'", (int) c);
+    }
+
+    private static String quote(String text) {
+        return '"' + text.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+    }
+
+    private static String hex(int value) {
+        return "0x" + Integer.toHexString(value).toUpperCase();
+    }
+
+    private void open(String text) {
+        line(text);
+        indent++;
+    }
+
+    private void close(String text) {
+        indent--;
+        line(text);
+    }
+
+    private void line(String text) {
+        if (!text.isEmpty()) {
+            for (int i = 0; i < indent; i++) {
+                out.append("    ");
+            }
+        }
+        out.append(text).append('\n');
+    }
+}
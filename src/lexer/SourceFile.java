@@ -0,0 +1,137 @@
+package lexer;
+
+import java.util.Arrays;
+
+import static com.google.common.base.Preconditions.*;
+
+/**
+ * The text of one source file, along with an index of where each of its lines starts, so that an offset into the text
+ * can be turned into a line and column with a binary search rather than by counting lines from the start.
+ *
+ * The index is built once, when the file is created. A line ends at {@code "\n"}, {@code "\r\n"} or a lone
+ * {@code "\r"}. Lines and columns are both counted from 1, and a column counts characters.
+ *
+ * This class also packs the start and end offsets of a range of the text into a single {@code long}, a <i>span</i>,
+ * which is how tokens, syntax tree nodes and parse errors record where they came from.
+ */
+public final class SourceFile {
+    /**
+     * The span of something that did not come from any source text, or whose position is not known.
+     */
+    public static final long NO_SPAN = -1;
+
+    private final String name;
+
+    private final CharSequence text;
+
+    private final int[] lineStarts;
+
+    private final int lineCount;
+
+    public SourceFile(CharSequence text) {
+        this(null, text);
+    }
+
+    /**
+     * @param name what to call the file in diagnostics, such as its path, or {@code null}
+     * @param text the contents of the file
+     */
+    public SourceFile(String name, CharSequence text) {
+        this.name = name;
+        this.text = checkNotNull(text);
+        int[] starts = new int[Math.max(16, text.length() / 32)];
+        int count = 1;
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c == '\n' || (c == '\r' && (i + 1 == length || text.charAt(i + 1) != '\n'))) {
+                if (count == starts.length) {
+                    starts = Arrays.copyOf(starts, count * 2);
+                }
+                starts[count++] = i + 1;
+            }
+        }
+        this.lineStarts = starts;
+        this.lineCount = count;
+    }
+
+    /**
+     * @return the name this file was given, or {@code null}
+     */
+    public String getName() {
+        return name;
+    }
+
+    public CharSequence getText() {
+        return text;
+    }
+
+    public int getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * @param offset an index into the text, which may be its length
+     * @return the line the offset is on, counting from 1
+     */
+    public int line(int offset) {
+        checkPositionIndex(offset, text.length());
+        int index = Arrays.binarySearch(lineStarts, 0, lineCount, offset);
+        return (index >= 0) ? index + 1 : -index - 1;
+    }
+
+    /**
+     * @param offset an index into the text, which may be its length
+     * @return the column of the offset within its line, counting from 1
+     */
+    public int column(int offset) {
+        return offset - lineStart(line(offset)) + 1;
+    }
+
+    /**
+     * @param line a line number, counting from 1
+     * @return the offset of the first character of the line
+     */
+    public int lineStart(int line) {
+        checkElementIndex(line - 1, lineCount);
+        return lineStarts[line - 1];
+    }
+
+    /**
+     * @return the offset's position in the form {@code "name:line:column"}, leaving out the name if there is none
+     */
+    public String describe(int offset) {
+        String position = line(offset) + ":" + column(offset);
+        return (name == null) ? position : name + ":" + position;
+    }
+
+    /**
+     * @return the span from {@code start} (inclusive) to {@code end} (exclusive)
+     */
+    public static long span(int start, int end) {
+        checkArgument(0 <= start && start <= end, "invalid span from %s to %s", start, end);
+        return ((long) start << 32) | end;
+    }
+
+    public static int spanStart(long span) {
+        checkArgument(span != NO_SPAN, "no span");
+        return (int) (span >>> 32);
+    }
+
+    public static int spanEnd(long span) {
+        checkArgument(span != NO_SPAN, "no span");
+        return (int) span;
+    }
+
+    /**
+     * @return the smallest span covering both of the given spans, either of which may be {@link #NO_SPAN}
+     */
+    public static long union(long first, long second) {
+        if (first == NO_SPAN) {
+            return second;
+        } else if (second == NO_SPAN) {
+            return first;
+        }
+        return span(Math.min(spanStart(first), spanStart(second)), Math.max(spanEnd(first), spanEnd(second)));
+    }
+}
@@ -0,0 +1,165 @@
+package lexer;
+
+import java.util.Arrays;
+
+import static com.google.common.base.Preconditions.*;
+
+/**
+ * Interns names, such as identifiers, to dense {@code int} ids as they are lexed, so that names can be compared and
+ * hashed as integers and each distinct name is only held as a {@code String} once.
+ *
+ * Ids are handed out from 0 in the order names are first seen, and are only meaningful within the table that issued
+ * them.  A table is normally made for one compilation, but it is safe to share one between threads, such as the lexers
+ * of files lexed at the same time.  Looking a name up does not create a string unless the name is new, and only takes a lock if the
+ * name is new.
+ */
+public final class SymbolTable {
+    private static final int NONE = -1;
+
+    /**
+     * Open-addressed hash table of ids, where {@link #NONE} marks an empty slot; its length is a power of two.
+     */
+    private int[] slots = new int[256];
+
+    private String[] names = new String[128];
+
+    private int[] hashes = new int[128];
+
+    private int size;
+
+    public SymbolTable() {
+        Arrays.fill(slots, NONE);
+    }
+
+    /**
+     * @return the id of the whole of the given name, adding it to the table if it is new
+     */
+    public int intern(CharSequence name) {
+        return intern(name, 0, name.length());
+    }
+
+    /**
+     * @return the id of the name between {@code start} (inclusive) and {@code end} (exclusive) of {@code text}, adding
+     *         it to the table if it is new
+     */
+    public int intern(CharSequence text, int start, int end) {
+        checkPositionIndexes(start, end, text.length());
+        // the same hash as String.hashCode(), so a name's hash never has to be computed again
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + text.charAt(i);
+        }
+        // most names have been seen before, and are found without the lock
+        int id = find(text, start, end, hash);
+        return (id != NONE) ? id : internLocked(text, start, end, hash);
+    }
+
+    /**
+     * Looks a name up without synchronizing.  Racing with a writer can make this miss a name, which is then looked
+     * up again under the lock, but never find the wrong id: a name is written before any slot refers to it, and
+     * neither the name nor its id changes afterwards.
+     */
+    private int find(CharSequence text, int start, int end, int hash) {
+        int[] slots = this.slots;
+        String[] names = this.names;
+        int mask = slots.length - 1;
+        int slot = mix(hash) & mask;
+        // a table that is still being filled in may not have an empty slot yet
+        for (int probes = 0; probes < slots.length; probes++) {
+            int id = slots[slot];
+            if (id == NONE) {
+                return NONE;
+            }
+            String name = (id < names.length) ? names[id] : null;
+            if (name != null && name.hashCode() == hash && matches(name, text, start, end)) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return NONE;
+    }
+
+    private synchronized int internLocked(CharSequence text, int start, int end, int hash) {
+        int mask = slots.length - 1;
+        for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+            int id = slots[slot];
+            if (id == NONE) {
+                return add(text.subSequence(start, end).toString(), hash, slot);
+            } else if (hashes[id] == hash && matches(names[id], text, start, end)) {
+                return id;
+            }
+        }
+    }
+
+    /**
+     * @return the name with the given id
+     */
+    public String name(int id) {
+        String[] names = this.names;
+        String name = (id >= 0 && id < names.length) ? names[id] : null;
+        return (name != null) ? name : nameLocked(id);
+    }
+
+    private synchronized String nameLocked(int id) {
+        checkElementIndex(id, size);
+        return names[id];
+    }
+
+    /**
+     * @return how many distinct names have been interned, which is also the next id to be handed out
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    private int add(String name, int hash, int slot) {
+        int id = size++;
+        if (id == names.length) {
+            names = Arrays.copyOf(names, id * 2);
+            hashes = Arrays.copyOf(hashes, id * 2);
+        }
+        names[id] = name;
+        hashes[id] = hash;
+        slots[slot] = id;
+        // keep the table at most half full
+        if (size * 2 > slots.length) {
+            rehash();
+        }
+        return id;
+    }
+
+    private void rehash() {
+        // filled in before it replaces the old table, which unsynchronized lookups may still be reading
+        int[] rehashed = new int[slots.length * 2];
+        Arrays.fill(rehashed, NONE);
+        int mask = rehashed.length - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = mix(hashes[id]) & mask;
+            while (rehashed[slot] != NONE) {
+                slot = (slot + 1) & mask;
+            }
+            rehashed[slot] = id;
+        }
+        slots = rehashed;
+    }
+
+    private static boolean matches(String name, CharSequence text, int start, int end) {
+        if (name.length() != end - start) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (name.charAt(i - start) != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Spreads the bits of a string hash, which are poorly distributed in the low bits for short names.
+     */
+    private static int mix(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -1,16 +1,124 @@
-package lexer;
-
-/**
- * User: Ty
- * Date: 5/6/12
- * Time: 8:05 PM
- */
-public class Token<E extends Enum<E>> {
-    public final E lexeme;
-    public final String contents;
-    
-    public Token(E lexeme, String contents){
-        this.lexeme = lexeme;
-        this.contents = contents;
-    }
-}
+package lexer;
+
+/**
+ * User: Ty
+ * Date: 5/6/12
+ * Time: 8:05 PM
+ *
+ * A token only records where it lies in the source it was lexed from; its text is copied out of the shared source
+ * the first time someone asks for it.
+ */
+public class Token<E extends Enum<E>> {
+    public final E lexeme;
+
+    private final CharSequence source;
+
+    private final int start;
+
+    private final int end;
+
+    private String contents;
+
+    private final int symbol;
+
+    private final int constant;
+
+    /**
+     * Creates a token that is not backed by any larger source, such as one synthesized by the parser.
+     */
+    public Token(E lexeme, String contents){
+        this(lexeme, contents, 0);
+    }
+
+    /**
+     * Creates a token whose text has already been copied out of its source, which starts at {@code start} within it.
+     */
+    public Token(E lexeme, String contents, int start){
+        this(lexeme, null, start, start + contents.length(), -1, contents);
+    }
+
+    public Token(E lexeme, CharSequence source, int start, int end){
+        this(lexeme, source, start, end, -1, null);
+    }
+
+    /**
+     * Creates a token whose text has been interned in a {@link SymbolTable}.
+     *
+     * @param symbol the id of the token's text in the table
+     * @param name   the text itself, as held by the table
+     */
+    public Token(E lexeme, CharSequence source, int start, int end, int symbol, String name){
+        this(lexeme, source, start, end, symbol, name, -1);
+    }
+
+    /**
+     * Creates a token which may also have had its value decoded into a {@link ConstantPool}.
+     *
+     * @param constant the index of the token's value in the pool, or -1
+     */
+    public Token(E lexeme, CharSequence source, int start, int end, int symbol, String name, int constant){
+        this.lexeme = lexeme;
+        this.source = source;
+        this.start = start;
+        this.end = end;
+        this.symbol = symbol;
+        this.contents = name;
+        this.constant = constant;
+    }
+
+    public String getContents(){
+        // Racing threads can only ever build equal strings, so this needs no synchronization.
+        String contents = this.contents;
+        if (contents == null) {
+            contents = source.subSequence(start, end).toString();
+            this.contents = contents;
+        }
+        return contents;
+    }
+
+    /**
+     * @return the text this token was lexed from, or {@code null} if the token was created from its contents
+     */
+    public CharSequence getSource(){
+        return source;
+    }
+
+    /**
+     * @return the index of the first character of this token within its source
+     */
+    public int getStart(){
+        return start;
+    }
+
+    /**
+     * @return the index just past the last character of this token within its source
+     */
+    public int getEnd(){
+        return end;
+    }
+
+    /**
+     * @return the id of this token's text in the lexer's {@link SymbolTable}, or -1 if it was not interned
+     */
+    public int getSymbol(){
+        return symbol;
+    }
+
+    /**
+     * @return the start and end of this token packed into a span, as made by {@link SourceFile#span(int, int)}
+     */
+    public long getSpan(){
+        return SourceFile.span(start, end);
+    }
+
+    /**
+     * @return the index of this token's value in the lexer's {@link ConstantPool}, or -1 if it was not decoded
+     */
+    public int getConstant(){
+        return constant;
+    }
+
+    public int length(){
+        return end - start;
+    }
+}
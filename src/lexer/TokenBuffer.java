@@ -0,0 +1,352 @@
+package lexer;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.*;
+
+/**
+ * Stores lexed tokens column by column in primitive arrays, rather than as one {@link Token} object per token: a
+ * {@code short} lexeme ordinal and {@code int} start and end offsets into a single shared source.
+ *
+ * Tokens are addressed by index, and {@link #lexeme(int)}, {@link #start(int)}, {@link #end(int)} and
+ * {@link #contents(int)} read one column without creating anything. {@link #get(int)} and {@link #asList()} build
+ * {@code Token} objects on demand for code that still wants them.
+ *
+ * A buffer can also intern the text of some lexemes, typically identifiers, in a {@link SymbolTable} as tokens are
+ * added; their ids are then kept in one more column.  Likewise it can decode literals into a {@link ConstantPool}, and
+ * keep their indexes in another.
+ */
+public final class TokenBuffer<E extends Enum<E>> implements TokenSequence<E> {
+    private static final int DEFAULT_CAPACITY = 64;
+
+    private final E[] universe;
+
+    private final CharSequence source;
+
+    private short[] ordinals;
+
+    private int[] starts;
+
+    private int[] ends;
+
+    private final SymbolTable symbolTable;
+
+    private final Set<E> symbolic;
+
+    /**
+     * The symbol id of each token, or -1; only allocated once a token is interned.
+     */
+    private int[] symbols;
+
+    private ConstantPool constantPool;
+
+    private Set<E> integers = Collections.emptySet();
+
+    private Set<E> strings = Collections.emptySet();
+
+    /**
+     * The index of each token's value in the constant pool, or -1; only allocated once a literal is decoded.
+     */
+    private int[] constants;
+
+    private int size;
+
+    public TokenBuffer(Class<E> lexemeType, CharSequence source) {
+        this(lexemeType, source, DEFAULT_CAPACITY);
+    }
+
+    public TokenBuffer(Class<E> lexemeType, CharSequence source, int expectedSize) {
+        this(lexemeType, source, expectedSize, null, Collections.<E>emptySet());
+    }
+
+    /**
+     * Creates a buffer which interns the text of tokens of the given lexemes as they are added.
+     */
+    public TokenBuffer(Class<E> lexemeType, CharSequence source, int expectedSize, SymbolTable symbolTable,
+                       Set<E> symbolic) {
+        checkArgument(symbolTable != null || symbolic.isEmpty(), "interned lexemes need a symbol table");
+        this.symbolTable = symbolTable;
+        this.symbolic = symbolic;
+        this.universe = lexemeType.getEnumConstants();
+        checkArgument(universe.length <= Short.MAX_VALUE, "too many lexemes");
+        this.source = checkNotNull(source);
+        int capacity = Math.max(expectedSize, 1);
+        ordinals = new short[capacity];
+        starts = new int[capacity];
+        ends = new int[capacity];
+    }
+
+    /**
+     * Makes the buffer decode literals of the given lexemes into a pool as tokens are added.  This must be done before
+     * any are added.
+     */
+    void setConstantPool(ConstantPool constantPool, Set<E> integers, Set<E> strings) {
+        checkState(size == 0, "tokens have already been added");
+        this.constantPool = checkNotNull(constantPool);
+        this.integers = checkNotNull(integers);
+        this.strings = checkNotNull(strings);
+    }
+
+    public void add(E lexeme, int start, int end) {
+        if (size == ordinals.length) {
+            grow(size * 2);
+        }
+        ordinals[size] = (short) lexeme.ordinal();
+        starts[size] = start;
+        ends[size] = end;
+        if (symbolic.contains(lexeme)) {
+            if (symbols == null) {
+                symbols = new int[ordinals.length];
+                Arrays.fill(symbols, -1);
+            }
+            symbols[size] = symbolTable.intern(source, start, end);
+        } else if (symbols != null) {
+            symbols[size] = -1;
+        }
+        if (integers.contains(lexeme) || strings.contains(lexeme)) {
+            if (constants == null) {
+                constants = new int[ordinals.length];
+                Arrays.fill(constants, -1);
+            }
+            constants[size] = integers.contains(lexeme) ? constantPool.addInteger(source, start, end)
+                    : constantPool.addString(source, start, end);
+        } else if (constants != null) {
+            constants[size] = -1;
+        }
+        size++;
+    }
+
+    private void grow(int capacity) {
+        ordinals = Arrays.copyOf(ordinals, capacity);
+        starts = Arrays.copyOf(starts, capacity);
+        ends = Arrays.copyOf(ends, capacity);
+        if (symbols != null) {
+            int length = symbols.length;
+            symbols = Arrays.copyOf(symbols, capacity);
+            Arrays.fill(symbols, length, capacity, -1);
+        }
+        if (constants != null) {
+            int length = constants.length;
+            constants = Arrays.copyOf(constants, capacity);
+            Arrays.fill(constants, length, capacity, -1);
+        }
+    }
+
+    /**
+     * Appends the tokens of another buffer over the same source, starting from the one at {@code from}, interning and
+     * decoding them as {@link #add} does.  The other buffer must not have interned or decoded anything itself, so that
+     * only the tokens that end up in this buffer are added to the symbol table and constant pool, in order.
+     */
+    void addAll(TokenBuffer<E> other, int from) {
+        checkPositionIndex(from, other.size);
+        checkArgument(other.source == source, "the buffers have different sources");
+        checkArgument(other.symbols == null && other.constants == null, "the tokens have already been interned");
+        if (size + other.size - from > ordinals.length) {
+            grow(Math.max(size + other.size - from, size * 2));
+        }
+        for (int i = from; i < other.size; i++) {
+            add(universe[other.ordinals[i]], other.starts[i], other.ends[i]);
+        }
+    }
+
+    /**
+     * Appends tokens {@code from} (inclusive) to {@code to} (exclusive) of another buffer, moving each one {@code shift}
+     * characters along, as when they come from an earlier version of this buffer's source.
+     */
+    void append(TokenBuffer<E> other, int from, int to, int shift) {
+        checkPositionIndexes(from, to, other.size);
+        checkArgument(other.symbolTable == symbolTable || other.symbols == null, "the buffers have different symbols");
+        checkArgument(other.constantPool == constantPool || other.constants == null,
+                "the buffers have different constant pools");
+        int count = to - from;
+        if (size + count > ordinals.length) {
+            grow(Math.max(size + count, size * 2));
+        }
+        System.arraycopy(other.ordinals, from, ordinals, size, count);
+        System.arraycopy(other.starts, from, starts, size, count);
+        System.arraycopy(other.ends, from, ends, size, count);
+        if (other.symbols != null) {
+            if (symbols == null) {
+                symbols = new int[ordinals.length];
+                Arrays.fill(symbols, -1);
+            }
+            System.arraycopy(other.symbols, from, symbols, size, count);
+        } else if (symbols != null) {
+            Arrays.fill(symbols, size, size + count, -1);
+        }
+        if (other.constants != null) {
+            if (constants == null) {
+                constants = new int[ordinals.length];
+                Arrays.fill(constants, -1);
+            }
+            System.arraycopy(other.constants, from, constants, size, count);
+        } else if (constants != null) {
+            Arrays.fill(constants, size, size + count, -1);
+        }
+        if (shift != 0) {
+            for (int i = size; i < size + count; i++) {
+                starts[i] += shift;
+                ends[i] += shift;
+            }
+        }
+        size += count;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public CharSequence getSource() {
+        return source;
+    }
+
+    @Override
+    public E lexeme(int index) {
+        checkElementIndex(index, size);
+        return universe[ordinals[index]];
+    }
+
+    public int start(int index) {
+        checkElementIndex(index, size);
+        return starts[index];
+    }
+
+    public int end(int index) {
+        checkElementIndex(index, size);
+        return ends[index];
+    }
+
+    /**
+     * @return the index of the first token that ends at or after the offset, or {@link #size()} if there is none
+     */
+    public int firstEndingAtOrAfter(int offset) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (ends[mid] < offset) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return the index of the first token that starts at or after the offset, or {@link #size()} if there is none
+     */
+    public int firstStartingAtOrAfter(int offset) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (starts[mid] < offset) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return the token's start and end packed into a span, as made by {@link SourceFile#span(int, int)}
+     */
+    @Override
+    public long span(int index) {
+        checkElementIndex(index, size);
+        return SourceFile.span(starts[index], ends[index]);
+    }
+
+    /**
+     * @return the id of the token's text in the buffer's {@link SymbolTable}, or -1 if it was not interned
+     */
+    @Override
+    public int symbol(int index) {
+        checkElementIndex(index, size);
+        return (symbols == null) ? -1 : symbols[index];
+    }
+
+    /**
+     * @return the index of the token's value in the buffer's {@link ConstantPool}, or -1 if it was not decoded
+     */
+    @Override
+    public int constant(int index) {
+        checkElementIndex(index, size);
+        return (constants == null) ? -1 : constants[index];
+    }
+
+    @Override
+    public String contents(int index) {
+        int symbol = symbol(index);
+        if (symbol >= 0) {
+            return symbolTable.name(symbol);
+        }
+        return source.subSequence(starts[index], ends[index]).toString();
+    }
+
+    /**
+     * @return the table this buffer interns names in, or {@code null} if it does not intern any
+     */
+    public SymbolTable getSymbolTable() {
+        return symbolTable;
+    }
+
+    /**
+     * @return the pool this buffer decodes literals into, or {@code null} if it does not decode any
+     */
+    public ConstantPool getConstantPool() {
+        return constantPool;
+    }
+
+    @Override
+    public boolean has(int index) {
+        return index < size;
+    }
+
+    @Override
+    public Token<E> get(int index) {
+        int symbol = symbol(index);
+        if (symbol >= 0) {
+            return new Token<E>(universe[ordinals[index]], source, starts[index], ends[index], symbol,
+                    symbolTable.name(symbol));
+        }
+        int constant = constant(index);
+        if (constant >= 0) {
+            return new Token<E>(universe[ordinals[index]], source, starts[index], ends[index], -1, null, constant);
+        }
+        return new Token<E>(universe[ordinals[index]], source, starts[index], ends[index]);
+    }
+
+    /**
+     * Everything is already in memory, and the columns are too cheap to be worth discarding.
+     */
+    @Override
+    public void release(int index) {
+    }
+
+    /**
+     * @return a read-only list view of this buffer, which creates each {@code Token} as it is asked for
+     */
+    public List<Token<E>> asList() {
+        return new TokenList();
+    }
+
+    private final class TokenList extends AbstractList<Token<E>> implements RandomAccess {
+        @Override
+        public Token<E> get(int index) {
+            return TokenBuffer.this.get(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package lexer;
+
+/**
+ * The result of {@link Lexer#relex}: the tokens of the edited text, and which of them differ from before.
+ *
+ * Tokens before {@link #getFrom()} are unchanged.  The {@link #getRemovedCount()} tokens that followed them have been
+ * replaced by {@link #getInsertedCount()} new ones, and every token after those is an old one moved along by the
+ * length of the edit.
+ */
+public final class TokenChange<E extends Enum<E>> {
+    private final TokenBuffer<E> tokens;
+
+    private final int from;
+
+    private final int removedCount;
+
+    private final int insertedCount;
+
+    TokenChange(TokenBuffer<E> tokens, int from, int removedCount, int insertedCount) {
+        this.tokens = tokens;
+        this.from = from;
+        this.removedCount = removedCount;
+        this.insertedCount = insertedCount;
+    }
+
+    /**
+     * @return every token of the edited text, whose source is the edited text itself
+     */
+    public TokenBuffer<E> getTokens() {
+        return tokens;
+    }
+
+    /**
+     * @return the index of the first token that changed, in both the old and the new tokens
+     */
+    public int getFrom() {
+        return from;
+    }
+
+    /**
+     * @return how many of the old tokens, starting at {@link #getFrom()}, were replaced
+     */
+    public int getRemovedCount() {
+        return removedCount;
+    }
+
+    /**
+     * @return how many new tokens, starting at {@link #getFrom()}, replaced them
+     */
+    public int getInsertedCount() {
+        return insertedCount;
+    }
+}
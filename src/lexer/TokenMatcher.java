@@ -0,0 +1,16 @@
+package lexer;
+
+/**
+ * Finds the token at a given position for one particular set of lexer rules.
+ */
+interface TokenMatcher {
+    long NO_MATCH = -1;
+
+    /**
+     * @param input the text being lexed
+     * @param pos   the index at which the token starts
+     * @return {@link #NO_MATCH} if no rule matches, otherwise the index of the matching rule in the upper 32 bits and
+     *         the (exclusive) end of the token in the lower 32 bits
+     */
+    long match(CharSequence input, int pos);
+}
@@ -0,0 +1,48 @@
+package lexer;
+
+/**
+ * Random access to a sequence of tokens that may still be being produced, such as a {@link TokenStream}. Indices
+ * count from the first token of the input.
+ */
+public interface TokenSequence<E extends Enum<E>> {
+    /**
+     * @return whether there is a token at {@code index}, lexing up to it first if necessary
+     */
+    boolean has(int index);
+
+    /**
+     * @return the token at {@code index}, lexing up to it first if necessary
+     * @throws IndexOutOfBoundsException if there is no such token, or if it has already been released
+     */
+    Token<E> get(int index);
+
+    /**
+     * The same as {@code get(index).lexeme}, but without creating the token if the sequence does not hold one.
+     */
+    E lexeme(int index);
+
+    /**
+     * The same as {@code get(index).getSpan()}, but without creating the token if the sequence does not hold one.
+     */
+    long span(int index);
+
+    /**
+     * The same as {@code get(index).getSymbol()}, but without creating the token if the sequence does not hold one.
+     */
+    int symbol(int index);
+
+    /**
+     * The same as {@code get(index).getConstant()}, but without creating the token if the sequence does not hold one.
+     */
+    int constant(int index);
+
+    /**
+     * The same as {@code get(index).getContents()}, but without creating the token if the sequence does not hold one.
+     */
+    String contents(int index);
+
+    /**
+     * Promises that no token before {@code index} will be asked for again, so that the sequence may discard them.
+     */
+    void release(int index);
+}
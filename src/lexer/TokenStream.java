@@ -0,0 +1,252 @@
+package lexer;
+
+import com.google.common.base.Throwables;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.*;
+
+/**
+ * Lexes a {@link Reader} lazily, one token at a time, as the consumer asks for them.
+ *
+ * Only a window of recently read characters is kept, along with a ring buffer of the tokens that have been
+ * produced but not yet released. A consumer that reads with {@link #next()} and {@link #peek(int)} releases tokens as
+ * it goes and so never holds more than its lookahead; one that uses the index-based {@link TokenSequence} methods
+ * keeps everything from the last {@link #release(int)} onwards, and the ring grows to fit if it has to.
+ *
+ * Tokens produced by a stream own their contents, since the characters they came from are discarded. Their start and
+ * end offsets still count from the beginning of the input. As with {@link Lexer#lex(String)}, a character that no rule
+ * matches is reported and ends the stream. An {@link IOException} from the reader is rethrown unchecked.
+ */
+public final class TokenStream<E extends Enum<E>> implements TokenSequence<E> {
+    private static final int DEFAULT_LOOKAHEAD = 16;
+
+    private static final int CHUNK_SIZE = 8192;
+
+    private final Lexer<E> lexer;
+
+    private final Automaton automaton;
+
+    private final Set<E> ignored;
+
+    private final Reader reader;
+
+    /**
+     * The input that has been read but not yet discarded, starting at offset {@link #windowStart} of the input.
+     */
+    private final StringBuilder window = new StringBuilder(CHUNK_SIZE);
+
+    private int windowStart;
+
+    /**
+     * The index within the window of the next token to lex.
+     */
+    private int scanPos;
+
+    private char[] chunk = new char[CHUNK_SIZE];
+
+    private boolean endOfInput;
+
+    private boolean finished;
+
+    private Token<E>[] ring;
+
+    /**
+     * The index of the first token that has not been released.
+     */
+    private int released;
+
+    /**
+     * The number of tokens lexed so far; also the index of the next one.
+     */
+    private int produced;
+
+    /**
+     * The index of the token {@link #next()} will return.
+     */
+    private int cursor;
+
+    TokenStream(Lexer<E> lexer, Automaton automaton, Reader reader, Set<E> ignored) {
+        this.lexer = lexer;
+        this.automaton = automaton;
+        this.reader = reader;
+        this.ignored = ignored;
+        @SuppressWarnings("unchecked")
+        Token<E>[] ring = (Token<E>[]) new Token<?>[DEFAULT_LOOKAHEAD];
+        this.ring = ring;
+    }
+
+    /**
+     * @return the pool into which the stream's lexer decodes literals, or {@code null} if it does not decode any
+     */
+    public ConstantPool getConstantPool() {
+        return lexer.getConstantPool();
+    }
+
+    /**
+     * @param k how far past the next token to look; 0 is the next token itself
+     * @return the token {@code k} places after the cursor, or {@code null} if the input ends first
+     */
+    public Token<E> peek(int k) {
+        checkArgument(k >= 0);
+        return has(cursor + k) ? get(cursor + k) : null;
+    }
+
+    public boolean hasNext() {
+        return has(cursor);
+    }
+
+    /**
+     * Returns the token at the cursor, advances past it and releases it.
+     *
+     * @throws NoSuchElementException if the input has ended
+     */
+    public Token<E> next() {
+        if (!has(cursor)) {
+            throw new NoSuchElementException();
+        }
+        Token<E> token = get(cursor++);
+        release(cursor);
+        return token;
+    }
+
+    @Override
+    public boolean has(int index) {
+        while (produced <= index) {
+            if (!lexNext()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public Token<E> get(int index) {
+        if (index < released || !has(index)) {
+            throw new IndexOutOfBoundsException("no token at index " + index);
+        }
+        return ring[index & (ring.length - 1)];
+    }
+
+    @Override
+    public E lexeme(int index) {
+        return get(index).lexeme;
+    }
+
+    @Override
+    public long span(int index) {
+        return get(index).getSpan();
+    }
+
+    @Override
+    public int symbol(int index) {
+        return get(index).getSymbol();
+    }
+
+    @Override
+    public int constant(int index) {
+        return get(index).getConstant();
+    }
+
+    @Override
+    public String contents(int index) {
+        return get(index).getContents();
+    }
+
+    @Override
+    public void release(int index) {
+        for (int i = released; i < Math.min(index, produced); i++) {
+            ring[i & (ring.length - 1)] = null;
+        }
+        released = Math.max(released, index);
+    }
+
+    /**
+     * Lexes tokens until one that is not ignored has been added to the ring.
+     *
+     * @return {@code false} if the input ended (or could not be lexed) first
+     */
+    private boolean lexNext() {
+        while (!finished) {
+            if (scanPos == window.length() && endOfInput) {
+                finished = true;
+                break;
+            }
+            long match = automaton.match(window, scanPos, endOfInput);
+            int end;
+            E lexeme;
+            if (match == Automaton.NEED_INPUT) {
+                fill();
+                continue;
+            } else if (match != Automaton.NO_MATCH) {
+                end = (int) match;
+                lexeme = lexer.getLexeme((int) (match >>> 32));
+            } else if (lexer.getUnknown() != null) {
+                if (Character.isHighSurrogate(window.charAt(scanPos)) && scanPos + 1 == window.length() && !endOfInput) {
+                    // the rest of the character has not been read yet
+                    fill();
+                    continue;
+                }
+                end = lexer.unknownEnd(window, scanPos);
+                lexeme = lexer.getUnknown();
+            } else {
+                System.err.println("Unknown symbol or pattern at character: " + (windowStart + scanPos)
+                        + " near symbol: '" + window.charAt(scanPos) + "'.");
+                finished = true;
+                break;
+            }
+            if (!ignored.contains(lexeme)) {
+                int symbol = lexer.intern(lexeme, window, scanPos, end);
+                if (symbol >= 0) {
+                    add(new Token<E>(lexeme, null, windowStart + scanPos, windowStart + end, symbol,
+                            lexer.getSymbolTable().name(symbol)));
+                } else {
+                    add(new Token<E>(lexeme, null, windowStart + scanPos, windowStart + end, -1,
+                            window.substring(scanPos, end), lexer.decode(lexeme, window, scanPos, end)));
+                }
+                scanPos = end;
+                return true;
+            }
+            scanPos = end;
+        }
+        return false;
+    }
+
+    private void fill() {
+        window.delete(0, scanPos);
+        windowStart += scanPos;
+        scanPos = 0;
+        // read at least as much again as is already waiting, so that a long token is only rescanned a logarithmic
+        // number of times
+        if (chunk.length < window.length()) {
+            chunk = new char[window.length()];
+        }
+        try {
+            int read = reader.read(chunk);
+            if (read < 0) {
+                endOfInput = true;
+                reader.close();
+            } else {
+                window.append(chunk, 0, read);
+            }
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    private void add(Token<E> token) {
+        if (produced - released == ring.length) {
+            @SuppressWarnings("unchecked")
+            Token<E>[] grown = (Token<E>[]) new Token<?>[ring.length * 2];
+            for (int i = released; i < produced; i++) {
+                grown[i & (grown.length - 1)] = ring[i & (ring.length - 1)];
+            }
+            ring = grown;
+        }
+        ring[produced & (ring.length - 1)] = token;
+        produced++;
+    }
+}
@@ -0,0 +1,77 @@
+package lexer;
+
+import java.util.Arrays;
+
+/**
+ * A side table for the tokens a lexer matches but keeps out of its main {@link TokenBuffer}, such as whitespace and
+ * comments, for tools like formatters and highlighters that need to see them.
+ *
+ * Trivia are indexed on their own, in the order they appear, and each is filed under the index of the main token
+ * that follows it.  So the trivia between tokens {@code i - 1} and {@code i} are those from {@link #leadingFrom(int)
+ * leadingFrom(i)} up to {@link #leadingTo(int) leadingTo(i)}, and those after the last token are filed under the
+ * main buffer's size.
+ */
+public final class Trivia<E extends Enum<E>> {
+    private final TokenBuffer<E> tokens;
+
+    /**
+     * For each trivia token, the index of the main token that follows it.  These never decrease.
+     */
+    private int[] owners = new int[64];
+
+    public Trivia(Class<E> lexemeType, CharSequence source) {
+        this.tokens = new TokenBuffer<E>(lexemeType, source);
+    }
+
+    void add(E lexeme, int start, int end, int owner) {
+        int index = tokens.size();
+        if (index == owners.length) {
+            owners = Arrays.copyOf(owners, index * 2);
+        }
+        owners[index] = owner;
+        tokens.add(lexeme, start, end);
+    }
+
+    /**
+     * @return the trivia themselves, with the same source as the main tokens
+     */
+    public TokenBuffer<E> getTokens() {
+        return tokens;
+    }
+
+    /**
+     * @return the index of the main token that follows the given trivia token
+     */
+    public int owner(int triviaIndex) {
+        tokens.lexeme(triviaIndex);
+        return owners[triviaIndex];
+    }
+
+    /**
+     * @return the index of the first trivia token just before main token {@code tokenIndex}
+     */
+    public int leadingFrom(int tokenIndex) {
+        return firstOwnedFrom(tokenIndex);
+    }
+
+    /**
+     * @return the index just past the last trivia token just before main token {@code tokenIndex}
+     */
+    public int leadingTo(int tokenIndex) {
+        return firstOwnedFrom(tokenIndex + 1);
+    }
+
+    private int firstOwnedFrom(int tokenIndex) {
+        int low = 0;
+        int high = tokens.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (owners[mid] < tokenIndex) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -8,7 +8,7 @@ public final class ArrayAccess extends Expression {
     private final Expression index;
 
     public ArrayAccess(Expression array, Expression index) {
-        super((array.getType() == BuiltInType.INDETERMINATE) ? BuiltInType.INDETERMINATE : ((ArrayType) array.getType()).getElementType());
+        super(elementType(array));
         checkNotNull(array);
         checkNotNull(index);
         checkArgument(index.getType().isIntegral() || index.getType() == BuiltInType.INDETERMINATE);
@@ -17,4 +17,13 @@ public final class ArrayAccess extends Expression {
         this.index = index;
         this.index.attach(this);
     }
+
+    static boolean isIndexable(Expression array) {
+        return array.getType() instanceof ArrayType || array.getType() == BuiltInType.INDETERMINATE;
+    }
+
+    private static ExpressionType elementType(Expression array) {
+        checkArgument(isIndexable(array));
+        return (array.getType() == BuiltInType.INDETERMINATE) ? BuiltInType.INDETERMINATE : ((ArrayType) array.getType()).getElementType();
+    }
 }
@@ -6,7 +6,24 @@
 
 package parser;
 
+import lexer.ConstantPool;
+
+import static com.google.common.base.Preconditions.*;
+
 public final class CompilationUnit extends Statement {
-    public CompilationUnit() {
+    private final ConstantPool constantPool;
+
+    /**
+     * @param constantPool the pool holding the values of the unit's literals
+     */
+    public CompilationUnit(ConstantPool constantPool) {
+        this.constantPool = checkNotNull(constantPool);
+    }
+
+    /**
+     * @return the pool in which the indexes held by the unit's {@link IntegralLiteral}s and {@link StringLiteral}s are
+     */
+    public ConstantPool getConstantPool() {
+        return constantPool;
     }
 }
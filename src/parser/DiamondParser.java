@@ -1,405 +1,566 @@
 package parser;
 
-import com.google.common.collect.ImmutableList;
+import com.google.common.base.Throwables;
 import com.google.common.collect.Lists;
+import lexer.ConstantPool;
 import lexer.DiamondLexer.Lexeme;
+import lexer.SourceFile;
 import lexer.Token;
+import lexer.TokenBuffer;
+import lexer.TokenChange;
+import lexer.TokenSequence;
+import lexer.TokenStream;
 
+import java.util.Collection;
 import java.util.EnumSet;
 import java.util.List;
-import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
+import static com.google.common.base.Preconditions.*;
+
+/**
+ * Parses the tokens of a Diamond source file into a {@link CompilationUnit}, or tells a {@link ParseListener} what
+ * they make up without building one.
+ *
+ * A parser made with {@link #DiamondParser()} keeps no state between parses, since each parse reads its tokens with a
+ * {@link StatementParser} of its own.  One parser can therefore serve any number of threads at once, such as the
+ * workers of a pool, without locking.  A parser made for a {@link TokenStream} parses that stream, once.
+ *
+ * The values of literals are kept in a {@link ConstantPool}, normally the one the lexer decoded them into: a buffer or
+ * stream knows its pool, and a parser can be told the pool a list of tokens was lexed into.  Otherwise each parse
+ * decodes its literals into a new pool.  Either way the pool is {@link CompilationUnit#getConstantPool}.
+ *
+ * A parse that builds a unit is a parse with a listener that builds it, so a tool that only needs to see the unit once,
+ * or only to know that it parses, can skip the tree by passing a listener of its own, such as a {@link ParseAdapter}.
+ *
+ * A parse normally stops at the first error, throwing it.  Given somewhere to put errors, it recovers from them
+ * instead, skipping the statements they are in, so that every error in the unit is found at once.
+ *
+ * Buffers and lists can also be parsed in parallel, a top-level type declaration at a time, with the same result.  And
+ * once a buffer has been parsed, the unit can be brought up to date with an edit to it by parsing again only the
+ * statement the edit falls inside.
+ *
+ * A skeleton parse reads only a unit's declarations, and leaves each method's body to be parsed when it is needed.
+ *
+ * However the input nests, a parse takes time in proportion to the number of tokens, and a bounded amount of stack,
+ * since it keeps what it is inside of on a stack of its own.  So that whatever walks the unit afterwards need not
+ * worry about its depth either, statements, and the brackets of expressions, may only nest as deeply as the parser's
+ * limits allow, {@link #DEFAULT_STATEMENT_NESTING_LIMIT} and {@link #DEFAULT_EXPRESSION_NESTING_LIMIT} unless it was
+ * made {@link #withNestingLimits with others}.  A chain of right-associative or prefix operators is not limited, and
+ * is as deep in the tree as it is long.
+ */
 public final class DiamondParser {
-    private List<Token<Lexeme>> tokens;
+    /**
+     * How many statements may enclose one another, unless a parser is made with other limits.
+     */
+    public static final int DEFAULT_STATEMENT_NESTING_LIMIT = 256;
 
     /**
-     * The index of the <i>last</i> token read within the tokens list.
+     * How many parenthesized expressions, parameters and indexes may enclose one another within a statement, unless a
+     * parser is made with other limits.
      */
-    private int pos;
+    public static final int DEFAULT_EXPRESSION_NESTING_LIMIT = 256;
+
+    private final TokenStream<Lexeme> stream;
+
+    private final ConstantPool constants;
+
+    private final NestingLimits limits;
 
     public DiamondParser() {
+        this((ConstantPool) null);
+    }
+
+    /**
+     * Creates a parser for tokens lexed into the given pool, such as by a {@link lexer.DiamondLexer} made with it.
+     * Lists of tokens are then parsed using the indexes their literals already hold.
+     */
+    public DiamondParser(ConstantPool constants) {
+        this(null, constants, new NestingLimits(DEFAULT_STATEMENT_NESTING_LIMIT, DEFAULT_EXPRESSION_NESTING_LIMIT));
+    }
+
+    /**
+     * Creates a parser that reads its tokens from a stream as it goes, rather than from a list lexed up front. Tokens
+     * are released back to the stream at each statement boundary, so only the statement being parsed is held.
+     *
+     * @param tokens the stream to parse with {@link #parse()}
+     */
+    public DiamondParser(TokenStream<Lexeme> tokens) {
+        this(tokens, tokens.getConstantPool(),
+                new NestingLimits(DEFAULT_STATEMENT_NESTING_LIMIT, DEFAULT_EXPRESSION_NESTING_LIMIT));
+    }
+
+    private DiamondParser(TokenStream<Lexeme> stream, ConstantPool constants, NestingLimits limits) {
+        this.stream = stream;
+        this.constants = constants;
+        this.limits = limits;
+    }
+
+    /**
+     * Creates a parser like this one, but which lets statements and the brackets of expressions nest only as deeply
+     * as given.  A statement or expression nested more deeply is an error, and is reported like any other.
+     *
+     * @param statements  how many statements may enclose one another, counting a top-level type declaration as one
+     * @param expressions how many expressions in brackets of their own, each a parenthesized expression, a parameter
+     *                    or an index, may enclose one another within a statement; the operands of operators do not
+     *                    count, however long a chain of them is
+     */
+    public DiamondParser withNestingLimits(int statements, int expressions) {
+        return new DiamondParser(stream, constants, new NestingLimits(statements, expressions));
+    }
+
+    /**
+     * Parses the stream this parser was created with.
+     */
+    public CompilationUnit parse() throws ParseException {
+        checkState(stream != null, "this parser was not created with a token stream");
+        return parse(stream, literals(constants));
+    }
+
+    /**
+     * Parses the stream this parser was created with, telling a listener what it makes up.
+     */
+    public void parse(ParseListener listener) throws ParseException {
+        checkState(stream != null, "this parser was not created with a token stream");
+        parse(stream, literals(constants), checkNotNull(listener));
+    }
+
+    /**
+     * Parses the stream this parser was created with, recovering from errors.
+     *
+     * @see #parse(TokenBuffer, Collection)
+     */
+    public CompilationUnit parse(Collection<? super ParseException> errors) {
+        checkState(stream != null, "this parser was not created with a token stream");
+        return parse(stream, literals(constants), errors);
     }
 
+    /**
+     * Parses a list of tokens, which must not be modified until parsing is finished.
+     */
     public CompilationUnit parse(List<Token<Lexeme>> tokens) throws ParseException {
-        this.tokens = ImmutableList.copyOf(tokens);
-        this.pos = -1;
+        return parse(new ListSequence(tokens), literals(constants));
+    }
 
-        CompilationUnit compilationUnit = new CompilationUnit();
-        while (pos < tokens.size()) {
-            parse(compilationUnit, false);
-        }
-        return compilationUnit;
+    /**
+     * Parses a list of tokens as {@link #parse(List)} does, telling a listener what they make up.
+     */
+    public void parse(List<Token<Lexeme>> tokens, ParseListener listener) throws ParseException {
+        parse(new ListSequence(tokens), literals(constants), checkNotNull(listener));
     }
 
-    /*
-     * As this method moves through the token stream, it maintains buffer and modifiers, two collections that provide
-     * some context for subsequent statements and expressions. buffer is a list of tokens which do not form a statement
-     * and thus must constitute an expression, which will be parsed when that expression is terminated by a semicolon.
-     * It must be empty after every loop iteration other than an iteration which adds to the buffer; this is kept track
-     * of with the bufferAllowed flag. modifiers similarly stores previous modifiers, which may be applied to either a
-     * future statement (method or type declaration) or a future expression (variable declaration). It has a similar
-     * flag, as it must also be kept empty unless the current token was immediately preceded by other modifiers.
+    /**
+     * Parses a list of tokens, recovering from errors.
+     *
+     * @see #parse(TokenBuffer, Collection)
      */
-    private void parse(Statement context, boolean blockExpected) throws ParseException {
-        boolean inBlock = false;
-        List<Token<Lexeme>> buffer = Lists.newArrayList();
-        Set<Modifier> modifiers = EnumSet.noneOf(Modifier.class);
-        boolean modifiersAllowed = false; // set to true if we run into a modifier
-        while (pos < tokens.size()) {
-            Token<Lexeme> token = tokens.get(++pos);
-            boolean bufferAllowed = false; // provisionally, unless we add a token to the buffer
-
-            // check to see if this is a modifier
-            if (Modifier.isModifier(token.lexeme)) {
-                modifiers.add(Modifier.fromLexeme(token.lexeme));
-                modifiersAllowed = true;
-                continue;
-            }
+    public CompilationUnit parse(List<Token<Lexeme>> tokens, Collection<? super ParseException> errors) {
+        return parse(new ListSequence(tokens), literals(constants), errors);
+    }
 
-            // everything else we need to check for
-            Expression condition; // since we need it in multiple cases
-            switch (token.lexeme) {
-                // control characters
-                case LEFT_BRACE:
-                    if (blockExpected) {
-                        inBlock = true;
-                        blockExpected = false;
-                        break;
-                    } else {
-                        throw new ParseException("unexpected '{'");
-                    }
-                case RIGHT_BRACE:
-                    if (!buffer.isEmpty() || !modifiers.isEmpty()) {
-                        throw new ParseException("expected statement or ';'");
-                    } else if (inBlock) {
-                        return;
-                    } else {
-                        throw new ParseException("unexpected '}'");
-                    }
-                case SEMICOLON:
-                    // this means that everything in buffer constitutes an expression
-                    // expressions can have modifiers too, so insert them back into the buffer since we took them out
-                    for (Modifier modifier : modifiers) {
-                        switch (modifier) {
-                            case PRIVATE: buffer.add(0, new Token<>(Lexeme.PRIVATE, "private")); break;
-                            case STATIC: buffer.add(0, new Token<>(Lexeme.STATIC, "static")); break;
-                            default: throw new UnsupportedOperationException("unknown modifier");
-                        }
-                    }
-                    List<Expression> expressions = new ExpressionParser().parseExpression(buffer);
-                    if (expressions.size() > 1) {
-                        throw new ParseException("expected ';'");
-                    } else if (!expressions.isEmpty()) {
-                        expressions.get(0).attach(context);
-                    }
-                    buffer.clear();
-                    modifiers.clear();
-                    break;
+    /**
+     * Parses the tokens held in a buffer, reading lexemes straight out of it wherever the token text is not needed.
+     */
+    public CompilationUnit parse(TokenBuffer<Lexeme> tokens) throws ParseException {
+        return parse(tokens, literals(tokens.getConstantPool()));
+    }
 
-                // statements not followed by a block; these must all be followed by a semicolon
-                case BREAK:
-                    if (tokens.get(++pos).lexeme != Lexeme.SEMICOLON) {
-                        throw new ParseException("expected ';'");
-                    }
-                    new BreakStatement(context);
-                    break;
-                case CONTINUE:
-                    if (tokens.get(++pos).lexeme != Lexeme.SEMICOLON) {
-                        throw new ParseException("expected ';'");
-                    }
-                    new ContinueStatement(context);
-                    break;
-                case DELETE:
-                    // there must be an expression, specifically a variable reference, immediately to the right
-                    Expression identifierReference = getAdjacentExpression(false);
-                    if (!(identifierReference instanceof IdentifierReference)) {
-                        throw new ParseException("expected variable reference");
-                    }
-                    if (tokens.get(++pos).lexeme != Lexeme.SEMICOLON) {
-                        throw new ParseException("expected ';'");
-                    }
-                    new DeleteStatement(context, (IdentifierReference) identifierReference);
-                    break;
-                case RETURN:
-                    // there are two variants, with and without a value
-                    if (tokens.get(pos + 1).lexeme == Lexeme.SEMICOLON) {
-                        // no value
-                        new ReturnStatement(context);
-                    } else {
-                        // with value
-                        Expression returnValue = getAdjacentExpression(false);
-                        new ReturnStatement(context, returnValue);
-                    }
-                    if (tokens.get(++pos).lexeme != Lexeme.SEMICOLON) {
-                        throw new ParseException("expected ';'");
-                    }
-                    break;
+    /**
+     * Parses the tokens held in a buffer, recovering from errors: each statement with an error, including any
+     * character the lexer did not know, is skipped and replaced in the unit by an {@link ErrorStatement}, and the
+     * parse carries on after it.  Only the first error in a statement is found.
+     *
+     * @param errors where to put the errors, in the order they are found, each with its position
+     * @return the unit, which has no errors if none were added to {@code errors}
+     */
+    public CompilationUnit parse(TokenBuffer<Lexeme> tokens, Collection<? super ParseException> errors) {
+        return parse(tokens, literals(tokens.getConstantPool()), errors);
+    }
 
-                // statements followed by a block (or a single statement or expression), but without modifiers
-                case DO:
-                    int doIndex = pos; // index of the "do" keyword
-                    int whileIndex = findDoWhile(); // index of the "while" keyword
-                    int endIndex; // index of the semicolon at the end
-                    pos = whileIndex;
-                    condition = getAdjacentExpression(true);
-                    if (tokens.get(++pos).lexeme != Lexeme.SEMICOLON) {
-                        throw new ParseException("expected ';'");
-                    }
-                    endIndex = pos;
-                    Statement doLoop = new DoLoop(context, condition);
-                    pos = doIndex;
-                    parse(doLoop, true);
-                    pos = endIndex;
-                    break;
-                case ELSE:
-                    Statement elseStatement = new ElseStatement(context);
-                    parse(elseStatement, true);
-                    break;
-                case FOR:
-                    // TODO: this one is trickier, so do it later
-                    break;
-                case IF:
-                    condition = getAdjacentExpression(true);
-                    Statement ifStatement = new IfStatement(context, condition);
-                    parse(ifStatement, true);
-                    break;
-                case REPEAT:
-                    Expression repeatCount = getAdjacentExpression(true);
-                    Statement repeatLoop = new RepeatLoop(context, repeatCount);
-                    parse(repeatLoop, true);
-                    break;
-                case SWITCH:
-                    Expression value = getAdjacentExpression(true);
-                    Statement switchStatement = new SwitchStatement(context, value);
-                    parse(switchStatement, true);
-                    break;
-                case WHILE:
-                    condition = getAdjacentExpression(true);
-                    Statement whileLoop = new WhileLoop(context, condition);
-                    parse(whileLoop, true);
-                    break;
+    /**
+     * Parses the tokens held in a buffer as {@link #parse(TokenBuffer)} does, telling a listener what they make up.
+     */
+    public void parse(TokenBuffer<Lexeme> tokens, ParseListener listener) throws ParseException {
+        parse(tokens, literals(tokens.getConstantPool()), checkNotNull(listener));
+    }
 
-                // statements preceded by modifiers and followed by a block
-                case CLASS:
-                    Token<Lexeme> typeName = tokens.get(++pos);
-                    if (typeName.lexeme != Lexeme.IDENTIFIER) {
-                        throw new ParseException("expected identifier");
-                    } else if (!(context instanceof CompilationUnit)) {
-                        throw new ParseException("nested types are not yet supported");
-                    }
-                    Statement typeDeclaration = new TypeDeclaration((CompilationUnit) context, typeName.contents, modifiers);
-                    parse(typeDeclaration, true);
-                    modifiers.clear();
-                    break;
-                case IDENTIFIER:
-                    // we're checking for method declarations, but identifiers can appear in other contexts
-                    Token<Lexeme> rightToken = tokens.get(pos + 1);
-                    if (rightToken.lexeme == Lexeme.LEFT_PAREN) {
-                        // assume we're dealing with a method declaration for now
-                        String name = token.contents;
-                        ExpressionType returnType = findTypeTokenEndingAt(pos - 1);
-                        if (returnType != null) {
-                            pos += 1;
-                            List<Expression> adjacentExpressions = getAdjacentExpressions(true);
-                            List<VariableDeclaration> parameters = Lists.newArrayListWithCapacity(adjacentExpressions.size());
-                            for (Expression adjacentExpression : adjacentExpressions) {
-                                if (adjacentExpression instanceof VariableDeclaration) {
-                                    parameters.add((VariableDeclaration) adjacentExpression);
-                                } else {
-                                    throw new ParseException("expected variable declaration");
-                                }
-                            }
-                            if (!(context instanceof TypeDeclaration)) {
-                                throw new ParseException("methods may only be declared directly under a type declaration");
-                            }
-                            Statement methodDeclaration = new MethodDeclaration((TypeDeclaration) context, name, returnType, modifiers, parameters);
-                            parse(methodDeclaration, true);
-                            break;
-                        }
-                    }
-                    // this is deliberately at the end so that it drops down to default
-
-                // everything else, which basically means tokens that are part of an expression
-                default:
-                    buffer.add(token);
-                    bufferAllowed = true;
-            }
+    /**
+     * Parses a list of tokens as {@link #parseSkeleton(TokenBuffer)} does.  The list must not be modified while any
+     * method's body is still to be parsed.
+     */
+    public CompilationUnit parseSkeleton(List<Token<Lexeme>> tokens) throws ParseException {
+        return parseSkeleton(new ListSequence(tokens), literals(constants));
+    }
 
-            if (!bufferAllowed && !buffer.isEmpty()) {
-                // if the buffer is not empty but we encountered a statement, throw an exception
-                throw new ParseException(buffer.size() + " unexpected token(s) preceding statement");
-            } else if (!modifiersAllowed && !modifiers.isEmpty()) {
-                // if there are modifiers that are unaccounted for
-                throw new ParseException("unexpected modifiers preceding statement: " + modifiers);
-            } else if (!bufferAllowed && blockExpected) {
-                // we were expecting a block, and we got a single statement or expression instead
-                // this is completely valid (think else-if), but this "block" is now complete
-                return;
-            } else {
-                modifiersAllowed = false;
-            }
-        }
-        throw new ParseException("expected '}'");
+    /**
+     * Parses the skeleton of the unit held in a buffer: its type and method declarations, with their modifiers, return
+     * types and parameters, but not what is in the methods' bodies, which is only matched brace to brace and kept as
+     * the tokens it is made of.  Each body is parsed by {@link MethodDeclaration#parseBody}, once, whichever thread
+     * asks for it first; until then the method's only children are its parameters.  Once every body is parsed, the
+     * unit is the same as {@link #parse(TokenBuffer)} would give.
+     *
+     * This suits tools that only need the declarations, such as finding the symbols each file of a workspace declares,
+     * which then parse and keep few of the bodies.  The only error in a body found here is a brace that is never
+     * closed; every other is put off until the body is parsed, and thrown by {@code parseBody}: a syntax error, a
+     * character the lexer did not know, a {@code break} or {@code continue} outside a loop, a value returned that does
+     * not match the method's return type or any other part a node will not take, and statements or expressions nested
+     * more deeply than the limits allow.
+     */
+    public CompilationUnit parseSkeleton(TokenBuffer<Lexeme> tokens) throws ParseException {
+        return parseSkeleton(tokens, literals(tokens.getConstantPool()));
+    }
+
+    /**
+     * Parses a list of tokens as {@link #parse(List)} does, but parses its top-level type declarations in parallel on
+     * the given pool.
+     *
+     * @see #parseInParallel(TokenBuffer, ForkJoinPool)
+     */
+    public CompilationUnit parseInParallel(List<Token<Lexeme>> tokens, ForkJoinPool pool) throws ParseException {
+        return parseInParallel(new ListSequence(tokens), literals(constants), pool);
     }
 
     /**
-     * Searches for the {@code while} keyword following a {@code do} block, and returns the index of the {@code while}
-     * token within {@code tokens}. It is expected that {@code pos} is set the the index of the {@code do} keyword which
-     * triggered this search. There are two valid locations for the keyword:
-     * <ul>
-     * <li>Immediately following a curly-brace-delimited block, which itself immediately follows {@code do}</li>
-     * <li>Immediately following a semicolon, which itself immediately follows {@code do}</li>
-     * </ul>
+     * Parses the tokens held in a buffer on the given pool, a top-level type declaration at a time, with the same
+     * result as {@link #parse(TokenBuffer)}, or the same exception.
      *
-     * @return the index for the {@code while} keyword corresponding to the {@code do} token at {@code pos}
-     * @throws ParseException if the {@code while} keyword is missing; if neither {@code &#123;} nor {@code ;}
-     *                        immediately follows {@code do}; or if the token stream ends without the appropriate number
-     *                        of {@code &#125;} tokens
+     * A quick pass over the tokens first matches braces to find where each type declaration's body ends.  The
+     * declarations are then made, in source order, and their bodies parsed at once, each on its own; if several have
+     * errors, the first is the one thrown.  A unit that is not just a series of type declarations, or has only one, is
+     * parsed sequentially.
      */
-    private int findDoWhile() throws ParseException {
-        int depth = 0;
-        boolean expectingWhile = false; // whether the next token should be the "while" we are looking for
-        // note that we need our own index here, because we don't want to modify the global one
-        // i has the same meaning as pos in this context, namely, the index of the last token read
-        int i = pos;
-        while (i < tokens.size()) {
-            Token<Lexeme> token = tokens.get(++i);
-            if (expectingWhile) {
-                if (token.lexeme != Lexeme.WHILE) {
-                    throw new ParseException("expected \"while\"");
-                } else {
-                    return i;
+    public CompilationUnit parseInParallel(TokenBuffer<Lexeme> tokens, ForkJoinPool pool) throws ParseException {
+        return parseInParallel(tokens, literals(tokens.getConstantPool()), pool);
+    }
+
+    /**
+     * Brings a unit up to date with an edit to the tokens it was parsed from, by parsing again only the innermost
+     * statement the edit falls inside, such as a method or type declaration, and keeping every other node.  The unit
+     * is the same as parsing the edited tokens from scratch would give, and so is the exception if they do not parse;
+     * the unit is then left as it was.
+     *
+     * Unless the whole unit has to be parsed again, it is updated in place, so it must not be in use elsewhere
+     * meanwhile.  Each statement enclosing the edit is tried in turn, from the innermost out, until one still parses
+     * as a single statement ending where it did before; if none does, or the edit is not inside any statement, the
+     * whole unit is parsed again.
+     *
+     * A method of a {@linkplain #parseSkeleton(TokenBuffer) skeleton} whose body has not been parsed is parsed again
+     * whole if the edit is in its body, and otherwise keeps its body for later: the nodes parsed from it are moved
+     * along with the method, since their offsets are in the text the method was parsed from.
+     *
+     * @param compilationUnit the unit parsed from {@code previous}
+     * @param previous        the tokens before the edit
+     * @param change          the edit, as made by {@link lexer.DiamondLexer#relex}
+     * @return the unit, and which statement was replaced
+     */
+    public TreeChange reparse(CompilationUnit compilationUnit, TokenBuffer<Lexeme> previous,
+                              TokenChange<Lexeme> change) throws ParseException {
+        TokenBuffer<Lexeme> tokens = change.getTokens();
+        int after = change.getFrom() + change.getRemovedCount();
+        if (after < previous.size() && tokens.getConstantPool() == compilationUnit.getConstantPool()) {
+            // the edit is between these offsets of the old text, and the rest of the text after it moves by shift
+            int editStart = previous.start(change.getFrom());
+            int editEnd = previous.start(after);
+            int shift = tokens.getSource().length() - previous.getSource().length();
+            LiteralDecoder literals = literals(tokens.getConstantPool());
+            List<Statement> enclosing = findEnclosingStatements(compilationUnit, editStart, editEnd);
+            for (int i = enclosing.size() - 1; i >= 0; i--) {
+                Statement statement = enclosing.get(i);
+                int start = SourceFile.spanStart(statement.getSpan());
+                int end = SourceFile.spanEnd(statement.getSpan());
+                Statement replacement = reparseStatement(tokens, literals, statement,
+                        tokens.firstStartingAtOrAfter(start), tokens.firstEndingAtOrAfter(end + shift));
+                if (replacement != null) {
+                    moveSpans(compilationUnit, end, shift, replacement);
+                    return new TreeChange(compilationUnit, statement, replacement);
                 }
             }
-            switch (token.lexeme) {
-                case LEFT_BRACE:
-                    depth++;
-                    break;
-                case RIGHT_BRACE:
-                    depth--;
-                    break;
-                case SEMICOLON:
-                    break;
-                default:
-                    if ((i - 1) == pos) {
-                        // the first token following "do" must be either a brace or semicolon
-                        throw new ParseException("expected '{' or ';'");
-                    }
-            }
-            if (depth == 0) {
-                expectingWhile = true;
-            }
         }
-        throw new ParseException("expected '}'");
+        CompilationUnit replacement = parse(tokens);
+        return new TreeChange(replacement, compilationUnit, replacement);
     }
 
-    private ExpressionType findTypeTokenEndingAt(int pos) throws ParseException {
-        Token<Lexeme> token = tokens.get(pos);
-        switch (token.lexeme) {
-            case BOOLEAN:
-                return BuiltInType.BOOLEAN;
-            case SHORT:
-                return BuiltInType.SHORT;
-            case INT:
-                return BuiltInType.INT;
-            case LONG:
-                return BuiltInType.LONG;
-            case IDENTIFIER:
-                return new UserDefinedType(token.contents);
-            case RIGHT_BRACKET:
-                ExpressionType elementType = findTypeTokenEndingAt(pos - 2);
-                if (elementType != null && tokens.get(pos - 1).lexeme == Lexeme.LEFT_BRACKET) {
-                    return new ArrayType(elementType);
-                }
-            default:
-                return null;
+    private CompilationUnit parse(TokenSequence<Lexeme> tokens, LiteralDecoder literals)
+            throws ParseException {
+        TreeBuilder builder = new TreeBuilder();
+        parse(tokens, literals, builder);
+        return builder.getCompilationUnit();
+    }
+
+    private CompilationUnit parseSkeleton(TokenSequence<Lexeme> tokens, LiteralDecoder literals)
+            throws ParseException {
+        TreeBuilder builder = new TreeBuilder();
+        StatementParser.skeleton(tokens, literals, limits, builder).parseCompilationUnit();
+        return builder.getCompilationUnit();
+    }
+
+    private CompilationUnit parse(TokenSequence<Lexeme> tokens, LiteralDecoder literals,
+                                  Collection<? super ParseException> errors) {
+        TreeBuilder builder = new TreeBuilder(errors);
+        try {
+            parse(tokens, literals, builder);
+        } catch (ParseException e) {
+            throw new AssertionError("a recovering parse threw " + e);
         }
+        return builder.getCompilationUnit();
     }
 
-    /**
-     * <p>
-     *     Returns the single expression adjacent to the current position, beginning immediately following {@code pos}
-     *     (since {@code pos} is the index of the <i>last</i> token read). If no expression is found, or if there are
-     *     multiple comma-separated expressions, {@code ParseException} will be thrown. This method has two variants,
-     *     which are distinguished by the value of the {@code boolean} parameter.
-     * </p>
-     * <p>
-     *     If {@code requiresParentheses} is {@code true}, the method will check that the expression is surrounded by a
-     *     pair of parentheses; a {@code ParseException} is thrown if they are missing. This variant is used to parse
-     *     the {@code if}, {@code do}, {@code while}, {@code repeat}, and {@code switch} statements, all of which
-     *     require parentheses around a condition or value. The expression is deemed to have ended when the final
-     *     enclosing right parenthesis is reached.
-     * </p>
-     * <p>
-     *     If {@code requiresParentheses} is {@code false}, the method will not check for parentheses around the
-     *     expression, though they may still be used, as in any other expression. This variant is used to parse the
-     *     {@code delete} and {@code return} statements. The expression is deemed to have ended when a semicolon is
-     *     reached.
-     * </p>
-     *
-     * @param requiresParentheses whether the adjacent expression must be contained in a pair of parentheses
-     * @return the single expression adjacent to the current position
-     * @throws ParseException if multiple or no adjacent expressions are found; or, if {@code requiresParentheses} is
-     *                        {@code true} and either the starting or ending parenthesis around the expression is
-     *                        missing
-     * @see #getAdjacentExpressions(boolean)
-     */
-    private Expression getAdjacentExpression(boolean requiresParentheses) throws ParseException {
-        List<Expression> expressions = getAdjacentExpressions(requiresParentheses);
-        if (expressions.size() != 1) {
-            throw new ParseException("expected a single expression; saw " + expressions.size());
-        } else {
-            return expressions.get(0);
+    private void parse(TokenSequence<Lexeme> tokens, LiteralDecoder literals, ParseListener listener)
+            throws ParseException {
+        new StatementParser(tokens, literals, limits, listener).parseCompilationUnit();
+    }
+
+    private CompilationUnit parseInParallel(TokenSequence<Lexeme> tokens, LiteralDecoder literals, ForkJoinPool pool)
+            throws ParseException {
+        List<Integer> types = findTypeDeclarations(tokens, literals);
+        if (types == null || types.size() < 2) {
+            return parse(tokens, literals);
+        }
+
+        CompilationUnit compilationUnit = new CompilationUnit(literals.getPool());
+        final List<TypeBody> bodies = Lists.newArrayListWithCapacity(types.size());
+        for (int index : types) {
+            TypeDeclaration type = new TypeDeclaration(compilationUnit, tokens.contents(index + 1),
+                    EnumSet.noneOf(Modifier.class));
+            bodies.add(new TypeBody(tokens, literals, limits, type, index));
+        }
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(bodies);
+            }
+        });
+
+        for (TypeBody body : bodies) {
+            if (body.failure != null) {
+                Throwables.propagateIfInstanceOf(body.failure, ParseException.class);
+                throw Throwables.propagate(body.failure);
+            }
         }
+        return compilationUnit;
     }
 
     /**
-     * Identical to {@link #getAdjacentExpression(boolean)}, but this method may return any number of adjacent
-     * expressions in a list, including zero expressions, without throwing a {@code ParseException}.
+     * Matches braces to split the tokens into top-level type declarations, each {@code class}, a name, and a body in
+     * braces.  Since expressions can not contain braces, a body ends at the brace matching the one it begins with.  The
+     * literals are reserved in the pool on the way, so that they are numbered in source order.
      *
-     * @param requiresParentheses whether the adjacent expressions must be contained in a pair of parentheses
-     * @return a list of zero or more expressions adjacent to the current position
-     * @throws ParseException if {@code requiresParentheses} is {@code true} and either the starting or ending
-     *                        parenthesis around the expression is missing
-     * @see #getAdjacentExpression(boolean)
+     * @return the index of each declaration's {@code class} token, or {@code null} if there is anything at the top
+     *         level but type declarations and empty statements
      */
-    private List<Expression> getAdjacentExpressions(boolean requiresParentheses) throws ParseException {
-        List<Token<Lexeme>> expressionTokens = null;
-        int beginIndex = (pos + 1);
-        boolean done = false;
-        if (requiresParentheses) {
-            if (tokens.get(++pos).lexeme != Lexeme.LEFT_PAREN) {
-                throw new ParseException("expected '('");
+    private static List<Integer> findTypeDeclarations(TokenSequence<Lexeme> tokens, LiteralDecoder literals) {
+        List<Integer> types = Lists.newArrayList();
+        int index = 0;
+        while (tokens.has(index)) {
+            if (tokens.lexeme(index) == Lexeme.SEMICOLON) {
+                index++;
+                continue;
+            } else if (tokens.lexeme(index) != Lexeme.CLASS || !tokens.has(index + 2)
+                    || tokens.lexeme(index + 1) != Lexeme.IDENTIFIER || tokens.lexeme(index + 2) != Lexeme.LEFT_BRACE) {
+                return null;
             }
-            int depth = 1;
-            while (pos < tokens.size() && !done) {
-                switch (tokens.get(++pos).lexeme) {
-                    case LEFT_PAREN:
+            types.add(index);
+            index += 2;
+            int depth = 0;
+            do {
+                if (!tokens.has(index)) {
+                    return null;
+                }
+                switch (tokens.lexeme(index)) {
+                    case LEFT_BRACE:
                         depth++;
                         break;
-                    case RIGHT_PAREN:
+                    case RIGHT_BRACE:
                         depth--;
                         break;
+                    case INTEGRAL_LITERAL: case STRING_LITERAL:
+                        literals.reserve(tokens, index);
                 }
-                if (depth == 0) {
-                    expressionTokens = tokens.subList(beginIndex, pos + 1);
-                    done = true;
+                index++;
+            } while (depth > 0);
+        }
+        return types;
+    }
+
+    /**
+     * Parses a statement again, from its first token, into the parent it was parsed into before, and puts the new
+     * statement in the old one's place.  The parent is left as it was unless exactly one statement is parsed, ending
+     * where the old one did, since otherwise the parent's other statements may no longer be the same.
+     *
+     * @param start the index of the statement's first token, including its modifiers
+     * @param end   the index at which the statement must end
+     * @return the new statement, or {@code null} if the tokens no longer make up a single statement ending at
+     *         {@code end}
+     * @throws ParseException if the statement no longer parses, in which case a parse of the whole unit would fail
+     *                        in the same way
+     */
+    private Statement reparseStatement(TokenSequence<Lexeme> tokens, LiteralDecoder literals, Statement old, int start,
+                                       int end) throws ParseException {
+        Statement parent = old.getParent();
+        int count = parent.children().size();
+        TreeBuilder builder = new TreeBuilder(parent, literals.getPool());
+        int last;
+        try {
+            last = new StatementParser(tokens, literals, limits, builder).parseStatement(start, parent);
+        } catch (ParseException | RuntimeException e) {
+            parent.removeChildren(count);
+            throw e;
+        }
+        List<? extends Node> children = parent.children();
+        if (last != end || children.size() != count + 1 || !(children.get(count) instanceof Statement)) {
+            parent.removeChildren(count);
+            return null;
+        }
+        Statement statement = (Statement) children.get(count);
+        parent.replaceChild(old);
+        return statement;
+    }
+
+    /**
+     * @return the statements whose first token is before {@code editStart} and whose last token ends after
+     *         {@code editEnd}, outermost first
+     */
+    private static List<Statement> findEnclosingStatements(Statement statement, int editStart, int editEnd) {
+        List<Statement> enclosing = Lists.newArrayList();
+        while (statement != null) {
+            Statement parent = statement;
+            statement = null;
+            for (Node child : parent.children()) {
+                long span = child.getSpan();
+                if (child instanceof Statement && span != SourceFile.NO_SPAN && SourceFile.spanStart(span) < editStart
+                        && SourceFile.spanEnd(span) > editEnd) {
+                    statement = (Statement) child;
+                    enclosing.add(statement);
+                    break;
                 }
             }
-        } else {
-            while (pos < tokens.size() && !done) {
-                switch (tokens.get(++pos).lexeme) {
-                    case SEMICOLON:
-                        expressionTokens = tokens.subList(beginIndex, pos);
-                        done = true;
-                        break;
-                }
+        }
+        return enclosing;
+    }
+
+    /**
+     * Moves the spans of the nodes kept by a reparse to where they are in the edited text: those which start at or
+     * after {@code end}, where the replaced statement ended, by {@code shift}, and the ends of those enclosing it.
+     * Only the enclosing nodes and their children are visited, since a node after the edit is {@linkplain Node#move
+     * moved} with everything in it at once.  The replacement, whose spans are already those of the edited text, is
+     * anchored where it now is.
+     */
+    private static void moveSpans(Node node, int end, int shift, Statement replacement) {
+        long span = node.getSpan();
+        if (span != SourceFile.NO_SPAN) {
+            if (SourceFile.spanStart(span) >= end) {
+                node.move(shift);
+                return;
+            } else if (SourceFile.spanEnd(span) >= end) {
+                node.extend(shift);
+            } else {
+                // it, and everything in it, is before the edit
+                return;
+            }
+        }
+        for (Node child : node.children()) {
+            if (child == replacement) {
+                replacement.anchor();
+            } else {
+                moveSpans(child, end, shift, replacement);
             }
         }
-        if (expressionTokens == null) {
-            char expected = (requiresParentheses ? ')' : ';');
-            throw new ParseException(String.format("expected '%c'", expected));
+    }
+
+    /**
+     * Parses the body of one type declaration of a parallel parse, keeping what went wrong for the parse to throw in
+     * order.
+     */
+    @SuppressWarnings("serial") // tasks are never serialized
+    private static final class TypeBody extends RecursiveAction {
+        private final TokenSequence<Lexeme> tokens;
+
+        private final LiteralDecoder literals;
+
+        private final NestingLimits limits;
+
+        private final TypeDeclaration type;
+
+        /**
+         * The index of the type's {@code class} token, which its name and body follow.
+         */
+        private final int first;
+
+        private Exception failure;
+
+        private TypeBody(TokenSequence<Lexeme> tokens, LiteralDecoder literals, NestingLimits limits,
+                         TypeDeclaration type, int first) {
+            this.tokens = tokens;
+            this.literals = literals;
+            this.limits = limits;
+            this.type = type;
+            this.first = first;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                TreeBuilder builder = new TreeBuilder(type, literals.getPool());
+                int last = new StatementParser(tokens, literals, limits, builder).parseTypeBody(first + 2);
+                type.setSpan(SourceFile.union(tokens.span(first), tokens.span(last)));
+            } catch (ParseException | RuntimeException e) {
+                failure = e;
+            }
+        }
+    }
+
+    /**
+     * @param lexedInto the pool the tokens' literals were decoded into, or {@code null} if it is not known
+     */
+    private static LiteralDecoder literals(ConstantPool lexedInto) {
+        return (lexedInto != null) ? new LiteralDecoder(lexedInto, true) : new LiteralDecoder(new ConstantPool(), false);
+    }
+
+    private static final class ListSequence implements TokenSequence<Lexeme> {
+        private final List<Token<Lexeme>> tokens;
+
+        private ListSequence(List<Token<Lexeme>> tokens) {
+            this.tokens = tokens;
+        }
+
+        @Override
+        public boolean has(int index) {
+            return index < tokens.size();
+        }
+
+        @Override
+        public Token<Lexeme> get(int index) {
+            return tokens.get(index);
+        }
+
+        @Override
+        public Lexeme lexeme(int index) {
+            return tokens.get(index).lexeme;
+        }
+
+        @Override
+        public long span(int index) {
+            return tokens.get(index).getSpan();
+        }
+
+        @Override
+        public int symbol(int index) {
+            return tokens.get(index).getSymbol();
+        }
+
+        @Override
+        public int constant(int index) {
+            return tokens.get(index).getConstant();
+        }
+
+        @Override
+        public String contents(int index) {
+            return tokens.get(index).getContents();
+        }
+
+        @Override
+        public void release(int index) {
         }
-        return new ExpressionParser().parseExpression(expressionTokens);
     }
 }
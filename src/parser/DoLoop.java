@@ -3,10 +3,23 @@ package parser;
 import static com.google.common.base.Preconditions.*;
 
 public final class DoLoop extends Statement {
-    private final Expression condition;
+    private Expression condition;
 
     public DoLoop(Statement parent, Expression condition) throws ParseException {
+        this(parent);
+        setCondition(condition);
+    }
+
+    /**
+     * Creates a loop whose condition has not been parsed yet, since it follows the body; it must be set with
+     * {@link #setCondition} once it has been.
+     */
+    DoLoop(Statement parent) throws ParseException {
         super(parent);
+    }
+
+    void setCondition(Expression condition) {
+        checkState(this.condition == null, "the condition has already been set");
         checkNotNull(condition);
         checkArgument(condition.getType() == BuiltInType.BOOLEAN || condition.getType() == BuiltInType.INDETERMINATE);
         this.condition = condition;
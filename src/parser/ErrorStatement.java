@@ -0,0 +1,21 @@
+package parser;
+
+import static com.google.common.base.Preconditions.*;
+
+/**
+ * Stands in for a statement that could not be parsed, in a unit parsed with recovery from errors.  Its span covers
+ * the tokens that were skipped.
+ */
+public final class ErrorStatement extends Statement {
+    private final ParseException error;
+
+    public ErrorStatement(Statement parent, ParseException error) throws ParseException {
+        super(parent);
+        checkNotNull(error);
+        this.error = error;
+    }
+
+    public ParseException getError() {
+        return error;
+    }
+}
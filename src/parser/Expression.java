@@ -32,6 +32,11 @@ public abstract class Expression extends Node {
         children.add(child);
     }
 
+    @Override
+    final List<Expression> children() {
+        return children;
+    }
+
     public void attach(Statement parent) {
         checkNotNull(parent);
         checkState(this.parent == null);
@@ -46,6 +51,11 @@ public abstract class Expression extends Node {
         this.parent = parent;
     }
 
+    @Override
+    final Node parent() {
+        return parent;
+    }
+
     public ExpressionType getType() {
         return type;
     }
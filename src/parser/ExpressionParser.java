@@ -1,288 +1,543 @@
 package parser;
 
-import com.google.common.collect.*;
 import lexer.DiamondLexer.Lexeme;
-import lexer.Token;
-import parser.ExpressionParser.ParserState.Pointer;
+import lexer.SourceFile;
+import lexer.TokenSequence;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Parses a range of tokens into the comma-separated expressions they make up, by precedence climbing, in a single pass
+ * from left to right.
+ *
+ * An operand is parsed first, and then each binary or postfix operator after it is applied for as long as it binds at
+ * least as tightly as the caller allows.  The right operand of a binary operator is parsed allowing only operators
+ * that bind more tightly than it does, or as tightly for the right-associative ones, so the precedence and
+ * associativity in {@link Operator} decide how operators group.  Field references, invocations and array accesses
+ * bind more tightly than any operator, and variable declarations and parenthesized expressions are operands.  No
+ * token is read more than a few times, so long expressions parse in linear time.
+ *
+ * The tokens are read where they lie in the sequence being parsed, and groups are parsed in place, so nesting costs no
+ * copying.  Nor does it cost stack: an operand that is an expression of its own, such as a parenthesized expression or
+ * a parameter, is parsed on an explicit stack of levels rather than by recursion, so however the input nests, only its
+ * limit on nesting stops it.  Each expression is reported to the parse's {@link ParseListener} once it is complete,
+ * so nothing is built unless the listener builds it.  A {@link StatementParser} keeps one expression parser, which it
+ * uses for every expression of its parse and so, like it, belongs to a single thread.
+ */
+final class ExpressionParser {
+    /**
+     * What an expression is, as far as the statement it is part of cares.
+     */
+    private enum Form {
+        DECLARATION, REFERENCE, OTHER
+    }
 
-import java.math.BigInteger;
-import java.util.*;
+    /**
+     * What the expression of a {@link Level} is part of, in the level below it.
+     */
+    private enum Resume {
+        /**
+         * Nothing: it is the expression being parsed.
+         */
+        NOTHING,
 
-import static com.google.common.base.Preconditions.*;
+        /**
+         * The right operand of {@link Level#operator}, a binary operator.
+         */
+        RIGHT_OPERAND,
 
-final class ExpressionParser {
-    static final class ParserState {
-        final class Pointer {
-            private int value;
+        /**
+         * The operand of {@link Level#operator}, a unary operator.
+         */
+        OPERAND,
 
-            private boolean invalidated;
+        /**
+         * A parenthesized expression.
+         */
+        GROUP,
 
-            private Pointer(int value) {
-                this.value = value;
-                invalidated = false;
-                checkArgument(isValid());
-            }
+        /**
+         * The index of an array access.
+         */
+        INDEX,
 
-            public Pointer inc() {
-                return inc(1);
-            }
+        /**
+         * A parameter of an invocation.
+         */
+        PARAMETER;
 
-            public Pointer inc(int amount) {
-                Pointer pointer = new Pointer(value + amount);
-                pointers.put(value + amount, pointer);
-                return pointer;
-            }
+        /**
+         * @return whether the expression is in brackets of its own, which is what counts against the nesting limit
+         */
+        boolean isGroup() {
+            return this == GROUP || this == INDEX || this == PARAMETER;
+        }
+    }
 
-            public Pointer dec() {
-                return dec(1);
-            }
+    /**
+     * An expression being parsed within another, in place of the call a recursive descent would make for it, so that
+     * how deeply expressions nest costs no stack.
+     */
+    private static final class Level {
+        /**
+         * How tightly an operator must bind to be applied in this level; the others end its expression.
+         */
+        private int precedence;
 
-            public Pointer dec(int amount) {
-                Pointer pointer = new Pointer(value - amount);
-                pointers.put(value - amount, pointer);
-                return pointer;
-            }
+        /**
+         * The index of the expression's first token.
+         */
+        private int start;
 
-            public boolean isValid() {
-                if (invalidated) {
-                    throw new AssertionError("invalidated pointer");
-                }
-                return (value >= 0 && value < stream.size());
-            }
+        private Resume resume;
 
-            private void invalidate() {
-                invalidated = true;
-            }
-        }
+        /**
+         * The operator the expression is an operand of.
+         */
+        private Operator operator;
 
         /**
-         * Intermediate expression parse states can consist of a heterogeneous stream of tokens and sub-expressions. As
-         * a result, we are forced to store the state in a List&lt;Object&gt;. At the beginning, the list consists
-         * entirely of tokens; at the end, if everything goes as planned, it should consist entirely of expressions.
+         * The index of the name of the method the expression is a parameter of, or of its {@code new}.
          */
-        private final List<Object> stream;
+        private int member;
 
-        private final Multimap<Integer, Pointer> pointers;
+        /**
+         * Which parameter of the invocation the expression is, counting from 1.
+         */
+        private int count;
 
-        private ParserState(List<Token<Lexeme>> tokens) {
-            stream = Lists.<Object>newArrayList(tokens);
-            pointers = HashMultimap.create();
+        private void setParameter(int member, int count) {
+            this.member = member;
+            this.count = count;
         }
+    }
 
-        public Pointer begin() {
-            Pointer pointer = new Pointer(0);
-            pointers.put(0, pointer);
-            return pointer;
-        }
+    private final TokenSequence<Lexeme> tokens;
 
-        public Pointer end() {
-            Pointer pointer = new Pointer(stream.size() - 1);
-            pointers.put(stream.size() - 1, pointer);
-            return pointer;
-        }
+    private final LiteralDecoder literals;
 
-        private Object dereference(Pointer pointer) {
-            checkArgument(pointer.isValid());
-            return stream.get(pointer.value);
-        }
+    private final ParseListener listener;
 
-        public void replace(Pointer begin, Pointer end, Token<Lexeme> token) {
-            replaceImpl(begin, end, token);
-        }
+    /**
+     * The index of the token after the last one that may be parsed, or {@link Integer#MAX_VALUE} to parse for as long
+     * as the tokens make up expressions.
+     */
+    private int end;
 
-        public void replace(Pointer begin, Pointer end, Expression expression) {
-            replaceImpl(begin, end, expression);
-        }
+    /**
+     * The index of the <i>next</i> token to read.
+     */
+    private int pos;
 
-        private void replaceImpl(Pointer begin, Pointer end, Object object) {
-            int beginIndex = begin.value;
-            int endIndex = end.value;
-
-            // perform the actual replacement
-            List<Object> subList = stream.subList(beginIndex, endIndex);
-            subList.clear();
-            subList.add(object);
-
-            // update all the pointers referring to the replaced range
-            for (int i = beginIndex; i < endIndex; i++) {
-                Iterable<Pointer> displaced = ImmutableSet.copyOf(pointers.get(i));
-                pointers.removeAll(i);
-                for (Pointer p : displaced) {
-                    p.value = beginIndex;
-                }
-                pointers.putAll(beginIndex, displaced);
-            }
+    /**
+     * Whether every expression of the last parse was a variable declaration.
+     */
+    private boolean declarations;
 
-            // update all pointers with indices after the replaced range
-            int lengthChange = 1 - (endIndex - beginIndex);
-            for (int i = endIndex; i < (stream.size() + lengthChange); i++) {
-                Iterable<Pointer> displaced = ImmutableSet.copyOf(pointers.get(i));
-                pointers.removeAll(i);
-                for (Pointer p : displaced) {
-                    p.value = i + lengthChange;
-                }
-                pointers.putAll(i + lengthChange, displaced);
-            }
+    /**
+     * Whether the last expression of the last parse was an identifier or field reference.
+     */
+    private boolean reference;
+
+    /**
+     * How many parenthesized expressions, indexes and parameters the expressions being parsed may nest to.
+     */
+    private final int nestingLimit;
+
+    /**
+     * The expressions being parsed, outermost first, each within the one before it; those from {@link #depth} on are
+     * kept to be used again.
+     */
+    private Level[] levels = new Level[16];
+
+    private int depth;
+
+    /**
+     * How many of the levels up to {@link #depth} are {@linkplain Resume#isGroup groups}.
+     */
+    private int groups;
+
+    /**
+     * @param literals makes the literals of the parse the expressions are part of
+     * @param listener is told of each expression
+     * @param nestingLimit how deeply parenthesized expressions, parameters and indexes may nest within one another
+     */
+    ExpressionParser(TokenSequence<Lexeme> tokens, LiteralDecoder literals, ParseListener listener, int nestingLimit) {
+        this.tokens = tokens;
+        this.literals = literals;
+        this.listener = listener;
+        this.nestingLimit = nestingLimit;
+    }
+
+    /**
+     * Parses the tokens from {@code start} (inclusive) to {@code end} (exclusive) into the comma-separated
+     * expressions they make up.
+     *
+     * @return how many expressions there were
+     */
+    int parse(int start, int end) throws ParseException {
+        this.pos = start;
+        this.end = end;
+        if (!has(pos)) {
+            declarations = true;
+            reference = false;
+            return 0;
         }
+        int count = parseList();
+        if (has(pos)) {
+            throw error("expected operator or ','", pos);
+        }
+        return count;
+    }
 
-        public void parseExpressionsInRange(Pointer begin, Pointer end) throws ParseException {
-            checkArgument(end.value > begin.value);
-            List<Token<Lexeme>> tokens = Lists.newArrayListWithCapacity(end.value - begin.value);
-            for (int i = begin.value; i < end.value; i++) {
-                tokens.add(marshalToken(new Pointer(i)));
-            }
-            List<Expression> expressions = new ExpressionParser().parseExpression(tokens);
-            for (int i = begin.value; i < end.value; i++) {
-                stream.set(i, expressions.get(i - begin.value));
-            }
+    /**
+     * Parses the comma-separated expressions beginning at {@code start}, for as long as the tokens go on to make them
+     * up.  The first token that can not continue them is left unread, at {@link #getPosition()}.
+     *
+     * @return how many expressions there were
+     */
+    int parseFrom(int start) throws ParseException {
+        this.pos = start;
+        this.end = Integer.MAX_VALUE;
+        return parseList();
+    }
+
+    /**
+     * @return the index of the first token the last parse did not read
+     */
+    int getPosition() {
+        return pos;
+    }
+
+    /**
+     * @return whether every expression of the last parse was a variable declaration
+     */
+    boolean isDeclarations() {
+        return declarations;
+    }
+
+    /**
+     * @return whether the last expression of the last parse was an identifier or field reference
+     */
+    boolean isReference() {
+        return reference;
+    }
+
+    private int parseList() throws ParseException {
+        depth = 0;
+        groups = 0;
+        Form form = parseExpression();
+        boolean declarations = (form == Form.DECLARATION);
+        int count = 1;
+        while (has(pos) && lexeme(pos) == Lexeme.COMMA) {
+            pos++;
+            form = parseExpression();
+            declarations &= (form == Form.DECLARATION);
+            count++;
         }
+        this.declarations = declarations;
+        this.reference = (form == Form.REFERENCE);
+        return count;
+    }
 
-        public void delete(Pointer pointer) {
-            stream.remove(pointer.value);
-            for (Pointer p : pointers.get(pointer.value)) {
-                p.invalidate();
-            }
-            pointers.removeAll(pointer.value);
-            for (int i = (pointer.value + 1); i < (stream.size() + 1); i++) {
-                Iterable<Pointer> displaced = ImmutableSet.copyOf(pointers.get(i));
-                pointers.removeAll(i);
-                for (Pointer p : displaced) {
-                    p.value = i - 1;
+    /**
+     * Parses a single expression: an operand, and then every operator after it, each applied to the operands it binds
+     * to.  Each operand that needs an expression of its own, such as the right operand of a binary operator, begins
+     * a {@link Level} for it, and once the operators of a level run out its expression is done with as
+     * {@link Level#resume} says, in the level it was part of.
+     */
+    private Form parseExpression() throws ParseException {
+        int bottom = depth;
+        push(0, Resume.NOTHING);
+        while (true) {
+            Form form = parseOperand();
+            while (form != null) {
+                Level level = levels[depth - 1];
+                Operator operator = has(pos) ? Operator.getInfix(lexeme(pos)) : null;
+                if (operator != null && operator.getPrecedence() >= level.precedence) {
+                    pos++;
+                    if (operator.getType() == Operator.Type.POSTFIX) {
+                        listener.operatorExpression(operator, span(level.start));
+                        form = Form.OTHER;
+                    } else {
+                        int next = operator.getPrecedence() + (operator.isRightAssociative() ? 0 : 1);
+                        push(next, Resume.RIGHT_OPERAND).operator = operator;
+                        form = null;
+                    }
+                    continue;
                 }
-                pointers.putAll(i - 1, displaced);
-            }
-        }
 
-        public List<Expression> marshal() throws ParseException {
-            List<Expression> toReturn = Lists.newArrayListWithCapacity(stream.size());
-            Pointer pointer = begin();
-            while (pointer.isValid()) {
-                Expression expression = marshalExpression(pointer);
-                toReturn.add(expression);
-                pointer.inc();
+                // the level's expression is complete, and is part of the one in the level below it
+                depth--;
+                if (level.resume.isGroup()) {
+                    groups--;
+                }
+                if (depth == bottom) {
+                    return form;
+                }
+                int start = levels[depth - 1].start;
+                switch (level.resume) {
+                    case RIGHT_OPERAND: case OPERAND:
+                        listener.operatorExpression(level.operator, span(start));
+                        form = Form.OTHER;
+                        break;
+                    case GROUP:
+                        expect(Lexeme.RIGHT_PAREN, "expected ')'");
+                        form = parseSelectors(form);
+                        break;
+                    case INDEX:
+                        expect(Lexeme.RIGHT_BRACKET, "expected ']'");
+                        listener.arrayAccess(span(start));
+                        form = parseSelectors(Form.OTHER);
+                        break;
+                    case PARAMETER:
+                        if (has(pos) && lexeme(pos) == Lexeme.COMMA) {
+                            pos++;
+                            int member = level.member;
+                            int count = level.count + 1;
+                            push(0, Resume.PARAMETER).setParameter(member, count);
+                            form = null;
+                        } else {
+                            expect(Lexeme.RIGHT_PAREN, "expected ')'");
+                            invoke(level.member, level.count);
+                            form = parseSelectors(Form.OTHER);
+                        }
+                        break;
+                    default:
+                        throw new AssertionError("not nested: " + level.resume);
+                }
             }
-            return toReturn;
         }
+    }
 
-        public boolean isToken(Pointer pointer) {
-            return (dereference(pointer) instanceof Token);
+    /**
+     * Parses a unary operator, or a primary expression followed by any field references, invocations and array
+     * accesses, as the operand that begins the top level.
+     *
+     * @return the operand, or {@code null} if a level was begun for an expression within it
+     */
+    private Form parseOperand() throws ParseException {
+        if (!has(pos)) {
+            throw error("expected expression", pos);
         }
-
-        public Token<Lexeme> marshalToken(Pointer pointer) throws ParseException {
-            if (isToken(pointer)) {
-                @SuppressWarnings("unchecked")
-                Token<Lexeme> token = (Token<Lexeme>) dereference(pointer);
-                return token;
-            } else {
-                throw new ParseException("expected free token");
-            }
+        Operator operator = Operator.getPrefix(lexeme(pos));
+        if (operator != null) {
+            pos++;
+            push(operator.getPrecedence(), Resume.OPERAND).operator = operator;
+            return null;
         }
+        return parsePrimary();
+    }
 
-        public boolean isExpression(Pointer pointer) {
-            return (dereference(pointer) instanceof Expression);
+    /**
+     * @return the primary expression and what follows it, or {@code null} if a level was begun for an expression
+     *         within it
+     */
+    private Form parsePrimary() throws ParseException {
+        int start = pos;
+        Lexeme lexeme = lexeme(pos++);
+        switch (lexeme) {
+            case LEFT_PAREN:
+                push(0, Resume.GROUP);
+                return null;
+            case IDENTIFIER:
+                if (has(pos)) {
+                    switch (lexeme(pos)) {
+                        case LEFT_PAREN:
+                            pos++;
+                            return parseParameters(start) ? null : parseSelectors(Form.OTHER);
+                        case IDENTIFIER: case LEFT_BRACKET:
+                            if (startsDeclaration(pos)) {
+                                ExpressionType type = new UserDefinedType(tokens.contents(start), tokens.symbol(start));
+                                return parseSelectors(parseDeclaration(type, Collections.<Modifier>emptySet(), start));
+                            }
+                    }
+                }
+                listener.identifierReference(tokens.contents(start), tokens.symbol(start), span(start));
+                return parseSelectors(Form.REFERENCE);
+            case BOOLEAN: case SHORT: case INT: case LONG:
+                return parseSelectors(parseDeclaration(builtInType(lexeme), Collections.<Modifier>emptySet(), start));
+            case PRIVATE: case STATIC:
+                Set<Modifier> modifiers = EnumSet.of(Modifier.fromLexeme(lexeme));
+                while (has(pos) && Modifier.isModifier(lexeme(pos))) {
+                    modifiers.add(Modifier.fromLexeme(lexeme(pos++)));
+                }
+                return parseSelectors(parseDeclaration(parseTypeName(), modifiers, start));
+            case NEW:
+                expect(Lexeme.LEFT_PAREN, "expected '('");
+                return parseParameters(start) ? null : parseSelectors(Form.OTHER);
+            case INTEGRAL_LITERAL:
+                listener.integralLiteral(literals.constant(tokens, start), span(start));
+                return parseSelectors(Form.OTHER);
+            case STRING_LITERAL:
+                listener.stringLiteral(literals.constant(tokens, start), span(start));
+                return parseSelectors(Form.OTHER);
+            default:
+                // left unread, so that recovery from the error does not skip past a ';' it is
+                pos = start;
+                throw error("expected expression", start);
         }
+    }
 
-        public Expression marshalExpression(Pointer pointer) throws ParseException {
-            if (isExpression(pointer)) {
-                return (Expression) dereference(pointer);
-            } else {
-                Token<Lexeme> token = marshalToken(pointer);
-                switch (token.lexeme) {
-                    case IDENTIFIER:
-                        return new IdentifierReference(token.contents);
-                    case INTEGRAL_LITERAL:
-                        BigInteger value;
-                        if (token.contents.startsWith("0x")) {
-                            value = new BigInteger(token.contents.substring(2), 16);
+    /**
+     * Applies the field references, invocations and array accesses following the operand that begins the top level.
+     *
+     * @return the operand with them applied, or {@code null} if a level was begun for an index or a parameter
+     */
+    private Form parseSelectors(Form form) throws ParseException {
+        int start = levels[depth - 1].start;
+        while (has(pos)) {
+            switch (lexeme(pos)) {
+                case PERIOD:
+                    pos++;
+                    int member = pos++;
+                    Lexeme memberLexeme = has(member) ? lexeme(member) : null;
+                    if (memberLexeme == Lexeme.NEW) {
+                        expect(Lexeme.LEFT_PAREN, "expected '('");
+                        if (parseParameters(member)) {
+                            return null;
+                        }
+                        form = Form.OTHER;
+                    } else if (memberLexeme == Lexeme.IDENTIFIER) {
+                        if (has(pos) && lexeme(pos) == Lexeme.LEFT_PAREN) {
+                            pos++;
+                            if (parseParameters(member)) {
+                                return null;
+                            }
+                            form = Form.OTHER;
                         } else {
-                            value = new BigInteger(token.contents);
+                            listener.fieldReference(tokens.contents(member), tokens.symbol(member), span(start));
+                            form = Form.REFERENCE;
                         }
-                        return new IntegralLiteral(value);
-                    case STRING_LITERAL:
-                        return new StringLiteral(token.contents);
-                    default:
-                        throw new ParseException("expected expression");
-                }
+                    } else {
+                        throw error("expected identifier or \"new\"", member);
+                    }
+                    break;
+                case LEFT_BRACKET:
+                    pos++;
+                    push(0, Resume.INDEX);
+                    return null;
+                default:
+                    return form;
             }
         }
+        return form;
     }
 
-    private ParserState state;
+    /**
+     * Begins the parameters of an invocation, whose {@code (} has been read: if there are none, reads the closing
+     * parenthesis and reports the invocation, and otherwise begins a level for the first.
+     *
+     * @param member the index of the method's name, or of {@code new}
+     * @return whether a level was begun
+     */
+    private boolean parseParameters(int member) throws ParseException {
+        if (has(pos) && lexeme(pos) == Lexeme.RIGHT_PAREN) {
+            pos++;
+            invoke(member, 0);
+            return false;
+        }
+        push(0, Resume.PARAMETER).setParameter(member, 1);
+        return true;
+    }
 
-    public ExpressionParser() {
+    /**
+     * Reports an invocation of the operand that begins the top level, whose parameters have all been read.
+     *
+     * @param member the index of the method's name, or of {@code new}; it has a target unless it begins the operand
+     */
+    private void invoke(int member, int parameterCount) throws ParseException {
+        int start = levels[depth - 1].start;
+        if (lexeme(member) == Lexeme.NEW) {
+            listener.constructorInvocation(member != start, parameterCount, span(start));
+        } else {
+            listener.methodInvocation(tokens.contents(member), tokens.symbol(member), member != start, parameterCount,
+                    span(start));
+        }
     }
 
-    public List<Expression> parseExpression(List<Token<Lexeme>> tokens) throws ParseException {
-        state = new ParserState(tokens);
-        parseGroupedExpressions(); // recursively parse parenthetical and bracketed expressions first
-        parseGroupingOperators();
-        for (int precedence = 14; precedence > 0; precedence--) {
-            parseOperators(precedence);
+    /**
+     * Begins a level for an expression starting at the next token.  Only groups count against the nesting limit: the
+     * operands of a chain of operators or of a run of prefix operators take a level each, but no brackets.
+     *
+     * @param precedence how tightly an operator must bind to be applied in it
+     * @throws ParseException if the expression is a group, nested more deeply than the limit
+     */
+    private Level push(int precedence, Resume resume) throws ParseException {
+        if (resume.isGroup()) {
+            if (groups == nestingLimit) {
+                throw error("expressions are nested more than " + nestingLimit + " deep", pos);
+            }
+            groups++;
+        }
+        if (depth == levels.length) {
+            levels = Arrays.copyOf(levels, depth * 2);
         }
-        parseVariableDeclarations();
-        parseLists();
-        return state.marshal();
+        Level level = levels[depth];
+        if (level == null) {
+            level = levels[depth] = new Level();
+        }
+        depth++;
+        level.precedence = precedence;
+        level.start = pos;
+        level.resume = resume;
+        return level;
     }
 
-    private static enum GroupingSymbol {
-        PARENTHESIS, BRACKET
+    /**
+     * @return whether the tokens from {@code index} on, which follow a type's name, are any number of {@code []} and
+     *         then a variable's name or a {@code .}
+     */
+    private boolean startsDeclaration(int index) {
+        while (has(index + 1) && lexeme(index) == Lexeme.LEFT_BRACKET && lexeme(index + 1) == Lexeme.RIGHT_BRACKET) {
+            index += 2;
+        }
+        return has(index) && (lexeme(index) == Lexeme.IDENTIFIER
+                || (lexeme(index) == Lexeme.PERIOD && lexeme(index - 1) == Lexeme.RIGHT_BRACKET));
     }
 
-    private void parseGroupedExpressions() throws ParseException {
-        Deque<GroupingSymbol> groupingStack = Lists.newLinkedList(); // stack to handle nested grouping symbols
-        Pointer start = state.begin().dec(); // the starting index of the current outermost group
-        for (Pointer p = state.begin(); p.isValid(); p = p.inc()) {
-            Token<Lexeme> token = state.marshalToken(p);
-            GroupingSymbol symbol;
-            switch (token.lexeme) {
-                case LEFT_PAREN: case RIGHT_PAREN: symbol = GroupingSymbol.PARENTHESIS; break;
-                case LEFT_BRACKET: case RIGHT_BRACKET: symbol = GroupingSymbol.BRACKET; break;
-                default: symbol = null;
-            }
-            if (symbol == null) {
-                continue;
-            }
-            switch (token.lexeme) {
-                case LEFT_PAREN: case LEFT_BRACKET:
-                    if (!start.isValid()) {
-                        start = p.inc();
-                    }
-                    groupingStack.push(symbol);
-                    break;
-                case RIGHT_PAREN: case RIGHT_BRACKET:
-                    if (groupingStack.pop() != symbol) {
-                        throw new ParseException("mismatched grouping symbols");
-                    } else if (groupingStack.isEmpty()) {
-                        state.parseExpressionsInRange(start, p);
-                        start = state.begin().dec();
-                    }
-                    break;
-            }
+    private ExpressionType parseTypeName() throws ParseException {
+        if (!has(pos)) {
+            throw error("expected identifier or primitive type", pos);
         }
+        int index = pos++;
+        Lexeme lexeme = lexeme(index);
+        switch (lexeme) {
+            case IDENTIFIER:
+                return new UserDefinedType(tokens.contents(index), tokens.symbol(index));
+            case BOOLEAN: case SHORT: case INT: case LONG:
+                return builtInType(lexeme);
+            default:
+                throw error("expected identifier or primitive type", index);
+        }
+    }
 
-        // if the stack has anything left, syntax error
-        if (!groupingStack.isEmpty()) {
-            switch (groupingStack.pop()) {
-                case PARENTHESIS:
-                    throw new ParseException("expected ')'");
-                case BRACKET:
-                    throw new ParseException("expected ']'");
-            }
+    /**
+     * Parses the rest of a variable declaration whose type's name has been read: any number of {@code []} and then
+     * the variable's name.  An array type followed by {@code .} is instead taken as a reference to the type.
+     */
+    private Form parseDeclaration(ExpressionType type, Set<Modifier> modifiers, int start) throws ParseException {
+        while (has(pos + 1) && lexeme(pos) == Lexeme.LEFT_BRACKET && lexeme(pos + 1) == Lexeme.RIGHT_BRACKET) {
+            type = new ArrayType(type);
+            pos += 2;
+        }
+        if (has(pos) && lexeme(pos) == Lexeme.IDENTIFIER) {
+            int name = pos++;
+            listener.variableDeclaration(type, tokens.contents(name), tokens.symbol(name), modifiers, span(start));
+            return Form.DECLARATION;
+        } else if (has(pos) && lexeme(pos) == Lexeme.PERIOD && type instanceof ArrayType && modifiers.isEmpty()) {
+            // member access on an array type, which is referred to by its name
+            listener.identifierReference(type.toString(), -1, span(start));
+            return Form.REFERENCE;
         }
+        throw error("expected identifier", pos);
     }
 
-    private ExpressionType getTypeEndingAt(Pointer p) throws ParseException {
-        Token<Lexeme> token = state.marshalToken(p);
-        switch (token.lexeme) {
-            case IDENTIFIER:
-                return new UserDefinedType(token.contents);
-            case RIGHT_BRACKET:
-                ExpressionType elementType = getTypeEndingAt(p.dec(2));
-                if (state.marshalToken(p.dec()).lexeme == Lexeme.LEFT_BRACKET) {
-                    return new ArrayType(elementType);
-                } else {
-                    throw new ParseException("expected '['");
-                }
+    private static ExpressionType builtInType(Lexeme lexeme) {
+        switch (lexeme) {
             case BOOLEAN:
                 return BuiltInType.BOOLEAN;
             case SHORT:
@@ -292,219 +547,40 @@ final class ExpressionParser {
             case LONG:
                 return BuiltInType.LONG;
             default:
-                throw new ParseException("expected identifier, primitive type, or ']'");
-        }
-    }
-
-    private Set<Modifier> getModifiersEndingAt(Pointer p) throws ParseException {
-        Set<Modifier> modifiers = EnumSet.noneOf(Modifier.class);
-        boolean flag = true;
-        while (flag) {
-            if (state.isToken(p)) {
-                Token<Lexeme> token = state.marshalToken(p);
-                p = p.dec();
-                if (Modifier.isModifier(token.lexeme)) {
-                    modifiers.add(Modifier.fromLexeme(token.lexeme));
-                    continue;
-                }
-            }
-            flag = false;
+                throw new AssertionError("not a built-in type: " + lexeme);
         }
-        return modifiers;
     }
 
-    private void parseGroupingOperators() throws ParseException {
-        for (Pointer p = state.begin(); p.isValid(); p = p.inc()) {
-            if (state.isToken(p)) {
-                Token<Lexeme> token = state.marshalToken(p);
-                Expression target = null;
-                switch (token.lexeme) {
-                    case LEFT_BRACKET:
-                        if (state.isToken(p.inc()) && state.marshalToken(p.inc()).lexeme == Lexeme.RIGHT_BRACKET) {
-                            Token<Lexeme> farRightToken = state.marshalToken(p.inc().inc());
-                            if (farRightToken.lexeme == Lexeme.IDENTIFIER) {
-                                // variable declaration with an array type
-                                ExpressionType type = getTypeEndingAt(p.inc());
-                                int typeLength = type.getNumberOfLexemes();
-                                Set<Modifier> modifiers = getModifiersEndingAt(p.inc().dec(typeLength));
-                                Expression expression = new VariableDeclaration(type, farRightToken.contents, modifiers);
-                                state.replace(p.dec(typeLength).dec(modifiers.size()), p.inc(3), expression);
-                                break;
-                            } else if (farRightToken.lexeme == Lexeme.LEFT_BRACKET) {
-                                // well, we're in the middle of a multi-dimensional array type token
-                                // get out of here and let the next iteration do it
-                                p = p.inc();
-                                break;
-                            } else if (farRightToken.lexeme == Lexeme.PERIOD) {
-                                // member access on our array type
-                                // turn our (compound) array type into an identifier and bounce off of PERIOD
-                                ExpressionType type = getTypeEndingAt(p.inc());
-                                int typeLength = type.getNumberOfLexemes();
-                                state.replace(p.inc(2).dec(typeLength), p.inc(2), new Token<>(Lexeme.IDENTIFIER, type.toString()));
-                            } else {
-                                // not sure what else could be here?
-                                throw new ParseException("expected identifier, '[', or '.'");
-                            }
-                        } else {
-                            // array access
-                            if (state.marshalToken(p.inc(2)).lexeme != Lexeme.RIGHT_BRACKET) {
-                                throw new ParseException("expected ']'");
-                            }
-                            Expression array = state.marshalExpression(p.dec());
-                            Expression index = state.marshalExpression(p.inc());
-                            Expression arrayAccess = new ArrayAccess(array, index);
-                            state.replace(p.dec(), p.inc(3), arrayAccess);
-                            break;
-                        }
-                    case PERIOD:
-                        // has to be a member access, let's figure out what kind
-                        if (state.marshalToken(p.dec()).lexeme != Lexeme.IDENTIFIER) {
-                            throw new ParseException("expected identifier");
-                        } else if (state.marshalToken(p.inc()).lexeme != Lexeme.IDENTIFIER && state.marshalToken(p.inc()).lexeme != Lexeme.NEW) {
-                            throw new ParseException("expected identifier or \"new\"");
-                        }
-                        Token<Lexeme> farRightToken = state.marshalToken(p.inc(2));
-                        if (farRightToken.lexeme == Lexeme.LEFT_PAREN) {
-                            // method member access
-                            // deliberately no break; let it be handled as a method invocation below
-                            target = state.marshalExpression(p.dec());
-                            p = p.inc(2);
-                        } else {
-                            // field member access
-                            // the field had better not be called new!
-                            Token<Lexeme> fieldName = state.marshalToken(p.inc());
-                            if (fieldName.lexeme != Lexeme.IDENTIFIER) {
-                                throw new ParseException("expected identifier");
-                            }
-                            Expression reference = new FieldReference(state.marshalExpression(p.dec()), fieldName.contents);
-                            state.replace(p.dec(), p.inc(2), reference);
-                            break;
-                        }
-                    case LEFT_PAREN:
-                        Token<Lexeme> leftToken = state.marshalToken(p.dec());
-                        if (leftToken.lexeme == Lexeme.IDENTIFIER || leftToken.lexeme == Lexeme.NEW) {
-                            // method or constructor invocation
-                            List<Expression> parameters = Lists.newArrayList();
-                            Pointer q = p.inc();
-                            while (true) {
-                                if (state.isExpression(q)) {
-                                    parameters.add(state.marshalExpression(q));
-                                    q = q.inc();
-                                } else {
-                                    break;
-                                }
-                            }
-                            if (state.marshalToken(q).lexeme != Lexeme.RIGHT_PAREN) {
-                                throw new ParseException("expected ')'");
-                            }
-                            Expression invocation;
-                            Pointer begin;
-                            if (target == null) {
-                                target = new ThisExpression();
-                                begin = p.dec();
-                            } else {
-                                begin = p.dec(3);
-                            }
-                            if (leftToken.lexeme == Lexeme.IDENTIFIER) {
-                                invocation = new MethodInvocation(leftToken.contents, target, parameters);
-                            } else if (leftToken.lexeme == Lexeme.NEW) {
-                                invocation = new ConstructorInvocation(target, parameters);
-                            } else {
-                                throw new AssertionError("Left token MUST either be an identifier or \"new\"!");
-                            }
-                            state.replace(begin, q.inc(), invocation);
-                        } else {
-                            // simple parenthetical expression
-                            Expression expression = state.marshalExpression(p.inc());
-                            if (state.marshalToken(p.inc(2)).lexeme != Lexeme.RIGHT_PAREN) {
-                                throw new ParseException("expected ')'");
-                            }
-                            state.replace(p, p.inc(3), expression);
-                        }
-                        break;
-                }
-            }
-        }
+    private boolean has(int index) {
+        return index < end && tokens.has(index);
     }
 
-    private void parseOperators(int precedence) throws ParseException {
-        if (precedence == 1 || precedence == 2 || precedence == 13 || precedence == 14) {
-            // right associative
-            for (Pointer p = state.end(); p.isValid(); p = p.dec()) {
-                parseOperatorAtIndex(precedence, p);
-            }
-        } else {
-            // left associative
-            for (Pointer p = state.begin(); p.isValid(); p = p.inc()) {
-                parseOperatorAtIndex(precedence, p);
-            }
-        }
+    private Lexeme lexeme(int index) {
+        return tokens.lexeme(index);
     }
 
-    private void parseOperatorAtIndex(int precedence, Pointer p) throws ParseException {
-        if (state.isToken(p)) {
-            Token<Lexeme> token = state.marshalToken(p);
-            Operator operator = Operator.getForLexeme(token.lexeme);
-            if (operator != null && operator.getPrecedence() == precedence) {
-                Pointer begin;
-                Pointer end;
-                Expression expression;
-                switch (operator.getType()) {
-                    case POSTFIX:
-                        begin = p.dec();
-                        end = p.inc();
-                        expression = new OperatorExpression(state.marshalExpression(begin), operator);
-                        break;
-                    case UNARY:
-                        begin = p;
-                        end = p.inc(2);
-                        expression = new OperatorExpression(operator, state.marshalExpression(end.dec()));
-                        break;
-                    case BINARY:
-                        begin = p.dec();
-                        end = p.inc(2);
-                        expression = new OperatorExpression(state.marshalExpression(begin), state.marshalExpression(end.dec()), operator);
-                        break;
-                    default:
-                        throw new AssertionError();
-                }
-                state.replace(begin, end, expression);
-            }
+    private void expect(Lexeme lexeme, String message) throws ParseException {
+        if (!has(pos) || lexeme(pos) != lexeme) {
+            throw error(message, pos);
         }
+        pos++;
     }
 
-    /*
-     * TODO: this really isn't correct, it needs to be handled in marshalExpression()
+    /**
+     * @return the span from the token at {@code start} up to the last token read
      */
-    private void parseVariableDeclarations() throws ParseException {
-        for (Pointer p = state.begin(); p.isValid(); p = p.inc()) {
-            if (state.isToken(p)) {
-                Token<Lexeme> token = state.marshalToken(p);
-                if (token.lexeme == Lexeme.IDENTIFIER) {
-                    // there should be a type immediately before us
-                    ExpressionType type = getTypeEndingAt(p.dec());
-                    int typeLength = type.getNumberOfLexemes();
-                    Set<Modifier> modifiers = getModifiersEndingAt(p.dec().dec(typeLength));
-                    Expression expression = new VariableDeclaration(type, token.contents, modifiers);
-                    state.replace(p.dec(typeLength).dec(modifiers.size()), p.inc(), expression);
-                }
-            }
-        }
+    private long span(int start) {
+        return SourceFile.union(tokens.span(start), tokens.span(pos - 1));
     }
 
-    private void parseLists() throws ParseException {
-        for (Pointer p = state.begin(); p.isValid(); p = p.inc()) {
-            if (state.isToken(p)) {
-                Token<Lexeme> token = state.marshalToken(p);
-                if (token.lexeme == Lexeme.COMMA) {
-                    // ensure that we're between two expressions
-                    // XXX: marshalling expressions needs to modify the stream as was planned
-                    state.marshalExpression(p.dec());
-                    state.marshalExpression(p.inc());
-                    // then we can delete this token so that the main parsing succeeds
-                    state.delete(p);
-                }
-            }
+    /**
+     * @return an exception for an error at the token at {@code index}, or at the last token if the tokens end first
+     */
+    private ParseException error(String message, int index) {
+        int at = has(index) ? index : index - 1;
+        if (at >= 0 && tokens.lexeme(at) == Lexeme.UNKNOWN) {
+            message = "unknown symbol '" + tokens.contents(at) + "'";
         }
+        return new ParseException(message, (at >= 0) ? tokens.span(at) : SourceFile.NO_SPAN);
     }
 }
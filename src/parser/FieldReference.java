@@ -6,7 +6,11 @@ public final class FieldReference extends IdentifierReference {
     private final Expression target;
 
     public FieldReference(Expression target, String field) {
-        super(field);
+        this(target, field, -1);
+    }
+
+    public FieldReference(Expression target, String field, int symbol) {
+        super(field, symbol);
         checkNotNull(target);
         checkArgument(!target.getType().isPrimitive());
         this.target = target;
@@ -11,13 +11,30 @@ import static com.google.common.base.Preconditions.*;
 public class IdentifierReference extends Expression {
     private final String name;
 
+    private final int symbol;
+
     public IdentifierReference(String name) {
+        this(name, -1);
+    }
+
+    /**
+     * @param symbol the id of the name in the compilation's symbol table, or -1 if it is not known
+     */
+    public IdentifierReference(String name, int symbol) {
         super(BuiltInType.INDETERMINATE);
         checkNotNull(name);
         this.name = name;
+        this.symbol = symbol;
     }
 
     public String getName() {
         return name;
     }
+
+    /**
+     * @return the id of the name in the compilation's symbol table, or -1 if it is not known
+     */
+    public int getSymbol() {
+        return symbol;
+    }
 }
@@ -1,15 +1,37 @@
 package parser;
 
-import java.math.BigInteger;
+import lexer.ConstantPool;
+
+import static com.google.common.base.Preconditions.*;
 
 public final class IntegralLiteral extends Expression {
-    private final BigInteger value;
+    private final int constant;
+
+    /**
+     * @param pool     the compilation's constant pool
+     * @param constant the index of the literal's value in the pool
+     */
+    public IntegralLiteral(ConstantPool pool, int constant) {
+        super(typeOf(checkNotNull(pool).getLong(constant)));
+        this.constant = constant;
+    }
+
+    /**
+     * @return the index of the literal's value in the compilation's {@link ConstantPool}
+     */
+    public int getConstant() {
+        return constant;
+    }
 
-    public IntegralLiteral(BigInteger value) throws ParseException {
-        super((value.getLowestSetBit() < 16) ? BuiltInType.SHORT : ((value.getLowestSetBit() < 32) ? BuiltInType.INT : BuiltInType.LONG));
-        if (value.getLowestSetBit() >= 64) {
-            throw new ParseException("integral literal too long");
+    /**
+     * @return the narrowest type that can hold the value
+     */
+    private static BuiltInType typeOf(long value) {
+        if (value <= Short.MAX_VALUE) {
+            return BuiltInType.SHORT;
+        } else if (value <= Integer.MAX_VALUE) {
+            return BuiltInType.INT;
         }
-        this.value = value;
+        return BuiltInType.LONG;
     }
 }
@@ -0,0 +1,72 @@
+package parser;
+
+import lexer.ConstantPool;
+import lexer.DiamondLexer.Lexeme;
+import lexer.TokenSequence;
+
+import static com.google.common.base.Preconditions.*;
+
+/**
+ * Finds the values of the literals of one parse in its {@link ConstantPool}.  Tokens lexed into that pool already hold
+ * the index of their value, so only the tokens that do not, such as ones made by hand or lexed into another pool, are
+ * decoded here; a literal the lexer could not decode is decoded again for the error message.
+ */
+final class LiteralDecoder {
+    private final ConstantPool pool;
+
+    private final boolean lexed;
+
+    /**
+     * @param pool  the pool the literals' values go in
+     * @param lexed whether the tokens being parsed were lexed into {@code pool}, so that their indexes can be used
+     */
+    LiteralDecoder(ConstantPool pool, boolean lexed) {
+        this.pool = checkNotNull(pool);
+        this.lexed = lexed;
+    }
+
+    ConstantPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Adds the value of a literal to the pool ahead of decoding it, if it is not there already, so that the values of
+     * a parse split between threads get the same indexes as they would in a sequential parse.  A literal that can not
+     * be decoded is skipped, and left to {@link #constant} to report.
+     */
+    void reserve(TokenSequence<Lexeme> tokens, int index) {
+        if (lexed) {
+            return;
+        }
+        CharSequence text = tokens.contents(index);
+        if (tokens.lexeme(index) == Lexeme.INTEGRAL_LITERAL) {
+            pool.addInteger(text, 0, text.length());
+        } else if (tokens.lexeme(index) == Lexeme.STRING_LITERAL) {
+            pool.addString(text, 0, text.length());
+        }
+    }
+
+    /**
+     * @return the index in the pool of the value of the literal at {@code index}
+     * @throws ParseException if the literal can not be decoded
+     */
+    int constant(TokenSequence<Lexeme> tokens, int index) throws ParseException {
+        int constant = lexed ? tokens.constant(index) : ConstantPool.NONE;
+        if (constant != ConstantPool.NONE) {
+            return constant;
+        }
+        CharSequence text = tokens.contents(index);
+        try {
+            switch (tokens.lexeme(index)) {
+                case INTEGRAL_LITERAL:
+                    return pool.add(ConstantPool.decodeInteger(text, 0, text.length()));
+                case STRING_LITERAL:
+                    return pool.add(ConstantPool.decodeString(text, 0, text.length()));
+                default:
+                    throw new AssertionError("not a literal: " + tokens.lexeme(index));
+            }
+        } catch (IllegalArgumentException e) {
+            throw new ParseException(e.getMessage(), tokens.span(index));
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package parser;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import lexer.DiamondLexer;
+import lexer.DiamondLexer.Lexeme;
+import lexer.SourceFile;
+import lexer.TokenBuffer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+/**
+ * Lexes and parses the files named on the command line, and reports every error in them.
+ *
+ * With {@code --startup}, it also prints how long after the JVM started the first token, and then the first
+ * compilation unit (or parse error), was ready. That is the time the saved lexer tables and the AppCDS archive made by
+ * {@code bin/train-cds} are meant to cut; {@code bin/startup-bench} runs {@code bench/parser/StartupBenchmark}, which
+ * repeats such runs with and without each of them and compares the times.
+ */
+public final class Main {
+    private Main() {
+    }
+
+    public static void main(String... args) throws IOException {
+        boolean startup = false;
+        List<File> files = Lists.newArrayList();
+        for (String arg : args) {
+            if (arg.equals("--startup")) {
+                startup = true;
+            } else {
+                files.add(new File(arg));
+            }
+        }
+        if (files.isEmpty()) {
+            System.err.println("usage: Main [--startup] <file>...");
+            System.exit(2);
+        }
+
+        DiamondLexer lexer = new DiamondLexer();
+        long firstToken = -1;
+        long firstUnit = -1;
+        boolean failed = false;
+        for (File file : files) {
+            String text = Files.toString(file, Charsets.UTF_8);
+            if (firstToken < 0) {
+                lexer.stream(new StringReader(text)).hasNext();
+                firstToken = System.currentTimeMillis();
+            }
+            TokenBuffer<Lexeme> tokens = lexer.lexToBuffer(text);
+            List<ParseException> errors = Lists.newArrayList();
+            new DiamondParser().parse(tokens, errors);
+            if (!errors.isEmpty()) {
+                SourceFile source = new SourceFile(file.getPath(), text);
+                for (ParseException e : errors) {
+                    System.err.println(e.describe(source));
+                }
+                failed = true;
+            }
+            if (firstUnit < 0) {
+                firstUnit = System.currentTimeMillis();
+            }
+        }
+
+        if (startup) {
+            // asked for last, so that loading the management classes is not counted
+            long start = ManagementFactory.getRuntimeMXBean().getStartTime();
+            System.out.println("first token: " + (firstToken - start) + " ms");
+            System.out.println("first compilation unit: " + (firstUnit - start) + " ms");
+        }
+        if (failed) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package parser;
+
+import lexer.DiamondLexer.Lexeme;
+import lexer.TokenSequence;
+
+/**
+ * The body of a method that a skeleton parse put off parsing, kept as the tokens it is made of until it is needed.
+ */
+final class MethodBody {
+    private final TokenSequence<Lexeme> tokens;
+
+    private final LiteralDecoder literals;
+
+    private final NestingLimits limits;
+
+    /**
+     * The index of the {@code '{'} beginning the body.
+     */
+    private final int start;
+
+    /**
+     * What went wrong the first time the body was parsed, which every later attempt throws again.
+     */
+    private ParseException failure;
+
+    MethodBody(TokenSequence<Lexeme> tokens, LiteralDecoder literals, NestingLimits limits, int start) {
+        this.tokens = tokens;
+        this.literals = literals;
+        this.limits = limits;
+        this.start = start;
+    }
+
+    /**
+     * Parses the body into the method it belongs to, exactly as a full parse would have, unless it has failed to
+     * before.  If it does not parse, the method is left as it was.  The method's lock must be held.
+     */
+    void parseInto(MethodDeclaration method) throws ParseException {
+        if (failure != null) {
+            throw failure;
+        }
+        int count = method.childCount();
+        TreeBuilder builder = new TreeBuilder(method, literals.getPool());
+        try {
+            new StatementParser(tokens, literals, limits, builder).parseMethodBody(start);
+        } catch (ParseException e) {
+            method.removeChildren(count);
+            failure = e;
+            throw e;
+        } catch (RuntimeException e) {
+            method.removeChildren(count);
+            throw e;
+        }
+    }
+}
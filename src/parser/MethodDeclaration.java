@@ -23,6 +23,11 @@ public class MethodDeclaration extends Statement {
 
     private final List<VariableDeclaration> formalParameters;
 
+    /**
+     * The body, if a skeleton parse put off parsing it and it has not been parsed since; {@code null} once it has.
+     */
+    private volatile MethodBody body;
+
     public MethodDeclaration(TypeDeclaration parent, String name, ExpressionType returnType, Set<Modifier> modifiers, List<VariableDeclaration> formalParameters) throws ParseException {
         super(parent);
         checkNotNull(name);
@@ -45,4 +50,40 @@ public class MethodDeclaration extends Statement {
     public ExpressionType getReturnType() {
         return returnType;
     }
+
+    /**
+     * @return whether the method's body has been parsed, which it has unless it came from a skeleton parse and has not
+     *         been needed since
+     */
+    public boolean isBodyParsed() {
+        return body == null;
+    }
+
+    /**
+     * Parses the method's body, if a skeleton parse put it off, so that its statements are children of the method;
+     * until then, its only children are its parameters.  This is done once, however many threads ask for it at once;
+     * if the body does not parse, every call throws the same exception.
+     *
+     * @throws ParseException for any error in the body, which the skeleton parse did not look for
+     * @see DiamondParser#parseSkeleton(lexer.TokenBuffer)
+     */
+    public void parseBody() throws ParseException {
+        if (body != null) {
+            synchronized (this) {
+                MethodBody pending = body;
+                if (pending != null) {
+                    pending.parseInto(this);
+                    body = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Puts off parsing the method's body until it is needed.
+     */
+    void deferBody(MethodBody body) {
+        checkState(this.body == null && childCount() == formalParameters.size());
+        this.body = checkNotNull(body);
+    }
 }
@@ -15,11 +15,20 @@ import static com.google.common.base.Preconditions.*;
 public class MethodInvocation extends Expression {
     private final String method;
 
+    private final int symbol;
+
     private final Expression target;
 
     private final List<Expression> parameters;
 
     public MethodInvocation(String method, Expression target, List<Expression> parameters) {
+        this(method, -1, target, parameters);
+    }
+
+    /**
+     * @param symbol the id of the method name in the compilation's symbol table, or -1 if it is not known
+     */
+    public MethodInvocation(String method, int symbol, Expression target, List<Expression> parameters) {
         super(BuiltInType.INDETERMINATE);
         checkNotNull(method);
         checkNotNull(target);
@@ -28,6 +37,7 @@ public class MethodInvocation extends Expression {
             checkArgument(parameter.getType() != BuiltInType.VOID);
         }
         this.method = method;
+        this.symbol = symbol;
         this.target = target;
         this.target.attach(this);
         this.parameters = ImmutableList.copyOf(parameters);
@@ -35,4 +45,8 @@ public class MethodInvocation extends Expression {
             parameter.attach(this);
         }
     }
+
+    public int getSymbol() {
+        return symbol;
+    }
 }
@@ -0,0 +1,34 @@
+package parser;
+
+import static com.google.common.base.Preconditions.*;
+
+/**
+ * How deeply the statements and expressions of one parse may nest before it gives up on them.  The parse itself
+ * keeps what it is inside of on a stack of its own, however deep, so the limits are there for whatever walks the
+ * tree afterwards, and to make input that nests without end fail with an error rather than run out of memory.
+ */
+final class NestingLimits {
+    private final int statements;
+
+    private final int expressions;
+
+    /**
+     * @param statements  how many statements may enclose one another, counting the outermost type declaration as one
+     * @param expressions how many parenthesized expressions, parameters and indexes may enclose one another within a
+     *                    statement
+     */
+    NestingLimits(int statements, int expressions) {
+        checkArgument(statements > 0, "statement nesting limit must be positive");
+        checkArgument(expressions > 0, "expression nesting limit must be positive");
+        this.statements = statements;
+        this.expressions = expressions;
+    }
+
+    int getStatements() {
+        return statements;
+    }
+
+    int getExpressions() {
+        return expressions;
+    }
+}
@@ -6,9 +6,94 @@
 
 package parser;
 
+import lexer.SourceFile;
+
+import java.util.List;
+
 public abstract class Node {
+    private long span = SourceFile.NO_SPAN;
+
+    /**
+     * How far the spans of this node's descendants have yet to be moved, since an incremental reparse moved this node
+     * along with everything in it.  A node's span is the one it holds moved by the shifts of all its ancestors.
+     */
+    private int shift;
+
     protected Node() {
     }
 
     protected abstract void addChild(Expression child);
+
+    /**
+     * @return the node this one is a child of, or {@code null} if it has not been attached to one
+     */
+    abstract Node parent();
+
+    /**
+     * @return the node's children, in the order they were added
+     */
+    abstract List<? extends Node> children();
+
+    /**
+     * @return the range of the source this node was parsed from, packed as by {@link SourceFile#span(int, int)}, or
+     *         {@link SourceFile#NO_SPAN} if it is not known
+     */
+    public final long getSpan() {
+        if (span == SourceFile.NO_SPAN) {
+            return span;
+        }
+        int offset = ancestorShift();
+        return (offset == 0) ? span : move(span, offset);
+    }
+
+    /**
+     * Sets the span from offsets in the source the tree was built from, before anything in the tree has been moved.
+     * Nodes built into a tree that has been moved are then {@linkplain #anchor() anchored}.
+     */
+    final void setSpan(long span) {
+        this.span = span;
+    }
+
+    /**
+     * Moves the node, and everything in it, {@code shift} characters along.  Its descendants are not visited: the
+     * shift is kept in this node for {@link #getSpan()} to add to theirs.
+     */
+    final void move(int shift) {
+        if (span != SourceFile.NO_SPAN) {
+            span = move(span, shift);
+        }
+        this.shift += shift;
+    }
+
+    /**
+     * Moves the end of the node's span {@code shift} characters along, as when an edit inside it changes its length.
+     */
+    final void extend(int shift) {
+        if (span != SourceFile.NO_SPAN) {
+            span = SourceFile.span(SourceFile.spanStart(span), SourceFile.spanEnd(span) + shift);
+        }
+    }
+
+    /**
+     * Makes the spans of a node just built into a tree that has been moved, and of everything in it, which were set
+     * from offsets in the current source, account for the shifts of its ancestors.
+     */
+    final void anchor() {
+        int offset = ancestorShift();
+        if (offset != 0) {
+            move(-offset);
+        }
+    }
+
+    private int ancestorShift() {
+        int offset = 0;
+        for (Node ancestor = parent(); ancestor != null; ancestor = ancestor.parent()) {
+            offset += ancestor.shift;
+        }
+        return offset;
+    }
+
+    private static long move(long span, int shift) {
+        return SourceFile.span(SourceFile.spanStart(span) + shift, SourceFile.spanEnd(span) + shift);
+    }
 }
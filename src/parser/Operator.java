@@ -1,11 +1,14 @@
 package parser;
 
+import com.google.common.collect.Maps;
 import lexer.DiamondLexer.Lexeme;
 
+import java.util.Map;
+
 import static com.google.common.base.Preconditions.*;
 
 public enum Operator {
-    POSTFIX_INCREMENT(14, Type.POSTFIX, Lexeme.PLUS_PLUS) {
+    POSTFIX_INCREMENT(14, Associativity.RIGHT, Type.POSTFIX, Lexeme.PLUS_PLUS) {
         @Override
         ExpressionType validate(ExpressionType leftOperandType, ExpressionType rightOperandType) {
             checkArgument(rightOperandType == null);
@@ -14,7 +17,7 @@ public enum Operator {
         }
     },
 
-    POSTFIX_DECREMENT(14, Type.POSTFIX, Lexeme.MINUS_MINUS) {
+    POSTFIX_DECREMENT(14, Associativity.RIGHT, Type.POSTFIX, Lexeme.MINUS_MINUS) {
         @Override
         ExpressionType validate(ExpressionType leftOperandType, ExpressionType rightOperandType) {
             checkArgument(rightOperandType == null);
@@ -23,7 +26,7 @@ public enum Operator {
         }
     },
 
-    UNARY_INCREMENT(13, Type.UNARY, Lexeme.PLUS_PLUS) {
+    UNARY_INCREMENT(13, Associativity.RIGHT, Type.UNARY, Lexeme.PLUS_PLUS) {
         @Override
         ExpressionType validate(ExpressionType leftOperandType, ExpressionType rightOperandType) {
             checkArgument(leftOperandType == null);
@@ -32,7 +35,7 @@ public enum Operator {
         }
     },
 
-    UNARY_DECREMENT(13, Type.UNARY, Lexeme.MINUS_MINUS) {
+    UNARY_DECREMENT(13, Associativity.RIGHT, Type.UNARY, Lexeme.MINUS_MINUS) {
         @Override
         ExpressionType validate(ExpressionType leftOperandType, ExpressionType rightOperandType) {
             checkArgument(leftOperandType == null);
@@ -41,7 +44,7 @@ public enum Operator {
         }
     },
 
-    UNARY_PLUS(13, Type.UNARY, Lexeme.PLUS) {
+    UNARY_PLUS(13, Associativity.RIGHT, Type.UNARY, Lexeme.PLUS) {
         @Override
         ExpressionType validate(ExpressionType leftOperandType, ExpressionType rightOperandType) {
             checkArgument(leftOperandType == null);
@@ -50,7 +53,7 @@ public enum Operator {
         }
     },
 
-    UNARY_MINUS(13, Type.UNARY, Lexeme.MINUS) {
+    UNARY_MINUS(13, Associativity.RIGHT, Type.UNARY, Lexeme.MINUS) {
         @Override
         ExpressionType validate(ExpressionType leftOperandType, ExpressionType rightOperandType) {
             checkArgument(leftOperandType == null);
@@ -59,7 +62,7 @@ public enum Operator {
         }
     },
 
-    LOGICAL_NOT(13, Type.UNARY, Lexeme.NOT) {
+    LOGICAL_NOT(13, Associativity.RIGHT, Type.UNARY, Lexeme.NOT) {
         @Override
         ExpressionType validate(ExpressionType leftOperandType, ExpressionType rightOperandType) {
             checkArgument(leftOperandType == null);
@@ -68,7 +71,7 @@ public enum Operator {
         }
     },
 
-    MULTIPLICATION(12, Type.BINARY, Lexeme.TIMES) {
+    MULTIPLICATION(12, Associativity.LEFT, Type.BINARY, Lexeme.TIMES) {
         @Override
         ExpressionType validate(ExpressionType leftOperandType, ExpressionType rightOperandType) {
             checkArgument(leftOperandType.isNumeric() || leftOperandType == BuiltInType.INDETERMINATE);
@@ -87,7 +90,7 @@ public enum Operator {
         }
     },
 
-    DIVISION(12, Type.BINARY, Lexeme.DIVIDE) {
+    DIVISION(12, Associativity.LEFT, Type.BINARY, Lexeme.DIVIDE) {
         @Override
         ExpressionType validate(ExpressionType leftOperandType, ExpressionType rightOperandType) {
             checkArgument(leftOperandType.isNumeric() || leftOperandType == BuiltInType.INDETERMINATE);
@@ -106,7 +109,7 @@ public enum Operator {
         }
     },
 
-    MODULUS(12, Type.BINARY, Lexeme.MODULO) {
+    MODULUS(12, Associativity.LEFT, Type.BINARY, Lexeme.MODULO) {
         @Override
         ExpressionType validate(ExpressionType leftOperandType, ExpressionType rightOperandType) {
             checkArgument(leftOperandType.isNumeric() || leftOperandType == BuiltInType.INDETERMINATE);
@@ -125,7 +128,7 @@ public enum Operator {
         }
     },
 
-    ADDITION_OR_CONCATENATION(11, Type.BINARY, Lexeme.PLUS) {
+    ADDITION_OR_CONCATENATION(11, Associativity.LEFT, Type.BINARY, Lexeme.PLUS) {
         @Override
         ExpressionType validate(ExpressionType leftOperandType, ExpressionType rightOperandType) {
             if (leftOperandType == BuiltInType.STRING || rightOperandType == BuiltInType.STRING) {
@@ -148,7 +151,7 @@ public enum Operator {
         }
     },
 
-    SUBTRACTION(11, Type.BINARY, Lexeme.MINUS) {
+    SUBTRACTION(11, Associativity.LEFT, Type.BINARY, Lexeme.MINUS) {
         @Override
         ExpressionType validate(ExpressionType leftOperandType, ExpressionType rightOperandType) {
             checkArgument(leftOperandType.isNumeric() || leftOperandType == BuiltInType.INDETERMINATE);
@@ -167,7 +170,7 @@ public enum Operator {
         }
     },
 
-    BITWISE_SHIFT_LEFT(10, Type.BINARY, Lexeme.SHIFT_LEFT) {
+    BITWISE_SHIFT_LEFT(10, Associativity.LEFT, Type.BINARY, Lexeme.SHIFT_LEFT) {
         @Override
         ExpressionType validate(ExpressionType leftOperandType, ExpressionType rightOperandType) {
             checkArgument(leftOperandType.isIntegral() || leftOperandType == BuiltInType.INDETERMINATE);
@@ -180,7 +183,7 @@ public enum Operator {
         }
     },
 
-    BITWISE_SHIFT_RIGHT(10, Type.BINARY, Lexeme.SHIFT_RIGHT) {
+    BITWISE_SHIFT_RIGHT(10, Associativity.LEFT, Type.BINARY, Lexeme.SHIFT_RIGHT) {
         @Override
         ExpressionType validate(ExpressionType leftOperandType, ExpressionType rightOperandType) {
             checkArgument(leftOperandType.isIntegral() || leftOperandType == BuiltInType.INDETERMINATE);
@@ -193,7 +196,7 @@ public enum Operator {
         }
     },
 
-    LESS_THAN(9, Type.BINARY, Lexeme.LESS_THAN) {
+    LESS_THAN(9, Associativity.LEFT, Type.BINARY, Lexeme.LESS_THAN) {
         @Override
         ExpressionType validate(ExpressionType leftOperandType, ExpressionType rightOperandType) {
             checkArgument(leftOperandType.isNumeric() || leftOperandType == BuiltInType.INDETERMINATE);
@@ -202,7 +205,7 @@ public enum Operator {
         }
     },
 
-    LEQ(9, Type.BINARY, Lexeme.LESS_THAN_EQUALS) {
+    LEQ(9, Associativity.LEFT, Type.BINARY, Lexeme.LESS_THAN_EQUALS) {
         @Override
         ExpressionType validate(ExpressionType leftOperandType, ExpressionType rightOperandType) {
             checkArgument(leftOperandType.isNumeric() || leftOperandType == BuiltInType.INDETERMINATE);
@@ -211,7 +214,7 @@ public enum Operator {
         }
     },
 
-    GREATER_THAN(9, Type.BINARY, Lexeme.GREATER_THAN) {
+    GREATER_THAN(9, Associativity.LEFT, Type.BINARY, Lexeme.GREATER_THAN) {
         @Override
         ExpressionType validate(ExpressionType leftOperandType, ExpressionType rightOperandType) {
             checkArgument(leftOperandType.isNumeric() || leftOperandType == BuiltInType.INDETERMINATE);
@@ -220,7 +223,7 @@ public enum Operator {
         }
     },
 
-    GEQ(9, Type.BINARY, Lexeme.GREATER_THAN_EQUALS) {
+    GEQ(9, Associativity.LEFT, Type.BINARY, Lexeme.GREATER_THAN_EQUALS) {
         @Override
         ExpressionType validate(ExpressionType leftOperandType, ExpressionType rightOperandType) {
             checkArgument(leftOperandType.isNumeric() || leftOperandType == BuiltInType.INDETERMINATE);
@@ -229,7 +232,7 @@ public enum Operator {
         }
     },
 
-    EQUALS(8, Type.BINARY, Lexeme.EQUALITY) {
+    EQUALS(8, Associativity.LEFT, Type.BINARY, Lexeme.EQUALITY) {
         @Override
         ExpressionType validate(ExpressionType leftOperandType, ExpressionType rightOperandType) {
             checkNotNull(leftOperandType);
@@ -238,7 +241,7 @@ public enum Operator {
         }
     },
 
-    NOT_EQUALS(8, Type.BINARY, Lexeme.NOT_EQUALS) {
+    NOT_EQUALS(8, Associativity.LEFT, Type.BINARY, Lexeme.NOT_EQUALS) {
         @Override
         ExpressionType validate(ExpressionType leftOperandType, ExpressionType rightOperandType) {
             checkNotNull(leftOperandType);
@@ -247,7 +250,7 @@ public enum Operator {
         }
     },
 
-    BITWISE_AND(7, Type.BINARY, Lexeme.BITWISE_AND) {
+    BITWISE_AND(7, Associativity.LEFT, Type.BINARY, Lexeme.BITWISE_AND) {
         @Override
         ExpressionType validate(ExpressionType leftOperandType, ExpressionType rightOperandType) {
             checkArgument(leftOperandType.isIntegral() || leftOperandType == BuiltInType.INDETERMINATE);
@@ -261,7 +264,7 @@ public enum Operator {
         }
     },
 
-    BITWISE_XOR(6, Type.BINARY, Lexeme.BITWISE_XOR) {
+    BITWISE_XOR(6, Associativity.LEFT, Type.BINARY, Lexeme.BITWISE_XOR) {
         @Override
         ExpressionType validate(ExpressionType leftOperandType, ExpressionType rightOperandType) {
             checkArgument(leftOperandType.isIntegral() || leftOperandType == BuiltInType.INDETERMINATE);
@@ -275,7 +278,7 @@ public enum Operator {
         }
     },
 
-    BITWISE_OR(5, Type.BINARY, Lexeme.BITWISE_OR) {
+    BITWISE_OR(5, Associativity.LEFT, Type.BINARY, Lexeme.BITWISE_OR) {
         @Override
         ExpressionType validate(ExpressionType leftOperandType, ExpressionType rightOperandType) {
             checkArgument(leftOperandType.isIntegral() || leftOperandType == BuiltInType.INDETERMINATE);
@@ -289,7 +292,7 @@ public enum Operator {
         }
     },
 
-    LOGICAL_AND(4, Type.BINARY, Lexeme.LOGICAL_AND) {
+    LOGICAL_AND(4, Associativity.LEFT, Type.BINARY, Lexeme.LOGICAL_AND) {
         @Override
         ExpressionType validate(ExpressionType leftOperandType, ExpressionType rightOperandType) {
             checkArgument(leftOperandType == BuiltInType.BOOLEAN || leftOperandType == BuiltInType.INDETERMINATE);
@@ -298,7 +301,7 @@ public enum Operator {
         }
     },
 
-    LOGICAL_OR(3, Type.BINARY, Lexeme.LOGICAL_OR) {
+    LOGICAL_OR(3, Associativity.LEFT, Type.BINARY, Lexeme.LOGICAL_OR) {
         @Override
         ExpressionType validate(ExpressionType leftOperandType, ExpressionType rightOperandType) {
             checkArgument(leftOperandType == BuiltInType.BOOLEAN || leftOperandType == BuiltInType.INDETERMINATE);
@@ -307,7 +310,7 @@ public enum Operator {
         }
     },
 
-    CONDITIONAL_COLON(2, Type.BINARY, Lexeme.TERNARY_COLON) {
+    CONDITIONAL_COLON(2, Associativity.RIGHT, Type.BINARY, Lexeme.TERNARY_COLON) {
         @Override
         ExpressionType validate(ExpressionType leftOperandType, ExpressionType rightOperandType) {
             checkNotNull(leftOperandType);
@@ -320,7 +323,7 @@ public enum Operator {
         }
     },
 
-    CONDITIONAL_QUESTION(2, Type.BINARY, Lexeme.TERNARY_QUESTION) {
+    CONDITIONAL_QUESTION(2, Associativity.RIGHT, Type.BINARY, Lexeme.TERNARY_QUESTION) {
         @Override
         ExpressionType validate(ExpressionType leftOperandType, ExpressionType rightOperandType) {
             checkArgument(leftOperandType == BuiltInType.BOOLEAN || leftOperandType == BuiltInType.INDETERMINATE);
@@ -329,7 +332,7 @@ public enum Operator {
         }
     },
 
-    ASSIGNMENT(1, Type.BINARY, Lexeme.ASSIGNMENT) {
+    ASSIGNMENT(1, Associativity.RIGHT, Type.BINARY, Lexeme.ASSIGNMENT) {
         @Override
         ExpressionType validate(ExpressionType leftOperandType, ExpressionType rightOperandType) {
             checkNotNull(leftOperandType);
@@ -347,44 +350,71 @@ public enum Operator {
         }
     },
 
-    ADDITIVE_ASSIGNMENT(1, Type.BINARY, Lexeme.PLUS_EQUALS, Operator.ADDITION_OR_CONCATENATION),
+    ADDITIVE_ASSIGNMENT(1, Associativity.RIGHT, Type.BINARY, Lexeme.PLUS_EQUALS, Operator.ADDITION_OR_CONCATENATION),
 
-    DIFFERENTIAL_ASSIGNMENT(1, Type.BINARY, Lexeme.MINUS_EQUALS, Operator.SUBTRACTION),
+    DIFFERENTIAL_ASSIGNMENT(1, Associativity.RIGHT, Type.BINARY, Lexeme.MINUS_EQUALS, Operator.SUBTRACTION),
 
-    MULTIPLICATIVE_ASSIGNMENT(1, Type.BINARY, Lexeme.TIMES_EQUALS, Operator.MULTIPLICATION),
+    MULTIPLICATIVE_ASSIGNMENT(1, Associativity.RIGHT, Type.BINARY, Lexeme.TIMES_EQUALS, Operator.MULTIPLICATION),
 
-    DIVISIONAL_ASSIGNMENT(1, Type.BINARY, Lexeme.DIVIDE_EQUALS, Operator.DIVISION),
+    DIVISIONAL_ASSIGNMENT(1, Associativity.RIGHT, Type.BINARY, Lexeme.DIVIDE_EQUALS, Operator.DIVISION),
 
-    MODULO_ASSIGNMENT(1, Type.BINARY, Lexeme.MODULO_EQUALS, Operator.MODULUS),
+    MODULO_ASSIGNMENT(1, Associativity.RIGHT, Type.BINARY, Lexeme.MODULO_EQUALS, Operator.MODULUS),
 
-    BITWISE_AND_ASSIGNMENT(1, Type.BINARY, Lexeme.BITWISE_AND_EQUALS, Operator.BITWISE_AND),
+    BITWISE_AND_ASSIGNMENT(1, Associativity.RIGHT, Type.BINARY, Lexeme.BITWISE_AND_EQUALS, Operator.BITWISE_AND),
 
-    BITWISE_XOR_ASSIGNMENT(1, Type.BINARY, Lexeme.BITWISE_XOR_EQUALS, Operator.BITWISE_XOR),
+    BITWISE_XOR_ASSIGNMENT(1, Associativity.RIGHT, Type.BINARY, Lexeme.BITWISE_XOR_EQUALS, Operator.BITWISE_XOR),
 
-    BITWISE_OR_ASSIGNMENT(1, Type.BINARY, Lexeme.BITWISE_OR_EQUALS, Operator.BITWISE_OR),
+    BITWISE_OR_ASSIGNMENT(1, Associativity.RIGHT, Type.BINARY, Lexeme.BITWISE_OR_EQUALS, Operator.BITWISE_OR),
 
-    LEFT_SHIFT_ASSIGNMENT(1, Type.BINARY, Lexeme.SHIFT_LEFT_EQUALS, Operator.BITWISE_SHIFT_LEFT),
+    LEFT_SHIFT_ASSIGNMENT(1, Associativity.RIGHT, Type.BINARY, Lexeme.SHIFT_LEFT_EQUALS, Operator.BITWISE_SHIFT_LEFT),
 
-    RIGHT_SHIFT_ASSIGNMENT(1, Type.BINARY, Lexeme.SHIFT_RIGHT_EQUALS, Operator.BITWISE_SHIFT_RIGHT);
+    RIGHT_SHIFT_ASSIGNMENT(1, Associativity.RIGHT, Type.BINARY, Lexeme.SHIFT_RIGHT_EQUALS,
+            Operator.BITWISE_SHIFT_RIGHT);
 
     public static enum Type {
         POSTFIX, UNARY, BINARY
     }
 
+    /**
+     * Which way a chain of operators of the same precedence groups: from the left, as {@code a - b - c} means
+     * {@code (a - b) - c}, or from the right, as {@code a = b = c} means {@code a = (b = c)}.  All the operators of one
+     * precedence group the same way.
+     */
+    public static enum Associativity {
+        LEFT, RIGHT
+    }
+
+    /**
+     * The operators that can begin an operand, and those that can follow one; a lexeme such as {@code ++} can be one
+     * of each.
+     */
+    private static final Map<Lexeme, Operator> PREFIX = Maps.newEnumMap(Lexeme.class);
+
+    private static final Map<Lexeme, Operator> INFIX = Maps.newEnumMap(Lexeme.class);
+
+    static {
+        for (Operator operator : values()) {
+            (operator.type == Type.UNARY ? PREFIX : INFIX).put(operator.lexeme, operator);
+        }
+    }
+
     private final int precedence;
 
+    private final Associativity associativity;
+
     private final Type type;
 
     private final Lexeme lexeme;
 
     private final Operator baseOperator;
 
-    private Operator(int precedence, Type type, Lexeme lexeme) {
-        this(precedence, type, lexeme, null);
+    private Operator(int precedence, Associativity associativity, Type type, Lexeme lexeme) {
+        this(precedence, associativity, type, lexeme, null);
     }
 
-    private Operator(int precedence, Type type, Lexeme lexeme, Operator baseOperator) {
+    private Operator(int precedence, Associativity associativity, Type type, Lexeme lexeme, Operator baseOperator) {
         this.precedence = precedence;
+        this.associativity = associativity;
         this.type = type;
         this.lexeme = lexeme;
         this.baseOperator = baseOperator;
@@ -394,10 +424,21 @@ public enum Operator {
         return precedence;
     }
 
+    public Associativity getAssociativity() {
+        return associativity;
+    }
+
     public Type getType() {
         return type;
     }
 
+    /**
+     * @return whether a chain of operators of this precedence groups from the right, as {@code a = b = c} does
+     */
+    public boolean isRightAssociative() {
+        return associativity == Associativity.RIGHT;
+    }
+
     ExpressionType validate(ExpressionType leftOperandType, ExpressionType rightOperandType) {
         if (baseOperator != null) {
             return baseOperator.validate(leftOperandType, rightOperandType);
@@ -406,6 +447,21 @@ public enum Operator {
         }
     }
 
+    /**
+     * @return the unary operator the lexeme stands for when it begins an operand, or {@code null} if there is none
+     */
+    public static Operator getPrefix(Lexeme lexeme) {
+        return PREFIX.get(lexeme);
+    }
+
+    /**
+     * @return the binary or postfix operator the lexeme stands for when it follows an operand, or {@code null} if
+     *         there is none
+     */
+    public static Operator getInfix(Lexeme lexeme) {
+        return INFIX.get(lexeme);
+    }
+
     public static Operator getForLexeme(Lexeme lexeme) {
         for (Operator operator : values()) {
             if (operator.lexeme == lexeme) {
@@ -0,0 +1,172 @@
+package parser;
+
+import lexer.ConstantPool;
+
+import java.util.Set;
+
+/**
+ * A {@link ParseListener} that ignores every event but {@link #error}, which throws the error, to be extended by
+ * listeners that only need a few.  A parse with one as it is only checks the syntax of the unit, stopping at the
+ * first error.
+ */
+public class ParseAdapter implements ParseListener {
+    @Override
+    public void enterCompilationUnit(ConstantPool constantPool) throws ParseException {
+    }
+
+    @Override
+    public void exitCompilationUnit() throws ParseException {
+    }
+
+    @Override
+    public void enterTypeDeclaration(String name, int symbol, Set<Modifier> modifiers) throws ParseException {
+    }
+
+    @Override
+    public void exitTypeDeclaration(long span) throws ParseException {
+    }
+
+    @Override
+    public void enterMethodDeclaration(String name, int symbol, ExpressionType returnType,
+            Set<Modifier> modifiers, int parameterCount) throws ParseException {
+    }
+
+    @Override
+    public void exitMethodDeclaration(long span) throws ParseException {
+    }
+
+    @Override
+    public void enterDoLoop() throws ParseException {
+    }
+
+    @Override
+    public void exitDoLoop(long span) throws ParseException {
+    }
+
+    @Override
+    public void enterElseStatement() throws ParseException {
+    }
+
+    @Override
+    public void exitElseStatement(long span) throws ParseException {
+    }
+
+    @Override
+    public void enterForLoop() throws ParseException {
+    }
+
+    @Override
+    public void exitForLoop(long span) throws ParseException {
+    }
+
+    @Override
+    public void enterIfStatement() throws ParseException {
+    }
+
+    @Override
+    public void exitIfStatement(long span) throws ParseException {
+    }
+
+    @Override
+    public void enterRepeatLoop() throws ParseException {
+    }
+
+    @Override
+    public void exitRepeatLoop(long span) throws ParseException {
+    }
+
+    @Override
+    public void enterSwitchStatement() throws ParseException {
+    }
+
+    @Override
+    public void exitSwitchStatement(long span) throws ParseException {
+    }
+
+    @Override
+    public void enterWhileLoop() throws ParseException {
+    }
+
+    @Override
+    public void exitWhileLoop(long span) throws ParseException {
+    }
+
+    @Override
+    public void enterBreakStatement() throws ParseException {
+    }
+
+    @Override
+    public void exitBreakStatement(long span) throws ParseException {
+    }
+
+    @Override
+    public void enterContinueStatement() throws ParseException {
+    }
+
+    @Override
+    public void exitContinueStatement(long span) throws ParseException {
+    }
+
+    @Override
+    public void enterDeleteStatement() throws ParseException {
+    }
+
+    @Override
+    public void exitDeleteStatement(long span) throws ParseException {
+    }
+
+    @Override
+    public void enterReturnStatement(boolean hasValue) throws ParseException {
+    }
+
+    @Override
+    public void exitReturnStatement(long span) throws ParseException {
+    }
+
+    @Override
+    public void expressionStatement() throws ParseException {
+    }
+
+    @Override
+    public void identifierReference(String name, int symbol, long span) throws ParseException {
+    }
+
+    @Override
+    public void fieldReference(String name, int symbol, long span) throws ParseException {
+    }
+
+    @Override
+    public void integralLiteral(int constant, long span) throws ParseException {
+    }
+
+    @Override
+    public void stringLiteral(int constant, long span) throws ParseException {
+    }
+
+    @Override
+    public void variableDeclaration(ExpressionType type, String name, int symbol, Set<Modifier> modifiers, long span)
+            throws ParseException {
+    }
+
+    @Override
+    public void operatorExpression(Operator operator, long span) throws ParseException {
+    }
+
+    @Override
+    public void methodInvocation(String name, int symbol, boolean hasTarget, int parameterCount, long span)
+            throws ParseException {
+    }
+
+    @Override
+    public void constructorInvocation(boolean hasTarget, int parameterCount, long span) throws ParseException {
+    }
+
+    @Override
+    public void arrayAccess(long span) throws ParseException {
+    }
+
+    @Override
+    public void error(ParseException error, int depth, long span) throws ParseException {
+        throw error;
+    }
+}
@@ -6,8 +6,48 @@
 
 package parser;
 
+import lexer.SourceFile;
+
 public final class ParseException extends Exception {
+    private long span;
+
     public ParseException(String message) {
+        this(message, SourceFile.NO_SPAN);
+    }
+
+    /**
+     * @param span where in the source the error is, packed as by {@link SourceFile#span(int, int)}
+     */
+    public ParseException(String message, long span) {
         super(message);
+        this.span = span;
+    }
+
+    /**
+     * @return where in the source the error is, or {@link SourceFile#NO_SPAN} if that is not known
+     */
+    public long getSpan() {
+        return span;
+    }
+
+    /**
+     * Gives the error a position if it does not have one yet, such as when it was raised by a node that does not
+     * know where it came from.
+     */
+    ParseException locate(long span) {
+        if (this.span == SourceFile.NO_SPAN) {
+            this.span = span;
+        }
+        return this;
+    }
+
+    /**
+     * @return the message, preceded by the position of the error in the given source if it is known
+     */
+    public String describe(SourceFile source) {
+        if (span == SourceFile.NO_SPAN) {
+            return getMessage();
+        }
+        return source.describe(SourceFile.spanStart(span)) + ": " + getMessage();
     }
 }
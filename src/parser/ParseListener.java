@@ -0,0 +1,155 @@
+package parser;
+
+import lexer.ConstantPool;
+
+import java.util.Set;
+
+/**
+ * Receives the structure of a compilation unit as it is parsed, for tools that only need to see it once and so have
+ * no use for a tree of {@link Statement}s and {@link Expression}s.  The tree itself is built by one such listener.
+ *
+ * A statement is entered once its head has been parsed, such as an {@code if} statement's condition or a method's
+ * parameters, and exited after its body, with its span.  Expressions are reported once they are complete, after the
+ * expressions they are made of, as a stack machine would evaluate them: an expression's operands are the last
+ * expressions reported that no other expression or statement has used.  The expressions a statement is made of are
+ * the ones reported before it is entered, except for a {@code do} loop's condition, which follows its body and
+ * is used by its exit; and an expression on its own as a statement is reported by {@link #expressionStatement()}.
+ *
+ * Names are given together with their symbol, their id in the compilation's symbol table, or -1 if they were not
+ * interned; literals are given as their index in the unit's {@link ConstantPool}.
+ *
+ * When a statement can not be parsed, whether for a syntax error or one a listener throws, the parse skips ahead to
+ * where the next statement seems to start, and reports the error with {@link #error}.  A listener that throws it
+ * stops the parse there, throwing it in turn; one that does not has the parse carry on, so that every error in the
+ * unit is found in a single pass.  If a listener does not say where an error is, it is placed at the last token read.
+ *
+ * @see ParseAdapter
+ */
+public interface ParseListener {
+    /**
+     * @param constantPool the pool the indexes of the unit's literals are in
+     */
+    void enterCompilationUnit(ConstantPool constantPool) throws ParseException;
+
+    void exitCompilationUnit() throws ParseException;
+
+    void enterTypeDeclaration(String name, int symbol, Set<Modifier> modifiers) throws ParseException;
+
+    void exitTypeDeclaration(long span) throws ParseException;
+
+    /**
+     * @param parameterCount how many of the last expressions are the method's parameters, each a variable declaration
+     */
+    void enterMethodDeclaration(String name, int symbol, ExpressionType returnType, Set<Modifier> modifiers,
+                                int parameterCount) throws ParseException;
+
+    void exitMethodDeclaration(long span) throws ParseException;
+
+    /**
+     * Enters a {@code do} loop, whose condition is the last expression reported before it is exited.
+     */
+    void enterDoLoop() throws ParseException;
+
+    void exitDoLoop(long span) throws ParseException;
+
+    void enterElseStatement() throws ParseException;
+
+    void exitElseStatement(long span) throws ParseException;
+
+    /**
+     * Enters a {@code for} loop, whose initializer, condition and updater are the last three expressions.
+     */
+    void enterForLoop() throws ParseException;
+
+    void exitForLoop(long span) throws ParseException;
+
+    void enterIfStatement() throws ParseException;
+
+    void exitIfStatement(long span) throws ParseException;
+
+    void enterRepeatLoop() throws ParseException;
+
+    void exitRepeatLoop(long span) throws ParseException;
+
+    void enterSwitchStatement() throws ParseException;
+
+    void exitSwitchStatement(long span) throws ParseException;
+
+    void enterWhileLoop() throws ParseException;
+
+    void exitWhileLoop(long span) throws ParseException;
+
+    void enterBreakStatement() throws ParseException;
+
+    void exitBreakStatement(long span) throws ParseException;
+
+    void enterContinueStatement() throws ParseException;
+
+    void exitContinueStatement(long span) throws ParseException;
+
+    /**
+     * Enters a {@code delete} statement, whose variable is the last expression, an identifier or field reference.
+     */
+    void enterDeleteStatement() throws ParseException;
+
+    void exitDeleteStatement(long span) throws ParseException;
+
+    /**
+     * @param hasValue whether the last expression is the value returned
+     */
+    void enterReturnStatement(boolean hasValue) throws ParseException;
+
+    void exitReturnStatement(long span) throws ParseException;
+
+    /**
+     * Reports that the last expression is a statement by itself.
+     */
+    void expressionStatement() throws ParseException;
+
+    void identifierReference(String name, int symbol, long span) throws ParseException;
+
+    /**
+     * Reports a reference to a field of the last expression.
+     */
+    void fieldReference(String name, int symbol, long span) throws ParseException;
+
+    void integralLiteral(int constant, long span) throws ParseException;
+
+    void stringLiteral(int constant, long span) throws ParseException;
+
+    void variableDeclaration(ExpressionType type, String name, int symbol, Set<Modifier> modifiers, long span)
+            throws ParseException;
+
+    /**
+     * Reports an operator applied to the last expression, or to the last two if it is binary.
+     */
+    void operatorExpression(Operator operator, long span) throws ParseException;
+
+    /**
+     * Reports an invocation whose parameters are the last {@code parameterCount} expressions, which follow its target
+     * if it has one; otherwise its target is {@code this}.
+     */
+    void methodInvocation(String name, int symbol, boolean hasTarget, int parameterCount, long span)
+            throws ParseException;
+
+    /**
+     * Reports an invocation of {@code new}, in the same way as {@link #methodInvocation}.
+     */
+    void constructorInvocation(boolean hasTarget, int parameterCount, long span) throws ParseException;
+
+    /**
+     * Reports an access to an element of an array, the second last expression, at an index, the last.
+     */
+    void arrayAccess(long span) throws ParseException;
+
+    /**
+     * Reports a statement that could not be parsed.  The statements entered since it began are abandoned, and will not
+     * be exited, and the expressions reported since will not be used; the parse carries on with the next statement.
+     *
+     * @param depth how many of the statements entered and not exited enclose the one with the error; those entered
+     *              after them were abandoned
+     * @param span  the tokens skipped, from the start of the statement up to where the next one seems to start
+     * @throws ParseException to stop the parse, such as {@code error} itself
+     */
+    void error(ParseException error, int depth, long span) throws ParseException;
+}
@@ -32,6 +32,11 @@ public abstract class Statement extends Node {
         return parent;
     }
 
+    @Override
+    final Node parent() {
+        return parent;
+    }
+
     protected void addChild(Statement child) throws ParseException {
         checkNotNull(child);
         children.add(child);
@@ -42,4 +47,39 @@ public abstract class Statement extends Node {
         checkNotNull(child);
         children.add(child);
     }
+
+    @Override
+    List<Node> children() {
+        return children;
+    }
+
+    /**
+     * @return how many children have been added, without parsing any that have been put off
+     */
+    final int childCount() {
+        return children.size();
+    }
+
+    /**
+     * Puts the last child added in place of {@code child}, for an incremental reparse that has just parsed the
+     * statement again into this one.
+     */
+    final void replaceChild(Statement child) {
+        checkArgument(child.parent == this);
+        Node replacement = children.remove(children.size() - 1);
+        for (int i = 0; i < children.size(); i++) {
+            if (children.get(i) == child) {
+                children.set(i, replacement);
+                return;
+            }
+        }
+        throw new IllegalArgumentException("not a child of this statement");
+    }
+
+    /**
+     * Removes the children added after the first {@code count}, such as those of a reparse that failed.
+     */
+    final void removeChildren(int count) {
+        children.subList(count, children.size()).clear();
+    }
 }
@@ -0,0 +1,843 @@
+package parser;
+
+import lexer.DiamondLexer.Lexeme;
+import lexer.SourceFile;
+import lexer.TokenSequence;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * The state of a single parse: the tokens being read, how far through them it has got, the pool their literals go
+ * in, and the {@link ParseListener} being told what they make up.  {@link DiamondParser} makes a new one for every
+ * parse, so that the parser itself has no state to share between threads.
+ *
+ * Statements are parsed in a single pass, as a recursive descent would parse them, but with the statements being
+ * parsed kept on an explicit stack of {@link Frame}s instead of the call stack, so that however deeply the input nests
+ * statements, the parse needs no more stack than for the first.  Each statement is told apart by its first token, or,
+ * for a method declaration, by looking ahead over its return type to its name and {@code (}.  A statement with a body
+ * is entered once its head is parsed, and the body begun; once the body ends, at its closing brace or after its single
+ * statement, the statement is exited, and a {@code do} loop's condition parsed first.  Expressions are parsed where
+ * they lie by an {@link ExpressionParser}, which stops at the first token that can not continue them.
+ *
+ * Statements may only nest as deeply as the parse's {@link NestingLimits} allow; a statement that would nest more
+ * deeply is an error.
+ *
+ * A statement with an error is skipped, in panic mode: the parse picks up again after the next {@code ;} or block, or
+ * at the next {@code }} or keyword that begins a statement, and the listener is told of the error.  Unless the listener
+ * throws it, the parse then carries on with the statements after it.
+ *
+ * A skeleton parse reads only the declarations, and puts off the bodies of methods, so that the unit's types and
+ * methods can be found at a fraction of the cost; an error in a body is found when it is parsed.
+ */
+final class StatementParser {
+    /**
+     * The kind of statement the statements being parsed are directly inside, which decides what may be declared.
+     */
+    private enum Scope {
+        COMPILATION_UNIT, TYPE, BLOCK
+    }
+
+    /**
+     * The kind of statement a {@link Frame} is the body of, which decides how it is exited.
+     */
+    private enum Kind {
+        /**
+         * The statement the parse is inside, which whatever began the parse entered and exits.
+         */
+        ENCLOSING,
+
+        TYPE_DECLARATION, METHOD_DECLARATION, DO_LOOP, ELSE_STATEMENT, FOR_LOOP, IF_STATEMENT, REPEAT_LOOP,
+        SWITCH_STATEMENT, WHILE_LOOP
+    }
+
+    /**
+     * Where the body of a statement ends.
+     */
+    private enum Extent {
+        /**
+         * At the end of the input, as a compilation unit's does.
+         */
+        INPUT,
+
+        /**
+         * At the {@code '}'} closing it.
+         */
+        BLOCK,
+
+        /**
+         * After its one statement.
+         */
+        STATEMENT
+    }
+
+    /**
+     * A statement that has been entered and whose body is being parsed.
+     */
+    private static final class Frame {
+        private Kind kind;
+
+        /**
+         * The scope the statements of the body are in.
+         */
+        private Scope scope;
+
+        private Extent extent;
+
+        /**
+         * The span of the statement's first token, which a stream may have released by the time it ends.
+         */
+        private long first;
+
+        /**
+         * The index of the first token of the statement of the body being parsed, which an error in it is skipped from.
+         */
+        private int start;
+
+        /**
+         * The span of that token, which a stream may have released by the time an error in the statement is found,
+         * such as one after a body in braces.
+         */
+        private long startSpan;
+    }
+
+    private final TokenSequence<Lexeme> tokens;
+
+    private final LiteralDecoder literals;
+
+    private final NestingLimits limits;
+
+    private final ParseListener listener;
+
+    /**
+     * The builder to leave method bodies to, in a skeleton parse, or {@code null} if they are parsed.
+     */
+    private final TreeBuilder skeleton;
+
+    /**
+     * Parses every expression of this parse, in place in {@link #tokens}.
+     */
+    private final ExpressionParser expressionParser;
+
+    /**
+     * The index of the <i>last</i> token read within the tokens list.
+     */
+    private int pos = -1;
+
+    /**
+     * The statements whose bodies are being parsed, outermost first; those from {@link #depth} on are kept to be used
+     * again.
+     */
+    private Frame[] frames = new Frame[16];
+
+    /**
+     * How many statements the listener has entered that enclose the statements being parsed, which are the
+     * {@link #frames} in use.
+     */
+    private int depth;
+
+    /**
+     * How deeply the statement the parse is inside is nested: 0 for a compilation unit, 1 for a type declaration, and
+     * so on.  Statements nested within it count from there towards the limit.
+     */
+    private int nesting;
+
+    /**
+     * The error the listener threw to stop the parse, which is not to be recovered from on its way back up.
+     */
+    private ParseException fatal;
+
+    /**
+     * Where the last error reported was.
+     */
+    private long reported = SourceFile.NO_SPAN;
+
+    StatementParser(TokenSequence<Lexeme> tokens, LiteralDecoder literals, NestingLimits limits,
+                    ParseListener listener) {
+        this(tokens, literals, limits, listener, null);
+    }
+
+    private StatementParser(TokenSequence<Lexeme> tokens, LiteralDecoder literals, NestingLimits limits,
+                            ParseListener listener, TreeBuilder skeleton) {
+        this.tokens = tokens;
+        this.literals = literals;
+        this.limits = limits;
+        this.listener = listener;
+        this.skeleton = skeleton;
+        this.expressionParser = new ExpressionParser(tokens, literals, listener, limits.getExpressions());
+    }
+
+    /**
+     * Creates the state of a skeleton parse, which parses declarations as usual but only matches the braces of a
+     * method's body, leaving the builder to parse it when it is needed.  A body that is not in braces is parsed.
+     */
+    static StatementParser skeleton(TokenSequence<Lexeme> tokens, LiteralDecoder literals, NestingLimits limits,
+                                    TreeBuilder builder) {
+        return new StatementParser(tokens, literals, limits, builder, builder);
+    }
+
+    void parseCompilationUnit() throws ParseException {
+        try {
+            listener.enterCompilationUnit(literals.getPool());
+            push(Kind.ENCLOSING, Scope.COMPILATION_UNIT, Extent.INPUT, SourceFile.NO_SPAN);
+            parseStatements();
+            listener.exitCompilationUnit();
+        } catch (ParseException e) {
+            // errors raised by listeners, which do not know where they are, happened at the last token read
+            throw e.locate(spanAt(pos));
+        }
+    }
+
+    /**
+     * Parses the body of a top-level type declaration, exactly as {@link #parseCompilationUnit} would have, for a
+     * parse that has split its unit into type declarations and entered them itself.
+     *
+     * @param bodyStart the index of the {@code '{'} beginning the body
+     * @return the index of the {@code '}'} ending it
+     */
+    int parseTypeBody(int bodyStart) throws ParseException {
+        return parseBody(bodyStart, Scope.TYPE, 1);
+    }
+
+    /**
+     * Parses the body of a method, exactly as {@link #parseCompilationUnit} would have, for a method whose body a
+     * skeleton parse put off.
+     *
+     * @param bodyStart the index of the {@code '{'} beginning the body
+     * @return the index of the {@code '}'} ending it
+     */
+    int parseMethodBody(int bodyStart) throws ParseException {
+        return parseBody(bodyStart, Scope.BLOCK, 2);
+    }
+
+    /**
+     * Parses a body in braces, which the listener has already entered the statement of.
+     *
+     * @param nesting how deeply the statement is nested, as {@link #nesting}
+     */
+    private int parseBody(int bodyStart, Scope scope, int nesting) throws ParseException {
+        this.nesting = nesting;
+        pos = bodyStart - 1;
+        try {
+            open(Kind.ENCLOSING, scope, SourceFile.NO_SPAN);
+            parseStatements();
+        } catch (ParseException e) {
+            throw e.locate(spanAt(pos));
+        }
+        return pos;
+    }
+
+    /**
+     * Parses a single statement, exactly as {@link #parseCompilationUnit} would have, for a parse of part of a unit.
+     *
+     * @param start  the index of the statement's first token, including its modifiers
+     * @param parent the statement it is directly inside
+     * @return the index of the last token read, which ends the statement
+     */
+    int parseStatement(int start, Statement parent) throws ParseException {
+        Scope scope = (parent instanceof CompilationUnit) ? Scope.COMPILATION_UNIT
+                : (parent instanceof TypeDeclaration) ? Scope.TYPE : Scope.BLOCK;
+        for (Statement ancestor = parent; ancestor.getParent() != null; ancestor = ancestor.getParent()) {
+            nesting++;
+        }
+        pos = start - 1;
+        try {
+            push(Kind.ENCLOSING, scope, Extent.STATEMENT, SourceFile.NO_SPAN);
+            parseStatements();
+        } catch (ParseException e) {
+            throw e.locate(spanAt(pos));
+        }
+        return pos;
+    }
+
+    /**
+     * Parses statements until the body of the statement the parse is inside ends.  This is where the parse recovers
+     * from errors in them.
+     */
+    private void parseStatements() throws ParseException {
+        while (depth > 0) {
+            Frame frame = frames[depth - 1];
+            try {
+                if (frame.extent == Extent.STATEMENT) {
+                    parseStatement(frame.scope);
+                    continue;
+                }
+                // we're between statements, and never look back past the last token read, where an error may be placed
+                tokens.release(pos);
+                if (!tokens.has(pos + 1)) {
+                    // only the compilation unit is not in a block, and it ends with the input; any other block is
+                    // closed here, unless the error that ran into the end has already been reported
+                    if (frame.extent == Extent.BLOCK && spanAt(pos) != reported) {
+                        report(error("expected '}'"), spanAt(pos));
+                    }
+                    close();
+                } else if (tokens.lexeme(pos + 1) == Lexeme.RIGHT_BRACE) {
+                    pos++;
+                    if (frame.extent == Extent.BLOCK) {
+                        close();
+                    } else {
+                        report(error("unexpected '}'"), spanAt(pos));
+                    }
+                } else {
+                    frame.start = pos + 1;
+                    frame.startSpan = tokens.span(pos + 1);
+                    parseStatement(frame.scope);
+                }
+            } catch (ParseException e) {
+                recover(e);
+            }
+        }
+    }
+
+    /**
+     * Recovers from an error in the statement being parsed in the innermost block, or in the compilation unit, by
+     * skipping it; the statements entered since it began are abandoned.
+     *
+     * @throws ParseException if the error stops the parse, because the listener threw it or it is in the statement
+     *                        a parse of a single statement is of
+     */
+    private void recover(ParseException e) throws ParseException {
+        if (e == fatal) {
+            throw e;
+        }
+        while (depth > 0 && frames[depth - 1].extent == Extent.STATEMENT) {
+            depth--;
+        }
+        if (depth == 0) {
+            throw e;
+        }
+        Frame frame = frames[depth - 1];
+        // errors raised by listeners, which do not know where they are, happened at the last token read
+        e.locate(spanAt(pos));
+        long first = frame.startSpan;
+        skip(frame.start);
+        report(e, SourceFile.union(first, spanAt(pos)));
+    }
+
+    /**
+     * Skips the rest of a statement that could not be parsed: up to and including the next {@code ';'}, or the next
+     * block, or up to the next {@code '}'} or keyword that begins a statement, whichever comes first.  The statement's
+     * first token is always skipped, so that the parse moves on.
+     *
+     * @param start the index of the statement's first token
+     */
+    private void skip(int start) {
+        // the error is at the last token either parser read
+        int index = Math.max(start, Math.max(pos, expressionParser.getPosition()));
+        while (tokens.has(index)) {
+            switch (tokens.lexeme(index)) {
+                case SEMICOLON:
+                    pos = index;
+                    return;
+                case LEFT_BRACE:
+                    // blocks are skipped whole, since they may hold statements of their own
+                    int open = 0;
+                    do {
+                        if (tokens.lexeme(index) == Lexeme.LEFT_BRACE) {
+                            open++;
+                        } else if (tokens.lexeme(index) == Lexeme.RIGHT_BRACE) {
+                            open--;
+                        }
+                        index++;
+                    } while (open > 0 && tokens.has(index));
+                    pos = index - 1;
+                    return;
+                case RIGHT_BRACE:
+                case BREAK: case CONTINUE: case DELETE: case RETURN:
+                case DO: case ELSE: case FOR: case IF: case REPEAT: case SWITCH: case WHILE: case CLASS:
+                    if (index > start) {
+                        pos = index - 1;
+                        return;
+                    }
+                    break;
+            }
+            index++;
+        }
+        pos = index - 1;
+    }
+
+    /**
+     * Tells the listener of an error in the statements being parsed, and so gives it the chance to stop the parse.
+     *
+     * @param span the tokens skipped because of it
+     */
+    private void report(ParseException error, long span) throws ParseException {
+        reported = error.getSpan();
+        try {
+            listener.error(error, depth, span);
+        } catch (ParseException e) {
+            fatal = e;
+            throw e.locate(spanAt(pos));
+        }
+    }
+
+    /**
+     * Begins the body of a statement that has just been entered: a block, if one follows, or else a single statement.
+     *
+     * @param scope the scope of the statements of the body
+     * @param first the span of the statement's first token
+     */
+    private void open(Kind kind, Scope scope, long first) {
+        Extent extent = Extent.STATEMENT;
+        if (tokens.has(pos + 1) && tokens.lexeme(pos + 1) == Lexeme.LEFT_BRACE) {
+            pos++;
+            extent = Extent.BLOCK;
+        }
+        push(kind, scope, extent, first);
+    }
+
+    private void push(Kind kind, Scope scope, Extent extent, long first) {
+        if (depth == frames.length) {
+            frames = Arrays.copyOf(frames, depth * 2);
+        }
+        Frame frame = frames[depth];
+        if (frame == null) {
+            frame = frames[depth] = new Frame();
+        }
+        depth++;
+        frame.kind = kind;
+        frame.scope = scope;
+        frame.extent = extent;
+        frame.first = first;
+    }
+
+    /**
+     * Ends the body of the innermost statement, and so the statement, and then each statement whose body was the one
+     * that ended.
+     */
+    private void close() throws ParseException {
+        do {
+            Frame frame = frames[--depth];
+            if (depth == 0) {
+                return;
+            }
+            exit(frame.kind, frame.first);
+        } while (frames[depth - 1].extent == Extent.STATEMENT);
+    }
+
+    /**
+     * Exits a statement whose body has ended, reading a {@code do} loop's condition first.
+     *
+     * @param first the span of its first token
+     */
+    private void exit(Kind kind, long first) throws ParseException {
+        switch (kind) {
+            case TYPE_DECLARATION:
+                listener.exitTypeDeclaration(spanFrom(first));
+                break;
+            case METHOD_DECLARATION:
+                listener.exitMethodDeclaration(spanFrom(first));
+                break;
+            case DO_LOOP:
+                expect(Lexeme.WHILE, "expected \"while\"");
+                parseCondition();
+                expect(Lexeme.SEMICOLON, "expected ';'");
+                listener.exitDoLoop(spanFrom(first));
+                break;
+            case ELSE_STATEMENT:
+                listener.exitElseStatement(spanFrom(first));
+                break;
+            case FOR_LOOP:
+                listener.exitForLoop(spanFrom(first));
+                break;
+            case IF_STATEMENT:
+                listener.exitIfStatement(spanFrom(first));
+                break;
+            case REPEAT_LOOP:
+                listener.exitRepeatLoop(spanFrom(first));
+                break;
+            case SWITCH_STATEMENT:
+                listener.exitSwitchStatement(spanFrom(first));
+                break;
+            case WHILE_LOOP:
+                listener.exitWhileLoop(spanFrom(first));
+                break;
+            default:
+                throw new AssertionError("not a statement with a body: " + kind);
+        }
+    }
+
+    /**
+     * Checks that a statement with a body, whose first token has been read, may nest where it is.
+     */
+    private void checkNesting() throws ParseException {
+        if (nesting + depth > limits.getStatements()) {
+            throw error("statements are nested more than " + limits.getStatements() + " deep");
+        }
+    }
+
+    /*
+     * Modifiers at the start of a statement may apply to a type or method declaration, or to an expression (a variable
+     * declaration), whichever follows them; an expression is parsed from the first of them, so the expression parser
+     * applies them itself. Any other statement may not have modifiers.
+     *
+     * A statement with a body is parsed up to its body, which is begun, and the parse returns to the loop in
+     * parseStatements to parse it; any other is complete, which may end the bodies it is the statement of.
+     */
+    private void parseStatement(Scope scope) throws ParseException {
+        int start = pos + 1;
+        long first = spanAt(start);
+        while (tokens.has(pos + 1) && Modifier.isModifier(tokens.lexeme(pos + 1))) {
+            pos++;
+        }
+        boolean hasModifiers = (pos >= start);
+        if (!tokens.has(pos + 1)) {
+            throw error("expected statement");
+        }
+
+        Lexeme lexeme = tokens.lexeme(pos + 1);
+        switch (lexeme) {
+            case SEMICOLON:
+                if (!hasModifiers) {
+                    // an empty statement
+                    pos++;
+                    completed();
+                    return;
+                }
+                break;
+            case LEFT_BRACE:
+                pos++;
+                throw error("unexpected '{'");
+            case RIGHT_BRACE:
+                pos++;
+                throw error(hasModifiers ? "expected statement or ';'" : "unexpected '}'");
+            case BREAK: case CONTINUE: case DELETE: case RETURN:
+            case DO: case ELSE: case FOR: case IF: case REPEAT: case SWITCH: case WHILE:
+                pos++;
+                if (hasModifiers) {
+                    throw error("unexpected modifiers preceding statement: " + modifiers(start));
+                }
+                parseControlStatement(lexeme, first);
+                return;
+            case CLASS:
+                pos++;
+                expect(Lexeme.IDENTIFIER, "expected identifier");
+                if (scope != Scope.COMPILATION_UNIT) {
+                    throw error("nested types are not yet supported");
+                }
+                checkNesting();
+                listener.enterTypeDeclaration(tokens.contents(pos), tokens.symbol(pos), modifiers(start));
+                open(Kind.TYPE_DECLARATION, Scope.TYPE, first);
+                return;
+            default:
+                if (startsMethodDeclaration(pos + 1)) {
+                    parseMethodDeclaration(scope, start, first);
+                    return;
+                }
+        }
+
+        // everything else is an expression, which must be followed by a semicolon
+        int count = expressionParser.parseFrom(start);
+        pos = expressionParser.getPosition() - 1;
+        expect(Lexeme.SEMICOLON, "expected ';'");
+        if (count > 1) {
+            throw error("expected ';'");
+        }
+        listener.expressionStatement();
+        completed();
+    }
+
+    /**
+     * Ends the bodies that are the statement just parsed, if it is one.
+     */
+    private void completed() throws ParseException {
+        if (depth > 0 && frames[depth - 1].extent == Extent.STATEMENT) {
+            close();
+        }
+    }
+
+    /**
+     * Parses a statement introduced by a keyword, which has been read.
+     */
+    private void parseControlStatement(Lexeme keyword, long first) throws ParseException {
+        switch (keyword) {
+            // statements not followed by a block; these must all be followed by a semicolon
+            case BREAK:
+                expect(Lexeme.SEMICOLON, "expected ';'");
+                listener.enterBreakStatement();
+                listener.exitBreakStatement(spanFrom(first));
+                completed();
+                break;
+            case CONTINUE:
+                expect(Lexeme.SEMICOLON, "expected ';'");
+                listener.enterContinueStatement();
+                listener.exitContinueStatement(spanFrom(first));
+                completed();
+                break;
+            case DELETE:
+                // there must be an expression, specifically a variable reference, immediately to the right
+                parseExpression();
+                if (!expressionParser.isReference()) {
+                    throw error("expected variable reference");
+                }
+                expect(Lexeme.SEMICOLON, "expected ';'");
+                listener.enterDeleteStatement();
+                listener.exitDeleteStatement(spanFrom(first));
+                completed();
+                break;
+            case RETURN:
+                // there are two variants, with and without a value
+                boolean hasValue = !tokens.has(pos + 1) || tokens.lexeme(pos + 1) != Lexeme.SEMICOLON;
+                if (hasValue) {
+                    parseExpression();
+                }
+                listener.enterReturnStatement(hasValue);
+                expect(Lexeme.SEMICOLON, "expected ';'");
+                listener.exitReturnStatement(spanFrom(first));
+                completed();
+                break;
+
+            // statements followed by a block (or a single statement or expression)
+            case DO:
+                // the body must be a block or empty, and the condition follows it
+                if (!tokens.has(pos + 1)
+                        || (tokens.lexeme(pos + 1) != Lexeme.LEFT_BRACE && tokens.lexeme(pos + 1) != Lexeme.SEMICOLON)) {
+                    pos = tokens.has(pos + 1) ? pos + 1 : pos;
+                    throw error("expected '{' or ';'");
+                }
+                checkNesting();
+                listener.enterDoLoop();
+                open(Kind.DO_LOOP, Scope.BLOCK, first);
+                break;
+            case ELSE:
+                checkNesting();
+                listener.enterElseStatement();
+                open(Kind.ELSE_STATEMENT, Scope.BLOCK, first);
+                break;
+            case FOR:
+                checkNesting();
+                expect(Lexeme.LEFT_PAREN, "expected '('");
+                parseExpression();
+                expect(Lexeme.SEMICOLON, "expected ';'");
+                parseExpression();
+                expect(Lexeme.SEMICOLON, "expected ';'");
+                parseExpression();
+                expect(Lexeme.RIGHT_PAREN, "expected ')'");
+                listener.enterForLoop();
+                open(Kind.FOR_LOOP, Scope.BLOCK, first);
+                break;
+            case IF:
+                checkNesting();
+                parseCondition();
+                listener.enterIfStatement();
+                open(Kind.IF_STATEMENT, Scope.BLOCK, first);
+                break;
+            case REPEAT:
+                checkNesting();
+                parseCondition();
+                listener.enterRepeatLoop();
+                open(Kind.REPEAT_LOOP, Scope.BLOCK, first);
+                break;
+            case SWITCH:
+                checkNesting();
+                parseCondition();
+                listener.enterSwitchStatement();
+                open(Kind.SWITCH_STATEMENT, Scope.BLOCK, first);
+                break;
+            case WHILE:
+                checkNesting();
+                parseCondition();
+                listener.enterWhileLoop();
+                open(Kind.WHILE_LOOP, Scope.BLOCK, first);
+                break;
+            default:
+                throw new AssertionError("not a control statement: " + keyword);
+        }
+    }
+
+    /**
+     * @return whether the tokens from {@code index} on are a type, a name and {@code (}, which begin a method
+     *         declaration rather than an expression
+     */
+    private boolean startsMethodDeclaration(int index) {
+        switch (tokens.lexeme(index)) {
+            case BOOLEAN: case SHORT: case INT: case LONG: case IDENTIFIER:
+                index++;
+                break;
+            default:
+                return false;
+        }
+        while (tokens.has(index + 1) && tokens.lexeme(index) == Lexeme.LEFT_BRACKET
+                && tokens.lexeme(index + 1) == Lexeme.RIGHT_BRACKET) {
+            index += 2;
+        }
+        return tokens.has(index + 1) && tokens.lexeme(index) == Lexeme.IDENTIFIER
+                && tokens.lexeme(index + 1) == Lexeme.LEFT_PAREN;
+    }
+
+    /**
+     * @param start the index of the declaration's first token, including its modifiers
+     * @param first the span of that token
+     */
+    private void parseMethodDeclaration(Scope scope, int start, long first) throws ParseException {
+        Set<Modifier> modifiers = modifiers(start);
+        ExpressionType returnType = parseType();
+        int name = ++pos;
+        int parameterCount = parseParenthesized();
+        if (!expressionParser.isDeclarations()) {
+            throw error("expected variable declaration");
+        } else if (scope != Scope.TYPE) {
+            throw error("methods may only be declared directly under a type declaration");
+        }
+        checkNesting();
+        listener.enterMethodDeclaration(tokens.contents(name), tokens.symbol(name), returnType, modifiers,
+                parameterCount);
+        if (skeleton != null && tokens.has(pos + 1) && tokens.lexeme(pos + 1) == Lexeme.LEFT_BRACE) {
+            skeleton.deferBody(new MethodBody(tokens, literals, limits, pos + 1));
+            skipBody();
+            listener.exitMethodDeclaration(spanFrom(first));
+            completed();
+        } else {
+            open(Kind.METHOD_DECLARATION, Scope.BLOCK, first);
+        }
+    }
+
+    /**
+     * Reads a body in braces without parsing it, for a skeleton parse.  Since expressions can not contain braces, the
+     * body ends at the brace matching the one it begins with.  Its literals are reserved in the pool on the way, so
+     * that they are numbered as in a full parse, whenever the body is parsed.
+     */
+    private void skipBody() throws ParseException {
+        int open = 0;
+        do {
+            if (!tokens.has(pos + 1)) {
+                throw error("expected '}'");
+            }
+            switch (tokens.lexeme(++pos)) {
+                case LEFT_BRACE:
+                    open++;
+                    break;
+                case RIGHT_BRACE:
+                    open--;
+                    break;
+                case INTEGRAL_LITERAL: case STRING_LITERAL:
+                    literals.reserve(tokens, pos);
+            }
+        } while (open > 0);
+    }
+
+    /**
+     * Reads a type, which {@link #startsMethodDeclaration} has checked is there.
+     */
+    private ExpressionType parseType() {
+        int index = ++pos;
+        ExpressionType type;
+        switch (tokens.lexeme(index)) {
+            case BOOLEAN:
+                type = BuiltInType.BOOLEAN;
+                break;
+            case SHORT:
+                type = BuiltInType.SHORT;
+                break;
+            case INT:
+                type = BuiltInType.INT;
+                break;
+            case LONG:
+                type = BuiltInType.LONG;
+                break;
+            default:
+                type = new UserDefinedType(tokens.contents(index), tokens.symbol(index));
+        }
+        while (tokens.lexeme(pos + 1) == Lexeme.LEFT_BRACKET) {
+            type = new ArrayType(type);
+            pos += 2;
+        }
+        return type;
+    }
+
+    /**
+     * @return the modifiers read from {@code start} up to the last token read
+     */
+    private Set<Modifier> modifiers(int start) throws ParseException {
+        if (start > pos || !Modifier.isModifier(tokens.lexeme(start))) {
+            return Collections.emptySet();
+        }
+        Set<Modifier> modifiers = EnumSet.noneOf(Modifier.class);
+        for (int i = start; i <= pos && Modifier.isModifier(tokens.lexeme(i)); i++) {
+            modifiers.add(Modifier.fromLexeme(tokens.lexeme(i)));
+        }
+        return modifiers;
+    }
+
+    /**
+     * Parses the single expression beginning after the last token read, up to the first token that can not continue
+     * it.
+     *
+     * @throws ParseException if there is no expression there, or there are several, separated by commas
+     */
+    private void parseExpression() throws ParseException {
+        int count = expressionParser.parseFrom(pos + 1);
+        pos = expressionParser.getPosition() - 1;
+        if (count != 1) {
+            throw error("expected a single expression; saw " + count);
+        }
+    }
+
+    /**
+     * Parses a single expression in parentheses, such as the condition of an {@code if} statement or the value of a
+     * {@code switch} statement.
+     */
+    private void parseCondition() throws ParseException {
+        int count = parseParenthesized();
+        if (count != 1) {
+            throw error("expected a single expression; saw " + count);
+        }
+    }
+
+    /**
+     * Parses zero or more comma-separated expressions in parentheses, such as formal parameters.
+     *
+     * @return how many expressions there were
+     */
+    private int parseParenthesized() throws ParseException {
+        expect(Lexeme.LEFT_PAREN, "expected '('");
+        int count;
+        if (tokens.has(pos + 1) && tokens.lexeme(pos + 1) == Lexeme.RIGHT_PAREN) {
+            // parses nothing, so that what the expression parser says of the last parse holds for this one
+            count = expressionParser.parse(pos + 1, pos + 1);
+        } else {
+            count = expressionParser.parseFrom(pos + 1);
+            pos = expressionParser.getPosition() - 1;
+        }
+        expect(Lexeme.RIGHT_PAREN, "expected ')'");
+        return count;
+    }
+
+    /**
+     * Reads the next token, which must be of the given lexeme.
+     */
+    private void expect(Lexeme lexeme, String message) throws ParseException {
+        if (!tokens.has(pos + 1)) {
+            throw error(message);
+        } else if (tokens.lexeme(++pos) != lexeme) {
+            throw error(message);
+        }
+    }
+
+    /**
+     * @param first the span of a statement's first token, which a stream may have released by the time it ends
+     * @return the span from that token up to and including the last token read
+     */
+    private long spanFrom(long first) {
+        return SourceFile.union(first, spanAt(pos));
+    }
+
+    /**
+     * @return the span of the token at {@code index}, or {@link SourceFile#NO_SPAN} if there is no such token
+     */
+    private long spanAt(int index) {
+        return (index >= 0 && tokens.has(index)) ? tokens.span(index) : SourceFile.NO_SPAN;
+    }
+
+    /**
+     * @return an exception for an error at the last token read, or for the token itself if the lexer did not know it
+     */
+    private ParseException error(String message) {
+        if (pos >= 0 && tokens.has(pos) && tokens.lexeme(pos) == Lexeme.UNKNOWN) {
+            message = "unknown symbol '" + tokens.contents(pos) + "'";
+        }
+        return new ParseException(message, spanAt(pos));
+    }
+}
@@ -0,0 +1,443 @@
+package parser;
+
+import com.google.common.collect.Lists;
+import lexer.ConstantPool;
+import lexer.SourceFile;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.*;
+
+/**
+ * Builds the tree of {@link Statement}s and {@link Expression}s for a parse, as its {@link ParseListener}.  The nodes
+ * check what they are made of as they are made, so a unit that parses may still be rejected here: a node that will not
+ * take its parts throws a {@link ParseException}, placed at the expression if it is one, which the parse treats like
+ * any other error in the statement.
+ *
+ * A builder given somewhere to put errors recovers from them, putting an {@link ErrorStatement} in place of each
+ * statement that had one; otherwise it throws the first.
+ */
+final class TreeBuilder implements ParseListener {
+    /**
+     * The statements that have been entered and not exited, innermost last.
+     */
+    private final List<Statement> statements = Lists.newArrayList();
+
+    /**
+     * The expressions that have been reported and not yet used, last reported last.
+     */
+    private final List<Expression> expressions = Lists.newArrayList();
+
+    /**
+     * For each of the {@link #statements}, how many children it had after its last complete statement, which are
+     * the ones kept when the statement after them has an error.
+     */
+    private int[] settled = new int[16];
+
+    /**
+     * Where errors are put, in the order they are found, or {@code null} if the first is thrown.
+     */
+    private final Collection<? super ParseException> errors;
+
+    private ConstantPool constantPool;
+
+    private CompilationUnit compilationUnit;
+
+    TreeBuilder() {
+        this.errors = null;
+    }
+
+    /**
+     * Creates a builder that recovers from errors.
+     *
+     * @param errors where to put the errors, in the order they are found
+     */
+    TreeBuilder(Collection<? super ParseException> errors) {
+        this.errors = checkNotNull(errors);
+    }
+
+    /**
+     * Creates a builder that adds to a tree that has already been built, for a parse of part of a unit.
+     *
+     * @param context the statement the parse is directly inside
+     */
+    TreeBuilder(Statement context, ConstantPool constantPool) {
+        this.errors = null;
+        this.constantPool = constantPool;
+        enter(context);
+    }
+
+    /**
+     * @return the unit that was built, once it has been exited
+     */
+    CompilationUnit getCompilationUnit() {
+        return compilationUnit;
+    }
+
+    @Override
+    public void enterCompilationUnit(ConstantPool constantPool) {
+        this.constantPool = constantPool;
+        enter(new CompilationUnit(constantPool));
+    }
+
+    @Override
+    public void exitCompilationUnit() {
+        compilationUnit = (CompilationUnit) statements.remove(statements.size() - 1);
+    }
+
+    @Override
+    public void enterTypeDeclaration(String name, int symbol, Set<Modifier> modifiers) throws ParseException {
+        try {
+            enter(new TypeDeclaration((CompilationUnit) context(), name, modifiers));
+        } catch (IllegalArgumentException e) {
+            throw invalid("invalid modifiers for type " + name, e, SourceFile.NO_SPAN);
+        }
+    }
+
+    @Override
+    public void exitTypeDeclaration(long span) {
+        exit(span);
+    }
+
+    @Override
+    public void enterMethodDeclaration(String name, int symbol, ExpressionType returnType, Set<Modifier> modifiers,
+                                       int parameterCount) throws ParseException {
+        List<VariableDeclaration> parameters = Lists.newArrayListWithCapacity(parameterCount);
+        for (Expression parameter : pop(parameterCount)) {
+            parameters.add((VariableDeclaration) parameter);
+        }
+        try {
+            enter(new MethodDeclaration((TypeDeclaration) context(), name, returnType, modifiers, parameters));
+        } catch (IllegalArgumentException e) {
+            throw invalid("invalid declaration of method " + name, e, SourceFile.NO_SPAN);
+        }
+    }
+
+    @Override
+    public void exitMethodDeclaration(long span) {
+        exit(span);
+    }
+
+    /**
+     * Puts off parsing the body of the method just entered, for a skeleton parse.  The method is exited as usual.
+     */
+    void deferBody(MethodBody body) {
+        ((MethodDeclaration) context()).deferBody(body);
+    }
+
+    @Override
+    public void enterDoLoop() throws ParseException {
+        enter(new DoLoop(context()));
+    }
+
+    @Override
+    public void exitDoLoop(long span) throws ParseException {
+        Expression condition = pop();
+        try {
+            ((DoLoop) context()).setCondition(condition);
+        } catch (IllegalArgumentException e) {
+            throw invalid("the condition of \"do\" must be a boolean", e, condition.getSpan());
+        }
+        exit(span);
+    }
+
+    @Override
+    public void enterElseStatement() throws ParseException {
+        enter(new ElseStatement(context()));
+    }
+
+    @Override
+    public void exitElseStatement(long span) {
+        exit(span);
+    }
+
+    @Override
+    public void enterForLoop() throws ParseException {
+        Expression updater = pop();
+        Expression condition = pop();
+        Expression initializer = pop();
+        enter(new ForLoop(context(), initializer, condition, updater));
+    }
+
+    @Override
+    public void exitForLoop(long span) {
+        exit(span);
+    }
+
+    @Override
+    public void enterIfStatement() throws ParseException {
+        Expression condition = pop();
+        try {
+            enter(new IfStatement(context(), condition));
+        } catch (IllegalArgumentException e) {
+            throw invalid("the condition of \"if\" must be a boolean", e, condition.getSpan());
+        }
+    }
+
+    @Override
+    public void exitIfStatement(long span) {
+        exit(span);
+    }
+
+    @Override
+    public void enterRepeatLoop() throws ParseException {
+        Expression count = pop();
+        try {
+            enter(new RepeatLoop(context(), count));
+        } catch (IllegalArgumentException e) {
+            throw invalid("the count of \"repeat\" must be an integer", e, count.getSpan());
+        }
+    }
+
+    @Override
+    public void exitRepeatLoop(long span) {
+        exit(span);
+    }
+
+    @Override
+    public void enterSwitchStatement() throws ParseException {
+        Expression value = pop();
+        try {
+            enter(new SwitchStatement(context(), value));
+        } catch (IllegalArgumentException e) {
+            throw invalid("the value of \"switch\" must be an integer", e, value.getSpan());
+        }
+    }
+
+    @Override
+    public void exitSwitchStatement(long span) {
+        exit(span);
+    }
+
+    @Override
+    public void enterWhileLoop() throws ParseException {
+        Expression condition = pop();
+        try {
+            enter(new WhileLoop(context(), condition));
+        } catch (IllegalArgumentException e) {
+            throw invalid("the condition of \"while\" must be a boolean", e, condition.getSpan());
+        }
+    }
+
+    @Override
+    public void exitWhileLoop(long span) {
+        exit(span);
+    }
+
+    @Override
+    public void enterBreakStatement() throws ParseException {
+        enter(new BreakStatement(context()));
+    }
+
+    @Override
+    public void exitBreakStatement(long span) {
+        exit(span);
+    }
+
+    @Override
+    public void enterContinueStatement() throws ParseException {
+        enter(new ContinueStatement(context()));
+    }
+
+    @Override
+    public void exitContinueStatement(long span) {
+        exit(span);
+    }
+
+    @Override
+    public void enterDeleteStatement() throws ParseException {
+        enter(new DeleteStatement(context(), (IdentifierReference) pop()));
+    }
+
+    @Override
+    public void exitDeleteStatement(long span) {
+        exit(span);
+    }
+
+    @Override
+    public void enterReturnStatement(boolean hasValue) throws ParseException {
+        Expression value = hasValue ? pop() : null;
+        try {
+            enter(hasValue ? new ReturnStatement(context(), value) : new ReturnStatement(context()));
+        } catch (IllegalArgumentException e) {
+            throw invalid("the value returned does not match the method's return type", e,
+                    hasValue ? value.getSpan() : SourceFile.NO_SPAN);
+        }
+    }
+
+    @Override
+    public void exitReturnStatement(long span) {
+        exit(span);
+    }
+
+    @Override
+    public void expressionStatement() {
+        pop().attach(context());
+        settle();
+    }
+
+    @Override
+    public void identifierReference(String name, int symbol, long span) {
+        push(new IdentifierReference(name, symbol), span);
+    }
+
+    @Override
+    public void fieldReference(String name, int symbol, long span) throws ParseException {
+        try {
+            push(new FieldReference(pop(), name, symbol), span);
+        } catch (IllegalArgumentException e) {
+            throw invalid("a primitive has no field " + name, e, span);
+        }
+    }
+
+    @Override
+    public void integralLiteral(int constant, long span) {
+        push(new IntegralLiteral(constantPool, constant), span);
+    }
+
+    @Override
+    public void stringLiteral(int constant, long span) {
+        push(new StringLiteral(constant), span);
+    }
+
+    @Override
+    public void variableDeclaration(ExpressionType type, String name, int symbol, Set<Modifier> modifiers,
+                                    long span) throws ParseException {
+        try {
+            push(new VariableDeclaration(type, name, symbol, modifiers), span);
+        } catch (IllegalArgumentException e) {
+            throw invalid("invalid declaration of variable " + name, e, span);
+        }
+    }
+
+    @Override
+    public void operatorExpression(Operator operator, long span) throws ParseException {
+        try {
+            switch (operator.getType()) {
+                case UNARY:
+                    push(new OperatorExpression(operator, pop()), span);
+                    break;
+                case POSTFIX:
+                    push(new OperatorExpression(pop(), operator), span);
+                    break;
+                default:
+                    Expression right = pop();
+                    Expression left = pop();
+                    push(new OperatorExpression(left, right, operator), span);
+            }
+        } catch (IllegalArgumentException e) {
+            throw invalid("invalid operands for " + operator, e, span);
+        }
+    }
+
+    @Override
+    public void methodInvocation(String name, int symbol, boolean hasTarget, int parameterCount, long span)
+            throws ParseException {
+        List<Expression> parameters = pop(parameterCount);
+        Expression target = hasTarget ? pop() : new ThisExpression();
+        try {
+            push(new MethodInvocation(name, symbol, target, parameters), span);
+        } catch (IllegalArgumentException e) {
+            throw invalid("invalid invocation of " + name, e, span);
+        }
+    }
+
+    @Override
+    public void constructorInvocation(boolean hasTarget, int parameterCount, long span) throws ParseException {
+        List<Expression> parameters = pop(parameterCount);
+        Expression target = hasTarget ? pop() : new ThisExpression();
+        try {
+            push(new ConstructorInvocation(target, parameters), span);
+        } catch (IllegalArgumentException e) {
+            throw invalid("invalid invocation of \"new\"", e, span);
+        }
+    }
+
+    @Override
+    public void arrayAccess(long span) throws ParseException {
+        Expression index = pop();
+        Expression array = pop();
+        try {
+            push(new ArrayAccess(array, index), span);
+        } catch (IllegalArgumentException e) {
+            if (!ArrayAccess.isIndexable(array)) {
+                throw invalid("only an array can be indexed", e, array.getSpan());
+            }
+            throw invalid("an index must be an integer", e, index.getSpan());
+        }
+    }
+
+    @Override
+    public void error(ParseException error, int depth, long span) throws ParseException {
+        if (errors == null) {
+            throw error;
+        }
+        statements.subList(depth, statements.size()).clear();
+        expressions.clear();
+        // whatever the statement added to the one it is in goes, as well as the statements it had entered
+        Statement context = context();
+        context.removeChildren(settled[depth - 1]);
+        new ErrorStatement(context, error).setSpan(span);
+        settle();
+        errors.add(error);
+    }
+
+    /**
+     * @param span where the error is, or {@link SourceFile#NO_SPAN} to have the parse place it at the last token read
+     * @return the error for a node that would not take its parts
+     */
+    private static ParseException invalid(String message, IllegalArgumentException cause, long span) {
+        ParseException error = new ParseException(message, span);
+        error.initCause(cause);
+        return error;
+    }
+
+    private Statement context() {
+        return statements.get(statements.size() - 1);
+    }
+
+    private void enter(Statement statement) {
+        int depth = statements.size();
+        if (depth == settled.length) {
+            settled = Arrays.copyOf(settled, depth * 2);
+        }
+        settled[depth] = statement.childCount();
+        statements.add(statement);
+    }
+
+    private void exit(long span) {
+        statements.remove(statements.size() - 1).setSpan(span);
+        settle();
+    }
+
+    /**
+     * Records that the statement being built has just completed a statement in it.
+     */
+    private void settle() {
+        if (!statements.isEmpty()) {
+            settled[statements.size() - 1] = context().childCount();
+        }
+    }
+
+    private void push(Expression expression, long span) {
+        expression.setSpan(span);
+        expressions.add(expression);
+    }
+
+    private Expression pop() {
+        return expressions.remove(expressions.size() - 1);
+    }
+
+    /**
+     * @return the last {@code count} expressions, in the order they were reported
+     */
+    private List<Expression> pop(int count) {
+        List<Expression> last = expressions.subList(expressions.size() - count, expressions.size());
+        List<Expression> popped = Lists.newArrayList(last);
+        last.clear();
+        return popped;
+    }
+}
@@ -0,0 +1,51 @@
+package parser;
+
+/**
+ * The result of {@link DiamondParser#reparse}: the unit parsed from the edited tokens, and which of its statements
+ * were parsed again.
+ *
+ * Every node of the previous unit but {@link #getReplaced()} and its descendants is kept, and is still part of the
+ * unit, though the spans of those after the edit have been moved along by its length.  Where the edit could not be
+ * confined to one statement, the whole unit is replaced.
+ */
+public final class TreeChange {
+    private final CompilationUnit compilationUnit;
+
+    private final Statement replaced;
+
+    private final Statement replacement;
+
+    TreeChange(CompilationUnit compilationUnit, Statement replaced, Statement replacement) {
+        this.compilationUnit = compilationUnit;
+        this.replaced = replaced;
+        this.replacement = replacement;
+    }
+
+    /**
+     * @return the unit, which is the previous one updated in place unless {@link #isFullReparse()}
+     */
+    public CompilationUnit getCompilationUnit() {
+        return compilationUnit;
+    }
+
+    /**
+     * @return the statement that was parsed again, which is no longer part of the unit, or the previous unit itself
+     */
+    public Statement getReplaced() {
+        return replaced;
+    }
+
+    /**
+     * @return the statement that took its place, or the new unit itself
+     */
+    public Statement getReplacement() {
+        return replacement;
+    }
+
+    /**
+     * @return whether the whole unit was parsed again
+     */
+    public boolean isFullReparse() {
+        return replaced instanceof CompilationUnit;
+    }
+}
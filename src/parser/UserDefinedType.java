@@ -5,9 +5,23 @@ import static com.google.common.base.Preconditions.*;
 final class UserDefinedType implements ExpressionType {
     private final String name;
 
+    private final int symbol;
+
     public UserDefinedType(String name) {
+        this(name, -1);
+    }
+
+    /**
+     * @param symbol the id of the name in the compilation's symbol table, or -1 if it is not known
+     */
+    public UserDefinedType(String name, int symbol) {
         checkNotNull(name);
         this.name = name;
+        this.symbol = symbol;
+    }
+
+    public int getSymbol() {
+        return symbol;
     }
 
     @Override
@@ -37,6 +51,7 @@ final class UserDefinedType implements ExpressionType {
 
         UserDefinedType that = (UserDefinedType) o;
 
+        if (symbol >= 0 && that.symbol >= 0) return symbol == that.symbol;
         if (!name.equals(that.name)) return false;
 
         return true;
@@ -44,6 +59,7 @@ final class UserDefinedType implements ExpressionType {
 
     @Override
     public int hashCode() {
+        // not the symbol, since a type with a symbol can equal one without; String caches its hash anyway
         return name.hashCode();
     }
 
@@ -14,9 +14,18 @@ import static com.google.common.base.Preconditions.*;
 public final class VariableDeclaration extends Expression {
     private final String name;
 
+    private final int symbol;
+
     private final boolean isPrivate;
 
     public VariableDeclaration(ExpressionType type, String name, Set<Modifier> modifiers) {
+        this(type, name, -1, modifiers);
+    }
+
+    /**
+     * @param symbol the id of the name in the compilation's symbol table, or -1 if it is not known
+     */
+    public VariableDeclaration(ExpressionType type, String name, int symbol, Set<Modifier> modifiers) {
         super(type);
         checkNotNull(name);
         checkNotNull(modifiers);
@@ -26,6 +35,7 @@ public final class VariableDeclaration extends Expression {
             checkArgument(modifier.modifiesVariables());
         }
         this.name = name;
+        this.symbol = symbol;
         isPrivate = !modifiers.isEmpty();
     }
 }
@@ -0,0 +1,199 @@
+package lexer;
+
+import lexer.DiamondLexer.Lexeme;
+import lexer.Lexer.Engine;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Uses one symbol table, and one lexer, from many threads at once, released together so that they race: the table
+ * must give every name exactly one id, and a lexer whose automaton and regexes are only built when first needed must
+ * give every thread the same tokens.
+ */
+public class ConcurrentLexingTest {
+    private static final int THREADS = 8;
+
+    private static final Set<Lexeme> TRIVIA = EnumSet.of(Lexeme.WHITESPACE, Lexeme.COMMENT);
+
+    private static final String INPUT = "class A { int f(int x) { while (x > 0x10) { x -= 2; } return x << 1; } }\n"
+            + "// comment\nname = \"text\" + other_name # 42;\n";
+
+    @Test
+    public void symbolTableGivesEachNameOneId() throws Exception {
+        final SymbolTable table = new SymbolTable();
+        final int names = 5000;
+        List<Callable<int[]>> tasks = new ArrayList<Callable<int[]>>();
+        for (int t = 0; t < THREADS; t++) {
+            final long seed = t;
+            tasks.add(new Callable<int[]>() {
+                @Override
+                public int[] call() {
+                    // each thread interns the names in an order of its own, so that new names race with lookups
+                    List<Integer> order = new ArrayList<Integer>();
+                    for (int i = 0; i < names; i++) {
+                        order.add(i);
+                    }
+                    Collections.shuffle(order, new Random(seed));
+                    int[] ids = new int[names];
+                    for (int i : order) {
+                        ids[i] = table.intern("name" + i);
+                    }
+                    return ids;
+                }
+            });
+        }
+        List<int[]> results = runTogether(tasks);
+
+        assertEquals(names, table.size());
+        boolean[] seen = new boolean[names];
+        for (int i = 0; i < names; i++) {
+            int id = results.get(0)[i];
+            for (int[] ids : results) {
+                assertEquals("name" + i, id, ids[i]);
+            }
+            assertEquals("name" + i, table.name(id));
+            seen[id] = true;
+        }
+        for (boolean b : seen) {
+            assertTrue(b);
+        }
+    }
+
+    @Test
+    public void automatonIsBuiltSafelyOnFirstUse() throws Exception {
+        final String expected = describe(lexer(Engine.DFA).lexToBuffer(INPUT, TRIVIA));
+        for (int trial = 0; trial < 10; trial++) {
+            // a stream needs the automaton at once, and a new lexer has yet to build it
+            final Lexer<Lexeme> lexer = lexer(Engine.DFA);
+            List<Callable<String>> tasks = new ArrayList<Callable<String>>();
+            for (int t = 0; t < THREADS; t++) {
+                tasks.add(new Callable<String>() {
+                    @Override
+                    public String call() {
+                        TokenStream<Lexeme> stream = lexer.stream(new StringReader(INPUT), TRIVIA);
+                        TokenBuffer<Lexeme> tokens = new TokenBuffer<Lexeme>(Lexeme.class, INPUT);
+                        while (stream.hasNext()) {
+                            Token<Lexeme> token = stream.next();
+                            tokens.add(token.lexeme, token.getStart(), token.getEnd());
+                        }
+                        return describe(tokens);
+                    }
+                });
+            }
+            for (String tokens : runTogether(tasks)) {
+                assertEquals(expected, tokens);
+            }
+        }
+    }
+
+    @Test
+    public void regexesAreCompiledSafelyOnFirstUse() throws Exception {
+        final String expected = describe(lexer(Engine.DFA).lexToBuffer(INPUT, TRIVIA));
+        for (int trial = 0; trial < 10; trial++) {
+            final Lexer<Lexeme> lexer = lexer(Engine.REGEX);
+            List<Callable<String>> tasks = new ArrayList<Callable<String>>();
+            for (int t = 0; t < THREADS; t++) {
+                tasks.add(new Callable<String>() {
+                    @Override
+                    public String call() {
+                        return describe(lexer.lexToBuffer(INPUT, TRIVIA));
+                    }
+                });
+            }
+            for (String tokens : runTogether(tasks)) {
+                assertEquals(expected, tokens);
+            }
+        }
+    }
+
+    @Test
+    public void oneDiamondLexerServesAPool() throws Exception {
+        final DiamondLexer shared = new DiamondLexer();
+        List<Callable<TokenBuffer<Lexeme>>> tasks = new ArrayList<Callable<TokenBuffer<Lexeme>>>();
+        for (int file = 0; file < 200; file++) {
+            final String input = INPUT.replace("name", "name" + file % 37).replace("x", "x" + file % 11);
+            tasks.add(new Callable<TokenBuffer<Lexeme>>() {
+                @Override
+                public TokenBuffer<Lexeme> call() {
+                    return shared.lexToBuffer(input);
+                }
+            });
+        }
+        SymbolTable symbols = shared.getSymbolTable();
+        ConstantPool constants = shared.getConstantPool();
+        for (TokenBuffer<Lexeme> tokens : runTogether(tasks)) {
+            for (int i = 0; i < tokens.size(); i++) {
+                String text = tokens.getSource().subSequence(tokens.start(i), tokens.end(i)).toString();
+                if (tokens.lexeme(i) == Lexeme.IDENTIFIER) {
+                    assertEquals(text, symbols.name(tokens.symbol(i)));
+                } else if (tokens.lexeme(i) == Lexeme.INTEGRAL_LITERAL) {
+                    assertEquals(ConstantPool.decodeInteger(text, 0, text.length()),
+                            constants.getLong(tokens.constant(i)));
+                } else if (tokens.lexeme(i) == Lexeme.STRING_LITERAL) {
+                    assertEquals(ConstantPool.decodeString(text, 0, text.length()),
+                            constants.getString(tokens.constant(i)));
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs the tasks on threads of their own, letting them all start at once, and returns what they returned.
+     */
+    private static <T> List<T> runTogether(List<? extends Callable<T>> tasks) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            final CountDownLatch start = new CountDownLatch(1);
+            List<Future<T>> futures = new ArrayList<Future<T>>();
+            for (final Callable<T> task : tasks) {
+                futures.add(executor.submit(new Callable<T>() {
+                    @Override
+                    public T call() throws Exception {
+                        start.await();
+                        return task.call();
+                    }
+                }));
+            }
+            start.countDown();
+            List<T> results = new ArrayList<T>();
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static Lexer<Lexeme> lexer(Engine engine) {
+        Lexer<Lexeme> lexer = new Lexer<Lexeme>();
+        lexer.setupRules(new DiamondLexer().getRules());
+        lexer.setEngine(engine);
+        lexer.setUnknown(Lexeme.UNKNOWN);
+        return lexer;
+    }
+
+    private static String describe(TokenBuffer<Lexeme> tokens) {
+        StringBuilder description = new StringBuilder();
+        for (int i = 0; i < tokens.size(); i++) {
+            description.append(tokens.lexeme(i)).append(' ').append(tokens.start(i)).append('-').append(tokens.end(i))
+                    .append('\n');
+        }
+        return description.toString();
+    }
+}
@@ -0,0 +1,67 @@
+package lexer;
+
+import lexer.DiamondLexer.Lexeme;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Decodes literals as they are lexed into a pool which holds each distinct value once.
+ */
+public class ConstantPoolTest {
+    @Test
+    public void integersAreDecodedToLongs() {
+        assertEquals(0, ConstantPool.decodeInteger("0", 0, 1));
+        assertEquals(42, ConstantPool.decodeInteger("x=42;", 2, 4));
+        assertEquals(0x1F, ConstantPool.decodeInteger("0x1F", 0, 4));
+        assertEquals(Long.MAX_VALUE, ConstantPool.decodeInteger("9223372036854775807", 0, 19));
+        assertEquals(Long.MAX_VALUE, ConstantPool.decodeInteger("0x7fffffffffffffff", 0, 18));
+        try {
+            ConstantPool.decodeInteger("9223372036854775808", 0, 19);
+            fail("decoded a value too large for a long");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void stringsAreUnescaped() {
+        assertEquals("", ConstantPool.decodeString("\"\"", 0, 2));
+        String escaped = "\"a\\tb\\n\\\"q\\\"\\\\\"";
+        assertEquals("a\tb\n\"q\"\\", ConstantPool.decodeString(escaped, 0, escaped.length()));
+        try {
+            ConstantPool.decodeString("\"\\q\"", 0, 4);
+            fail("decoded an unknown escape");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void equalValuesShareAnIndex() {
+        ConstantPool pool = new ConstantPool();
+        int seven = pool.add(7);
+        assertEquals(seven, pool.add(7));
+        assertEquals(seven, pool.addInteger("0x7", 0, 3));
+        int text = pool.add("7");
+        assertTrue(seven != text);
+        assertEquals(text, pool.addString("\"7\"", 0, 3));
+        assertEquals(2, pool.size());
+        assertEquals(7, pool.getLong(seven));
+        assertEquals("7", pool.getString(text));
+    }
+
+    @Test
+    public void lexingDecodesEachLiteralOnce() {
+        DiamondLexer lexer = new DiamondLexer();
+        TokenBuffer<Lexeme> tokens = lexer.lexToBuffer("a = 16 + 0x10 + \"x\\ty\" + \"x\\ty\" + 11;");
+        ConstantPool pool = lexer.getConstantPool();
+        assertEquals(3, pool.size());
+        assertEquals(tokens.constant(2), tokens.constant(4));
+        assertEquals(16, pool.getLong(tokens.constant(2)));
+        assertEquals(tokens.constant(6), tokens.constant(8));
+        assertEquals("x\ty", pool.getString(tokens.constant(6)));
+        assertEquals(11, pool.getLong(tokens.constant(10)));
+        assertEquals(ConstantPool.NONE, tokens.constant(0));
+    }
+}
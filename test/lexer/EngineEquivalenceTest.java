@@ -0,0 +1,101 @@
+package lexer;
+
+import lexer.DiamondLexer.Lexeme;
+import lexer.Lexer.Engine;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Lexes a randomized corpus with the {@link Engine#REGEX} engine, the automaton and the generated scanner, which must
+ * all produce the same tokens.  The corpus is made from fixed seeds, so that a failure can be reproduced.
+ */
+public class EngineEquivalenceTest {
+    /**
+     * The pieces the corpus is made of: all the Diamond tokens, and the prefixes and neighbours that their trailing
+     * contexts and longest matches have to tell apart.
+     */
+    private static final String[] PIECES = {
+            "abstract", "boolean", "break", "case:", "case", "class", "do", "double", "else", "for", "if", "int",
+            "new", "private", "return", "static", "this", "void", "while", "yield",
+            "a", "x1", "do_", "iffy", "returned", "A_b9", "int2",
+            "0", "42", "0x1F", "007", "0x",
+            "\"\"", "\"str\"", "\"esc\\\"aped\"", "\"unclosed", "\"back\\", "\\",
+            "{", "}", "[", "]", "(", ")", ";", ".", ",", "?", ":",
+            "=", "==", "!", "!=", "<", "<=", "<<", "<<=", ">", ">=", ">>", ">>=",
+            "+", "++", "+=", "-", "--", "-=", "*", "*=", "/", "/=", "%", "%=",
+            "&", "&&", "&=", "|", "||", "|=", "^", "^=",
+            "// comment", "//", " ", "  ", "\t", "\n", "\r\n",
+            "#", "@", "$", "`", "~", "é", "€", "😀"
+    };
+
+    private final List<Lexer.RuleGroup<Lexeme>> rules = new DiamondLexer().getRules();
+
+    @Test
+    public void enginesAgreeOnRandomInput() {
+        Lexer<Lexeme> regex = lexer(Engine.REGEX, false);
+        Lexer<Lexeme> automaton = lexer(Engine.DFA, false);
+        Lexer<Lexeme> scanner = lexer(Engine.DFA, true);
+        Random random = new Random(1);
+        for (int i = 0; i < 2000; i++) {
+            String input = randomInput(random, 1 + random.nextInt(40));
+            String expected = describe(regex.lex(input));
+            assertEquals(input, expected, describe(automaton.lex(input)));
+            assertEquals(input, expected, describe(scanner.lex(input)));
+        }
+    }
+
+    @Test
+    public void enginesAgreeOnEveryPairOfPieces() {
+        Lexer<Lexeme> regex = lexer(Engine.REGEX, false);
+        Lexer<Lexeme> automaton = lexer(Engine.DFA, false);
+        for (String first : PIECES) {
+            for (String second : PIECES) {
+                String input = first + second;
+                assertEquals(input, describe(regex.lex(input)), describe(automaton.lex(input)));
+            }
+        }
+    }
+
+    @Test
+    public void unknownTokensEndAtTheSamePlace() {
+        Lexer<Lexeme> regex = lexer(Engine.REGEX, false);
+        Lexer<Lexeme> automaton = lexer(Engine.DFA, false);
+        String input = "x = \"never closed\ny = 0x;";
+        assertEquals(describe(automaton.lex(input)), describe(regex.lex(input)));
+        assertEquals("UNKNOWN", regex.lex(input).get(4).lexeme.name());
+        assertEquals("\"never closed", regex.lex(input).get(4).getContents());
+    }
+
+    private Lexer<Lexeme> lexer(Engine engine, boolean generated) {
+        Lexer<Lexeme> lexer = new Lexer<Lexeme>();
+        lexer.setupRules(new ArrayList<Lexer.RuleGroup<Lexeme>>(rules));
+        lexer.setEngine(engine);
+        lexer.setUnknown(Lexeme.UNKNOWN);
+        if (generated) {
+            lexer.setScanner(new DiamondScanner());
+        }
+        return lexer;
+    }
+
+    private static String randomInput(Random random, int pieces) {
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < pieces; i++) {
+            input.append(PIECES[random.nextInt(PIECES.length)]);
+        }
+        return input.toString();
+    }
+
+    private static String describe(List<Token<Lexeme>> tokens) {
+        StringBuilder description = new StringBuilder();
+        for (Token<Lexeme> token : tokens) {
+            description.append(token.lexeme).append(' ').append(token.getStart()).append('-').append(token.getEnd())
+                    .append('\n');
+        }
+        return description.toString();
+    }
+}
@@ -0,0 +1,106 @@
+package lexer;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import lexer.DiamondLexer.Lexeme;
+import lexer.Lexer.Engine;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the generated scanner against golden output: the committed {@link DiamondScanner} must be what
+ * {@link ScannerGenerator} writes for the current rules, and each file of the corpus in {@code test/lexer/golden}
+ * must lex, whitespace and comments included, to the tokens listed in the {@code .tokens} file beside it, with both
+ * the generated scanner and the {@link Engine#REGEX} engine.
+ *
+ * Run with {@code -Dgolden.update=true} to rewrite the {@code .tokens} files after a deliberate change to the rules,
+ * and review the difference before committing it.
+ */
+public class GoldenScannerTest {
+    private static final File SCANNER_SOURCE = new File("src/lexer/DiamondScanner.java");
+
+    private static final File CORPUS = new File("test/lexer/golden");
+
+    private final List<Lexer.RuleGroup<Lexeme>> rules = new DiamondLexer().getRules();
+
+    @Test
+    public void committedScannerIsUpToDate() throws IOException {
+        String generated = ScannerGenerator.generate("DiamondScanner", rules);
+        assertEquals(Files.toString(SCANNER_SOURCE, Charsets.UTF_8), generated);
+    }
+
+    @Test
+    public void corpusLexesToGoldenTokens() throws IOException {
+        Lexer<Lexeme> scanner = lexer(Engine.DFA);
+        scanner.setScanner(new DiamondScanner());
+        Lexer<Lexeme> regex = lexer(Engine.REGEX);
+        boolean update = Boolean.getBoolean("golden.update");
+
+        File[] files = CORPUS.listFiles();
+        int checked = 0;
+        for (File file : files) {
+            if (!file.getName().endsWith(".dmd")) {
+                continue;
+            }
+            String input = Files.toString(file, Charsets.UTF_8);
+            File golden = new File(CORPUS, file.getName().replaceFirst("\\.dmd$", ".tokens"));
+            String actual = describe(scanner.lex(input));
+            if (update) {
+                Files.write(actual, golden, Charsets.UTF_8);
+            }
+            assertEquals(file.getName(), Files.toString(golden, Charsets.UTF_8), actual);
+            assertEquals(file.getName(), actual, describe(regex.lex(input)));
+            checked++;
+        }
+        assertTrue("no corpus in " + CORPUS.getAbsolutePath(), checked > 0);
+    }
+
+    private Lexer<Lexeme> lexer(Engine engine) {
+        Lexer<Lexeme> lexer = new Lexer<Lexeme>();
+        lexer.setupRules(new ArrayList<Lexer.RuleGroup<Lexeme>>(rules));
+        lexer.setEngine(engine);
+        lexer.setUnknown(Lexeme.UNKNOWN);
+        return lexer;
+    }
+
+    /**
+     * Lists the tokens one to a line, with their offsets and their text, escaping the characters that would break up
+     * the listing.
+     */
+    private static String describe(List<Token<Lexeme>> tokens) {
+        StringBuilder description = new StringBuilder();
+        for (Token<Lexeme> token : tokens) {
+            description.append(token.lexeme).append(' ').append(token.getStart()).append('-').append(token.getEnd())
+                    .append(' ');
+            String contents = token.getContents();
+            for (int i = 0; i < contents.length(); i++) {
+                char c = contents.charAt(i);
+                switch (c) {
+                    case '\n':
+                        description.append("\\n");
+                        break;
+                    case '\r':
+                        description.append("\\r");
+                        break;
+                    case '\t':
+                        description.append("\\t");
+                        break;
+                    case '\\':
+                        description.append("\\\\");
+                        break;
+                    default:
+                        description.append(c);
+                }
+            }
+            description.append('\n');
+        }
+        return description.toString();
+    }
+}
@@ -0,0 +1,113 @@
+package lexer;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import lexer.DiamondLexer.Lexeme;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Saves and loads the Diamond tables, and checks that tables which are truncated or corrupt are treated as missing,
+ * so that the lexer compiles its rules instead and still lexes correctly.
+ */
+public class LexerTablesTest {
+    private static final String INPUT = "class A { int f(int x) { return x <<= 0x1F; } } // \"done\"\n\"open #";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private List<Lexer.RuleGroup<Lexeme>> rules;
+
+    private byte[] tables;
+
+    private String expected;
+
+    @Before
+    public void writeTables() throws IOException {
+        rules = new DiamondLexer().getRules();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        LexerTables.write(rules, out);
+        tables = out.toByteArray();
+        expected = lex(null);
+    }
+
+    @Test
+    public void intactTablesAreLoaded() throws IOException {
+        URL url = save(tables);
+        assertNotNull(LexerTables.read(url, Lexer.fingerprint(rules)));
+        assertEquals(expected, lex(url));
+    }
+
+    @Test
+    public void tablesForOtherRulesAreIgnored() throws IOException {
+        assertNull(LexerTables.read(save(tables), Lexer.fingerprint(rules) + 1));
+    }
+
+    @Test
+    public void truncatedTablesAreAMiss() throws IOException {
+        for (int length = 0; length < tables.length; length++) {
+            URL url = save(Arrays.copyOf(tables, length));
+            assertNull("truncated to " + length, LexerTables.read(url, Lexer.fingerprint(rules)));
+            if (length % 97 == 0) {
+                assertEquals(expected, lex(url));
+            }
+        }
+    }
+
+    @Test
+    public void corruptTablesAreAMissOrStillCorrect() throws IOException {
+        byte[] contents = decompress(tables);
+        for (int i = 0; i < tables.length; i++) {
+            byte[] corrupt = tables.clone();
+            corrupt[i] ^= 0x21;
+            URL url = save(corrupt);
+            // the gzip header and the padding of the compressed data are not checked, but nor do they change the tables
+            if (!Arrays.equals(contents, decompress(corrupt))) {
+                assertNull("corrupted at " + i, LexerTables.read(url, Lexer.fingerprint(rules)));
+            }
+            assertEquals("corrupted at " + i, expected, lex(url));
+        }
+    }
+
+    private static byte[] decompress(byte[] bytes) {
+        try {
+            return ByteStreams.toByteArray(new GZIPInputStream(new ByteArrayInputStream(bytes)));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private URL save(byte[] bytes) throws IOException {
+        File file = folder.newFile();
+        Files.write(bytes, file);
+        return file.toURI().toURL();
+    }
+
+    private String lex(URL url) {
+        Lexer<Lexeme> lexer = new Lexer<Lexeme>();
+        lexer.setupRules(rules);
+        lexer.setUnknown(Lexeme.UNKNOWN);
+        lexer.setTables(url);
+        StringBuilder description = new StringBuilder();
+        for (Token<Lexeme> token : lexer.lex(INPUT)) {
+            description.append(token.lexeme).append(' ').append(token.getStart()).append('-').append(token.getEnd())
+                    .append('\n');
+        }
+        return description.toString();
+    }
+}
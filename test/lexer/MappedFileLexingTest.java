@@ -0,0 +1,90 @@
+package lexer;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import lexer.DiamondLexer.Lexeme;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Lexes a file through {@link DiamondLexer#lex(java.nio.file.Path)}, which maps it and reads its UTF-8 bytes through a
+ * {@link ByteSource}, and must give the tokens lexing the decoded text does, with spans in bytes rather than
+ * characters.  Non-ASCII text is accepted in string literals and comments, and is unknown anywhere else.
+ */
+public class MappedFileLexingTest {
+    // 2, 3 and 4 bytes long in UTF-8, the last of them a surrogate pair
+    private static final String NON_ASCII = "\u00e9\u2211\ud83d\ude00";
+
+    private static final String SOURCE = "class A {\n"
+            + "    int f() {\n"
+            + "        s = \"h" + NON_ASCII + "llo\"; // c" + NON_ASCII + "mment\n"
+            + "        x = \u00e9; //" + NON_ASCII + "\n"
+            + "        y = a\u2211b;\n"
+            + "    }\n"
+            + "}";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final DiamondLexer lexer = new DiamondLexer();
+
+    @Test
+    public void aMappedFileLexesAsItsText() throws IOException {
+        File file = folder.newFile("A.dia");
+        Files.write(SOURCE, file, Charsets.UTF_8);
+        List<Token<Lexeme>> mapped = lexer.lex(file.toPath());
+        TokenBuffer<Lexeme> text = lexer.lexToBuffer(SOURCE);
+
+        assertEquals(text.size(), mapped.size());
+        for (int i = 0; i < text.size(); i++) {
+            Token<Lexeme> token = mapped.get(i);
+            assertEquals(text.lexeme(i), token.lexeme);
+            assertEquals(text.contents(i), token.getContents());
+            assertEquals(bytes(SOURCE.substring(0, text.start(i))), token.getStart());
+            assertEquals(bytes(SOURCE.substring(0, text.end(i))), token.getEnd());
+        }
+    }
+
+    @Test
+    public void aMappedFileLexesAsItsBytes() throws IOException {
+        File file = folder.newFile("A.dia");
+        Files.write(SOURCE, file, Charsets.UTF_8);
+        List<Token<Lexeme>> mapped = lexer.lex(file.toPath());
+        TokenBuffer<Lexeme> bytes = lexer.lexToBuffer(new ByteSource(ByteBuffer.wrap(SOURCE.getBytes(Charsets.UTF_8))));
+
+        assertEquals(bytes.size(), mapped.size());
+        for (int i = 0; i < bytes.size(); i++) {
+            assertEquals(bytes.lexeme(i), mapped.get(i).lexeme);
+            assertEquals(bytes.start(i), mapped.get(i).getStart());
+            assertEquals(bytes.end(i), mapped.get(i).getEnd());
+            assertEquals(bytes.contents(i), mapped.get(i).getContents());
+        }
+    }
+
+    @Test
+    public void nonAsciiTextIsOnlyAcceptedInLiteralsAndComments() throws IOException {
+        File file = folder.newFile("A.dia");
+        Files.write(SOURCE, file, Charsets.UTF_8);
+        StringBuilder unknown = new StringBuilder();
+        for (Token<Lexeme> token : lexer.lex(file.toPath())) {
+            if (token.lexeme == Lexeme.UNKNOWN) {
+                unknown.append(token.getContents());
+            } else if (token.lexeme == Lexeme.STRING_LITERAL) {
+                assertEquals("\"h" + NON_ASCII + "llo\"", token.getContents());
+            }
+        }
+        assertEquals("\u00e9\u2211", unknown.toString());
+    }
+
+    private static int bytes(String s) {
+        return s.getBytes(Charsets.UTF_8).length;
+    }
+}
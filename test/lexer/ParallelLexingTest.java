@@ -0,0 +1,107 @@
+package lexer;
+
+import lexer.DiamondLexer.Lexeme;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.EnumSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Lexes in parallel and sequentially, each with a symbol table and constant pool of its own, which must end up with the
+ * same tokens and the same tables.
+ */
+public class ParallelLexingTest {
+    private static final Set<Lexeme> TRIVIA = EnumSet.of(Lexeme.WHITESPACE, Lexeme.COMMENT);
+
+    private static final String[] WORDS = {
+            "alpha", "beta", "gamma", "delta", "x", "y1", "counter", "while", "if", "return", "=", "+", "(", ")", "{",
+            "}", ";", "0", "17", "0x2A", "\"s\"", "\"text\"", "// note", "#"
+    };
+
+    private static ForkJoinPool pool;
+
+    @BeforeClass
+    public static void startPool() {
+        pool = new ForkJoinPool(4);
+    }
+
+    @AfterClass
+    public static void stopPool() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void linesGetTheSameIdsAsSequentialLexing() {
+        for (int seed = 0; seed < 20; seed++) {
+            checkSameAsSequential(randomInput(new Random(seed), 5000, "\n"), 2 + seed % 9);
+        }
+    }
+
+    @Test
+    public void chunksThatAreLexedAgainLeaveNothingInTheTables() {
+        // with no line breaks to split at, every chunk starts in the middle of a token and is lexed again
+        for (int seed = 0; seed < 20; seed++) {
+            checkSameAsSequential(randomInput(new Random(seed), 5000, ""), 2 + seed % 9);
+        }
+    }
+
+    private void checkSameAsSequential(String input, int chunks) {
+        Lexer<Lexeme> sequential = lexer();
+        Lexer<Lexeme> parallel = lexer();
+        TokenBuffer<Lexeme> expected = sequential.lexToBuffer(input, TRIVIA);
+        TokenBuffer<Lexeme> actual = parallel.lexInParallel(input, TRIVIA, pool, chunks);
+
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.lexeme(i), actual.lexeme(i));
+            assertEquals(expected.span(i), actual.span(i));
+            assertEquals(expected.symbol(i), actual.symbol(i));
+            assertEquals(expected.constant(i), actual.constant(i));
+        }
+        SymbolTable expectedSymbols = sequential.getSymbolTable();
+        SymbolTable actualSymbols = parallel.getSymbolTable();
+        assertEquals(expectedSymbols.size(), actualSymbols.size());
+        for (int id = 0; id < expectedSymbols.size(); id++) {
+            assertEquals(expectedSymbols.name(id), actualSymbols.name(id));
+        }
+        ConstantPool expectedConstants = sequential.getConstantPool();
+        ConstantPool actualConstants = parallel.getConstantPool();
+        assertEquals(expectedConstants.size(), actualConstants.size());
+        for (int index = 0; index < expectedConstants.size(); index++) {
+            assertEquals(expectedConstants.get(index), actualConstants.get(index));
+        }
+    }
+
+    private static Lexer<Lexeme> lexer() {
+        Lexer<Lexeme> lexer = new Lexer<Lexeme>();
+        lexer.setupRules(new DiamondLexer().getRules());
+        lexer.setSymbolTable(new SymbolTable(), EnumSet.of(Lexeme.IDENTIFIER));
+        lexer.setConstantPool(new ConstantPool(), EnumSet.of(Lexeme.INTEGRAL_LITERAL),
+                EnumSet.of(Lexeme.STRING_LITERAL));
+        lexer.setUnknown(Lexeme.UNKNOWN);
+        return lexer;
+    }
+
+    private static String randomInput(Random random, int words, String lineBreak) {
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            String word = WORDS[random.nextInt(WORDS.length)];
+            if (word.startsWith("//") && lineBreak.isEmpty()) {
+                continue;
+            }
+            input.append(word);
+            // numbered names, so that there are plenty of names for the chunks to see first
+            if (Character.isLetter(word.charAt(0))) {
+                input.append(random.nextInt(500));
+            }
+            input.append(random.nextInt(8) == 0 ? lineBreak : " ");
+        }
+        return input.toString();
+    }
+}
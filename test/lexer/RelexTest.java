@@ -0,0 +1,102 @@
+package lexer;
+
+import lexer.DiamondLexer.Lexeme;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Relexes text after edits that merge tokens, split them, or open or close a string literal or comment that takes in
+ * the tokens after it.  Each must report the tokens that changed, give the tokens lexing the edited text from scratch
+ * does, and keep the old tokens on either side of the change, the later ones moved along by the edit.
+ */
+public class RelexTest {
+    private final DiamondLexer lexer = new DiamondLexer();
+
+    @Test
+    public void anOperatorGrowsIntoALongerOne() {
+        check("x = 1;", 3, 0, "=", 1, 1, 1);
+    }
+
+    @Test
+    public void anOperatorShrinksIntoAShorterOne() {
+        check("x == 1;", 3, 1, "", 1, 1, 1);
+    }
+
+    @Test
+    public void anOperatorSplitsInTwo() {
+        check("x == 1;", 3, 0, " ", 1, 1, 2);
+    }
+
+    @Test
+    public void openingACommentTakesInTheRestOfTheLine() {
+        check("a = b; c = d;\ne = f;", 7, 0, "//", 4, 4, 0);
+    }
+
+    @Test
+    public void closingACommentGivesBackTheRestOfTheLine() {
+        check("a = b; //c = d;\ne = f;", 7, 2, "", 4, 0, 4);
+    }
+
+    @Test
+    public void openingAStringTakesInTheTokensUpToItsEnd() {
+        check("s = x; t = u\";\nv;", 4, 0, "\"", 2, 6, 2);
+        // with no end on the line, the string is unknown up to the line's end
+        check("s = x; t = u;\nv;", 4, 0, "\"", 2, 6, 1);
+    }
+
+    @Test
+    public void closingAStringGivesBackTheTokensInIt() {
+        check("s = \"x; t = u\";\nv;", 4, 1, "", 2, 2, 6);
+        check("s = \"x; t = u;\nv;", 4, 1, "", 2, 1, 6);
+        check("s = \"x; t\" = u;", 9, 1, "", 2, 4, 1);
+    }
+
+    @Test
+    public void typingALineAChangeAtATime() {
+        String line = "x == \"a // b\"; // c\n";
+        String text = "a = b;\n\nc = d;";
+        TokenBuffer<Lexeme> tokens = lexer.lexToBuffer(text);
+        for (int i = 0; i < line.length(); i++) {
+            int offset = 7 + i;
+            TokenChange<Lexeme> change = lexer.relex(tokens, offset, 0, line.substring(i, i + 1));
+            text = text.substring(0, offset) + line.charAt(i) + text.substring(offset);
+            assertSameTokens(text, lexer.lexToBuffer(text), change.getTokens());
+            tokens = change.getTokens();
+        }
+    }
+
+    private void check(String before, int offset, int removed, String inserted,
+                       int from, int removedCount, int insertedCount) {
+        String after = before.substring(0, offset) + inserted + before.substring(offset + removed);
+        TokenBuffer<Lexeme> previous = lexer.lexToBuffer(before);
+        TokenChange<Lexeme> change = lexer.relex(previous, offset, removed, inserted);
+        TokenBuffer<Lexeme> tokens = change.getTokens();
+
+        assertEquals(after, from, change.getFrom());
+        assertEquals(after, removedCount, change.getRemovedCount());
+        assertEquals(after, insertedCount, change.getInsertedCount());
+        assertSameTokens(after, lexer.lexToBuffer(after), tokens);
+
+        assertEquals(after, previous.size() - removedCount + insertedCount, tokens.size());
+        for (int i = 0; i < from; i++) {
+            assertEquals(after, previous.span(i), tokens.span(i));
+        }
+        int shift = inserted.length() - removed;
+        for (int i = from + removedCount; i < previous.size(); i++) {
+            int j = i - removedCount + insertedCount;
+            assertEquals(after, previous.lexeme(i), tokens.lexeme(j));
+            assertEquals(after, previous.start(i) + shift, tokens.start(j));
+            assertEquals(after, previous.end(i) + shift, tokens.end(j));
+        }
+    }
+
+    private static void assertSameTokens(String text, TokenBuffer<Lexeme> expected, TokenBuffer<Lexeme> actual) {
+        assertEquals(text, expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(text, expected.lexeme(i), actual.lexeme(i));
+            assertEquals(text, expected.span(i), actual.span(i));
+            assertEquals(text, expected.contents(i), actual.contents(i));
+        }
+    }
+}
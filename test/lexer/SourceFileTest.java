@@ -0,0 +1,84 @@
+package lexer;
+
+import com.google.common.base.Strings;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Turns offsets into lines and columns with a {@link SourceFile}'s index of line starts, which must agree with
+ * counting the lines from the start of the text, at the start and end of the text, on line ends of each kind, and on
+ * a last line with or without a line end of its own.
+ */
+public class SourceFileTest {
+    private static final String[] TEXTS = {
+            "",
+            "\n",
+            "a",
+            "ab\ncd\r\nef\rgh",
+            "ab\ncd\n",
+            "\r\n\r\n\n\r\r",
+            "class A {\n    int f() { return 1; }\n}",
+            Strings.repeat("x\n", 100) + "last",
+    };
+
+    @Test
+    public void linesAndColumnsAreCountedFromTheStart() {
+        for (String text : TEXTS) {
+            SourceFile file = new SourceFile(text);
+            int line = 1;
+            int column = 1;
+            for (int offset = 0; offset <= text.length(); offset++) {
+                String where = "offset " + offset + " of \"" + text + "\"";
+                assertEquals(where, line, file.line(offset));
+                assertEquals(where, column, file.column(offset));
+                assertEquals(where, line + ":" + column, file.describe(offset));
+                if (offset < text.length() && endsLine(text, offset)) {
+                    line++;
+                    column = 1;
+                } else {
+                    column++;
+                }
+            }
+            assertEquals(text, line, file.getLineCount());
+        }
+    }
+
+    @Test
+    public void offsetsAtTheEdgesOfLines() {
+        SourceFile file = new SourceFile("A.dia", "ab\ncd\r\nef");
+        assertEquals("A.dia:1:1", file.describe(0));
+        // a line end is the last character of its line
+        assertEquals("A.dia:1:3", file.describe(2));
+        assertEquals("A.dia:2:1", file.describe(3));
+        assertEquals("A.dia:2:3", file.describe(5));
+        assertEquals("A.dia:2:4", file.describe(6));
+        assertEquals("A.dia:3:1", file.describe(7));
+        // the last line has no line end, and the end of the text is just past it
+        assertEquals("A.dia:3:3", file.describe(9));
+        assertEquals(3, file.getLineCount());
+
+        SourceFile ended = new SourceFile("ab\n");
+        assertEquals("2:1", ended.describe(3));
+        assertEquals(2, ended.getLineCount());
+        assertEquals(3, ended.lineStart(2));
+    }
+
+    @Test
+    public void offsetsPastTheEndAreRejected() {
+        SourceFile file = new SourceFile("ab\ncd");
+        for (int offset : new int[] {-1, 6}) {
+            try {
+                file.line(offset);
+                fail("found the line of offset " + offset);
+            } catch (IndexOutOfBoundsException expected) {
+            }
+        }
+    }
+
+    private static boolean endsLine(String text, int offset) {
+        char c = text.charAt(offset);
+        return c == '\n' || (c == '\r' && (offset + 1 == text.length() || text.charAt(offset + 1) != '\n'));
+    }
+}
@@ -0,0 +1,71 @@
+package lexer;
+
+import lexer.DiamondLexer.Lexeme;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Lexes sources with their whitespace and comments kept in a {@link Trivia} table, which together with the main
+ * tokens must give back the source exactly, and which must leave the main tokens as they are without it.
+ */
+public class TriviaTest {
+    private static final String[] SOURCES = {
+            "",
+            " \n\t ",
+            "// only a comment",
+            "class A { int f(int a) { return a; } }",
+            "  // leading\n//\n\nclass A {\n"
+                    + "    int f(int a, int b) {  // trailing\n"
+                    + "        a = b + 1;  //between\n\n"
+                    + "        return \"s // not a comment\";\n"
+                    + "    }\n"
+                    + "}\n"
+                    + "// at the end, with no line end",
+            "x=1;y=\"a\"+b;",
+    };
+
+    private final DiamondLexer lexer = new DiamondLexer();
+
+    @Test
+    public void theTriviaAroundEachTokenRebuildTheSource() {
+        for (String source : SOURCES) {
+            Trivia<Lexeme> trivia = new Trivia<Lexeme>(Lexeme.class, source);
+            TokenBuffer<Lexeme> tokens = lexer.lexWithTrivia(source, trivia);
+            TokenBuffer<Lexeme> triviaTokens = trivia.getTokens();
+
+            StringBuilder rebuilt = new StringBuilder();
+            for (int i = 0; i <= tokens.size(); i++) {
+                assertEquals(source, i == 0 ? 0 : trivia.leadingTo(i - 1), trivia.leadingFrom(i));
+                for (int t = trivia.leadingFrom(i); t < trivia.leadingTo(i); t++) {
+                    assertEquals(source, i, trivia.owner(t));
+                    assertTrue(source, triviaTokens.lexeme(t) == Lexeme.WHITESPACE
+                            || triviaTokens.lexeme(t) == Lexeme.COMMENT);
+                    rebuilt.append(source, triviaTokens.start(t), triviaTokens.end(t));
+                }
+                if (i < tokens.size()) {
+                    rebuilt.append(source, tokens.start(i), tokens.end(i));
+                }
+            }
+            assertEquals(triviaTokens.size(), trivia.leadingTo(tokens.size()));
+            assertEquals(source, rebuilt.toString());
+        }
+    }
+
+    @Test
+    public void triviaAreNotKeptByDefault() {
+        for (String source : SOURCES) {
+            TokenBuffer<Lexeme> plain = lexer.lexToBuffer(source);
+            TokenBuffer<Lexeme> tokens = lexer.lexWithTrivia(source, new Trivia<Lexeme>(Lexeme.class, source));
+
+            assertEquals(source, tokens.size(), plain.size());
+            for (int i = 0; i < plain.size(); i++) {
+                assertFalse(source, plain.lexeme(i) == Lexeme.WHITESPACE || plain.lexeme(i) == Lexeme.COMMENT);
+                assertEquals(source, tokens.lexeme(i), plain.lexeme(i));
+                assertEquals(source, tokens.span(i), plain.span(i));
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package parser;
+
+import lexer.DiamondLexer;
+import lexer.DiamondLexer.Lexeme;
+import lexer.TokenBuffer;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Lexes and parses many files on a pool with one shared lexer and one shared parser, which must give the same trees as
+ * lexing and parsing them one at a time with a lexer and parser of their own.
+ */
+public class ConcurrentParsingTest {
+    private static final String PROGRAM = "class A {\n"
+            + "    static int f(int a, Foo[] b) {\n"
+            + "        int x = a + 1 * -b[2].c.d(x, y.new(), new(1)) - x++;\n"
+            + "        x = y = z = w += 3;\n"
+            + "        if (x > 2) if (y) z = 1; else { q = (a + (b * (c - d))); }\n"
+            + "        for (i = 0; i < 10; i++) { s = s + \"str\"; continue; }\n"
+            + "        while (a) do { c = -(-c); } while (c);\n"
+            + "        return x * f(a, b);\n"
+            + "    }\n"
+            + "}\n";
+
+    @Test
+    public void oneLexerAndParserServeAPool() throws Exception {
+        final DiamondLexer lexer = new DiamondLexer();
+        final DiamondParser parser = new DiamondParser();
+        List<String> files = new ArrayList<String>();
+        List<Callable<String>> tasks = new ArrayList<Callable<String>>();
+        for (int i = 0; i < 200; i++) {
+            final String file = PROGRAM.replace("class A", "class A" + i).replace(" x", " x" + i % 13)
+                    + "class B" + i + " { int g() { return " + i + " + k" + i % 7 + "; } }\n";
+            files.add(file);
+            tasks.add(new Callable<String>() {
+                @Override
+                public String call() throws ParseException {
+                    return Trees.dump(parser.parse(lexer.lexToBuffer(file)), file);
+                }
+            });
+        }
+
+        List<String> trees = new ArrayList<String>();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> futures = executor.invokeAll(tasks);
+            for (Future<String> future : futures) {
+                trees.add(future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        for (int i = 0; i < files.size(); i++) {
+            TokenBuffer<Lexeme> tokens = new DiamondLexer().lexToBuffer(files.get(i));
+            assertEquals(Trees.dump(new DiamondParser().parse(tokens), files.get(i)), trees.get(i));
+        }
+    }
+}
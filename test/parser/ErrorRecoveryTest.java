@@ -0,0 +1,171 @@
+package parser;
+
+import lexer.DiamondLexer;
+import lexer.SourceFile;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Parses units with errors in them, both syntax errors and parts that the nodes of the tree will not take, which must
+ * be reported as {@link ParseException}s at the right place: the first thrown, or all of them found in one pass with
+ * an {@link ErrorStatement} in place of each statement that had one.
+ */
+public class ErrorRecoveryTest {
+    private static final String SOURCE = "class A {\n"
+            + "    int f(int a, int b) {\n"
+            + "        a = 1;\n"
+            + "        a = c == d & e;\n"
+            + "        b = 2;\n"
+            + "        while (\"s\") a = 3;\n"
+            + "        b = b + ;\n"
+            + "        return \"t\";\n"
+            + "    }\n"
+            + "    int g() { return k; }\n"
+            + "}\n";
+
+    private final DiamondLexer lexer = new DiamondLexer();
+
+    @Test
+    public void operandsAnOperatorWillNotTakeAreAParseError() {
+        String source = "class A { int f() { c == d & e; } }";
+        try {
+            new DiamondParser().parse(lexer.lexToBuffer(source));
+            fail("parsed an integral operator applied to a boolean");
+        } catch (ParseException e) {
+            assertEquals("invalid operands for BITWISE_AND", e.getMessage());
+            assertEquals("c == d & e", text(source, e.getSpan()));
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+    }
+
+    @Test
+    public void onlyAnArrayCanBeIndexed() {
+        String source = "class A { int f() { x = 1[0]; y = \"s\"[0]; z = a[0]; } }";
+        List<ParseException> errors = new ArrayList<ParseException>();
+        new DiamondParser().parse(lexer.lexToBuffer(source), errors);
+
+        assertEquals(2, errors.size());
+        for (ParseException error : errors) {
+            assertEquals("only an array can be indexed", error.getMessage());
+            assertTrue(error.getCause() instanceof IllegalArgumentException);
+        }
+        assertEquals("1", text(source, errors.get(0).getSpan()));
+        assertEquals("\"s\"", text(source, errors.get(1).getSpan()));
+    }
+
+    @Test
+    public void theFirstErrorIsThrown() {
+        try {
+            new DiamondParser().parse(lexer.lexToBuffer(SOURCE));
+            fail("parsed a unit with errors in it");
+        } catch (ParseException e) {
+            assertEquals("c == d & e", text(SOURCE, e.getSpan()));
+        }
+    }
+
+    @Test
+    public void everyErrorIsFoundInOnePass() {
+        List<ParseException> errors = new ArrayList<ParseException>();
+        CompilationUnit unit = new DiamondParser().parse(lexer.lexToBuffer(SOURCE), errors);
+
+        List<String> found = new ArrayList<String>();
+        for (ParseException error : errors) {
+            found.add(error.getMessage() + " at <" + text(SOURCE, error.getSpan()) + ">");
+        }
+        assertEquals(Arrays.asList(
+                "invalid operands for BITWISE_AND at <c == d & e>",
+                "the condition of \"while\" must be a boolean at <\"s\">",
+                "expected expression at <;>",
+                "the value returned does not match the method's return type at <\"t\">"), found);
+
+        Node method = unit.children().get(0).children().get(0);
+        List<String> statements = new ArrayList<String>();
+        for (Node statement : method.children()) {
+            statements.add(statement.getClass().getSimpleName() + " <" + text(SOURCE, statement.getSpan()) + ">");
+        }
+        assertEquals(Arrays.asList(
+                "VariableDeclaration <int a>",
+                "VariableDeclaration <int b>",
+                "OperatorExpression <a = 1>",
+                "ErrorStatement <a = c == d & e;>",
+                "OperatorExpression <b = 2>",
+                "ErrorStatement <while (\"s\") a = 3;>",
+                "ErrorStatement <b = b + ;>",
+                "ErrorStatement <return \"t\";>"), statements);
+        for (int i = 0; i < errors.size(); i++) {
+            assertSame(errors.get(i), ((ErrorStatement) method.children().get(i == 0 ? 3 : 4 + i)).getError());
+        }
+        // the unit goes on after the errors
+        assertEquals("int g() { return k; }", text(SOURCE, unit.children().get(0).children().get(1).getSpan()));
+    }
+
+    @Test
+    public void aMissingOperandDoesNotTakeTheNextStatementWithIt() {
+        String source = "class A { int f() { b = b + ; x = 1[0]; c = d; } }";
+        List<ParseException> errors = new ArrayList<ParseException>();
+        String tree = Trees.dump(new DiamondParser().parse(lexer.lexToBuffer(source), errors), source);
+
+        assertEquals(2, errors.size());
+        assertEquals(";", text(source, errors.get(0).getSpan()));
+        assertEquals("1", text(source, errors.get(1).getSpan()));
+        assertTrue(tree, tree.contains("ErrorStatement 20-29 <b = b + ;>"));
+        assertTrue(tree, tree.contains("ErrorStatement 30-39 <x = 1[0];>"));
+    }
+
+    @Test
+    public void aDoLoopWithoutABodyIsAnErrorAtTheTokenAfterIt() {
+        for (String source : new String[]{"class A { int f() { do x; } }", "class A { int f() { do"}) {
+            try {
+                new DiamondParser().parse(lexer.lexToBuffer(source));
+                fail("parsed a do loop without a body");
+            } catch (ParseException e) {
+                assertEquals("expected '{' or ';'", e.getMessage());
+                assertEquals(source.endsWith("do") ? "do" : "x", text(source, e.getSpan()));
+            }
+        }
+    }
+
+    @Test
+    public void errorsAfterABodyInBracesAreFoundThroughAStream() {
+        // the statement's first token has been released by the time the error after its body is found
+        String source = "class A { int g() { do { a--; } while (a > 0) x; b = 1; } }";
+        try {
+            new DiamondParser(lexer.stream(new StringReader(source))).parse();
+            fail("parsed a do loop without a ';'");
+        } catch (ParseException e) {
+            assertEquals("expected ';'", e.getMessage());
+            assertEquals("x", text(source, e.getSpan()));
+        }
+    }
+
+    @Test
+    public void everyErrorIsFoundInOnePassThroughAStream() {
+        String source = SOURCE.replace("b = 2;", "do { b = 2; } while (b) x;");
+        List<ParseException> fromBuffer = new ArrayList<ParseException>();
+        String expected = Trees.dump(new DiamondParser().parse(lexer.lexToBuffer(source), fromBuffer), source);
+        List<ParseException> fromStream = new ArrayList<ParseException>();
+        String actual = Trees.dump(new DiamondParser(lexer.stream(new StringReader(source))).parse(fromStream), source);
+
+        assertEquals(expected, actual);
+        assertEquals(5, fromStream.size());
+        assertEquals(fromBuffer.size(), fromStream.size());
+        for (int i = 0; i < fromBuffer.size(); i++) {
+            assertEquals(fromBuffer.get(i).getMessage(), fromStream.get(i).getMessage());
+            assertEquals(fromBuffer.get(i).getSpan(), fromStream.get(i).getSpan());
+        }
+        assertTrue(actual, actual.contains("ErrorStatement 83-109 <do { b = 2; } while (b) x;>"));
+    }
+
+    private static String text(String source, long span) {
+        return source.substring(SourceFile.spanStart(span), SourceFile.spanEnd(span));
+    }
+}
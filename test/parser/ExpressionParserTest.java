@@ -0,0 +1,96 @@
+package parser;
+
+import lexer.DiamondLexer;
+import lexer.SourceFile;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Parses expressions in one pass by precedence climbing over the {@link Operator} table, and checks how they group:
+ * each node with operands is written as its operands in brackets, and each leaf as its source, or its class if it has
+ * none.
+ */
+public class ExpressionParserTest {
+    @Test
+    public void higherPrecedenceBindsTighter() throws ParseException {
+        assertEquals("[a [b c]]", shape("a + b * c"));
+        assertEquals("[[a b] c]", shape("a * b + c"));
+        assertEquals("[[a [b c]] [d e]]", shape("a + b * c < d - e"));
+        assertEquals("[[a b] [c d]]", shape("a && b || c == d"));
+    }
+
+    @Test
+    public void leftAssociativeOperatorsGroupFromTheLeft() throws ParseException {
+        assertEquals("[[[a b] c] d]", shape("a - b - c - d"));
+        assertEquals("[[a b] c]", shape("a / b % c"));
+        assertEquals("[[a b] c]", shape("a << b >> c"));
+    }
+
+    @Test
+    public void rightAssociativeOperatorsGroupFromTheRight() throws ParseException {
+        assertEquals("[a [b [c d]]]", shape("a = b = c = d"));
+        assertEquals("[a [b [c d]]]", shape("a += b -= c *= d"));
+        // ? and : share a precedence, so a conditional in the else branch nests inside the first
+        assertEquals("[a [b [c [d e]]]]", shape("a ? b : c ? d : e"));
+    }
+
+    @Test
+    public void prefixAndPostfixOperators() throws ParseException {
+        assertEquals("[[a]]", shape("-(-a)"));
+        assertEquals("[[a] b]", shape("-a * b"));
+        assertEquals("[[a] [b]]", shape("a++ + ++b"));
+        assertEquals("[a [b]]", shape("a = !b"));
+    }
+
+    @Test
+    public void selectorsAndParentheses() throws ParseException {
+        assertEquals("[[a b] c]", shape("(a + b) * c"));
+        assertEquals("[[a 0] x y]", shape("a[0].b(x, y)"));
+        assertEquals("[[[ThisExpression x] 1] 2]", shape("f(x)[1][2]"));
+    }
+
+    @Test
+    public void operatorsOfOnePrecedenceShareAnAssociativity() {
+        Map<Integer, Operator.Associativity> associativities = new HashMap<Integer, Operator.Associativity>();
+        for (Operator operator : Operator.values()) {
+            Operator.Associativity previous = associativities.put(operator.getPrecedence(),
+                    operator.getAssociativity());
+            if (previous != null) {
+                assertEquals(operator.name(), previous, operator.getAssociativity());
+            }
+            assertEquals(operator.getAssociativity() == Operator.Associativity.RIGHT, operator.isRightAssociative());
+        }
+    }
+
+    /**
+     * Parses the expression as a statement of a method, and writes how it groups.
+     */
+    private static String shape(String expression) throws ParseException {
+        String source = "class A { int f() { " + expression + "; } }";
+        CompilationUnit unit = new DiamondParser().parse(new DiamondLexer().lexToBuffer(source));
+        Node method = unit.children().get(0).children().get(0);
+        List<? extends Node> statements = method.children();
+        return shape(statements.get(statements.size() - 1), source);
+    }
+
+    private static String shape(Node node, String source) {
+        List<? extends Node> children = node.children();
+        if (children.isEmpty()) {
+            long span = node.getSpan();
+            if (span == SourceFile.NO_SPAN) {
+                return node.getClass().getSimpleName();
+            }
+            return source.substring(SourceFile.spanStart(span), SourceFile.spanEnd(span));
+        }
+        StringBuilder shape = new StringBuilder("[");
+        for (int i = 0; i < children.size(); i++) {
+            shape.append(i > 0 ? " " : "").append(shape(children.get(i), source));
+        }
+        return shape.append(']').toString();
+    }
+}
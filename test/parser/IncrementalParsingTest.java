@@ -0,0 +1,126 @@
+package parser;
+
+import lexer.DiamondLexer;
+import lexer.DiamondLexer.Lexeme;
+import lexer.SourceFile;
+import lexer.TokenBuffer;
+import lexer.TokenChange;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Edits the source of a unit and parses it again incrementally, which must give the same unit as parsing the edited
+ * source from scratch, while parsing again only the innermost statement the edit is in and keeping every other node.
+ */
+public class IncrementalParsingTest {
+    private static final Pattern NUMBER = Pattern.compile("\\b[0-9]+\\b");
+
+    private final DiamondLexer lexer = new DiamondLexer();
+
+    private final DiamondParser parser = new DiamondParser();
+
+    private String source = types(30);
+
+    private TokenBuffer<Lexeme> tokens = lexer.lexToBuffer(source);
+
+    private CompilationUnit unit;
+
+    @Test
+    public void onlyTheInnermostStatementIsReplaced() throws ParseException {
+        unit = parser.parse(tokens);
+        Node method = type("W12").children().get(1);
+        Node loop = method.children().get(3);
+        Node assignment = loop.children().get(1);
+        Node kept = method.children().get(4);
+        Node next = type("T13");
+
+        int offset = source.indexOf("a = a + 12;");
+        TreeChange change = edit(offset + "a = a + ".length(), 2, "12345");
+
+        assertFalse(change.isFullReparse());
+        assertSame(unit, change.getCompilationUnit());
+        assertSame(loop, change.getReplaced());
+        assertSame(change.getReplacement(), method.children().get(3));
+        assertFalse(assignment == change.getReplacement().children().get(1));
+        assertSame(kept, method.children().get(4));
+        assertSame(next, type("T13"));
+        assertEquals("while (a < b) { a = a + 12345; }", text(change.getReplacement()));
+        assertEquals("return a * (b - 12);", text(kept));
+        assertEquals("class T13 { int m() { return k + 13; } }", text(next));
+        assertEquals(Trees.dump(parser.parse(tokens), source), Trees.dump(unit, source));
+    }
+
+    @Test
+    public void editsOneAfterAnotherMatchAFreshParse() throws ParseException {
+        unit = parser.parse(tokens);
+        Random random = new Random(3);
+        for (int i = 0; i < 200; i++) {
+            List<int[]> numbers = new ArrayList<int[]>();
+            Matcher matcher = NUMBER.matcher(source);
+            while (matcher.find()) {
+                numbers.add(new int[]{matcher.start(), matcher.end()});
+            }
+            int[] number = numbers.get(random.nextInt(numbers.size()));
+            // numbers of other lengths, so that everything after the edit moves either way
+            TreeChange change = edit(number[0], number[1] - number[0], Integer.toString(random.nextInt(100000)));
+            assertFalse("edit " + i, change.isFullReparse());
+            assertEquals("edit " + i, Trees.dump(parser.parse(tokens), source), Trees.dump(unit, source));
+        }
+    }
+
+    @Test
+    public void insertedStatementsAreParsedWithTheStatementAroundThem() throws ParseException {
+        unit = parser.parse(tokens);
+        for (int i = 0; i < 30; i += 3) {
+            int offset = source.indexOf("{ a = a + " + i + ";");
+            TreeChange change = edit(offset + 1, 0, " b = b * " + i + ";");
+            assertFalse(change.isFullReparse());
+            assertEquals(Trees.dump(parser.parse(tokens), source), Trees.dump(unit, source));
+        }
+    }
+
+    private TreeChange edit(int offset, int removed, String inserted) throws ParseException {
+        TokenChange<Lexeme> change = lexer.relex(tokens, offset, removed, inserted);
+        TreeChange treeChange = parser.reparse(unit, tokens, change);
+        source = source.substring(0, offset) + inserted + source.substring(offset + removed);
+        tokens = change.getTokens();
+        unit = treeChange.getCompilationUnit();
+        return treeChange;
+    }
+
+    private Node type(String name) {
+        for (Node type : unit.children()) {
+            if (text(type).startsWith("class " + name + " ")) {
+                return type;
+            }
+        }
+        throw new AssertionError("no type " + name);
+    }
+
+    private String text(Node node) {
+        return source.substring(SourceFile.spanStart(node.getSpan()), SourceFile.spanEnd(node.getSpan()));
+    }
+
+    private static String types(int count) {
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            source.append("class T").append(i).append(" { int m() { return k + ").append(i).append("; } }\n");
+            if (i % 3 == 0) {
+                source.append("class W").append(i).append(" {\n    int f;\n    int g(int a, int b) {\n")
+                        .append("        f = ").append(i).append(";\n")
+                        .append("        while (a < b) { a = a + ").append(i).append("; }\n")
+                        .append("        return a * (b - ").append(i).append(");\n    }\n}\n");
+            }
+        }
+        return source.toString();
+    }
+}
@@ -0,0 +1,64 @@
+package parser;
+
+import lexer.ConstantPool;
+import lexer.DiamondLexer;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Literals in the tree hold the index of their value in the constant pool the lexer decoded them into, and integers
+ * take the narrowest type their value fits.
+ */
+public class LiteralTest {
+    @Test
+    public void literalsShareTheLexersPool() throws ParseException {
+        String source = "class A { int f() { x = 7 + 7 + 40000 + 0x7000000000 + \"s\\n\" + \"s\\n\"; } }";
+        DiamondLexer lexer = new DiamondLexer();
+        CompilationUnit unit = new DiamondParser().parse(lexer.lexToBuffer(source));
+        ConstantPool pool = unit.getConstantPool();
+        assertSame(lexer.getConstantPool(), pool);
+
+        List<Expression> literals = new ArrayList<Expression>();
+        collect(unit, literals);
+        assertEquals(6, literals.size());
+        IntegralLiteral first = (IntegralLiteral) literals.get(0);
+        IntegralLiteral second = (IntegralLiteral) literals.get(1);
+        assertEquals(first.getConstant(), second.getConstant());
+        assertEquals(7, pool.getLong(first.getConstant()));
+        assertEquals(BuiltInType.SHORT, first.getType());
+        assertEquals(BuiltInType.INT, literals.get(2).getType());
+        assertEquals(BuiltInType.LONG, literals.get(3).getType());
+        assertEquals(0x7000000000L, pool.getLong(((IntegralLiteral) literals.get(3)).getConstant()));
+        StringLiteral text = (StringLiteral) literals.get(4);
+        assertEquals(text.getConstant(), ((StringLiteral) literals.get(5)).getConstant());
+        assertEquals("s\n", pool.getString(text.getConstant()));
+        assertEquals(BuiltInType.STRING, text.getType());
+    }
+
+    /**
+     * Collects the literals of a tree in source order.
+     */
+    private static void collect(Node node, List<Expression> literals) {
+        if (node instanceof IntegralLiteral || node instanceof StringLiteral) {
+            literals.add((Expression) node);
+        }
+        List<Node> children = new ArrayList<Node>(node.children());
+        // operands are built bottom-up, so order them by where they start
+        Collections.sort(children, new Comparator<Node>() {
+            @Override
+            public int compare(Node a, Node b) {
+                return Long.compare(a.getSpan(), b.getSpan());
+            }
+        });
+        for (Node child : children) {
+            collect(child, literals);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package parser;
+
+import lexer.DiamondLexer;
+import lexer.DiamondLexer.Lexeme;
+import lexer.SourceFile;
+import lexer.TokenBuffer;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Parses the type declarations of a unit in parallel, which must give the same unit, or the same error, as parsing it
+ * sequentially.
+ */
+public class ParallelParsingTest {
+    private static ForkJoinPool pool;
+
+    @BeforeClass
+    public static void startPool() {
+        pool = new ForkJoinPool(4);
+    }
+
+    @AfterClass
+    public static void stopPool() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void typesParsedInParallelMatchASequentialParse() throws ParseException {
+        String source = types(40, -1);
+        TokenBuffer<Lexeme> tokens = new DiamondLexer().lexToBuffer(source);
+        String expected = Trees.dump(new DiamondParser().parse(tokens), source);
+        assertEquals(expected, Trees.dump(new DiamondParser().parseInParallel(tokens, pool), source));
+        assertEquals(expected, Trees.dump(new DiamondParser().parseInParallel(tokens.asList(), pool), source));
+    }
+
+    @Test
+    public void theFirstErrorIsTheOneThrown() {
+        // types 7 and 23 both have errors, and whichever finishes first, the error in 7 is the one reported
+        String source = types(40, 7).replace("return k + 23;", "return k + ;");
+        TokenBuffer<Lexeme> tokens = new DiamondLexer().lexToBuffer(source);
+        String expected = null;
+        try {
+            new DiamondParser().parse(tokens);
+            fail("parsed a unit with errors in it");
+        } catch (ParseException e) {
+            expected = e.getMessage() + " " + e.getSpan();
+            assertTrue(SourceFile.spanStart(e.getSpan()) > source.indexOf("class T7 "));
+            assertTrue(SourceFile.spanStart(e.getSpan()) < source.indexOf("class T8 "));
+        }
+        for (int attempt = 0; attempt < 20; attempt++) {
+            try {
+                new DiamondParser().parseInParallel(tokens, pool);
+                fail("parsed a unit with errors in it");
+            } catch (ParseException e) {
+                assertEquals(expected, e.getMessage() + " " + e.getSpan());
+            }
+        }
+    }
+
+    /**
+     * @param broken the type whose method has an error in it, or -1 for none
+     */
+    private static String types(int count, int broken) {
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            source.append("class T").append(i).append(" { int m() { return k + ").append(i)
+                    .append(i == broken ? "" : ";").append(" } }\n");
+            if (i % 3 == 0) {
+                source.append("class W").append(i).append(" { int f; int g(int a, int b) { while (a < b) { a = a + ")
+                        .append(i).append("; } return a * (b - 1); } }\n");
+            }
+        }
+        return source.toString();
+    }
+}
@@ -0,0 +1,215 @@
+package parser;
+
+import lexer.ConstantPool;
+import lexer.DiamondLexer;
+import lexer.DiamondLexer.Lexeme;
+import lexer.SourceFile;
+import lexer.TokenBuffer;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Parses with listeners instead of building a tree, which must see the structure of the unit as events in the order
+ * the {@link ParseListener} describes, without any node being made.
+ */
+public class ParseListenerTest {
+    private static final String SOURCE = "class A {\n"
+            + "    int f(int a) {\n"
+            + "        while (a < 10) a = a + 1;\n"
+            + "        return g(a, \"s\");\n"
+            + "    }\n"
+            + "}\n";
+
+    private final DiamondLexer lexer = new DiamondLexer();
+
+    @Test
+    public void aListenerSeesTheEventsInOrder() throws ParseException {
+        TokenBuffer<Lexeme> tokens = lexer.lexToBuffer(SOURCE);
+        Recorder recorder = new Recorder(SOURCE);
+        new DiamondParser().parse(tokens, recorder);
+        assertEquals(Arrays.asList(
+                "enter unit",
+                "enter type A",
+                "variable int a <int a>",
+                "enter method f 1",
+                "identifier a <a>",
+                "literal <10>",
+                "operator LESS_THAN <a < 10>",
+                "enter while",
+                "identifier a <a>",
+                "identifier a <a>",
+                "literal <1>",
+                "operator ADDITION_OR_CONCATENATION <a + 1>",
+                "operator ASSIGNMENT <a = a + 1>",
+                "expression statement",
+                "exit while <while (a < 10) a = a + 1;>",
+                "identifier a <a>",
+                "string <\"s\">",
+                "invocation g 2 <g(a, \"s\")>",
+                "enter return",
+                "exit return <return g(a, \"s\");>",
+                "exit method <int f(int a) {\\n        while (a < 10) a = a + 1;\\n        return g(a, \"s\");\\n    }>",
+                "exit type <" + SOURCE.trim().replace("\n", "\\n") + ">",
+                "exit unit"), recorder.events);
+    }
+
+    @Test
+    public void listenersBuildNoTree() throws ParseException {
+        // a string returned from an int method makes the tree's return statement throw, but no statement is made here
+        String source = SOURCE.replace("return g(a, \"s\");", "return \"s\";");
+        try {
+            new DiamondParser().parse(lexer.lexToBuffer(source));
+            fail("built a tree returning a string from an int method");
+        } catch (ParseException expected) {
+            assertEquals("the value returned does not match the method's return type", expected.getMessage());
+        }
+        new DiamondParser().parse(lexer.lexToBuffer(source), new ParseAdapter());
+        Recorder recorder = new Recorder(source);
+        new DiamondParser().parse(lexer.lexToBuffer(source), recorder);
+        assertTrue(recorder.events.contains("exit return <return \"s\";>"));
+    }
+
+    @Test
+    public void anAdapterStopsAtTheFirstSyntaxError() {
+        String source = SOURCE.replace("a = a + 1;", "a = a + ;") + "class B { int g() { return ; ) } }";
+        try {
+            new DiamondParser().parse(lexer.lexToBuffer(source), new ParseAdapter());
+            fail("checked a unit with syntax errors in it");
+        } catch (ParseException e) {
+            assertEquals(source.indexOf(";", source.indexOf("a + ")), SourceFile.spanStart(e.getSpan()));
+        }
+    }
+
+    @Test
+    public void aListenerThatKeepsErrorsSeesThemAll() throws ParseException {
+        String source = SOURCE.replace("a = a + 1;", "a = a + ;") + "class B { int g() { return ; ) } }";
+        Recorder recorder = new Recorder(source) {
+            @Override
+            public void error(ParseException error, int depth, long span) {
+                events.add("error " + depth + " " + text(span));
+            }
+        };
+        new DiamondParser().parse(lexer.lexToBuffer(source), recorder);
+        List<String> errors = new ArrayList<String>();
+        for (String event : recorder.events) {
+            if (event.startsWith("error")) {
+                errors.add(event);
+            }
+        }
+        assertEquals(Arrays.asList("error 3 <while (a < 10) a = a + ;>", "error 3 <)>"), errors);
+        assertEquals("exit unit", recorder.events.get(recorder.events.size() - 1));
+    }
+
+    /**
+     * Records the events of a parse as text, with the source each one spans.
+     */
+    private static class Recorder extends ParseAdapter {
+        final List<String> events = new ArrayList<String>();
+
+        private final String source;
+
+        Recorder(String source) {
+            this.source = source;
+        }
+
+        String text(long span) {
+            return "<" + source.substring(SourceFile.spanStart(span), SourceFile.spanEnd(span)).replace("\n", "\\n")
+                    + ">";
+        }
+
+        @Override
+        public void enterCompilationUnit(ConstantPool constantPool) {
+            events.add("enter unit");
+        }
+
+        @Override
+        public void exitCompilationUnit() {
+            events.add("exit unit");
+        }
+
+        @Override
+        public void enterTypeDeclaration(String name, int symbol, Set<Modifier> modifiers) {
+            events.add("enter type " + name);
+        }
+
+        @Override
+        public void exitTypeDeclaration(long span) {
+            events.add("exit type " + text(span));
+        }
+
+        @Override
+        public void enterMethodDeclaration(String name, int symbol, ExpressionType returnType, Set<Modifier> modifiers,
+                                           int parameterCount) {
+            events.add("enter method " + name + " " + parameterCount);
+        }
+
+        @Override
+        public void exitMethodDeclaration(long span) {
+            events.add("exit method " + text(span));
+        }
+
+        @Override
+        public void enterWhileLoop() {
+            events.add("enter while");
+        }
+
+        @Override
+        public void exitWhileLoop(long span) {
+            events.add("exit while " + text(span));
+        }
+
+        @Override
+        public void enterReturnStatement(boolean hasValue) {
+            events.add("enter return");
+        }
+
+        @Override
+        public void exitReturnStatement(long span) {
+            events.add("exit return " + text(span));
+        }
+
+        @Override
+        public void expressionStatement() {
+            events.add("expression statement");
+        }
+
+        @Override
+        public void identifierReference(String name, int symbol, long span) {
+            events.add("identifier " + name + " " + text(span));
+        }
+
+        @Override
+        public void integralLiteral(int constant, long span) {
+            events.add("literal " + text(span));
+        }
+
+        @Override
+        public void stringLiteral(int constant, long span) {
+            events.add("string " + text(span));
+        }
+
+        @Override
+        public void variableDeclaration(ExpressionType type, String name, int symbol, Set<Modifier> modifiers,
+                                        long span) {
+            events.add("variable " + type + " " + name + " " + text(span));
+        }
+
+        @Override
+        public void operatorExpression(Operator operator, long span) {
+            events.add("operator " + operator + " " + text(span));
+        }
+
+        @Override
+        public void methodInvocation(String name, int symbol, boolean hasTarget, int parameterCount, long span) {
+            events.add("invocation " + name + " " + parameterCount + " " + text(span));
+        }
+    }
+}
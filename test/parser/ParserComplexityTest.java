@@ -0,0 +1,210 @@
+package parser;
+
+import lexer.DiamondLexer;
+import lexer.DiamondLexer.Lexeme;
+import lexer.TokenBuffer;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Parses generated inputs of growing size, such as long chains of operators, deep nesting and many statements, and
+ * fails if the time a parse takes grows faster than the input.  Each input is parsed at one size and at eight times
+ * it, taking the fastest of several runs after warming up; linear time makes the larger about eight times slower, and
+ * quadratic time sixty-four, so anything over {@link #MAX_RATIO} in each of a few attempts is taken to be
+ * superlinear.
+ */
+public class ParserComplexityTest {
+    private static final int GROWTH = 8;
+
+    private static final double MAX_RATIO = 24;
+
+    private static final int RUNS = 7;
+
+    private static final int ATTEMPTS = 3;
+
+    private final DiamondLexer lexer = new DiamondLexer();
+
+    /**
+     * Makes an input of about a given size.
+     */
+    private interface Input {
+        String make(int size);
+    }
+
+    @Test
+    public void longChainsOfLeftAssociativeOperators() throws ParseException {
+        checkLinear(new Input() {
+            @Override
+            public String make(int size) {
+                return method("x = " + repeat("a + ", size) + "a;");
+            }
+        }, 10000, new DiamondParser());
+    }
+
+    @Test
+    public void longChainsOfRightAssociativeOperators() throws ParseException {
+        // deeper than the default limit, which chains of operators do not count against
+        checkLinear(new Input() {
+            @Override
+            public String make(int size) {
+                return method("x = " + repeat("a = ", size) + "a;");
+            }
+        }, 10000, new DiamondParser());
+    }
+
+    @Test
+    public void longRunsOfPrefixOperators() throws ParseException {
+        checkLinear(new Input() {
+            @Override
+            public String make(int size) {
+                return method("x = " + repeat("- ", size) + "a;");
+            }
+        }, 10000, new DiamondParser());
+    }
+
+    @Test
+    public void deeplyNestedExpressions() throws ParseException {
+        checkLinear(new Input() {
+            @Override
+            public String make(int size) {
+                return method("x = " + repeat("f(a, (", size) + "a" + repeat("))", size) + ";");
+            }
+        }, 1500, new DiamondParser().withNestingLimits(16, 1000000));
+    }
+
+    @Test
+    public void deeplyNestedStatements() throws ParseException {
+        checkLinear(new Input() {
+            @Override
+            public String make(int size) {
+                return method(repeat("while (a) { a = a + 1; ", size) + repeat("}", size));
+            }
+        }, 1000, new DiamondParser().withNestingLimits(1000000, 16));
+    }
+
+    @Test
+    public void deeplyNestedDoLoops() throws ParseException {
+        // the condition and the ';' of each loop are only read after its whole body
+        checkLinear(new Input() {
+            @Override
+            public String make(int size) {
+                return method(repeat("do { a = a + 1; ", size) + repeat("} while (a); ", size));
+            }
+        }, 1000, new DiamondParser().withNestingLimits(1000000, 16));
+    }
+
+    @Test
+    public void manyStatements() throws ParseException {
+        checkLinear(new Input() {
+            @Override
+            public String make(int size) {
+                return method(repeat("if (a < b) a = f(a, b[2]) * 3; else { b = -b; } ", size));
+            }
+        }, 500, new DiamondParser());
+    }
+
+    @Test
+    public void manyErrorsRecoveredFrom() {
+        // each "do" without a body is an error, whose position used to be found by walking to the end of the input
+        final DiamondParser parser = new DiamondParser();
+        Input input = new Input() {
+            @Override
+            public String make(int size) {
+                return method(repeat("do x; ", size));
+            }
+        };
+        List<ParseException> errors = new ArrayList<ParseException>();
+        parser.parse(lexer.lexToBuffer(input.make(10)), errors);
+        assertEquals(10, errors.size());
+        checkLinear(input, 3000, new Parse() {
+            @Override
+            public void parse(TokenBuffer<Lexeme> tokens) {
+                parser.parse(tokens, new ArrayList<ParseException>());
+            }
+        });
+    }
+
+    @Test
+    public void groupsNestedPastTheLimitAreAnError() throws ParseException {
+        DiamondParser parser = new DiamondParser();
+        int limit = DiamondParser.DEFAULT_EXPRESSION_NESTING_LIMIT;
+        parser.parse(lexer.lexToBuffer(method("x = " + groups(limit) + ";")));
+        try {
+            parser.parse(lexer.lexToBuffer(method("x = " + groups(limit + 1) + ";")));
+            fail("parsed groups nested past the limit");
+        } catch (ParseException e) {
+            assertEquals("expressions are nested more than " + limit + " deep", e.getMessage());
+        }
+        // however long a chain of operators is, it takes no brackets
+        parser.parse(lexer.lexToBuffer(method("x = " + repeat("a = - ", limit * 4) + "a;")));
+    }
+
+    private static String groups(int depth) {
+        return repeat("(", depth) + "a" + repeat(")", depth);
+    }
+
+    /**
+     * Parses a buffer of tokens.
+     */
+    private interface Parse {
+        void parse(TokenBuffer<Lexeme> tokens) throws ParseException;
+    }
+
+    private void checkLinear(Input input, int size, final DiamondParser parser) throws ParseException {
+        checkLinear(input, size, new Parse() {
+            @Override
+            public void parse(TokenBuffer<Lexeme> tokens) throws ParseException {
+                parser.parse(tokens);
+            }
+        });
+    }
+
+    private void checkLinear(Input input, int size, Parse parse) {
+        TokenBuffer<Lexeme> small = lexer.lexToBuffer(input.make(size));
+        TokenBuffer<Lexeme> large = lexer.lexToBuffer(input.make(size * GROWTH));
+        try {
+            for (int i = 0; i < RUNS; i++) {
+                parse.parse(small);
+                parse.parse(large);
+            }
+            // a pause of the machine can slow one run down, but not every attempt
+            double ratio = Double.MAX_VALUE;
+            for (int attempt = 0; attempt < ATTEMPTS && ratio >= MAX_RATIO; attempt++) {
+                ratio = (double) time(parse, large) / time(parse, small);
+            }
+            assertTrue("parsing " + GROWTH + " times as much took " + ratio + " times as long", ratio < MAX_RATIO);
+        } catch (ParseException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static long time(Parse parse, TokenBuffer<Lexeme> tokens) throws ParseException {
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < RUNS; i++) {
+            // so that collecting the garbage of one run is not counted in another
+            System.gc();
+            long start = System.nanoTime();
+            parse.parse(tokens);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+
+    private static String method(String body) {
+        return "class A { int f(int a, int b) { int x; " + body + " } }";
+    }
+
+    private static String repeat(String text, int count) {
+        StringBuilder repeated = new StringBuilder(text.length() * count);
+        for (int i = 0; i < count; i++) {
+            repeated.append(text);
+        }
+        return repeated.toString();
+    }
+}
@@ -0,0 +1,148 @@
+package parser;
+
+import lexer.DiamondLexer;
+import lexer.DiamondLexer.Lexeme;
+import lexer.SourceFile;
+import lexer.TokenBuffer;
+import lexer.TokenChange;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Parses the skeletons of units, whose method bodies are only parsed when asked for, which must then give the same
+ * unit, or the same error, as a full parse.
+ */
+public class SkeletonParsingTest {
+    private static final String SOURCE = "class A {\n"
+            + "    int f(int a) {\n"
+            + "        while (a < 10) { a = a + 1; }\n"
+            + "        return a;\n"
+            + "    }\n"
+            + "    static int g(Foo b) { b.h(\"s\", 2); }\n"
+            + "}\n"
+            + "class B { int k; int m() { return k * 3; } }\n";
+
+    private final DiamondLexer lexer = new DiamondLexer();
+
+    private final DiamondParser parser = new DiamondParser();
+
+    @Test
+    public void bodiesAreOnlyParsedWhenAskedFor() throws ParseException {
+        CompilationUnit unit = parser.parseSkeleton(lexer.lexToBuffer(SOURCE));
+        List<MethodDeclaration> methods = methods(unit);
+        assertEquals(3, methods.size());
+
+        String skeleton = Trees.dump(unit, SOURCE);
+        for (MethodDeclaration method : methods) {
+            assertFalse(method.isBodyParsed());
+        }
+        assertTrue(skeleton, skeleton.contains("      VariableDeclaration 20-25 <int a>\n      (body not parsed)\n"));
+
+        methods.get(1).parseBody();
+        assertTrue(methods.get(1).isBodyParsed());
+        assertFalse(methods.get(0).isBodyParsed());
+        for (MethodDeclaration method : methods) {
+            method.parseBody();
+        }
+        assertEquals(Trees.dump(parser.parse(lexer.lexToBuffer(SOURCE)), SOURCE), Trees.dump(unit, SOURCE));
+    }
+
+    @Test
+    public void errorsInABodyArePutOffUntilItIsParsed() throws ParseException {
+        String source = SOURCE.replace("return a;", "break;");
+        CompilationUnit unit = parser.parseSkeleton(lexer.lexToBuffer(source));
+        MethodDeclaration method = methods(unit).get(0);
+        int parameters = method.children().size();
+
+        ParseException expected = null;
+        try {
+            parser.parse(lexer.lexToBuffer(source));
+            fail("parsed a break outside a loop");
+        } catch (ParseException e) {
+            expected = e;
+        }
+        ParseException first = null;
+        for (int attempt = 0; attempt < 2; attempt++) {
+            try {
+                method.parseBody();
+                fail("parsed a break outside a loop");
+            } catch (ParseException e) {
+                assertEquals(expected.getMessage(), e.getMessage());
+                assertEquals(expected.getSpan(), e.getSpan());
+                if (first != null) {
+                    assertSame(first, e);
+                }
+                first = e;
+            }
+        }
+        assertFalse(method.isBodyParsed());
+        assertEquals(parameters, method.children().size());
+        // the other bodies are still fine
+        methods(unit).get(1).parseBody();
+    }
+
+    @Test
+    public void aBraceThatIsNeverClosedIsFoundAtOnce() {
+        try {
+            String source = SOURCE.substring(0, SOURCE.indexOf("class B")) + "class B { int m() {";
+            parser.parseSkeleton(lexer.lexToBuffer(source));
+            fail("parsed a body that is never closed");
+        } catch (ParseException e) {
+            assertEquals("expected '}'", e.getMessage());
+        }
+    }
+
+    @Test
+    public void unparsedBodiesMoveWithAReparse() throws ParseException {
+        String source = SOURCE;
+        TokenBuffer<Lexeme> tokens = lexer.lexToBuffer(source);
+        CompilationUnit unit = parser.parseSkeleton(tokens);
+        List<MethodDeclaration> methods = methods(unit);
+
+        // an edit in one body parses that method again, and moves the ones after it without parsing them
+        int offset = source.indexOf("a < 10");
+        TokenChange<Lexeme> change = lexer.relex(tokens, offset + 4, 2, "1000");
+        TreeChange treeChange = parser.reparse(unit, tokens, change);
+        source = source.substring(0, offset + 4) + "1000" + source.substring(offset + 6);
+        tokens = change.getTokens();
+        assertFalse(treeChange.isFullReparse());
+        assertSame(methods.get(0), treeChange.getReplaced());
+        assertFalse(methods.get(1).isBodyParsed());
+        assertFalse(methods.get(2).isBodyParsed());
+
+        // and then one in the statements of the method that was parsed again moves them once more
+        offset = source.indexOf("a = a + 1");
+        change = lexer.relex(tokens, offset, 0, "a = a * 2; ");
+        source = source.substring(0, offset) + "a = a * 2; " + source.substring(offset);
+        treeChange = parser.reparse(unit, tokens, change);
+        tokens = change.getTokens();
+        assertFalse(treeChange.isFullReparse());
+        assertTrue(treeChange.getReplaced() instanceof WhileLoop);
+        assertFalse(methods.get(1).isBodyParsed());
+
+        for (MethodDeclaration method : methods(unit)) {
+            method.parseBody();
+        }
+        assertEquals(Trees.dump(parser.parse(tokens), source), Trees.dump(unit, source));
+    }
+
+    private static List<MethodDeclaration> methods(Node node) {
+        List<MethodDeclaration> methods = new ArrayList<MethodDeclaration>();
+        for (Node type : node.children()) {
+            for (Node member : type.children()) {
+                if (member instanceof MethodDeclaration) {
+                    methods.add((MethodDeclaration) member);
+                }
+            }
+        }
+        return methods;
+    }
+}
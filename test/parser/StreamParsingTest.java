@@ -0,0 +1,176 @@
+package parser;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import lexer.DiamondLexer;
+import lexer.DiamondLexer.Lexeme;
+import lexer.TokenStream;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Parses units from a {@link TokenStream}, which releases the tokens of each statement once it is read, and must give
+ * the same trees, and the same errors at the same places, as parsing them from a buffer of every token.  The streams
+ * are read from readers that hand over a few characters at a time and from channels, and the large unit is longer
+ * than a chunk of input, with tokens that straddle chunks and statements longer than the stream's lookahead.
+ */
+public class StreamParsingTest {
+    private static final String PROGRAM = "class A {\n"
+            + "    static int f(int a, Foo[] b) {\n"
+            + "        int x = a + 1 * -b[2].c.d(x, y.new(), new(1)) - x++;\n"
+            + "        x = y = z = w += 3;\n"
+            + "        if (x > 2) if (y) z = 1; else { q = (a + (b * (c - d))); }\n"
+            + "        for (i = 0; i < 10; i++) { s = s + \"str\"; continue; }\n"
+            + "        while (a) do { c = -(-c); } while (c);\n"
+            + "        return x * f(a, b);\n"
+            + "    }\n"
+            + "}\n";
+
+    private static final String ERRORS = "class A {\n"
+            + "    int f(int a, int b) {\n"
+            + "        a = c == d & e;\n"
+            + "        do { b = 2; } while (b) x;\n"
+            + "        while (\"s\") { a = 3; }\n"
+            + "        b = b + ;\n"
+            + "        x = 1[0];\n"
+            + "        return \"t\";\n"
+            + "    }\n"
+            + "}\n";
+
+    private final DiamondLexer lexer = new DiamondLexer();
+
+    private final DiamondParser parser = new DiamondParser();
+
+    @Test
+    public void aValidUnitParsesAlike() throws ParseException {
+        checkSameTrees(PROGRAM);
+    }
+
+    @Test
+    public void aLargeUnitParsesAlike() throws ParseException {
+        String source = large();
+        assertTrue(source.length() > 4 * 8192);
+        checkSameTrees(source);
+    }
+
+    @Test
+    public void theFirstErrorIsTheSame() {
+        ParseException expected = null;
+        try {
+            parser.parse(lexer.lexToBuffer(ERRORS));
+            fail("parsed a unit with errors in it");
+        } catch (ParseException e) {
+            expected = e;
+        }
+        for (TokenStream<Lexeme> tokens : streams(ERRORS)) {
+            try {
+                new DiamondParser(tokens).parse();
+                fail("parsed a unit with errors in it");
+            } catch (ParseException e) {
+                assertEquals(expected.getMessage(), e.getMessage());
+                assertEquals(expected.getSpan(), e.getSpan());
+            }
+        }
+    }
+
+    @Test
+    public void everyErrorIsTheSame() {
+        checkSameErrors(ERRORS);
+        // errors, some of them after a body in braces, far enough in that the tokens before them are released
+        String source = ERRORS.replace("class A {\n", "class A {\n" + repeat(method(7), 40));
+        checkSameErrors(source);
+    }
+
+    private void checkSameTrees(String source) throws ParseException {
+        String expected = Trees.dump(parser.parse(lexer.lexToBuffer(source)), source);
+        for (TokenStream<Lexeme> tokens : streams(source)) {
+            assertEquals(expected, Trees.dump(new DiamondParser(tokens).parse(), source));
+        }
+    }
+
+    private void checkSameErrors(String source) {
+        List<ParseException> expected = new ArrayList<ParseException>();
+        String tree = Trees.dump(parser.parse(lexer.lexToBuffer(source), expected), source);
+        assertEquals(6, expected.size());
+        for (TokenStream<Lexeme> tokens : streams(source)) {
+            List<ParseException> errors = new ArrayList<ParseException>();
+            assertEquals(tree, Trees.dump(new DiamondParser(tokens).parse(errors), source));
+            assertEquals(expected.size(), errors.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).getMessage(), errors.get(i).getMessage());
+                assertEquals(expected.get(i).getSpan(), errors.get(i).getSpan());
+            }
+        }
+    }
+
+    private List<TokenStream<Lexeme>> streams(String source) {
+        List<TokenStream<Lexeme>> streams = new ArrayList<TokenStream<Lexeme>>();
+        streams.add(lexer.stream(new StringReader(source)));
+        streams.add(lexer.stream(new Trickle(source, 7)));
+        streams.add(lexer.stream(Channels.newChannel(new ByteArrayInputStream(source.getBytes(Charsets.UTF_8)))));
+        return streams;
+    }
+
+    private static String large() {
+        StringBuilder source = new StringBuilder("class A {\n");
+        source.append(repeat(method(0), 150));
+        // a string and a comment longer than a chunk, and statements of far more tokens than the lookahead
+        source.append("    int g(int a) {\n");
+        source.append("        s = \"").append(Strings.repeat("long string ", 1000)).append("\";\n");
+        source.append("        // ").append(Strings.repeat("long comment ", 1000)).append("\n");
+        source.append("        x = ").append(Strings.repeat("a + ", 2000)).append("a;\n");
+        source.append("        x = ").append(Strings.repeat("f(a, ", 200)).append("a")
+                .append(Strings.repeat(")", 200)).append(";\n");
+        source.append("        return a;\n");
+        source.append("    }\n");
+        source.append(repeat(method(1), 150));
+        return source.append("}\n").toString();
+    }
+
+    private static String method(int i) {
+        return "    int m" + i + "(int a, int b) {\n"
+                + "        while (a < b) { a = a + " + i + "; }\n"
+                + "        do { b = b - 1; } while (b > a);\n"
+                + "        return a + b;\n"
+                + "    }\n";
+    }
+
+    private static String repeat(String s, int count) {
+        return Strings.repeat(s, count);
+    }
+
+    /**
+     * A reader that hands over at most a few characters at a time.
+     */
+    private static final class Trickle extends Reader {
+        private final StringReader reader;
+
+        private final int most;
+
+        Trickle(String s, int most) {
+            this.reader = new StringReader(s);
+            this.most = most;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            return reader.read(buffer, offset, Math.min(length, most));
+        }
+
+        @Override
+        public void close() {
+            reader.close();
+        }
+    }
+}
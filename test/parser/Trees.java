@@ -0,0 +1,42 @@
+package parser;
+
+import lexer.SourceFile;
+
+/**
+ * Prints parse trees for tests to compare: one node to a line, indented by its depth, with its class, its span and the
+ * source it spans.  The body of a method that a skeleton parse put off is not parsed, but printed as a line of its own.
+ */
+final class Trees {
+    private Trees() {
+    }
+
+    static String dump(Node node, CharSequence source) {
+        StringBuilder out = new StringBuilder();
+        dump(node, source, 0, out);
+        return out.toString();
+    }
+
+    private static void dump(Node node, CharSequence source, int depth, StringBuilder out) {
+        for (int i = 0; i < depth; i++) {
+            out.append("  ");
+        }
+        out.append(node.getClass().getSimpleName());
+        long span = node.getSpan();
+        if (span != SourceFile.NO_SPAN) {
+            int start = SourceFile.spanStart(span);
+            int end = SourceFile.spanEnd(span);
+            out.append(' ').append(start).append('-').append(end).append(" <");
+            out.append(source.subSequence(start, end).toString().replace("\n", "\\n")).append('>');
+        }
+        out.append('\n');
+        for (Node child : node.children()) {
+            dump(child, source, depth + 1, out);
+        }
+        if (node instanceof MethodDeclaration && !((MethodDeclaration) node).isBodyParsed()) {
+            for (int i = 0; i <= depth; i++) {
+                out.append("  ");
+            }
+            out.append("(body not parsed)\n");
+        }
+    }
+}